@@ -45,16 +45,20 @@ import com.jme3.monkeyzone.messages.ServerAddPlayerMessage;
 import com.jme3.monkeyzone.messages.ServerDisableEntityMessage;
 import com.jme3.monkeyzone.messages.ServerEffectMessage;
 import com.jme3.monkeyzone.messages.ServerEnableEntityMessage;
+import com.jme3.monkeyzone.messages.ServerEntityRelevanceMessage;
 import com.jme3.monkeyzone.messages.ServerEnterEntityMessage;
 import com.jme3.monkeyzone.messages.ServerEntityDataMessage;
 import com.jme3.monkeyzone.messages.ServerRemoveEntityMessage;
 import com.jme3.monkeyzone.messages.ServerRemovePlayerMessage;
+import com.jme3.monkeyzone.messages.ServerWorldStateMessage;
 import com.jme3.monkeyzone.messages.StartGameMessage;
 import com.jme3.network.Network;
 import com.jme3.network.NetworkClient;
 import com.jme3.network.physicssync.PhysicsSyncManager;
+import com.jme3.network.physicssync.SyncStatistics;
 import com.jme3.network.physicssync.SyncCharacterMessage;
 import com.jme3.network.physicssync.SyncRigidBodyMessage;
+import com.jme3.network.physicssync.SyncSnapshotMessage;
 import com.jme3.niftygui.NiftyJmeDisplay;
 import com.jme3.renderer.RenderManager;
 import com.jme3.system.AppSettings;
@@ -135,11 +139,21 @@ public class ClientMain extends SimpleApplication implements ScreenController {
 
         syncManager = new PhysicsSyncManager(app, client);
         syncManager.setMaxDelay(Globals.NETWORK_MAX_PHYSICS_DELAY);
+        syncManager.getClockSync().setPingInterval(Globals.NETWORK_PING_INTERVAL);
+        syncManager.setInterpolation(Globals.NETWORK_SYNC_INTERPOLATION);
+        syncManager.setInterpolationDelay(Globals.NETWORK_INTERPOLATION_DELAY);
+        syncManager.setMaxExtrapolation(Globals.NETWORK_MAX_EXTRAPOLATION);
+        syncManager.setUnreliableSync(Globals.NETWORK_SYNC_UNRELIABLE);
+        syncManager.setNetworkSimulator(Util.createNetworkSimulator());
+        if (Globals.NETWORK_SIMULATE) {
+            syncManager.setStatistics(new SyncStatistics());
+        }
         syncManager.setMessageTypes(AutoControlMessage.class,
                 ManualControlMessage.class,
                 ActionMessage.class,
                 SyncCharacterMessage.class,
                 SyncRigidBodyMessage.class,
+                SyncSnapshotMessage.class,
                 ServerEntityDataMessage.class,
                 ServerEnterEntityMessage.class,
                 ServerAddEntityMessage.class,
@@ -147,8 +161,10 @@ public class ClientMain extends SimpleApplication implements ScreenController {
                 ServerEffectMessage.class,
                 ServerEnableEntityMessage.class,
                 ServerDisableEntityMessage.class,
+                ServerEntityRelevanceMessage.class,
                 ServerRemoveEntityMessage.class,
-                ServerRemovePlayerMessage.class);
+                ServerRemovePlayerMessage.class,
+                ServerWorldStateMessage.class);
         stateManager.attach(syncManager);
 
         //ai manager for controlling units
@@ -397,6 +413,9 @@ public class ClientMain extends SimpleApplication implements ScreenController {
 
     @Override
     public void destroy() {
+        if (syncManager.getNetworkSimulator() != null) {
+            Logger.getLogger(ClientMain.class.getName()).log(Level.INFO, "{0}\n{1}", new Object[]{syncManager.getNetworkSimulator(), syncManager.getStatistics()});
+        }
         try {
             client.close();
         } catch (Exception ex) {
@@ -37,6 +37,7 @@ import com.jme3.monkeyzone.messages.HandshakeMessage;
 import com.jme3.monkeyzone.messages.ServerAddPlayerMessage;
 import com.jme3.monkeyzone.messages.ServerJoinMessage;
 import com.jme3.monkeyzone.messages.ServerRemovePlayerMessage;
+import com.jme3.monkeyzone.messages.ServerWorldStateMessage;
 import com.jme3.monkeyzone.messages.StartGameMessage;
 import com.jme3.network.Client;
 import com.jme3.network.ClientStateListener;
@@ -63,7 +64,7 @@ public class ClientNetListener implements MessageListener, ClientStateListener {
         this.client = client;
         this.worldManager = worldManager;
         client.addClientStateListener(this);
-        client.addMessageListener(this, HandshakeMessage.class, ServerJoinMessage.class, StartGameMessage.class, ChatMessage.class, ServerAddPlayerMessage.class, ServerRemovePlayerMessage.class);
+        client.addMessageListener(this, HandshakeMessage.class, ServerJoinMessage.class, StartGameMessage.class, ChatMessage.class, ServerAddPlayerMessage.class, ServerRemovePlayerMessage.class, ServerWorldStateMessage.class);
     }
 
     public void clientConnected(Client clienst) {
@@ -116,6 +117,8 @@ public class ClientNetListener implements MessageListener, ClientStateListener {
             app.updatePlayerData();
         } else if (message instanceof ServerRemovePlayerMessage) {
             app.updatePlayerData();
+        } else if (message instanceof ServerWorldStateMessage) {
+            app.updatePlayerData();
         }
     }
 
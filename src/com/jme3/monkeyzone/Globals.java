@@ -47,7 +47,51 @@ public class Globals {
     public static final int SERVER_VERSION = 1;
 
     public static final float NETWORK_SYNC_FREQUENCY = 0.25f;
+    //how far behind the estimated server time sync messages are played when not interpolating
     public static final float NETWORK_MAX_PHYSICS_DELAY = 0.25f;
+    //seconds between the pings the client uses to estimate the server time
+    public static final float NETWORK_PING_INTERVAL = 1f;
+    //interpolate synced objects on the client instead of setting each state when it arrives
+    public static final boolean NETWORK_SYNC_INTERPOLATION = true;
+    //how far behind the server time synced objects are displayed, at least the sync frequency
+    public static final float NETWORK_INTERPOLATION_DELAY = NETWORK_SYNC_FREQUENCY;
+    //maximum time the location of synced objects is extrapolated when states are late
+    public static final float NETWORK_MAX_EXTRAPOLATION = 0.25f;
+    //distance between the predicted and the reconciled location of the own entity above which the entity is corrected
+    public static final float NETWORK_PREDICTION_TOLERANCE = 0.5f;
+    //how far back in time the server rewinds entities when resolving shots, clients behind more than this are not compensated fully
+    public static final float NETWORK_MAX_LAG_COMPENSATION = 1f;
+    //send state sync messages and snapshots unreliably (UDP), late states are dropped
+    public static final boolean NETWORK_SYNC_UNRELIABLE = false;
+    //send one delta compressed snapshot per sync tick instead of one message per object
+    public static final boolean NETWORK_SYNC_SNAPSHOTS = false;
+    //bytes of sync data sent to each client per sync tick, objects with the highest priority go first, 0 to send everything
+    public static final int NETWORK_SYNC_BUDGET = 0;
+    //measure serialized size of sync data and allocated bytes per sync tick on the server (logged at FINE level)
+    public static final boolean NETWORK_SYNC_MEASURE = false;
+    //radius around the entities of a client in which other entities are synced to it, 0 to sync everything
+    public static final float NETWORK_INTEREST_RADIUS = 0;
+    //size of the chunks the compressed world state for joining clients is sent in
+    public static final int NETWORK_WORLD_STATE_CHUNK = 8192;
+    //simulate a network link for received sync messages (latency, jitter, loss, reordering, bandwidth) and record sync metrics
+    public static final boolean NETWORK_SIMULATE = false;
+    //seed of the simulator, the same seed gives the same conditions for the same messages
+    public static final long NETWORK_SIMULATE_SEED = 1;
+    public static final float NETWORK_SIMULATE_LATENCY = 0.05f;
+    public static final float NETWORK_SIMULATE_JITTER = 0.02f;
+    //share of unreliable messages that are lost or arrive after later ones
+    public static final float NETWORK_SIMULATE_LOSS = 0.02f;
+    public static final float NETWORK_SIMULATE_REORDER = 0.01f;
+    //bytes per second per connection, 0 for no limit
+    public static final int NETWORK_SIMULATE_BANDWIDTH = 0;
+    //track round trip, loss, traffic and input of each connection on the server and publish it via JMX
+    public static final boolean NETWORK_TELEMETRY = false;
+    //serialize received messages and sent messages of unknown size again to count their bytes in the telemetry
+    public static final boolean NETWORK_TELEMETRY_MEASURE_BYTES = false;
+    //cell size of the spatial index used for entity queries
+    public static final float WORLD_GRID_CELL_SIZE = 20f;
+    //directory where generated navmeshes are cached (-Dmonkeyzone.navmesh.cache=<dir>), null to always generate them
+    public static final String NAVMESH_CACHE_DIR = System.getProperty("monkeyzone.navmesh.cache");
     public static final int SCENE_FPS = 60;
     public static final float PHYSICS_FPS = 1f / 30f;
     //only applies for client, server doesnt render anyway
@@ -91,6 +91,10 @@ public class PlayerData {
         return id;
     }
 
+    public static synchronized boolean exists(long id) {
+        return players.containsKey(id);
+    }
+
     public static synchronized void add(long id, PlayerData player) {
         players.put(id, player);
     }
@@ -39,6 +39,7 @@ import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
 import com.jme3.monkeyzone.messages.ActionMessage;
 import com.jme3.monkeyzone.messages.StartGameMessage;
+import com.jme3.network.HostedConnection;
 import com.jme3.network.physicssync.PhysicsSyncManager;
 import com.jme3.scene.Spatial;
 import java.io.IOException;
@@ -57,6 +58,8 @@ public class ServerGameManager extends AbstractAppState {
     private boolean running;
     String mapName;
     String[] modelNames;
+    //number of players entities have been created for, places the entities
+    private int playerCount = 0;
 
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
@@ -83,26 +86,43 @@ public class ServerGameManager extends AbstractAppState {
         worldManager.attachLevel();
 
         //create character entities for all players, then enter the entites
-        int i = 0;
+        playerCount = 0;
         for (Iterator<PlayerData> it = PlayerData.getPlayers().iterator(); it.hasNext();) {
-            PlayerData playerData = it.next();
-            long entityId = worldManager.addNewEntity("Models/Sinbad/Sinbad.j3o", new Vector3f(i * 3, 3, 0), new Quaternion());
-            playerData.setData("character_entity_id", entityId);
-            worldManager.enterEntity(playerData.getId(), entityId);
-
-            //create new ai player for user
-            long playearId = worldManager.addNewPlayer(PlayerData.getIntData(playerData.getId(), "group_id"), "AI", 0);
-            long entitayId = worldManager.addNewEntity("Models/Sinbad/Sinbad.j3o", new Vector3f(i * 3, 3, 3), new Quaternion());
-            PlayerData.setData(playearId, "character_entity_id", entitayId);
-            worldManager.enterEntity(playearId, entitayId);
-
-            //create a vehicle
-            worldManager.addNewEntity("Models/Ferrari/Car.j3o", new Vector3f(i * 3, 3, -3), new Quaternion());
-            i++;
+            createPlayerEntities(it.next().getId());
         }
         return true;
     }
 
+    /**
+     * creates the entities for a player that joins the running game
+     * @param playerId
+     */
+    public synchronized void addPlayer(long playerId) {
+        if (running) {
+            createPlayerEntities(playerId);
+        }
+    }
+
+    /**
+     * creates the character of a player and enters it, also creates an ai
+     * player with a character and a vehicle for the players group
+     */
+    private void createPlayerEntities(long playerId) {
+        int i = playerCount++;
+        long entityId = worldManager.addNewEntity("Models/Sinbad/Sinbad.j3o", new Vector3f(i * 3, 3, 0), new Quaternion());
+        PlayerData.setData(playerId, "character_entity_id", entityId);
+        worldManager.enterEntity(playerId, entityId);
+
+        //create new ai player for user
+        long playearId = worldManager.addNewPlayer(PlayerData.getIntData(playerId, "group_id"), "AI", 0);
+        long entitayId = worldManager.addNewEntity("Models/Sinbad/Sinbad.j3o", new Vector3f(i * 3, 3, 3), new Quaternion());
+        PlayerData.setData(playearId, "character_entity_id", entitayId);
+        worldManager.enterEntity(playearId, entitayId);
+
+        //create a vehicle
+        worldManager.addNewEntity("Models/Ferrari/Car.j3o", new Vector3f(i * 3, 3, -3), new Quaternion());
+    }
+
     /**
      * stops the game
      */
@@ -118,6 +138,16 @@ public class ServerGameManager extends AbstractAppState {
         return true;
     }
 
+    /**
+     * sends the running game to a client that joins
+     * @param client
+     */
+    public synchronized void sendGame(HostedConnection client) {
+        if (running) {
+            client.send(new StartGameMessage(mapName, modelNames));
+        }
+    }
+
     /**
      * checks if the game is running
      * @return
@@ -133,6 +163,18 @@ public class ServerGameManager extends AbstractAppState {
      * @param pressed
      */
     public void performAction(long entityId, int action, boolean pressed) {
+        performAction(entityId, action, pressed, -1);
+    }
+
+    /**
+     * called when an entity (human or AI) performs an action
+     * @param entityId
+     * @param action
+     * @param pressed
+     * @param viewTime the server time of the world state the player saw when
+     * performing the action, -1 to use the current state
+     */
+    public void performAction(long entityId, int action, boolean pressed, double viewTime) {
         Spatial myEntity = worldManager.getEntity(entityId);
         if (myEntity == null) {
             Logger.getLogger(ServerGameManager.class.getName()).log(Level.WARNING, "Cannot find entity performing action!");
@@ -147,7 +189,7 @@ public class ServerGameManager extends AbstractAppState {
         if (action == ActionMessage.ENTER_ACTION && pressed) {
             performEnterEntity(player_id, myEntity);
         } else if (action == ActionMessage.SHOOT_ACTION && pressed) {
-            performShoot(myEntity);
+            performShoot(myEntity, viewTime);
         }
     }
 
@@ -177,10 +219,12 @@ public class ServerGameManager extends AbstractAppState {
     }
 
     /**
-     * handle entity shooting
+     * handle entity shooting, other entities are hit where the shooter saw
+     * them at the view time
      * @param myEntity
+     * @param viewTime
      */
-    private void performShoot(Spatial myEntity) {
+    private void performShoot(Spatial myEntity, double viewTime) {
         CharacterControl control = myEntity.getControl(CharacterControl.class);
         if (control == null) {
             Logger.getLogger(ServerGameManager.class.getName()).log(Level.WARNING, "Cannot shoot when not character!");
@@ -188,7 +232,7 @@ public class ServerGameManager extends AbstractAppState {
         }
         worldManager.playWorldEffect("Effects/GunShotA.j3o", myEntity.getWorldTranslation(), 0.1f);
         Vector3f hitLocation = new Vector3f();
-        Spatial hitEntity = worldManager.doRayTest(myEntity, 10, hitLocation);
+        Spatial hitEntity = worldManager.doRayTest(myEntity, 10, hitLocation, viewTime);
         if (hitEntity != null) {
             long targetId = (Long) hitEntity.getUserData("entity_id");
             Float hp = (Float) hitEntity.getUserData("HitPoints");
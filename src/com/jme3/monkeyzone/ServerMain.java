@@ -37,7 +37,10 @@ import com.jme3.monkeyzone.messages.ActionMessage;
 import com.jme3.monkeyzone.messages.AutoControlMessage;
 import com.jme3.monkeyzone.messages.ManualControlMessage;
 import com.jme3.network.Network;
+import com.jme3.network.physicssync.GridInterestManager;
+import com.jme3.network.physicssync.NetworkTelemetry;
 import com.jme3.network.physicssync.PhysicsSyncManager;
+import com.jme3.network.physicssync.SyncSnapshotAckMessage;
 import com.jme3.renderer.RenderManager;
 import com.jme3.system.AppSettings;
 import java.io.IOException;
@@ -79,6 +82,18 @@ public class ServerMain extends SimpleApplication {
     private PhysicsSyncManager syncManager;
     private ServerNetListener listenerManager;
     private BulletAppState bulletState;
+    //update time statistics, read from other threads
+    private long tickTimeTotal = 0;
+    private long tickTimeMax = 0;
+    private int ticks = 0;
+
+    /**
+     * @return the server application started with main(), null if it has
+     * not been started
+     */
+    public static ServerMain getApplication() {
+        return app;
+    }
 
     @Override
     public void simpleInitApp() {
@@ -95,21 +110,89 @@ public class ServerMain extends SimpleApplication {
         //create sync manager
         syncManager = new PhysicsSyncManager(app, server);
         syncManager.setSyncFrequency(Globals.NETWORK_SYNC_FREQUENCY);
+        syncManager.setSnapshotMode(Globals.NETWORK_SYNC_SNAPSHOTS);
+        syncManager.setUnreliableSync(Globals.NETWORK_SYNC_UNRELIABLE);
+        syncManager.setSyncBudget(Globals.NETWORK_SYNC_BUDGET);
+        syncManager.setMeasureBandwidth(Globals.NETWORK_SYNC_MEASURE);
+        syncManager.setMeasureAllocation(Globals.NETWORK_SYNC_MEASURE);
+        syncManager.setNetworkSimulator(Util.createNetworkSimulator());
+        if (Globals.NETWORK_TELEMETRY) {
+            NetworkTelemetry telemetry = new NetworkTelemetry();
+            telemetry.setMeasureBytes(Globals.NETWORK_TELEMETRY_MEASURE_BYTES);
+            telemetry.register();
+            syncManager.setTelemetry(telemetry);
+        }
         syncManager.setMessageTypes(AutoControlMessage.class,
                 ActionMessage.class,
-                ManualControlMessage.class);
+                ManualControlMessage.class,
+                SyncSnapshotAckMessage.class);
         stateManager.attach(syncManager);
         //cerate world manager
         worldManager = new WorldManager(this, rootNode);
         stateManager.attach(worldManager);
         //register world manager with sync manager so that messages can apply their data
         syncManager.addObject(-1, worldManager);
+        //only sync entities near the entities of each client
+        if (Globals.NETWORK_INTEREST_RADIUS > 0) {
+            GridInterestManager interestManager = new GridInterestManager(syncManager, Globals.NETWORK_INTEREST_RADIUS);
+            interestManager.addInterestListener(worldManager);
+            syncManager.setInterestManager(interestManager);
+        }
         //create server side game manager
         gameManager = new ServerGameManager();
         stateManager.attach(gameManager);
         listenerManager = new ServerNetListener(this, server, worldManager, gameManager);
     }
 
+    /**
+     * updates the server and records the time the update took, the time
+     * waiting for the next frame is not included
+     */
+    @Override
+    public void update() {
+        long start = System.nanoTime();
+        super.update();
+        addTickTime(System.nanoTime() - start);
+    }
+
+    private synchronized void addTickTime(long time) {
+        tickTimeTotal += time;
+        tickTimeMax = Math.max(tickTimeMax, time);
+        ticks++;
+    }
+
+    /**
+     * @return the average update time in milliseconds since the tick times
+     * were reset
+     */
+    public synchronized float getAverageTickTime() {
+        if (ticks == 0) {
+            return 0;
+        }
+        return tickTimeTotal / 1000000f / ticks;
+    }
+
+    /**
+     * @return the longest update time in milliseconds since the tick times
+     * were reset
+     */
+    public synchronized float getMaxTickTime() {
+        return tickTimeMax / 1000000f;
+    }
+
+    /**
+     * @return the number of updates since the tick times were reset
+     */
+    public synchronized int getTicks() {
+        return ticks;
+    }
+
+    public synchronized void resetTickTimes() {
+        tickTimeTotal = 0;
+        tickTimeMax = 0;
+        ticks = 0;
+    }
+
     @Override
     public void simpleUpdate(float tpf) {
 //        worldManager.update(tpf);
@@ -121,6 +204,12 @@ public class ServerMain extends SimpleApplication {
 
     @Override
     public void destroy() {
+        if (syncManager != null && syncManager.getTelemetry() != null) {
+            syncManager.getTelemetry().unregister();
+        }
+        if (syncManager != null && syncManager.getNetworkSimulator() != null) {
+            Logger.getLogger(ServerMain.class.getName()).log(Level.INFO, "{0}", syncManager.getNetworkSimulator());
+        }
         super.destroy();
         server.close();
     }
@@ -35,7 +35,6 @@ import com.jme3.monkeyzone.messages.ChatMessage;
 import com.jme3.monkeyzone.messages.ActionMessage;
 import com.jme3.monkeyzone.messages.ClientJoinMessage;
 import com.jme3.monkeyzone.messages.HandshakeMessage;
-import com.jme3.monkeyzone.messages.ServerAddPlayerMessage;
 import com.jme3.monkeyzone.messages.ServerJoinMessage;
 import com.jme3.monkeyzone.messages.StartGameMessage;
 import com.jme3.network.Server;
@@ -43,16 +42,19 @@ import com.jme3.network.ConnectionListener;
 import com.jme3.network.HostedConnection;
 import com.jme3.network.MessageListener;
 import com.jme3.network.Message;
-import java.util.Iterator;
+import com.jme3.network.physicssync.MessageHandler;
 import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Handles the network message transfer for the server in a threadsafe way
+ * Handles the network message transfer for the server in a threadsafe way.
+ * Handshake and chat messages are handled on the network thread, messages
+ * that change the game are handled on the update thread through the
+ * PhysicsSyncManager.
  * @author normenhansen
  */
-public class ServerNetListener implements MessageListener<HostedConnection>, ConnectionListener {
+public class ServerNetListener implements MessageListener<HostedConnection>, MessageHandler, ConnectionListener {
 
     ServerMain app;
     com.jme3.network.Server server;
@@ -65,7 +67,8 @@ public class ServerNetListener implements MessageListener<HostedConnection>, Con
         this.app = app;
         this.gameManager = gameManager;
         server.addConnectionListener(this);
-        server.addMessageListener(this, HandshakeMessage.class, ClientJoinMessage.class, ChatMessage.class, StartGameMessage.class, ActionMessage.class);
+        server.addMessageListener(this, HandshakeMessage.class, ChatMessage.class);
+        worldManager.getSyncManager().addMessageHandler(this, ClientJoinMessage.class, StartGameMessage.class, ActionMessage.class);
     }
 
     public void connectionAdded(Server serverr, HostedConnection client) {
@@ -109,17 +112,37 @@ public class ServerNetListener implements MessageListener<HostedConnection>, Con
             msg.server_version = Globals.SERVER_VERSION;
             source.send(msg);
             Logger.getLogger(ServerNetListener.class.getName()).log(Level.INFO, "Sent back handshake message");
-        } else if (message instanceof ClientJoinMessage) {
-            final ClientJoinMessage msg = (ClientJoinMessage) message;
+        } else if (message instanceof ChatMessage) {
+            ChatMessage msg = (ChatMessage) message;
+            int clientId = (int) source.getId();
+            if (!checkClient(clientId, message)) {
+                return;
+            }
+            try {
+                msg.name = PlayerData.getStringData(ServerClientData.getPlayerId(clientId), "name");
+                server.broadcast(msg);
+            } catch (Exception ex) {
+                Logger.getLogger(ServerNetListener.class.getName()).log(Level.SEVERE, "Error broadcasting chat: {0}", ex);
+            }
+        }
+    }
+
+    /**
+     * handles the messages that change the game, called on the update thread
+     */
+    public void handleMessage(Object connection, Message message) {
+        HostedConnection source = (HostedConnection) connection;
+        if (message instanceof ClientJoinMessage) {
+            ClientJoinMessage msg = (ClientJoinMessage) message;
             Logger.getLogger(ServerNetListener.class.getName()).log(Level.INFO, "Got client join message");
-            final int clientId = (int) source.getId();
+            int clientId = (int) source.getId();
             //TODO: login user/pass check
             if (!ServerClientData.exsists(clientId)) {
                 Logger.getLogger(ServerNetListener.class.getName()).log(Level.WARNING, "Receiving join message from unknown client");
                 return;
             }
             //TODO: creates new player, reuse old on drop possible?
-            final long newPlayerId = PlayerData.getNew(msg.name);
+            long newPlayerId = PlayerData.getNew(msg.name);
             Logger.getLogger(ServerNetListener.class.getName()).log(Level.INFO, "Created new played ID {0}", newPlayerId);
             ServerClientData.setConnected(clientId, true);
             ServerClientData.setPlayerId(clientId, newPlayerId);
@@ -128,54 +151,21 @@ public class ServerNetListener implements MessageListener<HostedConnection>, Con
             source.send(serverJoinMessage);
             Logger.getLogger(ServerNetListener.class.getName()).log(Level.INFO, "Login succesful - sent back join message");
             //add the player
-            app.enqueue(new Callable<Void>() {
-
-                public Void call() throws Exception {
-                    //TODO: client id as group id
-                    worldManager.addPlayer(newPlayerId, clientId, msg.name, -1);
-                    PlayerData.setData(newPlayerId, "client_id", clientId);
-                    for (Iterator<PlayerData> it = PlayerData.getPlayers().iterator(); it.hasNext();) {
-                        PlayerData playerData = it.next();
-                        if (playerData.getId() != newPlayerId) {
-                            worldManager.getSyncManager().send(clientId, new ServerAddPlayerMessage(playerData.getId(), playerData.getStringData("name"), playerData.getIntData("group_id"), playerData.getAiControl()));
-                            Logger.getLogger(ServerNetListener.class.getName()).log(Level.INFO, "Send player {0} to client {1}", new Object[]{playerData.getId(), newPlayerId});
-                        }
-                    }
-
-                    return null;
-                }
-            });
-        } else if (message instanceof ChatMessage) {
-            ChatMessage msg = (ChatMessage) message;
-            int clientId = (int) source.getId();
-            if (!checkClient(clientId, message)) {
-                return;
-            }
-            try {
-                msg.name = PlayerData.getStringData(ServerClientData.getPlayerId(clientId), "name");
-                server.broadcast(msg);
-            } catch (Exception ex) {
-                Logger.getLogger(ServerNetListener.class.getName()).log(Level.SEVERE, "Error broadcasting chat: {0}", ex);
-            }
+            //TODO: client id as group id
+            worldManager.addPlayer(newPlayerId, clientId, msg.name, -1);
+            PlayerData.setData(newPlayerId, "client_id", clientId);
+            //send running game and the players and entities in one state, the
+            //entities of the new player are broadcast to all clients anyway,
+            //the joining client skips them when it reads the state
+            gameManager.sendGame(source);
+            gameManager.addPlayer(newPlayerId);
+            worldManager.sendWorldState(clientId);
         } else if (message instanceof StartGameMessage) {
             StartGameMessage msg = (StartGameMessage) message;
-            final String levelName = msg.levelName;
-            app.enqueue(new Callable<Void>() {
-
-                public Void call() throws Exception {
-                    gameManager.startGame(levelName);
-                    return null;
-                }
-            });
+            gameManager.startGame(msg.levelName);
         } else if (message instanceof ActionMessage) {
-            final ActionMessage msg = (ActionMessage) message;
-            app.enqueue(new Callable<Void>() {
-
-                public Void call() throws Exception {
-                    gameManager.performAction(msg.syncId, msg.action, msg.pressed);
-                    return null;
-                }
-            });
+            ActionMessage msg = (ActionMessage) message;
+            gameManager.performAction(msg.syncId, msg.action, msg.pressed, msg.viewTime);
         }
     }
 
@@ -40,18 +40,24 @@ import com.jme3.monkeyzone.messages.ManualControlMessage;
 import com.jme3.monkeyzone.messages.ServerAddEntityMessage;
 import com.jme3.monkeyzone.messages.ServerAddPlayerMessage;
 import com.jme3.monkeyzone.messages.ServerDisableEntityMessage;
+import com.jme3.network.physicssync.MessageCodec;
+import com.jme3.network.physicssync.NetworkSimulator;
 import com.jme3.network.physicssync.SyncCharacterMessage;
 import com.jme3.monkeyzone.messages.ServerEffectMessage;
 import com.jme3.monkeyzone.messages.ServerEnableEntityMessage;
+import com.jme3.monkeyzone.messages.ServerEntityRelevanceMessage;
 import com.jme3.monkeyzone.messages.ServerEnterEntityMessage;
 import com.jme3.monkeyzone.messages.ServerEntityDataMessage;
 import com.jme3.monkeyzone.messages.ServerJoinMessage;
 import com.jme3.network.physicssync.SyncRigidBodyMessage;
+import com.jme3.network.physicssync.SyncSnapshotAckMessage;
+import com.jme3.network.physicssync.SyncSnapshotMessage;
+import com.jme3.network.physicssync.TimeSyncMessage;
 import com.jme3.monkeyzone.messages.ServerPlayerDataMessage;
 import com.jme3.monkeyzone.messages.ServerRemoveEntityMessage;
 import com.jme3.monkeyzone.messages.ServerRemovePlayerMessage;
+import com.jme3.monkeyzone.messages.ServerWorldStateMessage;
 import com.jme3.monkeyzone.messages.StartGameMessage;
-import com.jme3.network.serializing.Serializer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -77,27 +83,53 @@ public class Util {
         }
     }
 
+    /**
+     * creates the NetworkSimulator with the settings in Globals
+     * @return the simulator or null if the network is not simulated
+     */
+    public static NetworkSimulator createNetworkSimulator() {
+        if (!Globals.NETWORK_SIMULATE) {
+            return null;
+        }
+        NetworkSimulator simulator = new NetworkSimulator(Globals.NETWORK_SIMULATE_SEED);
+        simulator.setLatency(Globals.NETWORK_SIMULATE_LATENCY);
+        simulator.setJitter(Globals.NETWORK_SIMULATE_JITTER);
+        simulator.setLoss(Globals.NETWORK_SIMULATE_LOSS);
+        simulator.setReorder(Globals.NETWORK_SIMULATE_REORDER);
+        simulator.setBandwidth(Globals.NETWORK_SIMULATE_BANDWIDTH);
+        return simulator;
+    }
+
+    /**
+     * registers the codecs of all messages, the message types get their ids
+     * in this order so it has to be the same on server and client
+     */
     public static void registerSerializers() {
-        Serializer.registerClass(ActionMessage.class);
-        Serializer.registerClass(AutoControlMessage.class);
-        Serializer.registerClass(ChatMessage.class);
-        Serializer.registerClass(ClientJoinMessage.class);
-        Serializer.registerClass(HandshakeMessage.class);
-        Serializer.registerClass(ManualControlMessage.class);
-        Serializer.registerClass(ServerAddEntityMessage.class);
-        Serializer.registerClass(ServerAddPlayerMessage.class);
-        Serializer.registerClass(SyncCharacterMessage.class);
-        Serializer.registerClass(ServerEffectMessage.class);
-        Serializer.registerClass(ServerEnableEntityMessage.class);
-        Serializer.registerClass(ServerDisableEntityMessage.class);
-        Serializer.registerClass(ServerEnterEntityMessage.class);
-        Serializer.registerClass(ServerEntityDataMessage.class);
-        Serializer.registerClass(ServerJoinMessage.class);
-        Serializer.registerClass(SyncRigidBodyMessage.class);
-        Serializer.registerClass(ServerPlayerDataMessage.class);
-        Serializer.registerClass(ServerRemoveEntityMessage.class);
-        Serializer.registerClass(ServerRemovePlayerMessage.class);
-        Serializer.registerClass(StartGameMessage.class);
+        MessageCodec.register(new ActionMessage.Codec());
+        MessageCodec.register(new AutoControlMessage.Codec());
+        MessageCodec.register(new ChatMessage.Codec());
+        MessageCodec.register(new ClientJoinMessage.Codec());
+        MessageCodec.register(new HandshakeMessage.Codec());
+        MessageCodec.register(new ManualControlMessage.Codec());
+        MessageCodec.register(new ServerAddEntityMessage.Codec());
+        MessageCodec.register(new ServerAddPlayerMessage.Codec());
+        MessageCodec.register(new SyncCharacterMessage.Codec());
+        MessageCodec.register(new ServerEffectMessage.Codec());
+        MessageCodec.register(new ServerEnableEntityMessage.Codec());
+        MessageCodec.register(new ServerDisableEntityMessage.Codec());
+        MessageCodec.register(new ServerEnterEntityMessage.Codec());
+        MessageCodec.register(new ServerEntityDataMessage.Codec());
+        MessageCodec.register(new ServerEntityRelevanceMessage.Codec());
+        MessageCodec.register(new ServerJoinMessage.Codec());
+        MessageCodec.register(new SyncRigidBodyMessage.Codec());
+        MessageCodec.register(new SyncSnapshotMessage.Codec());
+        MessageCodec.register(new SyncSnapshotAckMessage.Codec());
+        MessageCodec.register(new ServerPlayerDataMessage.Codec());
+        MessageCodec.register(new ServerRemoveEntityMessage.Codec());
+        MessageCodec.register(new ServerRemovePlayerMessage.Codec());
+        MessageCodec.register(new StartGameMessage.Codec());
+        MessageCodec.register(new TimeSyncMessage.Codec());
+        MessageCodec.register(new ServerWorldStateMessage.Codec());
     }
 
 }
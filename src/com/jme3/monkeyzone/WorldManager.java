@@ -36,8 +36,12 @@ import com.jme3.app.Application;
 import com.jme3.app.state.AbstractAppState;
 import com.jme3.asset.AssetManager;
 import com.jme3.asset.DesktopAssetManager;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
 import com.jme3.bullet.BulletAppState;
 import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.PhysicsTickListener;
 import com.jme3.bullet.collision.PhysicsCollisionObject;
 import com.jme3.bullet.collision.PhysicsRayTestResult;
 import com.jme3.bullet.control.CharacterControl;
@@ -66,27 +70,50 @@ import com.jme3.monkeyzone.messages.ServerEffectMessage;
 import com.jme3.monkeyzone.messages.ServerEnableEntityMessage;
 import com.jme3.monkeyzone.messages.ServerEnterEntityMessage;
 import com.jme3.monkeyzone.messages.ServerEntityDataMessage;
+import com.jme3.monkeyzone.messages.ServerEntityRelevanceMessage;
 import com.jme3.monkeyzone.messages.ServerRemoveEntityMessage;
 import com.jme3.monkeyzone.messages.ServerRemovePlayerMessage;
+import com.jme3.monkeyzone.messages.ServerWorldStateMessage;
 import com.jme3.network.Client;
+import com.jme3.network.HostedConnection;
 import com.jme3.network.Server;
+import com.jme3.network.physicssync.InterestListener;
+import com.jme3.network.physicssync.InterestManager;
 import com.jme3.network.physicssync.PhysicsSyncManager;
 import com.jme3.network.physicssync.PhysicsSyncMessage;
+import com.jme3.network.physicssync.SpatialGrid;
 import com.jme3.network.physicssync.SyncMessageValidator;
+import com.jme3.network.physicssync.TransformHistory;
 import jme3tools.navmesh.NavMesh;
+import jme3tools.navmesh.PathfindingService;
+import jme3tools.navmesh.util.NavMeshCache;
 import jme3tools.navmesh.util.NavMeshGenerator;
 import com.jme3.scene.Geometry;
 import com.jme3.scene.Mesh;
 import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
 import com.jme3.scene.control.Control;
+import com.jme3.util.BufferUtils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map.Entry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 import jme3tools.optimize.GeometryBatchFactory;
 
 /**
@@ -95,20 +122,52 @@ import jme3tools.optimize.GeometryBatchFactory;
  * running on server, used to apply network data on client and server.
  * @author normenhansen
  */
-public class WorldManager extends AbstractAppState implements SyncMessageValidator {
+public class WorldManager extends AbstractAppState implements SyncMessageValidator, InterestListener, PhysicsTickListener {
 
     private Server server;
     private Client client;
     private long myPlayerId = -2;
     private long myGroupId = -2;
     private NavMesh navMesh = new NavMesh();
+    private PathfindingService pathfindingService;
     private Node rootNode;
     private Node worldRoot;
     private HashMap<Long, Spatial> entities = new HashMap<Long, Spatial>();
+    //reverse lookups for entities, spatials and collision objects have no equals()
+    private IdentityHashMap<Spatial, Long> entityIds = new IdentityHashMap<Spatial, Long>();
+    private IdentityHashMap<PhysicsCollisionObject, Long> collisionObjectIds = new IdentityHashMap<PhysicsCollisionObject, Long>();
+    //locations of all enabled entities, refreshed after each physics tick
+    private SpatialGrid<Long> entityGrid = new SpatialGrid<Long>(Globals.WORLD_GRID_CELL_SIZE);
+    private ArrayList<Long> gridQuery = new ArrayList<Long>();
+    private volatile int physicsTicks = 0;
+    private int gridTick = -1;
+    //entities hidden on the client because they are out of its area of interest
+    private HashSet<Long> culledEntities = new HashSet<Long>();
+    //user data names set on entities, resent when an entity becomes relevant again
+    private HashMap<Long, HashSet<String>> entityDataNames = new HashMap<Long, HashSet<String>>();
+    //model of each entity, sent in the world state for joining clients
+    private HashMap<Long, String> entityModels = new HashMap<Long, String>();
+    //id of the last world state sent (server) or of the one being received (client)
+    private int worldStateId = 0;
+    private byte[][] worldStateChunks;
+    private int worldStateReceived = 0;
+    //world state received while the level was still loading (client)
+    private byte[] pendingWorldState;
+    //recent transforms of the entities on the server, used to resolve shots where the client saw the entities
+    private TransformHistory history;
+    private int historyTick = -1;
+    //hit volumes of the entities as boxes in entity space (center x,y,z, extent x,y,z)
+    private HashMap<Long, float[]> hitVolumes = new HashMap<Long, float[]>();
+    private Vector3f tempLocation = new Vector3f();
+    private Quaternion tempRotation = new Quaternion();
+    private Vector3f tempStart = new Vector3f();
+    private Vector3f tempEnd = new Vector3f();
     private int newId = 0;
     private Application app;
     private AssetManager assetManager;
     private NavMeshGenerator generator = new NavMeshGenerator();
+    private NavMeshCache navMeshCache = Globals.NAVMESH_CACHE_DIR == null ? null : new NavMeshCache(new File(Globals.NAVMESH_CACHE_DIR));
+    private String levelName;
     private PhysicsSpace space;
     private List<Control> userControls = new LinkedList<Control>();
     private PhysicsSyncManager syncManager;
@@ -121,6 +180,7 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
         this.space = app.getStateManager().getState(BulletAppState.class).getPhysicsSpace();
         this.server = app.getStateManager().getState(PhysicsSyncManager.class).getServer();
         syncManager = app.getStateManager().getState(PhysicsSyncManager.class);
+        space.addTickListener(this);
     }
 
     public WorldManager(Application app, Node rootNode, UserCommandControl aiManager) {
@@ -133,6 +193,7 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
         //TODO: criss-crossing of references between ai and world manager not nice..
         aiManager.setWorldManager(this);
         syncManager = app.getStateManager().getState(PhysicsSyncManager.class);
+        space.addTickListener(this);
     }
 
     public boolean isServer() {
@@ -176,6 +237,18 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
         return navMesh;
     }
 
+    /**
+     * get the service that computes paths on the NavMesh on worker threads,
+     * the worker threads are started on first use
+     * @return
+     */
+    public PathfindingService getPathfindingService() {
+        if (pathfindingService == null) {
+            pathfindingService = new PathfindingService(navMesh);
+        }
+        return pathfindingService;
+    }
+
     /**
      * get the world root node (not necessarily the application rootNode!)
      * @return
@@ -197,6 +270,7 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
      * @param name
      */
     public void loadLevel(String name) {
+        levelName = name;
         worldRoot = (Node) assetManager.loadModel(name);
     }
 
@@ -219,7 +293,25 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
             syncManager.removeObject(entry);
         }
         syncManager.clearObjects();
+        if (syncManager.getInterestManager() != null) {
+            syncManager.getInterestManager().clear();
+        }
         entities.clear();
+        entityIds.clear();
+        collisionObjectIds.clear();
+        entityGrid.clear();
+        culledEntities.clear();
+        entityDataNames.clear();
+        entityModels.clear();
+        worldStateChunks = null;
+        pendingWorldState = null;
+        hitVolumes.clear();
+        if (history != null) {
+            history.clear();
+        }
+        if (pathfindingService != null) {
+            pathfindingService.cancelAll();
+        }
         newId = 0;
         space.removeAll(worldRoot);
         rootNode.detachChild(worldRoot);
@@ -238,17 +330,40 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
     }
 
     /**
-     * creates the nav mesh for the loaded level
+     * creates the nav mesh for the loaded level, loads it from the navmesh
+     * cache if the level and generator parameters did not change
      */
     public void createNavMesh() {
+        String cacheKey = null;
+        if (navMeshCache != null) {
+            cacheKey = navMeshCache.createKey(assetManager, levelName, generator);
+        }
+        if (pathfindingService != null) {
+            pathfindingService.cancelAll();
+            pathfindingService.pause();
+        }
+        Mesh optiMesh;
+        try {
+            if (cacheKey != null && navMeshCache.load(cacheKey, navMesh)) {
+                Logger.getLogger(WorldManager.class.getName()).log(Level.INFO, "Loaded NavMesh from cache");
+                optiMesh = createNavMeshGeometry();
+            } else {
+                Mesh mesh = new Mesh();
 
-        Mesh mesh = new Mesh();
-
-        //version a: from mesh
-        GeometryBatchFactory.mergeGeometries(findGeometries(worldRoot, new LinkedList<Geometry>()), mesh);
-        Mesh optiMesh = generator.optimize(mesh);
+                //version a: from mesh
+                GeometryBatchFactory.mergeGeometries(findGeometries(worldRoot, new LinkedList<Geometry>()), mesh);
+                optiMesh = generator.optimize(mesh);
 
-        navMesh.loadFromMesh(optiMesh);
+                navMesh.loadFromMesh(optiMesh);
+                if (cacheKey != null) {
+                    navMeshCache.save(cacheKey, navMesh);
+                }
+            }
+        } finally {
+            if (pathfindingService != null) {
+                pathfindingService.resume();
+            }
+        }
 
         //TODO: navmesh only for debug
         Geometry navGeom = new Geometry("NavMesh");
@@ -261,12 +376,38 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
         worldRoot.attachChild(navGeom);
     }
 
+    /**
+     * creates a mesh from the cells of the navmesh (for debug display)
+     */
+    private Mesh createNavMeshGeometry() {
+        FloatBuffer positions = BufferUtils.createFloatBuffer(navMesh.getNumCells() * 9);
+        for (int i = 0; i < navMesh.getNumCells(); i++) {
+            for (int j = 0; j < 3; j++) {
+                Vector3f vertex = navMesh.getCell(i).getVertex(j);
+                positions.put(vertex.x).put(vertex.y).put(vertex.z);
+            }
+        }
+        Mesh mesh = new Mesh();
+        mesh.setBuffer(VertexBuffer.Type.Position, 3, positions);
+        mesh.updateBound();
+        return mesh;
+    }
+
     /**
      * attaches the level node to the rootnode
      */
     public void attachLevel() {
         space.addAll(worldRoot);
         rootNode.attachChild(worldRoot);
+        if (pendingWorldState != null) {
+            byte[] data = pendingWorldState;
+            pendingWorldState = null;
+            try {
+                readWorldState(data, false, true);
+            } catch (IOException ex) {
+                Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Cannot read world state: {0}", ex);
+            }
+        }
     }
 
     private List<Geometry> findGeometries(Node node, List<Geometry> geoms) {
@@ -345,14 +486,11 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
      * @return
      */
     public Spatial getEntity(PhysicsCollisionObject object) {
-        Object obj = object.getUserObject();
-        if (obj instanceof Spatial) {
-            Spatial spatial = (Spatial) obj;
-            if (entities.containsValue(spatial)) {
-                return spatial;
-            }
+        long id = getEntityId(object);
+        if (id == -1) {
+            return null;
         }
-        return null;
+        return entities.get(id);
     }
 
     /**
@@ -361,13 +499,11 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
      * @return
      */
     public long getEntityId(Spatial entity) {
-        for (Iterator<Entry<Long, Spatial>> it = entities.entrySet().iterator(); it.hasNext();) {
-            Entry<Long, Spatial> entry = it.next();
-            if (entry.getValue() == entity) {
-                return entry.getKey();
-            }
+        Long id = entityIds.get(entity);
+        if (id == null) {
+            return -1;
         }
-        return -1;
+        return id;
     }
 
     /**
@@ -376,12 +512,14 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
      * @return
      */
     public long getEntityId(PhysicsCollisionObject object) {
+        Long id = collisionObjectIds.get(object);
+        if (id != null) {
+            return id;
+        }
+        //collision objects added after the entity (e.g. trigger ghosts)
         Object obj = object.getUserObject();
         if (obj instanceof Spatial) {
-            Spatial spatial = (Spatial) obj;
-            if (spatial != null) {
-                return getEntityId(spatial);
-            }
+            return getEntityId((Spatial) obj);
         }
         return -1;
     }
@@ -429,11 +567,161 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
         entityModel.setUserData("group_id", -1);
         entityModel.setUserData("entity_id", id);
         entities.put(id, entityModel);
+        entityModels.put(id, modelIdentifier);
+        registerEntity(id, entityModel, location);
         syncManager.addObject(id, entityModel);
         space.addAll(entityModel);
         worldRoot.attachChild(entityModel);
     }
 
+    /**
+     * adds the entity and its collision objects to the lookup maps and the
+     * spatial index
+     */
+    private void registerEntity(long id, Spatial spat, Vector3f location) {
+        entityIds.put(spat, id);
+        for (int i = 0; i < spat.getNumControls(); i++) {
+            Control control = spat.getControl(i);
+            if (control instanceof PhysicsCollisionObject) {
+                collisionObjectIds.put((PhysicsCollisionObject) control, id);
+            }
+        }
+        entityGrid.update(id, location);
+        hitVolumes.put(id, getHitVolume(spat));
+    }
+
+    /**
+     * gets the bounds of the entity as a box in entity space, extents are
+     * taken from the world bound of the entity when it is added
+     * @return center x,y,z and extent x,y,z or null
+     */
+    private float[] getHitVolume(Spatial spat) {
+        BoundingVolume bound = spat.getWorldBound();
+        if (bound == null) {
+            return null;
+        }
+        Vector3f center = bound.getCenter().subtract(spat.getWorldTranslation());
+        spat.getWorldRotation().inverse().multLocal(center);
+        float[] volume = new float[]{center.x, center.y, center.z, 0, 0, 0};
+        if (bound instanceof BoundingBox) {
+            BoundingBox box = (BoundingBox) bound;
+            volume[3] = box.getXExtent();
+            volume[4] = box.getYExtent();
+            volume[5] = box.getZExtent();
+        } else if (bound instanceof BoundingSphere) {
+            float radius = ((BoundingSphere) bound).getRadius();
+            volume[3] = radius;
+            volume[4] = radius;
+            volume[5] = radius;
+        }
+        return volume;
+    }
+
+    /**
+     * removes the entity from the lookup maps and the spatial index
+     */
+    private void unregisterEntity(long id, Spatial spat) {
+        entityIds.remove(spat);
+        for (int i = 0; i < spat.getNumControls(); i++) {
+            Control control = spat.getControl(i);
+            if (control instanceof PhysicsCollisionObject) {
+                collisionObjectIds.remove((PhysicsCollisionObject) control);
+            }
+        }
+        entityGrid.remove(id);
+        hitVolumes.remove(id);
+    }
+
+    /**
+     * finds all enabled entities within radius of the location (measured in XZ)
+     * @param location
+     * @param radius
+     * @param store list the entities are added to
+     * @return store
+     */
+    public List<Spatial> getEntitiesInRadius(Vector3f location, float radius, List<Spatial> store) {
+        updateEntityGrid();
+        gridQuery.clear();
+        entityGrid.queryRadius(location, radius, gridQuery);
+        for (int i = 0; i < gridQuery.size(); i++) {
+            store.add(entities.get(gridQuery.get(i)));
+        }
+        return store;
+    }
+
+    /**
+     * finds all enabled entities inside the given box
+     * @param min
+     * @param max
+     * @param store list the entities are added to
+     * @return store
+     */
+    public List<Spatial> getEntitiesInBox(Vector3f min, Vector3f max, List<Spatial> store) {
+        updateEntityGrid();
+        gridQuery.clear();
+        entityGrid.queryBox(min, max, gridQuery);
+        for (int i = 0; i < gridQuery.size(); i++) {
+            store.add(entities.get(gridQuery.get(i)));
+        }
+        return store;
+    }
+
+    /**
+     * moves the entities in the spatial index if physics has been stepped
+     * since the last update, disabled entities are not in the index
+     */
+    private void updateEntityGrid() {
+        int tick = physicsTicks;
+        if (tick == gridTick) {
+            return;
+        }
+        gridTick = tick;
+        for (Iterator<Long> it = entities.keySet().iterator(); it.hasNext();) {
+            Long id = it.next();
+            Spatial spat = entities.get(id);
+            if (spat.getParent() == null) {
+                entityGrid.remove(id);
+            } else {
+                entityGrid.update(id, spat.getWorldTranslation());
+            }
+        }
+    }
+
+    /**
+     * records the transforms of the enabled entities with the time of the
+     * sync manager if physics has been stepped since the last update
+     */
+    private void updateHistory() {
+        int tick = physicsTicks;
+        if (tick == historyTick) {
+            return;
+        }
+        historyTick = tick;
+        if (history == null) {
+            int frames = (int) FastMath.ceil(Globals.NETWORK_MAX_LAG_COMPENSATION / Globals.PHYSICS_FPS) + 2;
+            history = new TransformHistory(frames, Math.max(entities.size(), 16));
+        }
+        history.startFrame(syncManager.getTime());
+        for (Iterator<Long> it = entities.keySet().iterator(); it.hasNext();) {
+            Long id = it.next();
+            Spatial spat = entities.get(id);
+            if (spat.getParent() != null) {
+                history.add(id, spat.getWorldTranslation(), spat.getWorldRotation());
+            }
+        }
+    }
+
+    public void prePhysicsTick(PhysicsSpace space, float f) {
+    }
+
+    /**
+     * only counts the ticks, physics may run on its own thread so the index
+     * is updated on the next frame
+     */
+    public void physicsTick(PhysicsSpace space, float f) {
+        physicsTicks++;
+    }
+
     /**
      * removes the entity with the specified id, exits player if inside
      * (sends message if server)
@@ -446,11 +734,15 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
             syncManager.broadcast(new ServerRemoveEntityMessage(id));
         }
         syncManager.removeObject(id);
+        culledEntities.remove(id);
+        entityDataNames.remove(id);
+        entityModels.remove(id);
         Spatial spat = entities.remove(id);
         if (spat == null) {
             Logger.getLogger(this.getClass().getName()).log(Level.WARNING, "try removing entity thats not there: {0}", id);
             return;
         }
+        unregisterEntity(id, spat);
         Long playerId = (Long) spat.getUserData("player_id");
         removeTransientControls(spat);
         removeAIControls(spat);
@@ -478,6 +770,7 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
             Logger.getLogger(this.getClass().getName()).log(Level.INFO, "Broadcast removing entity: {0}", id);
             syncManager.broadcast(new ServerDisableEntityMessage(id));
         }
+        culledEntities.remove(id);
         Spatial spat = getEntity(id);
         spat.removeFromParent();
         space.removeAll(spat);
@@ -495,12 +788,281 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
             Logger.getLogger(this.getClass().getName()).log(Level.INFO, "Broadcast removing entity: {0}", id);
             syncManager.broadcast(new ServerEnableEntityMessage(id, location, rotation));
         }
+        culledEntities.remove(id);
         Spatial spat = getEntity(id);
         setEntityTranslation(spat, location, rotation);
         worldRoot.attachChild(spat);
         space.addAll(spat);
     }
 
+    /**
+     * called on the server when an entity enters or leaves the area of interest
+     * of a client, sends the change and the current entity state to the client
+     * @param client
+     * @param syncId
+     * @param relevant
+     */
+    public void relevanceChanged(HostedConnection client, long syncId, boolean relevant) {
+        Spatial spat = entities.get(syncId);
+        if (spat == null) {
+            return;
+        }
+        syncManager.send(client, new ServerEntityRelevanceMessage(syncId, relevant, spat.getWorldTranslation().clone(), spat.getWorldRotation().clone()));
+        if (relevant) {
+            //user data changes are not sent while the entity is culled
+            HashSet<String> names = entityDataNames.get(syncId);
+            if (names != null) {
+                for (Iterator<String> it = names.iterator(); it.hasNext();) {
+                    String name = it.next();
+                    ServerEntityDataMessage msg = syncManager.getMessagePool().obtain(ServerEntityDataMessage.class);
+                    msg.set(syncId, name, spat.getUserData(name));
+                    syncManager.send(client, msg);
+                    syncManager.getMessagePool().release(msg);
+                }
+            }
+        }
+    }
+
+    /**
+     * hides an entity that left the area of interest of this client or shows
+     * it again at the given location when it comes back
+     * @param id
+     * @param relevant
+     * @param location
+     * @param rotation
+     */
+    public void setEntityRelevant(long id, boolean relevant, Vector3f location, Quaternion rotation) {
+        Spatial spat = entities.get(id);
+        if (spat == null) {
+            Logger.getLogger(this.getClass().getName()).log(Level.WARNING, "Cannot find entity {0} to change relevance", id);
+            return;
+        }
+        if (!relevant) {
+            //only hide entities that are shown, disabled entities stay disabled
+            if (spat.getParent() != null && culledEntities.add(id)) {
+                spat.removeFromParent();
+                space.removeAll(spat);
+            }
+        } else if (culledEntities.remove(id)) {
+            setEntityTranslation(spat, location, rotation);
+            worldRoot.attachChild(spat);
+            space.addAll(spat);
+        }
+    }
+
+    /**
+     * sends the state of the world to a client that joins: all players, the
+     * entities with model, transform and user data and the entities the
+     * players are in. The state is written in one go on the update thread so
+     * it is from one tick, it is compressed and sent in chunks.
+     * @param clientId
+     */
+    public void sendWorldState(int clientId) {
+        byte[] data;
+        try {
+            data = writeWorldState();
+        } catch (IOException ex) {
+            Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Cannot write world state: {0}", ex);
+            return;
+        }
+        int chunkSize = Globals.NETWORK_WORLD_STATE_CHUNK;
+        int chunks = Math.max(1, (data.length + chunkSize - 1) / chunkSize);
+        worldStateId++;
+        for (int i = 0; i < chunks; i++) {
+            int start = i * chunkSize;
+            byte[] chunk = new byte[Math.min(chunkSize, data.length - start)];
+            System.arraycopy(data, start, chunk, 0, chunk.length);
+            syncManager.send(clientId, new ServerWorldStateMessage(worldStateId, i, chunks, chunk));
+        }
+        Logger.getLogger(this.getClass().getName()).log(Level.INFO, "Sent world state to client {0} ({1} bytes in {2} chunks)", new Object[]{clientId, data.length, chunks});
+    }
+
+    /**
+     * collects the chunks of a world state on the client and applies the
+     * state when it is complete, the entities are applied when the level is
+     * attached if it is still loading
+     * @param message
+     */
+    public void addWorldStateChunk(ServerWorldStateMessage message) {
+        if (worldStateChunks == null || worldStateId != message.stateId || worldStateChunks.length != message.chunks) {
+            worldStateId = message.stateId;
+            worldStateChunks = new byte[message.chunks][];
+            worldStateReceived = 0;
+        }
+        if (worldStateChunks[message.chunk] == null) {
+            worldStateChunks[message.chunk] = message.data;
+            worldStateReceived++;
+        }
+        if (worldStateReceived < worldStateChunks.length) {
+            return;
+        }
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (int i = 0; i < worldStateChunks.length; i++) {
+            data.write(worldStateChunks[i], 0, worldStateChunks[i].length);
+        }
+        worldStateChunks = null;
+        boolean levelAttached = worldRoot != null && worldRoot.getParent() != null;
+        if (!levelAttached) {
+            pendingWorldState = data.toByteArray();
+        }
+        try {
+            readWorldState(data.toByteArray(), true, levelAttached);
+        } catch (IOException ex) {
+            Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Cannot read world state: {0}", ex);
+        }
+    }
+
+    private byte[] writeWorldState() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater));
+        List<PlayerData> players = PlayerData.getPlayers();
+        out.writeInt(players.size());
+        for (Iterator<PlayerData> it = players.iterator(); it.hasNext();) {
+            PlayerData player = it.next();
+            out.writeLong(player.getId());
+            out.writeUTF(player.getStringData("name"));
+            out.writeInt(player.getIntData("group_id"));
+            out.writeInt(player.getAiControl());
+        }
+        out.writeInt(entities.size());
+        for (Iterator<Long> it = entities.keySet().iterator(); it.hasNext();) {
+            long id = it.next();
+            Spatial spat = entities.get(id);
+            out.writeLong(id);
+            out.writeUTF(entityModels.get(id));
+            //disabled entities are not attached
+            out.writeBoolean(spat.getParent() != null);
+            Vector3f location = spat.getWorldTranslation();
+            out.writeFloat(location.x);
+            out.writeFloat(location.y);
+            out.writeFloat(location.z);
+            Quaternion rotation = spat.getWorldRotation();
+            out.writeFloat(rotation.getX());
+            out.writeFloat(rotation.getY());
+            out.writeFloat(rotation.getZ());
+            out.writeFloat(rotation.getW());
+            HashSet<String> names = entityDataNames.get(id);
+            out.writeInt(names != null ? names.size() : 0);
+            if (names != null) {
+                for (Iterator<String> it2 = names.iterator(); it2.hasNext();) {
+                    String name = it2.next();
+                    out.writeUTF(name);
+                    writeUserData(out, spat.getUserData(name));
+                }
+            }
+        }
+        for (Iterator<PlayerData> it = players.iterator(); it.hasNext();) {
+            PlayerData player = it.next();
+            long entityId = player.getLongData("entity_id");
+            if (entityId != -1) {
+                out.writeLong(player.getId());
+                out.writeLong(entityId);
+            }
+        }
+        out.writeLong(-1);
+        out.close();
+        deflater.end();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * applies the players and/or the entities of a world state, players and
+     * entities that already exist (e.g. the ones created for the joining
+     * player, which are also broadcast) are skipped
+     */
+    private void readWorldState(byte[] data, boolean applyPlayers, boolean applyEntities) throws IOException {
+        DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)));
+        int players = in.readInt();
+        for (int i = 0; i < players; i++) {
+            long id = in.readLong();
+            String name = in.readUTF();
+            int groupId = in.readInt();
+            int aiId = in.readInt();
+            if (applyPlayers && !PlayerData.exists(id)) {
+                addPlayer(id, groupId, name, aiId);
+            }
+        }
+        if (!applyEntities) {
+            return;
+        }
+        int entityCount = in.readInt();
+        for (int i = 0; i < entityCount; i++) {
+            long id = in.readLong();
+            String modelIdentifier = in.readUTF();
+            boolean enabled = in.readBoolean();
+            Vector3f location = new Vector3f(in.readFloat(), in.readFloat(), in.readFloat());
+            Quaternion rotation = new Quaternion(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat());
+            boolean exists = entities.containsKey(id);
+            if (!exists) {
+                addEntity(id, modelIdentifier, location, rotation);
+                if (!enabled) {
+                    disableEntity(id);
+                }
+            }
+            int dataCount = in.readInt();
+            for (int j = 0; j < dataCount; j++) {
+                String name = in.readUTF();
+                Object value = readUserData(in);
+                if (!exists) {
+                    setEntityUserData(id, name, value);
+                }
+            }
+        }
+        long playerId = in.readLong();
+        while (playerId != -1) {
+            long entityId = in.readLong();
+            if (entities.containsKey(entityId) && PlayerData.getLongData(playerId, "entity_id") != entityId) {
+                enterEntity(playerId, entityId);
+            }
+            playerId = in.readLong();
+        }
+        Logger.getLogger(this.getClass().getName()).log(Level.INFO, "Applied world state with {0} players and {1} entities", new Object[]{players, entityCount});
+    }
+
+    /**
+     * writes a user data value, the types are the ones ServerEntityDataMessage
+     * supports
+     */
+    private static void writeUserData(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof Integer) {
+            out.writeByte(0);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Float) {
+            out.writeByte(1);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(2);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof String) {
+            out.writeByte(3);
+            out.writeUTF((String) value);
+        } else if (value instanceof Long) {
+            out.writeByte(4);
+            out.writeLong((Long) value);
+        } else {
+            throw new IOException("Unsupported user data type: " + value);
+        }
+    }
+
+    private static Object readUserData(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case 0:
+                return in.readInt();
+            case 1:
+                return in.readFloat();
+            case 2:
+                return in.readBoolean();
+            case 3:
+                return in.readUTF();
+            case 4:
+                return in.readLong();
+            default:
+                throw new IOException("Unsupported user data type: " + type);
+        }
+    }
+
     /**
      * sets the translation of an entity based on its type
      * @param entityModel
@@ -532,9 +1094,23 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
         Logger.getLogger(this.getClass().getName()).log(Level.INFO, "Player {0} entering entity {1}", new Object[]{playerId, entityId});
         if (isServer()) {
             syncManager.broadcast(new ServerEnterEntityMessage(playerId, entityId));
+            //the controls of the new player number their input from 0
+            if (entityId != -1) {
+                syncManager.resetReceivedSequences(entityId);
+            }
         }
         long curEntity = PlayerData.getLongData(playerId, "entity_id");
         int groupId = PlayerData.getIntData(playerId, "group_id");
+        //TODO: groupid as client id, the group sees through the entities of its players
+        InterestManager interestManager = syncManager.getInterestManager();
+        if (isServer() && interestManager != null && groupId >= 0) {
+            if (curEntity != -1) {
+                interestManager.removeObserver(groupId, curEntity);
+            }
+            if (entityId != -1) {
+                interestManager.addObserver(groupId, entityId);
+            }
+        }
         //reset current entity
         if (curEntity != -1) {
             Logger.getLogger(this.getClass().getName()).log(Level.INFO, "Player {0} exiting current entity {1}", new Object[]{playerId, curEntity});
@@ -595,7 +1171,7 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
                 //add net sending for users own manual control
                 //TODO: using group id as client id
                 if ((Integer) spat.getUserData("group_id") == myGroupId) {
-                    spat.addControl(new ManualCharacterControl(client, entityId));
+                    spat.addControl(new ManualCharacterControl(syncManager, entityId));
                 } else {
                     spat.addControl(new ManualCharacterControl());
                 }
@@ -607,7 +1183,7 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
             if (client != null) {
                 //TODO: using group id as client id
                 if ((Integer) spat.getUserData("group_id") == myGroupId) {
-                    spat.addControl(new ManualVehicleControl(client, entityId));
+                    spat.addControl(new ManualVehicleControl(syncManager, entityId));
                 } else {
                     spat.addControl(new ManualVehicleControl());
                 }
@@ -626,14 +1202,14 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
         if (spat.getControl(CharacterControl.class) != null) {
             Logger.getLogger(this.getClass().getName()).log(Level.INFO, "Make autonomous character control for entity {0} ", entityId);
             if (client != null) {
-                spat.addControl(new AutonomousCharacterControl(client, entityId));
+                spat.addControl(new AutonomousCharacterControl(syncManager, entityId));
             } else {
                 spat.addControl(new AutonomousCharacterControl());
             }
         } else if (spat.getControl(VehicleControl.class) != null) {
             Logger.getLogger(this.getClass().getName()).log(Level.INFO, "Make autonomous vehicle control for entity {0} ", entityId);
             if (client != null) {
-                spat.addControl(new AutonomousVehicleControl(client, entityId));
+                spat.addControl(new AutonomousVehicleControl(syncManager, entityId));
             } else {
                 spat.addControl(new AutonomousVehicleControl());
             }
@@ -711,7 +1287,16 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
      */
     public void setEntityUserData(long id, String name, Object data) {
         if (isServer()) {
-            syncManager.broadcast(new ServerEntityDataMessage(id, name, data));
+            ServerEntityDataMessage msg = syncManager.getMessagePool().obtain(ServerEntityDataMessage.class);
+            msg.set(id, name, data);
+            syncManager.broadcast(msg);
+            syncManager.getMessagePool().release(msg);
+            HashSet<String> names = entityDataNames.get(id);
+            if (names == null) {
+                names = new HashSet<String>();
+                entityDataNames.put(id, names);
+            }
+            names.add(name);
         }
         getEntity(id).setUserData(name, data);
     }
@@ -739,7 +1324,10 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
     }
 
     public void playWorldEffect(long id, String effectName, Vector3f location, Quaternion rotation, Vector3f endLocation, Quaternion endRotation, float time) {
-        syncManager.broadcast(new ServerEffectMessage(id, effectName, location, rotation, endLocation, endRotation, time));
+        ServerEffectMessage msg = syncManager.getMessagePool().obtain(ServerEffectMessage.class);
+        msg.set(id, effectName, location, rotation, endLocation, endRotation, time);
+        syncManager.broadcast(msg, location);
+        syncManager.getMessagePool().release(msg);
     }
 
     /**
@@ -775,6 +1363,95 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
         return found;
     }
 
+    /**
+     * does a ray test like doRayTest(entity, length, storeLocation) but tests
+     * the other entities at the location they had at the given sync manager
+     * time (at most NETWORK_MAX_LAG_COMPENSATION back), used on the server to
+     * resolve shots against what the client saw. Level geometry and other
+     * objects that are no entities are tested in their current state.
+     * @param entity
+     * @param length
+     * @param storeLocation
+     * @param time server time to test the entities at, -1 for the current time
+     * @return
+     */
+    public Spatial doRayTest(Spatial entity, float length, Vector3f storeLocation, double time) {
+        if (history == null || history.getFrameCount() == 0 || time < 0 || time >= history.getNewestTime()) {
+            return doRayTest(entity, length, storeLocation);
+        }
+        time = Math.max(time, syncManager.getTime() - Globals.NETWORK_MAX_LAG_COMPENSATION);
+        MovementControl control = entity.getControl(MovementControl.class);
+        Vector3f startLocation = control.getLocation();
+        Vector3f endLocation = startLocation.add(control.getAimDirection().normalize().multLocal(length));
+        List<PhysicsRayTestResult> results = getPhysicsSpace().rayTest(startLocation, endLocation);
+        float dist = Float.MAX_VALUE;
+        for (Iterator<PhysicsRayTestResult> it = results.iterator(); it.hasNext();) {
+            PhysicsRayTestResult physicsRayTestResult = it.next();
+            //entities are tested at their old location below
+            if (getEntity(physicsRayTestResult.getCollisionObject()) == null && physicsRayTestResult.getHitFraction() < dist) {
+                dist = physicsRayTestResult.getHitFraction();
+            }
+        }
+        Spatial found = null;
+        for (Iterator<Long> it = entities.keySet().iterator(); it.hasNext();) {
+            Long id = it.next();
+            Spatial spat = entities.get(id);
+            if (spat == entity || spat.getParent() == null) {
+                continue;
+            }
+            float[] volume = hitVolumes.get(id);
+            if (volume == null || !history.getTransform(id, time, tempLocation, tempRotation)) {
+                continue;
+            }
+            float fraction = intersectHitVolume(volume, tempLocation, tempRotation, startLocation, endLocation);
+            if (fraction >= 0 && fraction < dist) {
+                dist = fraction;
+                found = spat;
+            }
+        }
+        if (storeLocation != null && dist != Float.MAX_VALUE) {
+            FastMath.interpolateLinear(dist, startLocation, endLocation, storeLocation);
+        }
+        return found;
+    }
+
+    /**
+     * intersects the line from start to end with a hit volume at the given
+     * transform, rotation is inverted
+     * @return the fraction of the line where it enters the volume or -1
+     */
+    private float intersectHitVolume(float[] volume, Vector3f location, Quaternion rotation, Vector3f start, Vector3f end) {
+        rotation.inverseLocal();
+        rotation.mult(tempStart.set(start).subtractLocal(location), tempStart);
+        rotation.mult(tempEnd.set(end).subtractLocal(location), tempEnd);
+        float enter = 0;
+        float exit = 1;
+        for (int i = 0; i < 3; i++) {
+            float origin = tempStart.get(i) - volume[i];
+            float direction = tempEnd.get(i) - tempStart.get(i);
+            float extent = volume[i + 3];
+            if (direction == 0) {
+                if (origin < -extent || origin > extent) {
+                    return -1;
+                }
+                continue;
+            }
+            float near = (-extent - origin) / direction;
+            float far = (extent - origin) / direction;
+            if (near > far) {
+                float swap = near;
+                near = far;
+                far = swap;
+            }
+            enter = Math.max(enter, near);
+            exit = Math.min(exit, far);
+            if (enter > exit) {
+                return -1;
+            }
+        }
+        return enter;
+    }
+
     /**
      * does a ray test, stores collision location in supplied storeLocation vector, if collision
      * object is an entity, returns entity
@@ -815,5 +1492,18 @@ public class WorldManager extends AbstractAppState implements SyncMessageValidat
 
     @Override
     public void update(float tpf) {
+        updateEntityGrid();
+        if (isServer()) {
+            updateHistory();
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        super.cleanup();
+        if (pathfindingService != null) {
+            pathfindingService.shutdown();
+            pathfindingService = null;
+        }
     }
 }
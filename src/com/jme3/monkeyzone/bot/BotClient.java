@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.monkeyzone.bot;
+
+import com.jme3.math.Vector3f;
+import com.jme3.monkeyzone.Globals;
+import com.jme3.monkeyzone.messages.ActionMessage;
+import com.jme3.monkeyzone.messages.AutoControlMessage;
+import com.jme3.monkeyzone.messages.ClientJoinMessage;
+import com.jme3.monkeyzone.messages.HandshakeMessage;
+import com.jme3.monkeyzone.messages.ManualControlMessage;
+import com.jme3.monkeyzone.messages.ServerAddPlayerMessage;
+import com.jme3.monkeyzone.messages.ServerEnterEntityMessage;
+import com.jme3.monkeyzone.messages.ServerJoinMessage;
+import com.jme3.monkeyzone.messages.StartGameMessage;
+import com.jme3.network.Client;
+import com.jme3.network.ClientStateListener;
+import com.jme3.network.Message;
+import com.jme3.network.MessageListener;
+import com.jme3.network.Network;
+import com.jme3.network.NetworkClient;
+import com.jme3.network.physicssync.ClockSync;
+import com.jme3.network.physicssync.SyncSnapshotAckMessage;
+import com.jme3.network.physicssync.SyncSnapshotMessage;
+import com.jme3.network.physicssync.TimeSyncMessage;
+import com.jme3.network.serializing.Serializer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Headless client that speaks the game protocol without loading the
+ * level or rendering. It logs in with the handshake and join messages, pings
+ * the server and acknowledges snapshots like the real client, and plays a
+ * simple script: it walks its character around with ManualControlMessages,
+ * jumps and shoots with ActionMessages and sends the ai character of its
+ * group to random places with AutoControlMessages.</p>
+ * <p>Messages are handled on the network threads of the client, the script
+ * runs when tick() is called, the LoadGenerator calls it for many bots from
+ * a few shared threads.</p>
+ * @author normenhansen
+ */
+public class BotClient implements MessageListener, ClientStateListener {
+
+    //how far from the origin the ai character is sent
+    private static final float MOVE_RADIUS = 30;
+    private String name;
+    private Random random;
+    private NetworkClient client;
+    private volatile boolean connected = false;
+    private volatile boolean joined = false;
+    private volatile long playerId = -1;
+    private volatile int groupId = -1;
+    private volatile long entityId = -1;
+    private volatile long aiEntityId = -1;
+    private HashSet<Long> aiPlayers = new HashSet<Long>();
+    //script state, only used in tick()
+    private double nextPing = 0;
+    private double nextInput = 0;
+    private double nextAction = 0;
+    private double nextAutoMove = 0;
+    private int inputSequence;
+    private int pingSequence = 0;
+    private Vector3f aimAt = new Vector3f();
+    private Vector3f moveTo = new Vector3f();
+    //statistics
+    private ByteBuffer measureBuffer = ByteBuffer.allocate(32767);
+    private long receivedMessages = 0;
+    private long receivedBytes = 0;
+    private long sentMessages = 0;
+    private long sentBytes = 0;
+    private volatile double lastRoundTrip = -1;
+    private int roundTrips = 0;
+    private double roundTripTotal = 0;
+    private double roundTripMax = 0;
+
+    /**
+     * @param name the player name of the bot
+     * @param seed seed of the random values of the script
+     */
+    public BotClient(String name, long seed) {
+        this.name = name;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * connects to the server, the bot logs in when the connection is
+     * established
+     */
+    public void connect(String host, int tcpPort, int udpPort) throws IOException {
+        client = Network.createClient();
+        client.addClientStateListener(this);
+        client.addMessageListener(this);
+        client.connectToServer(host, tcpPort, udpPort);
+        client.start();
+    }
+
+    public void close() {
+        connected = false;
+        if (client != null) {
+            try {
+                client.close();
+            } catch (Exception ex) {
+                Logger.getLogger(BotClient.class.getName()).log(Level.WARNING, "Error closing bot {0}: {1}", new Object[]{name, ex});
+            }
+        }
+    }
+
+    public void clientConnected(Client client) {
+        connected = true;
+        send(new HandshakeMessage(Globals.PROTOCOL_VERSION, Globals.CLIENT_VERSION, -1));
+    }
+
+    public void clientDisconnected(Client client, DisconnectInfo info) {
+        connected = false;
+        joined = false;
+        Logger.getLogger(BotClient.class.getName()).log(Level.INFO, "Bot {0} disconnected", name);
+    }
+
+    public void messageReceived(Object source, Message message) {
+        synchronized (this) {
+            receivedMessages++;
+            receivedBytes += measure(message);
+        }
+        if (message instanceof HandshakeMessage) {
+            HandshakeMessage msg = (HandshakeMessage) message;
+            if (msg.protocol_version != Globals.PROTOCOL_VERSION) {
+                Logger.getLogger(BotClient.class.getName()).log(Level.WARNING, "Protocol mismatch for bot {0}", name);
+                close();
+                return;
+            }
+            send(new ClientJoinMessage(name, ""));
+        } else if (message instanceof ServerJoinMessage) {
+            ServerJoinMessage msg = (ServerJoinMessage) message;
+            if (msg.rejected) {
+                Logger.getLogger(BotClient.class.getName()).log(Level.WARNING, "Server rejected bot {0}", name);
+                return;
+            }
+            playerId = msg.id;
+            groupId = msg.group_id;
+            joined = true;
+        } else if (message instanceof ServerAddPlayerMessage) {
+            ServerAddPlayerMessage msg = (ServerAddPlayerMessage) message;
+            if (msg.group_id == groupId && msg.ai_id != -1) {
+                synchronized (aiPlayers) {
+                    aiPlayers.add(msg.playerId);
+                }
+            }
+        } else if (message instanceof ServerEnterEntityMessage) {
+            ServerEnterEntityMessage msg = (ServerEnterEntityMessage) message;
+            if (msg.player_id == playerId) {
+                entityId = msg.entity_id;
+            } else {
+                synchronized (aiPlayers) {
+                    if (aiPlayers.contains(msg.player_id)) {
+                        aiEntityId = msg.entity_id;
+                    }
+                }
+            }
+        } else if (message instanceof StartGameMessage) {
+            if ("null".equals(((StartGameMessage) message).levelName)) {
+                entityId = -1;
+                aiEntityId = -1;
+            }
+        } else if (message instanceof TimeSyncMessage) {
+            TimeSyncMessage msg = (TimeSyncMessage) message;
+            addRoundTrip(ClockSync.getClockTime() - msg.clientTime);
+        } else if (message instanceof SyncSnapshotMessage) {
+            send(new SyncSnapshotAckMessage(((SyncSnapshotMessage) message).tick));
+        }
+    }
+
+    /**
+     * runs the script of the bot, call regularly from one thread
+     * @param time the current clock time, see ClockSync.getClockTime()
+     */
+    public void tick(double time) {
+        if (!connected) {
+            return;
+        }
+        if (time >= nextPing) {
+            nextPing = time + Globals.NETWORK_PING_INTERVAL;
+            TimeSyncMessage ping = new TimeSyncMessage(time);
+            ping.sequence = pingSequence++;
+            ping.roundTrip = lastRoundTrip;
+            send(ping);
+        }
+        long entity = entityId;
+        if (entity != -1 && time >= nextInput) {
+            nextInput = time + 0.5 + random.nextDouble() * 1.5;
+            float moveX = random.nextInt(3) - 1;
+            float moveZ = random.nextInt(3) - 1;
+            float aimX = random.nextFloat() * 2 - 1;
+            ManualControlMessage msg = new ManualControlMessage(entity, aimX, 0, moveX, 0, moveZ, ++inputSequence);
+            msg.setReliable(!Globals.NETWORK_SYNC_UNRELIABLE);
+            send(msg);
+        }
+        if (entity != -1 && time >= nextAction) {
+            nextAction = time + 2 + random.nextDouble() * 3;
+            int action = random.nextBoolean() ? ActionMessage.JUMP_ACTION : ActionMessage.SHOOT_ACTION;
+            send(new ActionMessage(entity, action, true));
+            send(new ActionMessage(entity, action, false));
+        }
+        long aiEntity = aiEntityId;
+        if (aiEntity != -1 && time >= nextAutoMove) {
+            nextAutoMove = time + 5 + random.nextDouble() * 5;
+            moveTo.set(random.nextFloat() * 2 - 1, 0, random.nextFloat() * 2 - 1).multLocal(MOVE_RADIUS);
+            aimAt.set(moveTo).addLocal(0, 1, 0);
+            send(new AutoControlMessage(aiEntity, aimAt, moveTo));
+        }
+    }
+
+    /**
+     * asks the server to start a game on the given level
+     * @param levelName
+     */
+    public void startGame(String levelName) {
+        send(new StartGameMessage(levelName));
+    }
+
+    private void send(Message message) {
+        synchronized (this) {
+            sentMessages++;
+            sentBytes += measure(message);
+        }
+        client.send(message);
+    }
+
+    private synchronized void addRoundTrip(double roundTrip) {
+        lastRoundTrip = roundTrip;
+        roundTrips++;
+        roundTripTotal += roundTrip;
+        roundTripMax = Math.max(roundTripMax, roundTrip);
+    }
+
+    /**
+     * serializes the message to get its size, called with the lock held
+     */
+    private int measure(Message message) {
+        measureBuffer.clear();
+        try {
+            Serializer.writeClassAndObject(measureBuffer, message);
+        } catch (IOException ex) {
+            Logger.getLogger(BotClient.class.getName()).log(Level.SEVERE, "Cannot measure message size: {0}", ex);
+        }
+        return measureBuffer.position();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public boolean isJoined() {
+        return joined;
+    }
+
+    /**
+     * @return true if the bot has a character to control
+     */
+    public boolean isPlaying() {
+        return entityId != -1;
+    }
+
+    public long getPlayerId() {
+        return playerId;
+    }
+
+    public synchronized long getReceivedMessages() {
+        return receivedMessages;
+    }
+
+    /**
+     * @return the serialized size of the received messages since the
+     * statistics were reset
+     */
+    public synchronized long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    public synchronized long getSentMessages() {
+        return sentMessages;
+    }
+
+    /**
+     * @return the serialized size of the sent messages since the statistics
+     * were reset
+     */
+    public synchronized long getSentBytes() {
+        return sentBytes;
+    }
+
+    /**
+     * @return the number of pings that were answered since the statistics
+     * were reset
+     */
+    public synchronized int getRoundTrips() {
+        return roundTrips;
+    }
+
+    /**
+     * @return the average round trip time of the pings in seconds
+     */
+    public synchronized double getAverageRoundTrip() {
+        if (roundTrips == 0) {
+            return 0;
+        }
+        return roundTripTotal / roundTrips;
+    }
+
+    public synchronized double getMaxRoundTrip() {
+        return roundTripMax;
+    }
+
+    public synchronized void resetStatistics() {
+        receivedMessages = 0;
+        receivedBytes = 0;
+        sentMessages = 0;
+        sentBytes = 0;
+        roundTrips = 0;
+        roundTripTotal = 0;
+        roundTripMax = 0;
+    }
+}
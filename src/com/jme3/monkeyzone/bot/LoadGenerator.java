@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.monkeyzone.bot;
+
+import com.jme3.monkeyzone.Globals;
+import com.jme3.monkeyzone.ServerMain;
+import com.jme3.monkeyzone.Util;
+import com.jme3.network.physicssync.ClockSync;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Connects more and more BotClients to a server and reports how the
+ * server copes: the update time of the server (only when it runs in the
+ * same VM, start with -local), the round trip time of the bots and the
+ * bandwidth per bot. Used to find how many players a server can take.</p>
+ * <p>The bots are ticked from a small pool of shared threads, each thread
+ * ticks a fixed part of the bots. The network threads are the ones of the
+ * jME clients.</p>
+ * <pre>
+ * LoadGenerator [-host name] [-bots count] [-step count] [-interval seconds]
+ *               [-threads count] [-seed seed] [-local] [-nostart]
+ * </pre>
+ * @author normenhansen
+ */
+public class LoadGenerator {
+
+    private static final String LEVEL_NAME = "Scenes/MonkeyZone.j3o";
+    //milliseconds between the script ticks of the bots
+    private static final long TICK_INTERVAL = 50;
+    private String host = Globals.DEFAULT_SERVER;
+    private int botCount = 100;
+    private int step = 10;
+    private float interval = 10;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long seed = 1;
+    private boolean local = false;
+    private boolean start = true;
+    private final List<BotClient> bots = new ArrayList<BotClient>();
+    private ScheduledExecutorService executor;
+
+    public static void main(String[] args) {
+        LoadGenerator generator = new LoadGenerator();
+        for (int i = 0; i < args.length; i++) {
+            String string = args[i];
+            if ("-host".equals(string)) {
+                generator.host = args[++i];
+            } else if ("-bots".equals(string)) {
+                generator.botCount = Integer.parseInt(args[++i]);
+            } else if ("-step".equals(string)) {
+                generator.step = Integer.parseInt(args[++i]);
+            } else if ("-interval".equals(string)) {
+                generator.interval = Float.parseFloat(args[++i]);
+            } else if ("-threads".equals(string)) {
+                generator.threads = Integer.parseInt(args[++i]);
+            } else if ("-seed".equals(string)) {
+                generator.seed = Long.parseLong(args[++i]);
+            } else if ("-local".equals(string)) {
+                generator.local = true;
+            } else if ("-nostart".equals(string)) {
+                generator.start = false;
+            }
+        }
+        try {
+            generator.run();
+        } catch (InterruptedException ex) {
+            Logger.getLogger(LoadGenerator.class.getName()).log(Level.WARNING, "Load generator interrupted");
+        }
+        System.exit(0);
+    }
+
+    /**
+     * adds the bots step by step and prints a report after each step
+     */
+    public void run() throws InterruptedException {
+        if (local) {
+            //registers the serializers too
+            ServerMain.main(new String[]{});
+            Thread.sleep(2000);
+        } else {
+            Util.registerSerializers();
+        }
+        Util.setLogLevels(false);
+        executor = Executors.newScheduledThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            final int shard = i;
+            executor.scheduleAtFixedRate(new Runnable() {
+
+                public void run() {
+                    tickBots(shard);
+                }
+            }, TICK_INTERVAL, TICK_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+        System.out.println("bots\tplaying\tserver ms (avg/max)\trtt ms (avg/max)\tin kB/s/bot\tout kB/s/bot");
+        while (getBotCount() < botCount) {
+            int count = Math.min(step, botCount - getBotCount());
+            for (int i = 0; i < count; i++) {
+                addBot();
+            }
+            if (start && getBotCount() == count) {
+                startGame();
+            }
+            report();
+        }
+        report();
+        executor.shutdownNow();
+        synchronized (bots) {
+            for (int i = 0; i < bots.size(); i++) {
+                bots.get(i).close();
+            }
+        }
+        if (local && ServerMain.getApplication() != null) {
+            ServerMain.getApplication().stop();
+        }
+    }
+
+    private int getBotCount() {
+        synchronized (bots) {
+            return bots.size();
+        }
+    }
+
+    private void addBot() {
+        BotClient bot;
+        synchronized (bots) {
+            bot = new BotClient("Bot" + bots.size(), seed + bots.size());
+            bots.add(bot);
+        }
+        try {
+            bot.connect(host, Globals.DEFAULT_PORT_TCP, Globals.DEFAULT_PORT_UDP);
+        } catch (IOException ex) {
+            Logger.getLogger(LoadGenerator.class.getName()).log(Level.SEVERE, "Cannot connect bot {0}: {1}", new Object[]{bot.getName(), ex});
+        }
+    }
+
+    /**
+     * waits until the first bot has joined and lets it start the game, the
+     * bots that join later get their characters when they join
+     */
+    private void startGame() throws InterruptedException {
+        BotClient bot;
+        synchronized (bots) {
+            bot = bots.get(0);
+        }
+        for (int i = 0; i < 100 && !bot.isJoined(); i++) {
+            Thread.sleep(100);
+        }
+        if (!bot.isJoined()) {
+            Logger.getLogger(LoadGenerator.class.getName()).log(Level.SEVERE, "First bot could not join, game not started");
+            return;
+        }
+        bot.startGame(LEVEL_NAME);
+    }
+
+    private void tickBots(int shard) {
+        double time = ClockSync.getClockTime();
+        synchronized (bots) {
+            for (int i = shard; i < bots.size(); i += threads) {
+                try {
+                    bots.get(i).tick(time);
+                } catch (Exception ex) {
+                    Logger.getLogger(LoadGenerator.class.getName()).log(Level.WARNING, "Error ticking bot {0}: {1}", new Object[]{bots.get(i).getName(), ex});
+                }
+            }
+        }
+    }
+
+    /**
+     * waits one interval with the current bots and prints the statistics of
+     * that interval
+     */
+    private void report() throws InterruptedException {
+        ServerMain server = local ? ServerMain.getApplication() : null;
+        synchronized (bots) {
+            for (int i = 0; i < bots.size(); i++) {
+                bots.get(i).resetStatistics();
+            }
+        }
+        if (server != null) {
+            server.resetTickTimes();
+        }
+        Thread.sleep((long) (interval * 1000));
+        int count = 0;
+        int playing = 0;
+        int roundTrips = 0;
+        double roundTripTotal = 0;
+        double roundTripMax = 0;
+        long received = 0;
+        long sent = 0;
+        synchronized (bots) {
+            for (int i = 0; i < bots.size(); i++) {
+                BotClient bot = bots.get(i);
+                if (!bot.isJoined()) {
+                    continue;
+                }
+                count++;
+                if (bot.isPlaying()) {
+                    playing++;
+                }
+                synchronized (bot) {
+                    roundTrips += bot.getRoundTrips();
+                    roundTripTotal += bot.getAverageRoundTrip() * bot.getRoundTrips();
+                    roundTripMax = Math.max(roundTripMax, bot.getMaxRoundTrip());
+                    received += bot.getReceivedBytes();
+                    sent += bot.getSentBytes();
+                }
+            }
+        }
+        String serverTime = server != null
+                ? String.format("%.2f/%.2f", server.getAverageTickTime(), server.getMaxTickTime())
+                : "-";
+        float kiloBytesPerBot = count > 0 ? 1024f * interval * count : 1;
+        System.out.println(String.format("%d\t%d\t%s\t\t%.1f/%.1f\t\t%.2f\t\t%.2f", count, playing, serverTime,
+                roundTrips > 0 ? roundTripTotal / roundTrips * 1000 : 0, roundTripMax * 1000,
+                received / kiloBytesPerBot, sent / kiloBytesPerBot));
+    }
+}
@@ -64,6 +64,10 @@ public class AutonomousCharacterControl extends NetworkedAutonomousControl {
         super(client, entityId);
     }
 
+    public AutonomousCharacterControl(PhysicsSyncManager syncManager, long entityId) {
+        super(syncManager, entityId);
+    }
+
     @Override
     public void doAimAt(Vector3f direction) {
         aimDirection.set(direction);
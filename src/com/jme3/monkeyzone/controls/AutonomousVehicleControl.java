@@ -39,6 +39,7 @@ import com.jme3.math.Vector3f;
 import com.jme3.monkeyzone.Globals;
 import com.jme3.monkeyzone.messages.ActionMessage;
 import com.jme3.network.Client;
+import com.jme3.network.physicssync.PhysicsSyncManager;
 import com.jme3.renderer.RenderManager;
 import com.jme3.renderer.ViewPort;
 import com.jme3.scene.Spatial;
@@ -71,6 +72,10 @@ public class AutonomousVehicleControl extends NetworkedAutonomousControl {
         super(client, entityId);
     }
 
+    public AutonomousVehicleControl(PhysicsSyncManager syncManager, long entityId) {
+        super(syncManager, entityId);
+    }
+
     @Override
     public void doAimAt(Vector3f direction) {
         aimDirection.set(direction);
@@ -45,11 +45,15 @@ import com.jme3.scene.Spatial;
 
 /**
  * Manual character control, implements ManualControl interface and controls
- * a character if available on the Spatial.
+ * a character if available on the Spatial. When predicting, the distance the
+ * character walks each frame is recorded so it can be replayed on top of
+ * authoritative states from the server.
  * @author normenhansen
  */
 public class ManualCharacterControl extends NetworkedManualControl {
 
+    private static final int MAX_MOVES = 256;
+
     private Spatial spatial;
     private CharacterControl characterControl;
     private Vector3f walkDirection = new Vector3f(Vector3f.ZERO);
@@ -63,6 +67,13 @@ public class ManualCharacterControl extends NetworkedManualControl {
     private float strafeAmount = 0;
     private float speed = 10f * Globals.PHYSICS_FPS;
     private Vector3f tempVec = new Vector3f();
+    private Vector3f predictedLocation = new Vector3f();
+    private Vector3f currentLocation = new Vector3f();
+    //predicted moves: local time and walked x, z distance, oldest first
+    private double[] moveTimes = new double[MAX_MOVES];
+    private float[] moves = new float[MAX_MOVES * 2];
+    private int moveStart = 0;
+    private int moveCount = 0;
 
     public ManualCharacterControl() {
     }
@@ -71,6 +82,10 @@ public class ManualCharacterControl extends NetworkedManualControl {
         super(client, entityId);
     }
 
+    public ManualCharacterControl(PhysicsSyncManager syncManager, long entityId) {
+        super(syncManager, entityId);
+    }
+
     @Override
     public void doSteerX(float amount) {
         rotAmountX = amount;
@@ -138,6 +153,7 @@ public class ManualCharacterControl extends NetworkedManualControl {
 
     @Override
     public void update(float tpf) {
+        repeatInput(tpf);
         if (!enabled) {
             return;
         }
@@ -171,11 +187,59 @@ public class ManualCharacterControl extends NetworkedManualControl {
         }
         characterControl.setWalkDirection(walkDirection);
         characterControl.setViewDirection(viewDirection);
+        if (isPredicting() && (walkDirection.x != 0 || walkDirection.z != 0)) {
+            //the walk direction is the distance per physics tick
+            float ticks = tpf / Globals.PHYSICS_FPS;
+            addMove(getLocalTime(), walkDirection.x * ticks, walkDirection.z * ticks);
+        }
         //TODO: setting spatial rotation to avoid tilting
         spatial.getLocalRotation().lookAt(tempVec.set(viewDirection).multLocal(1, 0, 1), Vector3f.UNIT_Y);
         spatial.setLocalRotation(spatial.getLocalRotation());
     }
 
+    /**
+     * sets the location from the server and walks the moves the server did
+     * not know about yet again, the height is left to the local physics.
+     * Walk and view direction stay the predicted ones.
+     */
+    public void reconcile(double time, Vector3f location, Quaternion rotation, Vector3f walkDirection, Vector3f viewDirection) {
+        if (characterControl == null) {
+            return;
+        }
+        double localTime = toLocalTime(time);
+        //moves before the time of the state are contained in it
+        while (moveCount > 0 && moveTimes[moveStart] <= localTime) {
+            moveStart = (moveStart + 1) % MAX_MOVES;
+            moveCount--;
+        }
+        predictedLocation.set(location);
+        for (int i = 0; i < moveCount; i++) {
+            int move = (moveStart + i) % MAX_MOVES;
+            predictedLocation.x += moves[move * 2];
+            predictedLocation.z += moves[move * 2 + 1];
+        }
+        characterControl.getPhysicsLocation(currentLocation);
+        predictedLocation.y = currentLocation.y;
+        float distance = currentLocation.distance(predictedLocation);
+        boolean corrected = distance > Globals.NETWORK_PREDICTION_TOLERANCE;
+        if (corrected) {
+            characterControl.setPhysicsLocation(predictedLocation);
+        }
+        addReconciliation(distance, corrected);
+    }
+
+    private void addMove(double time, float x, float z) {
+        if (moveCount == MAX_MOVES) {
+            moveStart = (moveStart + 1) % MAX_MOVES;
+            moveCount--;
+        }
+        int move = (moveStart + moveCount) % MAX_MOVES;
+        moveTimes[move] = time;
+        moves[move * 2] = x;
+        moves[move * 2 + 1] = z;
+        moveCount++;
+    }
+
     public void render(RenderManager rm, ViewPort vp) {
     }
 }
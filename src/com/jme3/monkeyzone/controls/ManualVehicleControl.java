@@ -35,19 +35,26 @@ import com.jme3.bullet.PhysicsSpace;
 import com.jme3.bullet.PhysicsTickListener;
 import com.jme3.bullet.control.VehicleControl;
 import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
+import com.jme3.monkeyzone.Globals;
 import com.jme3.network.Client;
+import com.jme3.network.physicssync.PhysicsSyncManager;
 import com.jme3.renderer.RenderManager;
 import com.jme3.renderer.ViewPort;
 import com.jme3.scene.Spatial;
 
 /**
  * Manual vehicle control, implements ManualControl interface and controls
- * a vehicle if available on the Spatial.
+ * a vehicle if available on the Spatial. The vehicle physics cannot be
+ * stepped again for past inputs, so when predicting, authoritative states
+ * are moved forward with their velocity to the current time instead.
  * @author normenhansen
  */
 public class ManualVehicleControl extends NetworkedManualControl implements PhysicsTickListener {
 
+    private static final float MAX_RECONCILE_TIME = 1.0f;
+
     private Spatial spatial;
     private VehicleControl control;
     private float speed = 800f;
@@ -56,6 +63,8 @@ public class ManualVehicleControl extends NetworkedManualControl implements Phys
     private Vector3f tempVec1 = new Vector3f();
     private Vector3f tempVec2 = new Vector3f();
     private Vector3f tempVec3 = new Vector3f();
+    private Vector3f predictedLocation = new Vector3f();
+    private Vector3f currentLocation = new Vector3f();
     private boolean hover = false;
     private boolean added = false;
 
@@ -66,6 +75,10 @@ public class ManualVehicleControl extends NetworkedManualControl implements Phys
         super(client, entityId);
     }
 
+    public ManualVehicleControl(PhysicsSyncManager syncManager, long entityId) {
+        super(syncManager, entityId);
+    }
+
     @Override
     public void doSteerX(float amount) {
     }
@@ -139,6 +152,7 @@ public class ManualVehicleControl extends NetworkedManualControl implements Phys
 
     @Override
     public void update(float tpf) {
+        repeatInput(tpf);
         if (!enabled) {
             return;
         }
@@ -199,6 +213,33 @@ public class ManualVehicleControl extends NetworkedManualControl implements Phys
     public void physicsTick(PhysicsSpace space, float f) {
     }
 
+    /**
+     * corrects the vehicle if it is too far away from the state of the
+     * server moved forward to the current time
+     */
+    public void reconcile(double time, Vector3f location, Quaternion rotation, Vector3f linearVelocity, Vector3f angularVelocity) {
+        if (control == null) {
+            return;
+        }
+        double localTime = toLocalTime(time);
+        float elapsed = 0;
+        if (!Double.isInfinite(localTime)) {
+            elapsed = (float) Math.min(Math.max(getLocalTime() - localTime, 0), MAX_RECONCILE_TIME);
+        }
+        predictedLocation.set(linearVelocity).multLocal(elapsed).addLocal(location);
+        float distance = control.getPhysicsLocation(currentLocation).distance(predictedLocation);
+        boolean corrected = distance > Globals.NETWORK_PREDICTION_TOLERANCE;
+        if (corrected) {
+            control.setPhysicsLocation(predictedLocation);
+            if (rotation != null) {
+                control.setPhysicsRotation(rotation);
+            }
+            control.setLinearVelocity(linearVelocity);
+            control.setAngularVelocity(angularVelocity);
+        }
+        addReconciliation(distance, corrected);
+    }
+
     public void render(RenderManager rm, ViewPort vp) {
     }
 }
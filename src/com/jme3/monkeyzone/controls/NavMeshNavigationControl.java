@@ -34,24 +34,59 @@ package com.jme3.monkeyzone.controls;
 import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
 import com.jme3.monkeyzone.WorldManager;
+import com.jme3.math.Vector3f;
 import jme3tools.navmesh.NavMeshPathfinder;
 import com.jme3.renderer.RenderManager;
 import com.jme3.renderer.ViewPort;
 import com.jme3.scene.Spatial;
 import com.jme3.scene.control.Control;
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jme3tools.navmesh.Path;
 
 
 /**
  * This class implements NavigationControl but actually extends Pathfinder which
  * uses the NavMesh, you can replace it with any Pathfinding system. It will
  * be used by the AutonomousControl then.
+ * Paths can also be requested from the PathfindingService of the WorldManager,
+ * they are computed on its worker threads and set in update() when done.
  * @author normenhansen
  */
 public class NavMeshNavigationControl extends NavMeshPathfinder implements NavigationControl{
 
+    private WorldManager world;
+    private Future<Path> pendingPath;
+
     public NavMeshNavigationControl(WorldManager world) {
         super(world.getNavMesh());
+        this.world = world;
+    }
+
+    /**
+     * requests a path to the goal from the pathfinding service, a pending
+     * request is cancelled. The path is set in update() when it is done.
+     * @param goal
+     * @return the future of the path
+     */
+    public Future<Path> requestPath(Vector3f goal) {
+        cancelPathRequest();
+        pendingPath = computePath(world.getPathfindingService(), goal);
+        return pendingPath;
+    }
+
+    public void cancelPathRequest() {
+        if (pendingPath != null) {
+            pendingPath.cancel(false);
+            pendingPath = null;
+        }
+    }
+
+    public boolean isPathPending() {
+        return pendingPath != null;
     }
 
     public void setSpatial(Spatial spatial) {
@@ -65,6 +100,21 @@ public class NavMeshNavigationControl extends NavMeshPathfinder implements Navig
     }
 
     public void update(float tpf) {
+        if (pendingPath == null || !pendingPath.isDone()) {
+            return;
+        }
+        Future<Path> done = pendingPath;
+        pendingPath = null;
+        if (done.isCancelled()) {
+            return;
+        }
+        try {
+            setPath(done.get());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            Logger.getLogger(NavMeshNavigationControl.class.getName()).log(Level.WARNING, "Computing path failed: {0}", ex.getCause());
+        }
     }
 
     public void render(RenderManager rm, ViewPort vp) {
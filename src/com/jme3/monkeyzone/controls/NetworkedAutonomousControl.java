@@ -51,6 +51,7 @@ import java.util.logging.Logger;
 public abstract class NetworkedAutonomousControl implements AutonomousControl, NetworkActionEnabled {
 
     private Client client;
+    private PhysicsSyncManager syncManager;
     private long entity_id;
     private Vector3f lastMoveToLocation = new Vector3f();
     private Vector3f lastAimDirection = new Vector3f();
@@ -65,6 +66,17 @@ public abstract class NetworkedAutonomousControl implements AutonomousControl, N
         this.entity_id = entity_id;
     }
 
+    /**
+     * creates a control that sends to the client of the sync manager, actions
+     * are sent with the view time of the sync manager
+     * @param syncManager
+     * @param entity_id
+     */
+    public NetworkedAutonomousControl(PhysicsSyncManager syncManager, long entity_id) {
+        this(syncManager.getClient(), entity_id);
+        this.syncManager = syncManager;
+    }
+
     public void aimAt(Vector3f direction) {
         if (client != null) {
             if (!lastAimDirection.equals(direction)) {
@@ -76,7 +88,7 @@ public abstract class NetworkedAutonomousControl implements AutonomousControl, N
 
     public void performAction(int action, boolean activate) {
         if (client != null) {
-            client.send(new ActionMessage(entity_id, action, activate));
+            client.send(new ActionMessage(entity_id, action, activate, syncManager != null ? syncManager.getViewTime() : -1));
         }
     }
 
@@ -37,26 +37,45 @@ import com.jme3.monkeyzone.messages.ActionMessage;
 import com.jme3.monkeyzone.messages.ManualControlMessage;
 import com.jme3.network.Client;
 import com.jme3.network.physicssync.PhysicsSyncManager;
+import com.jme3.network.physicssync.PredictionControl;
 import com.jme3.scene.Spatial;
 import com.jme3.scene.control.Control;
 import java.io.IOException;
+import java.util.LinkedList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Abstract Manual Control, handles sending to server when client is set
+ * Abstract Manual Control, handles sending to server when client is set.
+ * When predicting (client is set), inputs are applied locally right away and
+ * sent with a sequence number. The server sends each input back, the time it
+ * applied the input at gives the relation between server and local time that
+ * subclasses use to reconcile the predicted state with authoritative states.
  * @author normenhansen
  */
-public abstract class NetworkedManualControl implements ManualControl, NetworkActionEnabled {
+public abstract class NetworkedManualControl implements ManualControl, NetworkActionEnabled, PredictionControl {
+
+    private static final int MAX_PENDING_INPUTS = 256;
+    //when input is sent unreliably, each input is repeated this often in this interval
+    private static final int INPUT_REPEATS = 3;
+    private static final float INPUT_REPEAT_INTERVAL = 0.05f;
 
     protected boolean enabled = true;
     private Client client;
+    private PhysicsSyncManager syncManager;
     private long entity_id;
     private float lastSteerX = 0;
     private float lastSteerY = 0;
     private float lastMoveX = 0;
     private float lastMoveY = 0;
     private float lastMoveZ = 0;
+    private boolean predicting = true;
+    private int inputSequence = 0;
+    private int inputRepeats = 0;
+    private float inputRepeatTimer = 0;
+    private LinkedList<PendingInput> pendingInputs = new LinkedList<PendingInput>();
+    private boolean hasTimeOffset = false;
+    private double timeOffset = 0;
 
     public NetworkedManualControl() {
     }
@@ -66,13 +85,23 @@ public abstract class NetworkedManualControl implements ManualControl, NetworkAc
         this.entity_id = entity_id;
     }
 
-    public NetworkedManualControl(PhysicsSyncManager server, long entity_id) {
-        this.entity_id = entity_id;
+    /**
+     * creates a control that sends to the client of the sync manager, actions
+     * are sent with the view time of the sync manager
+     * @param syncManager
+     * @param entity_id
+     */
+    public NetworkedManualControl(PhysicsSyncManager syncManager, long entity_id) {
+        this(syncManager.getClient(), entity_id);
+        this.syncManager = syncManager;
     }
 
     public void steerX(float amount) {
         if (client != null && amount != lastSteerX) {
             lastSteerX = amount;
+            if (isPredicting()) {
+                doSteerX(amount);
+            }
             sendMoveSync();
         }
     }
@@ -80,6 +109,9 @@ public abstract class NetworkedManualControl implements ManualControl, NetworkAc
     public void steerY(float amount) {
         if (client != null && amount != lastSteerY) {
             lastSteerY = amount;
+            if (isPredicting()) {
+                doSteerY(amount);
+            }
             sendMoveSync();
         }
     }
@@ -87,6 +119,9 @@ public abstract class NetworkedManualControl implements ManualControl, NetworkAc
     public void moveX(float amount) {
         if (client != null && amount != lastMoveX) {
             lastMoveX = amount;
+            if (isPredicting()) {
+                doMoveX(amount);
+            }
             sendMoveSync();
         }
     }
@@ -94,6 +129,9 @@ public abstract class NetworkedManualControl implements ManualControl, NetworkAc
     public void moveY(float amount) {
         if (client != null && amount != lastMoveY) {
             lastMoveY = amount;
+            if (isPredicting()) {
+                doMoveY(amount);
+            }
             sendMoveSync();
         }
     }
@@ -101,13 +139,16 @@ public abstract class NetworkedManualControl implements ManualControl, NetworkAc
     public void moveZ(float amount) {
         if (client != null && amount != lastMoveZ) {
             lastMoveZ = amount;
+            if (isPredicting()) {
+                doMoveZ(amount);
+            }
             sendMoveSync();
         }
     }
 
     public void performAction(int button, boolean pressed) {
         if (client != null) {
-            client.send(new ActionMessage(entity_id, button, pressed));
+            client.send(new ActionMessage(entity_id, button, pressed, syncManager != null ? syncManager.getViewTime() : -1));
         }
     }
 
@@ -124,7 +165,114 @@ public abstract class NetworkedManualControl implements ManualControl, NetworkAc
     public abstract void doPerformAction(int button, boolean pressed);
 
     private void sendMoveSync() {
-        client.send(new ManualControlMessage(entity_id, lastSteerX, lastSteerY, lastMoveX, lastMoveY, lastMoveZ));
+        inputSequence++;
+        if (isPredicting()) {
+            if (pendingInputs.size() == MAX_PENDING_INPUTS) {
+                pendingInputs.removeFirst();
+            }
+            pendingInputs.add(new PendingInput(inputSequence, getLocalTime()));
+        }
+        sendInput();
+        if (syncManager != null && syncManager.isUnreliableSync()) {
+            inputRepeats = INPUT_REPEATS;
+            inputRepeatTimer = 0;
+        }
+    }
+
+    private void sendInput() {
+        ManualControlMessage msg = new ManualControlMessage(entity_id, lastSteerX, lastSteerY, lastMoveX, lastMoveY, lastMoveZ, inputSequence);
+        msg.setReliable(syncManager == null || !syncManager.isUnreliableSync());
+        client.send(msg);
+    }
+
+    /**
+     * repeats the last input when it was sent unreliably so that losing one
+     * message does not leave the entity with an old input, the server drops
+     * the repeats it does not need. Call from update().
+     * @param tpf
+     */
+    protected void repeatInput(float tpf) {
+        if (inputRepeats == 0 || client == null) {
+            return;
+        }
+        inputRepeatTimer += tpf;
+        if (inputRepeatTimer >= INPUT_REPEAT_INTERVAL) {
+            inputRepeatTimer = 0;
+            inputRepeats--;
+            sendInput();
+        }
+    }
+
+    /**
+     * called when the server sent back an input of this client
+     * @param sequence the sequence number of the input
+     * @param serverTime the server time the input was applied at
+     */
+    public void acknowledgeInput(int sequence, double serverTime) {
+        while (!pendingInputs.isEmpty() && pendingInputs.getFirst().sequence - sequence < 0) {
+            pendingInputs.removeFirst();
+        }
+        if (!pendingInputs.isEmpty() && pendingInputs.getFirst().sequence == sequence) {
+            timeOffset = pendingInputs.removeFirst().time - serverTime;
+            hasTimeOffset = true;
+        }
+    }
+
+    /**
+     * converts a server time to local time, based on when the last
+     * acknowledged input was applied locally and on the server
+     * @param serverTime
+     * @return the local time or Double.NEGATIVE_INFINITY if no input has
+     * been acknowledged yet
+     */
+    protected double toLocalTime(double serverTime) {
+        if (!hasTimeOffset) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return serverTime + timeOffset;
+    }
+
+    /**
+     * records a reconciliation in the SyncStatistics of the sync manager
+     * @param distance distance between the predicted and the reconciled
+     * location
+     * @param corrected true if the entity was moved
+     */
+    protected void addReconciliation(float distance, boolean corrected) {
+        if (syncManager != null && syncManager.getStatistics() != null) {
+            syncManager.getStatistics().addReconciliation(distance, corrected);
+        }
+    }
+
+    /**
+     * @return the time in seconds used for prediction
+     */
+    protected double getLocalTime() {
+        return System.nanoTime() / 1000000000.0;
+    }
+
+    /**
+     * @return the number of inputs that have not been acknowledged by the
+     * server yet
+     */
+    public int getPendingInputs() {
+        return pendingInputs.size();
+    }
+
+    public boolean isPredicting() {
+        return client != null && predicting;
+    }
+
+    /**
+     * enables or disables prediction, only applies if client is set
+     * @param predicting
+     */
+    public void setPredicting(boolean predicting) {
+        this.predicting = predicting;
+        if (!predicting) {
+            pendingInputs.clear();
+            hasTimeOffset = false;
+        }
     }
 
     public void setEnabled(boolean enabled) {
@@ -146,4 +294,18 @@ public abstract class NetworkedManualControl implements ManualControl, NetworkAc
     public void read(JmeImporter im) throws IOException {
         throw new UnsupportedOperationException("Not supported.");
     }
+
+    /**
+     * an input that has been sent but not acknowledged yet
+     */
+    private static class PendingInput {
+
+        private int sequence;
+        private double time;
+
+        public PendingInput(int sequence, double time) {
+            this.sequence = sequence;
+            this.time = time;
+        }
+    }
 }
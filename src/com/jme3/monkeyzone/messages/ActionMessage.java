@@ -32,9 +32,11 @@
 package com.jme3.monkeyzone.messages;
 
 import com.jme3.monkeyzone.controls.NetworkActionEnabled;
+import com.jme3.network.physicssync.MessageCodec;
 import com.jme3.network.physicssync.PhysicsSyncMessage;
 import com.jme3.network.serializing.Serializable;
 import com.jme3.scene.Spatial;
+import java.nio.ByteBuffer;
 
 /**
  * perform action for player (human and AI), used bidirectional
@@ -50,6 +52,11 @@ public class ActionMessage extends PhysicsSyncMessage {
     
     public int action;
     public boolean pressed;
+    /**
+     * server time of the world state the client saw when performing the
+     * action, -1 if unknown
+     */
+    public double viewTime = -1;
 
     public ActionMessage() {
     }
@@ -60,8 +67,41 @@ public class ActionMessage extends PhysicsSyncMessage {
         this.pressed = pressed;
     }
 
+    public ActionMessage(long id, int action, boolean pressed, double viewTime) {
+        this(id, action, pressed);
+        this.viewTime = viewTime;
+    }
+
     @Override
     public void applyData(Object object) {
         ((Spatial)object).getControl(NetworkActionEnabled.class).doPerformAction(action, pressed);
     }
+
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<ActionMessage> {
+
+        public Codec() {
+            super(ActionMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, ActionMessage message) {
+            writeHeader(buffer, message);
+            writeVarInt(buffer, message.action);
+            writeBoolean(buffer, message.pressed);
+            writeTime(buffer, message.viewTime);
+        }
+
+        @Override
+        public ActionMessage read(ByteBuffer buffer) {
+            ActionMessage message = new ActionMessage();
+            readHeader(buffer, message);
+            message.action = readVarInt(buffer);
+            message.pressed = readBoolean(buffer);
+            message.viewTime = readTime(buffer);
+            return message;
+        }
+    }
 }
@@ -34,9 +34,11 @@ package com.jme3.monkeyzone.messages;
 import com.jme3.bullet.collision.PhysicsCollisionObject;
 import com.jme3.math.Vector3f;
 import com.jme3.monkeyzone.controls.NetworkedAutonomousControl;
+import com.jme3.network.physicssync.MessageCodec;
 import com.jme3.network.physicssync.PhysicsSyncMessage;
 import com.jme3.network.serializing.Serializable;
 import com.jme3.scene.Spatial;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -71,4 +73,30 @@ public class AutoControlMessage extends PhysicsSyncMessage {
         netControl.doAimAt(aimAt);
         netControl.doMoveTo(moveTo);
     }
+
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<AutoControlMessage> {
+
+        public Codec() {
+            super(AutoControlMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, AutoControlMessage message) {
+            writeHeader(buffer, message);
+            writeVector(buffer, message.aimAt, DIRECTION_SCALE);
+            writeVector(buffer, message.moveTo, POSITION_SCALE);
+        }
+
+        @Override
+        public AutoControlMessage read(ByteBuffer buffer) {
+            AutoControlMessage message = new AutoControlMessage();
+            readHeader(buffer, message);
+            readVector(buffer, DIRECTION_SCALE, message.aimAt);
+            readVector(buffer, POSITION_SCALE, message.moveTo);
+            return message;
+        }
+    }
 }
@@ -32,7 +32,9 @@
 package com.jme3.monkeyzone.messages;
 
 import com.jme3.network.AbstractMessage;
+import com.jme3.network.physicssync.MessageCodec;
 import com.jme3.network.serializing.Serializable;
+import java.nio.ByteBuffer;
 
 /**
  * basic chat message, name is filled on server
@@ -56,4 +58,27 @@ public class ChatMessage extends AbstractMessage {
         this.name = name;
     }
 
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<ChatMessage> {
+
+        public Codec() {
+            super(ChatMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, ChatMessage message) {
+            writeString(buffer, message.text);
+            writeString(buffer, message.name);
+        }
+
+        @Override
+        public ChatMessage read(ByteBuffer buffer) {
+            ChatMessage message = new ChatMessage();
+            message.text = readString(buffer);
+            message.name = readString(buffer);
+            return message;
+        }
+    }
 }
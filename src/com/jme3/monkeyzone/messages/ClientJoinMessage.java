@@ -32,7 +32,9 @@
 package com.jme3.monkeyzone.messages;
 
 import com.jme3.network.AbstractMessage;
+import com.jme3.network.physicssync.MessageCodec;
 import com.jme3.network.serializing.Serializable;
+import java.nio.ByteBuffer;
 
 /**
  * sent from client to join server
@@ -51,4 +53,27 @@ public class ClientJoinMessage extends AbstractMessage{
         this.pass = pass;
     }
 
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<ClientJoinMessage> {
+
+        public Codec() {
+            super(ClientJoinMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, ClientJoinMessage message) {
+            writeString(buffer, message.name);
+            writeString(buffer, message.pass);
+        }
+
+        @Override
+        public ClientJoinMessage read(ByteBuffer buffer) {
+            ClientJoinMessage message = new ClientJoinMessage();
+            message.name = readString(buffer);
+            message.pass = readString(buffer);
+            return message;
+        }
+    }
 }
@@ -32,7 +32,9 @@
 package com.jme3.monkeyzone.messages;
 
 import com.jme3.network.AbstractMessage;
+import com.jme3.network.physicssync.MessageCodec;
 import com.jme3.network.serializing.Serializable;
+import java.nio.ByteBuffer;
 
 /**
  * used for first handshake. contains protocol, client and server version.
@@ -55,4 +57,29 @@ public class HandshakeMessage extends AbstractMessage {
         this.server_version = server_version;
     }
 
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<HandshakeMessage> {
+
+        public Codec() {
+            super(HandshakeMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, HandshakeMessage message) {
+            writeVarInt(buffer, message.protocol_version);
+            writeVarInt(buffer, message.client_version);
+            writeVarInt(buffer, message.server_version);
+        }
+
+        @Override
+        public HandshakeMessage read(ByteBuffer buffer) {
+            HandshakeMessage message = new HandshakeMessage();
+            message.protocol_version = readVarInt(buffer);
+            message.client_version = readVarInt(buffer);
+            message.server_version = readVarInt(buffer);
+            return message;
+        }
+    }
 }
@@ -33,18 +33,24 @@ package com.jme3.monkeyzone.messages;
 
 import com.jme3.bullet.collision.PhysicsCollisionObject;
 import com.jme3.monkeyzone.controls.NetworkedManualControl;
-import com.jme3.network.physicssync.PhysicsSyncMessage;
+import com.jme3.network.physicssync.MessageCodec;
+import com.jme3.network.physicssync.SequencedSyncMessage;
 import com.jme3.network.serializing.Serializable;
 import com.jme3.scene.Spatial;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Manual (human) control message, used bidirectional
+ * Manual (human) control message, used bidirectional. The sequence number
+ * is counted up by the sending client, the message the server sends back
+ * acknowledges the input to a client that predicts its entity. Each message
+ * contains the whole input state so lost messages can be replaced by
+ * repeating the last one.
  * @author normenhansen
  */
 @Serializable()
-public class ManualControlMessage extends PhysicsSyncMessage {
+public class ManualControlMessage extends SequencedSyncMessage {
 
     public float aimX;
     public float aimY;
@@ -56,17 +62,16 @@ public class ManualControlMessage extends PhysicsSyncMessage {
     }
 
     public ManualControlMessage(ManualControlMessage msg) {
-//        setReliable(false);
         this.syncId = msg.syncId;
         this.aimX = msg.aimX;
         this.aimY = msg.aimY;
         this.moveX = msg.moveX;
         this.moveY = msg.moveY;
         this.moveZ = msg.moveZ;
+        this.sequence = msg.sequence;
     }
 
     public ManualControlMessage(long id, float aimX, float aimY, float moveX, float moveY, float moveZ) {
-//        setReliable(false);
         this.syncId = id;
         this.aimX = aimX;
         this.aimY = aimY;
@@ -75,14 +80,58 @@ public class ManualControlMessage extends PhysicsSyncMessage {
         this.moveZ = moveZ;
     }
 
+    public ManualControlMessage(long id, float aimX, float aimY, float moveX, float moveY, float moveZ, int sequence) {
+        this(id, aimX, aimY, moveX, moveY, moveZ);
+        this.sequence = sequence;
+    }
+
     @Override
     public void applyData(Object object) {
         NetworkedManualControl netControl = ((Spatial) object).getControl(NetworkedManualControl.class);
         assert (netControl != null);
+        if (netControl.isPredicting()) {
+            //input has been applied locally already
+            netControl.acknowledgeInput(sequence, time);
+            return;
+        }
         netControl.doMoveX(moveX);
         netControl.doMoveY(moveY);
         netControl.doMoveZ(moveZ);
         netControl.doSteerX(aimX);
         netControl.doSteerY(aimY);
     }
+
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<ManualControlMessage> {
+
+        public Codec() {
+            super(ManualControlMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, ManualControlMessage message) {
+            writeHeader(buffer, message);
+            writeVarInt(buffer, message.sequence);
+            writeQuantized(buffer, message.aimX, INPUT_SCALE);
+            writeQuantized(buffer, message.aimY, INPUT_SCALE);
+            writeQuantized(buffer, message.moveX, INPUT_SCALE);
+            writeQuantized(buffer, message.moveY, INPUT_SCALE);
+            writeQuantized(buffer, message.moveZ, INPUT_SCALE);
+        }
+
+        @Override
+        public ManualControlMessage read(ByteBuffer buffer) {
+            ManualControlMessage message = new ManualControlMessage();
+            readHeader(buffer, message);
+            message.sequence = readVarInt(buffer);
+            message.aimX = readQuantized(buffer, INPUT_SCALE);
+            message.aimY = readQuantized(buffer, INPUT_SCALE);
+            message.moveX = readQuantized(buffer, INPUT_SCALE);
+            message.moveY = readQuantized(buffer, INPUT_SCALE);
+            message.moveZ = readQuantized(buffer, INPUT_SCALE);
+            return message;
+        }
+    }
 }
@@ -34,8 +34,10 @@ package com.jme3.monkeyzone.messages;
 import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
 import com.jme3.monkeyzone.WorldManager;
+import com.jme3.network.physicssync.MessageCodec;
 import com.jme3.network.physicssync.PhysicsSyncMessage;
 import com.jme3.network.serializing.Serializable;
+import java.nio.ByteBuffer;
 
 /**
  * used by the server to add an entity on the client
@@ -64,4 +66,34 @@ public class ServerAddEntityMessage extends PhysicsSyncMessage {
         WorldManager manager = (WorldManager) obj;
         manager.addEntity(entityId, modelIdentifier, location, rotation);
     }
+
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<ServerAddEntityMessage> {
+
+        public Codec() {
+            super(ServerAddEntityMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, ServerAddEntityMessage message) {
+            writeHeader(buffer, message);
+            writeVarLong(buffer, message.entityId);
+            writeString(buffer, message.modelIdentifier);
+            writeVector(buffer, message.location, POSITION_SCALE);
+            writeRotation(buffer, message.rotation);
+        }
+
+        @Override
+        public ServerAddEntityMessage read(ByteBuffer buffer) {
+            ServerAddEntityMessage message = new ServerAddEntityMessage();
+            readHeader(buffer, message);
+            message.entityId = readVarLong(buffer);
+            message.modelIdentifier = readString(buffer);
+            message.location = readVector(buffer, POSITION_SCALE, null);
+            message.rotation = readRotation(buffer, null);
+            return message;
+        }
+    }
 }
@@ -32,8 +32,10 @@
 package com.jme3.monkeyzone.messages;
 
 import com.jme3.monkeyzone.WorldManager;
+import com.jme3.network.physicssync.MessageCodec;
 import com.jme3.network.physicssync.PhysicsSyncMessage;
 import com.jme3.network.serializing.Serializable;
+import java.nio.ByteBuffer;
 
 /**
  * used by the server to add a player on the client
@@ -63,4 +65,33 @@ public class ServerAddPlayerMessage extends PhysicsSyncMessage{
         manager.addPlayer(playerId, group_id, name, ai_id);
     }
 
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<ServerAddPlayerMessage> {
+
+        public Codec() {
+            super(ServerAddPlayerMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, ServerAddPlayerMessage message) {
+            writeHeader(buffer, message);
+            writeVarLong(buffer, message.playerId);
+            writeString(buffer, message.name);
+            writeVarInt(buffer, message.group_id);
+            writeVarInt(buffer, message.ai_id);
+        }
+
+        @Override
+        public ServerAddPlayerMessage read(ByteBuffer buffer) {
+            ServerAddPlayerMessage message = new ServerAddPlayerMessage();
+            readHeader(buffer, message);
+            message.playerId = readVarLong(buffer);
+            message.name = readString(buffer);
+            message.group_id = readVarInt(buffer);
+            message.ai_id = readVarInt(buffer);
+            return message;
+        }
+    }
 }
@@ -32,8 +32,10 @@
 package com.jme3.monkeyzone.messages;
 
 import com.jme3.monkeyzone.WorldManager;
+import com.jme3.network.physicssync.MessageCodec;
 import com.jme3.network.physicssync.PhysicsSyncMessage;
 import com.jme3.network.serializing.Serializable;
+import java.nio.ByteBuffer;
 
 /**
  * used by the server to add an entity on the client
@@ -57,4 +59,28 @@ public class ServerDisableEntityMessage extends PhysicsSyncMessage {
         WorldManager manager = (WorldManager) object;
         manager.disableEntity(entityId);
     }
+
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<ServerDisableEntityMessage> {
+
+        public Codec() {
+            super(ServerDisableEntityMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, ServerDisableEntityMessage message) {
+            writeHeader(buffer, message);
+            writeVarLong(buffer, message.entityId);
+        }
+
+        @Override
+        public ServerDisableEntityMessage read(ByteBuffer buffer) {
+            ServerDisableEntityMessage message = new ServerDisableEntityMessage();
+            readHeader(buffer, message);
+            message.entityId = readVarLong(buffer);
+            return message;
+        }
+    }
 }
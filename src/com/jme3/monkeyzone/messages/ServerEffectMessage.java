@@ -35,8 +35,10 @@ import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
 import com.jme3.monkeyzone.ClientEffectsManager;
 import com.jme3.monkeyzone.WorldManager;
+import com.jme3.network.physicssync.MessageCodec;
 import com.jme3.network.physicssync.PhysicsSyncMessage;
 import com.jme3.network.serializing.Serializable;
+import java.nio.ByteBuffer;
 
 /**
  * Message sent to play effect on client
@@ -67,9 +69,95 @@ public class ServerEffectMessage extends PhysicsSyncMessage {
         this.playTime = time;
     }
 
+    /**
+     * copies the data into the message, the vectors and rotations of the
+     * message are reused so pooled messages can be refilled
+     */
+    public void set(long id, String name, Vector3f location, Quaternion rotation, Vector3f endLocation, Quaternion endRotation, float time) {
+        this.syncId = -2;
+        this.effectId = id;
+        this.name = name;
+        this.location = copy(location, this.location);
+        this.rotation = copy(rotation, this.rotation);
+        this.endLocation = copy(endLocation, this.endLocation);
+        this.endRotation = copy(endRotation, this.endRotation);
+        this.playTime = time;
+    }
+
+    private static Vector3f copy(Vector3f source, Vector3f store) {
+        if (source == null) {
+            return null;
+        }
+        return store != null ? store.set(source) : source.clone();
+    }
+
+    private static Quaternion copy(Quaternion source, Quaternion store) {
+        if (source == null) {
+            return null;
+        }
+        return store != null ? store.set(source) : source.clone();
+    }
+
     @Override
     public void applyData(Object object) {
         ClientEffectsManager manager = (ClientEffectsManager) object;
         manager.playEffect(effectId, name, location, endLocation, rotation, endRotation, playTime);
     }
+
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<ServerEffectMessage> {
+
+        public Codec() {
+            super(ServerEffectMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, ServerEffectMessage message) {
+            writeHeader(buffer, message);
+            writeVarLong(buffer, message.effectId);
+            writeString(buffer, message.name);
+            //flags for the transforms that are set
+            int flags = (message.location != null ? 1 : 0) | (message.rotation != null ? 2 : 0)
+                    | (message.endLocation != null ? 4 : 0) | (message.endRotation != null ? 8 : 0);
+            buffer.put((byte) flags);
+            if (message.location != null) {
+                writeVector(buffer, message.location, POSITION_SCALE);
+            }
+            if (message.rotation != null) {
+                writeRotation(buffer, message.rotation);
+            }
+            if (message.endLocation != null) {
+                writeVector(buffer, message.endLocation, POSITION_SCALE);
+            }
+            if (message.endRotation != null) {
+                writeRotation(buffer, message.endRotation);
+            }
+            buffer.putFloat(message.playTime);
+        }
+
+        @Override
+        public ServerEffectMessage read(ByteBuffer buffer) {
+            ServerEffectMessage message = new ServerEffectMessage();
+            readHeader(buffer, message);
+            message.effectId = readVarLong(buffer);
+            message.name = readString(buffer);
+            int flags = buffer.get();
+            if ((flags & 1) != 0) {
+                message.location = readVector(buffer, POSITION_SCALE, null);
+            }
+            if ((flags & 2) != 0) {
+                message.rotation = readRotation(buffer, null);
+            }
+            if ((flags & 4) != 0) {
+                message.endLocation = readVector(buffer, POSITION_SCALE, null);
+            }
+            if ((flags & 8) != 0) {
+                message.endRotation = readRotation(buffer, null);
+            }
+            message.playTime = buffer.getFloat();
+            return message;
+        }
+    }
 }
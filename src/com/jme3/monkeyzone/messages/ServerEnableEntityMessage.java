@@ -34,8 +34,10 @@ package com.jme3.monkeyzone.messages;
 import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
 import com.jme3.monkeyzone.WorldManager;
+import com.jme3.network.physicssync.MessageCodec;
 import com.jme3.network.physicssync.PhysicsSyncMessage;
 import com.jme3.network.serializing.Serializable;
+import java.nio.ByteBuffer;
 
 /**
  * used by the server to add an entity on the client
@@ -62,4 +64,32 @@ public class ServerEnableEntityMessage extends PhysicsSyncMessage {
         WorldManager manager = (WorldManager) obj;
         manager.enableEntity(entityId, location, rotation);
     }
+
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<ServerEnableEntityMessage> {
+
+        public Codec() {
+            super(ServerEnableEntityMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, ServerEnableEntityMessage message) {
+            writeHeader(buffer, message);
+            writeVarLong(buffer, message.entityId);
+            writeVector(buffer, message.location, POSITION_SCALE);
+            writeRotation(buffer, message.rotation);
+        }
+
+        @Override
+        public ServerEnableEntityMessage read(ByteBuffer buffer) {
+            ServerEnableEntityMessage message = new ServerEnableEntityMessage();
+            readHeader(buffer, message);
+            message.entityId = readVarLong(buffer);
+            message.location = readVector(buffer, POSITION_SCALE, null);
+            message.rotation = readRotation(buffer, null);
+            return message;
+        }
+    }
 }
@@ -32,8 +32,10 @@
 package com.jme3.monkeyzone.messages;
 
 import com.jme3.monkeyzone.WorldManager;
+import com.jme3.network.physicssync.MessageCodec;
 import com.jme3.network.physicssync.PhysicsSyncMessage;
 import com.jme3.network.serializing.Serializable;
+import java.nio.ByteBuffer;
 
 /**
  * Message sent when entering entity
@@ -59,4 +61,30 @@ public class ServerEnterEntityMessage extends PhysicsSyncMessage{
         WorldManager manager = (WorldManager) object;
         manager.enterEntity(player_id, entity_id);
     }
+
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<ServerEnterEntityMessage> {
+
+        public Codec() {
+            super(ServerEnterEntityMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, ServerEnterEntityMessage message) {
+            writeHeader(buffer, message);
+            writeVarLong(buffer, message.player_id);
+            writeVarLong(buffer, message.entity_id);
+        }
+
+        @Override
+        public ServerEnterEntityMessage read(ByteBuffer buffer) {
+            ServerEnterEntityMessage message = new ServerEnterEntityMessage();
+            readHeader(buffer, message);
+            message.player_id = readVarLong(buffer);
+            message.entity_id = readVarLong(buffer);
+            return message;
+        }
+    }
 }
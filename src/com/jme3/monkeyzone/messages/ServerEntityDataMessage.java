@@ -31,9 +31,11 @@
  */
 package com.jme3.monkeyzone.messages;
 
+import com.jme3.network.physicssync.MessageCodec;
 import com.jme3.network.physicssync.PhysicsSyncMessage;
 import com.jme3.network.serializing.Serializable;
 import com.jme3.scene.Spatial;
+import java.nio.ByteBuffer;
 
 /**
  * sets userdata in a client-side entity
@@ -54,6 +56,13 @@ public class ServerEntityDataMessage extends PhysicsSyncMessage {
     }
 
     public ServerEntityDataMessage(long id, String name, Object value) {
+        set(id, name, value);
+    }
+
+    /**
+     * sets the data of the message, used to refill pooled messages
+     */
+    public void set(long id, String name, Object value) {
         this.name = name;
         syncId = id;
         type = getObjectType(value);
@@ -117,4 +126,65 @@ public class ServerEntityDataMessage extends PhysicsSyncMessage {
             throw new IllegalArgumentException("Unsupported type: " + type.getClass().getName());
         }
     }
+
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<ServerEntityDataMessage> {
+
+        public Codec() {
+            super(ServerEntityDataMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, ServerEntityDataMessage message) {
+            writeHeader(buffer, message);
+            writeString(buffer, message.name);
+            buffer.put(message.type);
+            //only the field of the type is sent
+            switch (message.type) {
+                case 0:
+                    writeVarInt(buffer, message.intData);
+                    break;
+                case 1:
+                    buffer.putFloat(message.floatData);
+                    break;
+                case 2:
+                    writeBoolean(buffer, message.booleanData);
+                    break;
+                case 3:
+                    writeString(buffer, message.stringData);
+                    break;
+                case 4:
+                    writeVarLong(buffer, message.longData);
+                    break;
+            }
+        }
+
+        @Override
+        public ServerEntityDataMessage read(ByteBuffer buffer) {
+            ServerEntityDataMessage message = new ServerEntityDataMessage();
+            readHeader(buffer, message);
+            message.name = readString(buffer);
+            message.type = buffer.get();
+            switch (message.type) {
+                case 0:
+                    message.intData = readVarInt(buffer);
+                    break;
+                case 1:
+                    message.floatData = buffer.getFloat();
+                    break;
+                case 2:
+                    message.booleanData = readBoolean(buffer);
+                    break;
+                case 3:
+                    message.stringData = readString(buffer);
+                    break;
+                case 4:
+                    message.longData = readVarLong(buffer);
+                    break;
+            }
+            return message;
+        }
+    }
 }
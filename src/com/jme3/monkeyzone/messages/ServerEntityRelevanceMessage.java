@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.monkeyzone.messages;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.monkeyzone.WorldManager;
+import com.jme3.network.physicssync.MessageCodec;
+import com.jme3.network.physicssync.PhysicsSyncMessage;
+import com.jme3.network.serializing.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * used by the server to tell a client that an entity left or entered its
+ * area of interest, the client hides culled entities
+ * @author normenhansen
+ */
+@Serializable()
+public class ServerEntityRelevanceMessage extends PhysicsSyncMessage {
+
+    public long entityId;
+    public boolean relevant;
+    public Vector3f location;
+    public Quaternion rotation;
+
+    public ServerEntityRelevanceMessage() {
+    }
+
+    public ServerEntityRelevanceMessage(long id, boolean relevant, Vector3f location, Quaternion rotation) {
+        this.syncId = -1;
+        this.entityId = id;
+        this.relevant = relevant;
+        this.location = location;
+        this.rotation = rotation;
+    }
+
+    public void applyData(Object obj) {
+        WorldManager manager = (WorldManager) obj;
+        manager.setEntityRelevant(entityId, relevant, location, rotation);
+    }
+
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<ServerEntityRelevanceMessage> {
+
+        public Codec() {
+            super(ServerEntityRelevanceMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, ServerEntityRelevanceMessage message) {
+            writeHeader(buffer, message);
+            writeVarLong(buffer, message.entityId);
+            writeBoolean(buffer, message.relevant);
+            writeVector(buffer, message.location, POSITION_SCALE);
+            writeRotation(buffer, message.rotation);
+        }
+
+        @Override
+        public ServerEntityRelevanceMessage read(ByteBuffer buffer) {
+            ServerEntityRelevanceMessage message = new ServerEntityRelevanceMessage();
+            readHeader(buffer, message);
+            message.entityId = readVarLong(buffer);
+            message.relevant = readBoolean(buffer);
+            message.location = readVector(buffer, POSITION_SCALE, null);
+            message.rotation = readRotation(buffer, null);
+            return message;
+        }
+    }
+}
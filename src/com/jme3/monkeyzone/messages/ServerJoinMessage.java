@@ -32,7 +32,9 @@
 package com.jme3.monkeyzone.messages;
 
 import com.jme3.network.AbstractMessage;
+import com.jme3.network.physicssync.MessageCodec;
 import com.jme3.network.serializing.Serializable;
+import java.nio.ByteBuffer;
 
 /**
  * sent to client to signal that if it has logged in, contains human players id
@@ -55,4 +57,31 @@ public class ServerJoinMessage extends AbstractMessage{
         this.name = name;
     }
 
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<ServerJoinMessage> {
+
+        public Codec() {
+            super(ServerJoinMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, ServerJoinMessage message) {
+            writeBoolean(buffer, message.rejected);
+            writeVarLong(buffer, message.id);
+            writeVarInt(buffer, message.group_id);
+            writeString(buffer, message.name);
+        }
+
+        @Override
+        public ServerJoinMessage read(ByteBuffer buffer) {
+            ServerJoinMessage message = new ServerJoinMessage();
+            message.rejected = readBoolean(buffer);
+            message.id = readVarLong(buffer);
+            message.group_id = readVarInt(buffer);
+            message.name = readString(buffer);
+            return message;
+        }
+    }
 }
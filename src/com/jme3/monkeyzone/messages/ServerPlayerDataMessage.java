@@ -32,7 +32,9 @@
 package com.jme3.monkeyzone.messages;
 
 import com.jme3.network.AbstractMessage;
+import com.jme3.network.physicssync.MessageCodec;
 import com.jme3.network.serializing.Serializable;
+import java.nio.ByteBuffer;
 
 /**
  *
@@ -52,4 +54,65 @@ public class ServerPlayerDataMessage extends AbstractMessage {
 
     public ServerPlayerDataMessage() {
     }
+
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<ServerPlayerDataMessage> {
+
+        public Codec() {
+            super(ServerPlayerDataMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, ServerPlayerDataMessage message) {
+            writeVarLong(buffer, message.id);
+            writeString(buffer, message.name);
+            buffer.put(message.type);
+            //only the field of the type is sent
+            switch (message.type) {
+                case 0:
+                    writeVarInt(buffer, message.intData);
+                    break;
+                case 1:
+                    buffer.putFloat(message.floatData);
+                    break;
+                case 2:
+                    writeBoolean(buffer, message.booleanData);
+                    break;
+                case 3:
+                    writeString(buffer, message.stringData);
+                    break;
+                case 4:
+                    writeVarLong(buffer, message.longData);
+                    break;
+            }
+        }
+
+        @Override
+        public ServerPlayerDataMessage read(ByteBuffer buffer) {
+            ServerPlayerDataMessage message = new ServerPlayerDataMessage();
+            message.id = readVarLong(buffer);
+            message.name = readString(buffer);
+            message.type = buffer.get();
+            switch (message.type) {
+                case 0:
+                    message.intData = readVarInt(buffer);
+                    break;
+                case 1:
+                    message.floatData = buffer.getFloat();
+                    break;
+                case 2:
+                    message.booleanData = readBoolean(buffer);
+                    break;
+                case 3:
+                    message.stringData = readString(buffer);
+                    break;
+                case 4:
+                    message.longData = readVarLong(buffer);
+                    break;
+            }
+            return message;
+        }
+    }
 }
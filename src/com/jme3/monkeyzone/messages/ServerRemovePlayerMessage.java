@@ -32,8 +32,10 @@
 package com.jme3.monkeyzone.messages;
 
 import com.jme3.monkeyzone.WorldManager;
+import com.jme3.network.physicssync.MessageCodec;
 import com.jme3.network.physicssync.PhysicsSyncMessage;
 import com.jme3.network.serializing.Serializable;
+import java.nio.ByteBuffer;
 
 /**
  * used by the server to add an entity on the client
@@ -57,4 +59,28 @@ public class ServerRemovePlayerMessage extends PhysicsSyncMessage {
         WorldManager manager = (WorldManager) object;
         manager.removePlayer(playerId);
     }
+
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<ServerRemovePlayerMessage> {
+
+        public Codec() {
+            super(ServerRemovePlayerMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, ServerRemovePlayerMessage message) {
+            writeHeader(buffer, message);
+            writeVarLong(buffer, message.playerId);
+        }
+
+        @Override
+        public ServerRemovePlayerMessage read(ByteBuffer buffer) {
+            ServerRemovePlayerMessage message = new ServerRemovePlayerMessage();
+            readHeader(buffer, message);
+            message.playerId = readVarLong(buffer);
+            return message;
+        }
+    }
 }
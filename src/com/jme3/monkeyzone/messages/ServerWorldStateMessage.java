@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.monkeyzone.messages;
+
+import com.jme3.monkeyzone.WorldManager;
+import com.jme3.network.physicssync.MessageCodec;
+import com.jme3.network.physicssync.PhysicsSyncMessage;
+import com.jme3.network.serializing.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * used by the server to send the whole world state to a client that joins,
+ * the compressed state is split into chunks, the client applies it when all
+ * chunks of the state have arrived
+ * @author normenhansen
+ */
+@Serializable()
+public class ServerWorldStateMessage extends PhysicsSyncMessage {
+
+    public int stateId;
+    public int chunk;
+    public int chunks;
+    public byte[] data;
+
+    public ServerWorldStateMessage() {
+    }
+
+    public ServerWorldStateMessage(int stateId, int chunk, int chunks, byte[] data) {
+        this.syncId = -1;
+        this.stateId = stateId;
+        this.chunk = chunk;
+        this.chunks = chunks;
+        this.data = data;
+    }
+
+    @Override
+    public void applyData(Object object) {
+        WorldManager manager = (WorldManager) object;
+        manager.addWorldStateChunk(this);
+    }
+
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<ServerWorldStateMessage> {
+
+        public Codec() {
+            super(ServerWorldStateMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, ServerWorldStateMessage message) {
+            writeHeader(buffer, message);
+            writeVarInt(buffer, message.stateId);
+            writeVarInt(buffer, message.chunk);
+            writeVarInt(buffer, message.chunks);
+            writeBytes(buffer, message.data);
+        }
+
+        @Override
+        public ServerWorldStateMessage read(ByteBuffer buffer) {
+            ServerWorldStateMessage message = new ServerWorldStateMessage();
+            readHeader(buffer, message);
+            message.stateId = readVarInt(buffer);
+            message.chunk = readVarInt(buffer);
+            message.chunks = readVarInt(buffer);
+            message.data = readBytes(buffer);
+            return message;
+        }
+    }
+}
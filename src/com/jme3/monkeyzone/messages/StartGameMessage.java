@@ -32,7 +32,9 @@
 package com.jme3.monkeyzone.messages;
 
 import com.jme3.network.AbstractMessage;
+import com.jme3.network.physicssync.MessageCodec;
 import com.jme3.network.serializing.Serializable;
+import java.nio.ByteBuffer;
 
 /**
  * used to load a level on the client and to report that a level has been loaded
@@ -55,4 +57,41 @@ public class StartGameMessage extends AbstractMessage{
         this.levelName = levelName;
         this.modelNames = modelNames;
     }
+
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<StartGameMessage> {
+
+        public Codec() {
+            super(StartGameMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, StartGameMessage message) {
+            writeString(buffer, message.levelName);
+            if (message.modelNames == null) {
+                writeVarInt(buffer, 0);
+            } else {
+                writeVarInt(buffer, message.modelNames.length + 1);
+                for (int i = 0; i < message.modelNames.length; i++) {
+                    writeString(buffer, message.modelNames[i]);
+                }
+            }
+        }
+
+        @Override
+        public StartGameMessage read(ByteBuffer buffer) {
+            StartGameMessage message = new StartGameMessage();
+            message.levelName = readString(buffer);
+            int count = readVarInt(buffer) - 1;
+            if (count >= 0) {
+                message.modelNames = new String[count];
+                for (int i = 0; i < count; i++) {
+                    message.modelNames[i] = readString(buffer);
+                }
+            }
+            return message;
+        }
+    }
 }
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+/**
+ * Estimates the server time on the client. The client pings the server
+ * periodically with a TimeSyncMessage, each answer gives a sample of the
+ * round trip time and of the clock offset, assuming the way to the server
+ * took half the round trip time. Of the last samples the one with the lowest
+ * round trip time is used as it was delayed the least by queues on the way.
+ * The offset in use does not jump to a new sample but is slewed towards it
+ * over time, only a big error (e.g. at the start) makes it jump.
+ *
+ * All times are in seconds of the local monotonic clock, see getClockTime().
+ * @author normenhansen
+ */
+public class ClockSync {
+
+    private static final long START = System.nanoTime();
+    private static final int SAMPLES = 8;
+    private double[] roundTrips = new double[SAMPLES];
+    private double[] offsets = new double[SAMPLES];
+    private int sampleCount = 0;
+    private int nextSample = 0;
+    private long totalSamples = 0;
+    private boolean initialized = false;
+    private double offset = 0;
+    private double targetOffset = 0;
+    private double roundTrip = 0;
+    private double jitter = 0;
+    private double lastPing = Double.NEGATIVE_INFINITY;
+    private int pingSequence = 0;
+    private double lastRoundTrip = -1;
+    private double pingInterval = 1;
+    private double startPingInterval = 0.1;
+    private double slewTime = 2;
+    private double stepThreshold = 0.25;
+
+    /**
+     * @return the time of the monotonic clock of this machine in seconds,
+     * used for the time stamps of the sync messages on the server and as the
+     * local time on the client
+     */
+    public static double getClockTime() {
+        return (System.nanoTime() - START) / 1000000000.0;
+    }
+
+    /**
+     * checks if the next ping is due, pings are sent faster until the sample
+     * window has been filled once
+     * @param localTime
+     * @return the ping to send or null
+     */
+    public TimeSyncMessage createPing(double localTime) {
+        double interval = totalSamples < SAMPLES ? startPingInterval : pingInterval;
+        if (localTime - lastPing < interval) {
+            return null;
+        }
+        lastPing = localTime;
+        TimeSyncMessage ping = new TimeSyncMessage(localTime);
+        ping.sequence = pingSequence++;
+        ping.roundTrip = lastRoundTrip;
+        return ping;
+    }
+
+    /**
+     * adds the sample of an answered ping
+     * @param message
+     */
+    public void addSample(TimeSyncMessage message) {
+        double sampleRoundTrip = message.receiveTime - message.clientTime;
+        if (sampleRoundTrip < 0) {
+            return;
+        }
+        lastRoundTrip = sampleRoundTrip;
+        roundTrips[nextSample] = sampleRoundTrip;
+        offsets[nextSample] = message.serverTime - (message.clientTime + sampleRoundTrip * 0.5);
+        nextSample = (nextSample + 1) % SAMPLES;
+        if (sampleCount < SAMPLES) {
+            sampleCount++;
+        }
+        totalSamples++;
+        int best = 0;
+        double mean = 0;
+        for (int i = 0; i < sampleCount; i++) {
+            if (roundTrips[i] < roundTrips[best]) {
+                best = i;
+            }
+            mean += roundTrips[i];
+        }
+        mean /= sampleCount;
+        double deviation = 0;
+        for (int i = 0; i < sampleCount; i++) {
+            deviation += Math.abs(roundTrips[i] - mean);
+        }
+        jitter = deviation / sampleCount;
+        roundTrip = roundTrips[best];
+        targetOffset = offsets[best];
+        if (!initialized || Math.abs(targetOffset - offset) > stepThreshold) {
+            offset = targetOffset;
+            initialized = true;
+        }
+    }
+
+    /**
+     * uses the time stamp of a message from the server as a first estimate
+     * until the first ping has been answered
+     * @param serverTime
+     * @param localTime
+     */
+    public void initialize(double serverTime, double localTime) {
+        if (!initialized) {
+            offset = targetOffset = serverTime - localTime;
+            initialized = true;
+        }
+    }
+
+    /**
+     * slews the offset towards the current estimate
+     * @param tpf
+     */
+    public void update(float tpf) {
+        double blend = Math.min(1, tpf / slewTime);
+        offset += (targetOffset - offset) * blend;
+    }
+
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    /**
+     * @return true if at least one ping has been answered
+     */
+    public boolean isSynced() {
+        return totalSamples > 0;
+    }
+
+    /**
+     * @param localTime
+     * @return the estimated server time at the given local time
+     */
+    public double getServerTime(double localTime) {
+        return localTime + offset;
+    }
+
+    /**
+     * @return the estimated offset of the server clock to the local clock
+     */
+    public double getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the round trip time of the best recent sample
+     */
+    public double getRoundTrip() {
+        return roundTrip;
+    }
+
+    /**
+     * @return the mean deviation of the recent round trip times
+     */
+    public double getJitter() {
+        return jitter;
+    }
+
+    public double getPingInterval() {
+        return pingInterval;
+    }
+
+    public void setPingInterval(double pingInterval) {
+        this.pingInterval = pingInterval;
+    }
+
+    public double getSlewTime() {
+        return slewTime;
+    }
+
+    /**
+     * sets over how many seconds the offset is moved to a new estimate
+     * @param slewTime
+     */
+    public void setSlewTime(double slewTime) {
+        this.slewTime = slewTime;
+    }
+
+    public double getStepThreshold() {
+        return stepThreshold;
+    }
+
+    /**
+     * sets how far the offset may be off before it is set to the new
+     * estimate directly instead of slewing
+     * @param stepThreshold
+     */
+    public void setStepThreshold(double stepThreshold) {
+        this.stepThreshold = stepThreshold;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.network.HostedConnection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+/**
+ * <p>Network statistics of one connection on the server: smoothed round trip
+ * and loss estimated from the pings of the client, messages and bytes in and
+ * out per message type, the messages waiting for the update thread, how many
+ * snapshots the client is behind in acknowledging and when the client sent
+ * its last input.</p>
+ * <p>The counters are updated from the network threads and the update
+ * thread, all methods are synchronized.</p>
+ * @author normenhansen
+ */
+public class ConnectionTelemetry implements ConnectionTelemetryMBean {
+
+    //weight of a new sample in the smoothed round trip and loss
+    private static final double ROUND_TRIP_WEIGHT = 0.125;
+    private static final float LOSS_WEIGHT = 0.1f;
+    private int id;
+    private String address;
+    private double roundTrip = -1;
+    private float loss = 0;
+    private int lastPingSequence;
+    private boolean hasPing = false;
+    //messages in, bytes in, messages out, bytes out per message type
+    private HashMap<Class, long[]> types = new HashMap<Class, long[]>();
+    private long messagesIn = 0;
+    private long messagesOut = 0;
+    private long bytesIn = 0;
+    private long bytesOut = 0;
+    private int inboundBacklog = 0;
+    private int ackLag = 0;
+    private double lastInput = -1;
+    private boolean slow = false;
+    //time of the last update, for the time since the last input
+    private double time = 0;
+    //bandwidth
+    private double rateTime = -1;
+    private long rateBytesIn = 0;
+    private long rateBytesOut = 0;
+    private float bytesInPerSecond = 0;
+    private float bytesOutPerSecond = 0;
+
+    public ConnectionTelemetry(HostedConnection connection) {
+        this.id = (int) connection.getId();
+        this.address = connection.getAddress();
+    }
+
+    /**
+     * counts a message received from the client
+     */
+    synchronized void messageReceived(Class type, int size) {
+        long[] counts = getCounts(type);
+        counts[0]++;
+        counts[1] += size;
+        messagesIn++;
+        bytesIn += size;
+    }
+
+    /**
+     * counts a message sent to the client
+     */
+    synchronized void messageSent(Class type, int size) {
+        long[] counts = getCounts(type);
+        counts[2]++;
+        counts[3] += size;
+        messagesOut++;
+        bytesOut += size;
+    }
+
+    private long[] getCounts(Class type) {
+        long[] counts = types.get(type);
+        if (counts == null) {
+            counts = new long[4];
+            types.put(type, counts);
+        }
+        return counts;
+    }
+
+    /**
+     * adds a ping of the client, the pings are numbered so missing ones count
+     * as lost, the client reports the round trip of its last answered ping
+     */
+    synchronized void pingReceived(TimeSyncMessage ping) {
+        if (hasPing) {
+            int missing = ping.sequence - lastPingSequence - 1;
+            if (missing < 0) {
+                //late or repeated ping
+                return;
+            }
+            for (int i = 0; i < missing; i++) {
+                loss += (1 - loss) * LOSS_WEIGHT;
+            }
+            loss -= loss * LOSS_WEIGHT;
+        }
+        hasPing = true;
+        lastPingSequence = ping.sequence;
+        if (ping.roundTrip >= 0) {
+            if (roundTrip < 0) {
+                roundTrip = ping.roundTrip;
+            } else {
+                roundTrip += (ping.roundTrip - roundTrip) * ROUND_TRIP_WEIGHT;
+            }
+        }
+    }
+
+    synchronized void messageQueued() {
+        inboundBacklog++;
+    }
+
+    synchronized void messageHandled() {
+        inboundBacklog--;
+    }
+
+    synchronized void inputReceived(double time) {
+        lastInput = time;
+    }
+
+    synchronized void setAckLag(int ackLag) {
+        this.ackLag = ackLag;
+    }
+
+    /**
+     * updates the bandwidth about once per second and checks if the
+     * connection is slow
+     * @return true if the slow flag changed
+     */
+    synchronized boolean update(double time, NetworkTelemetry limits) {
+        if (rateTime < 0) {
+            rateTime = time;
+            rateBytesIn = bytesIn;
+            rateBytesOut = bytesOut;
+        } else if (time - rateTime >= 1) {
+            bytesInPerSecond = (float) ((bytesIn - rateBytesIn) / (time - rateTime));
+            bytesOutPerSecond = (float) ((bytesOut - rateBytesOut) / (time - rateTime));
+            rateTime = time;
+            rateBytesIn = bytesIn;
+            rateBytesOut = bytesOut;
+        }
+        boolean wasSlow = slow;
+        slow = roundTrip > limits.getMaxRoundTrip()
+                || loss > limits.getMaxLoss()
+                || ackLag > limits.getMaxAckLag()
+                || inboundBacklog > limits.getMaxInboundBacklog();
+        this.time = time;
+        return slow != wasSlow;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public synchronized double getRoundTrip() {
+        return roundTrip;
+    }
+
+    public synchronized float getLoss() {
+        return loss;
+    }
+
+    public synchronized long getMessagesIn() {
+        return messagesIn;
+    }
+
+    public synchronized long getMessagesOut() {
+        return messagesOut;
+    }
+
+    public synchronized long getBytesIn() {
+        return bytesIn;
+    }
+
+    public synchronized long getBytesOut() {
+        return bytesOut;
+    }
+
+    public synchronized float getBytesInPerSecond() {
+        return bytesInPerSecond;
+    }
+
+    public synchronized float getBytesOutPerSecond() {
+        return bytesOutPerSecond;
+    }
+
+    public synchronized int getInboundBacklog() {
+        return inboundBacklog;
+    }
+
+    public synchronized int getAckLag() {
+        return ackLag;
+    }
+
+    public synchronized double getTimeSinceLastInput() {
+        if (lastInput < 0) {
+            return -1;
+        }
+        return time - lastInput;
+    }
+
+    public synchronized boolean isSlow() {
+        return slow;
+    }
+
+    public synchronized String[] getMessageTypes() {
+        String[] lines = new String[types.size()];
+        int i = 0;
+        for (Iterator<Entry<Class, long[]>> it = types.entrySet().iterator(); it.hasNext();) {
+            Entry<Class, long[]> entry = it.next();
+            long[] counts = entry.getValue();
+            lines[i++] = entry.getKey().getSimpleName() + ": in " + counts[0] + " (" + counts[1] + " bytes), out "
+                    + counts[2] + " (" + counts[3] + " bytes)";
+        }
+        return lines;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Connection " + id + " (" + address + "): rtt=" + roundTrip + ", loss=" + loss
+                + ", in=" + bytesInPerSecond + " B/s, out=" + bytesOutPerSecond + " B/s, backlog=" + inboundBacklog
+                + ", ack lag=" + ackLag + ", last input=" + getTimeSinceLastInput() + (slow ? ", SLOW" : "");
+    }
+}
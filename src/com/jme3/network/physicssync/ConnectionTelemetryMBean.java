@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+/**
+ * JMX view of the ConnectionTelemetry of one connection.
+ * @author normenhansen
+ */
+public interface ConnectionTelemetryMBean {
+
+    public int getId();
+
+    public String getAddress();
+
+    /**
+     * @return the smoothed round trip time in seconds, -1 if unknown
+     */
+    public double getRoundTrip();
+
+    /**
+     * @return the estimated share (0-1) of lost messages
+     */
+    public float getLoss();
+
+    public long getMessagesIn();
+
+    public long getMessagesOut();
+
+    /**
+     * @return the received bytes, only counted when the NetworkTelemetry
+     * measures bytes
+     */
+    public long getBytesIn();
+
+    public long getBytesOut();
+
+    public float getBytesInPerSecond();
+
+    public float getBytesOutPerSecond();
+
+    /**
+     * @return the number of messages of the connection that wait for the
+     * update thread
+     */
+    public int getInboundBacklog();
+
+    /**
+     * @return the number of snapshots sent since the last one the client
+     * acknowledged
+     */
+    public int getAckLag();
+
+    /**
+     * @return seconds since the last input of the client, -1 if there was
+     * none
+     */
+    public double getTimeSinceLastInput();
+
+    public boolean isSlow();
+
+    /**
+     * @return one line with the messages and bytes in and out per message
+     * type
+     */
+    public String[] getMessageTypes();
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.math.Vector3f;
+import com.jme3.network.HostedConnection;
+import com.jme3.network.Server;
+import com.jme3.scene.Spatial;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map.Entry;
+
+/**
+ * InterestManager that uses a SpatialGrid of all synced Spatials, an object is
+ * relevant for a client when it is within radius of one of the objects the
+ * client observes through. Clients without observers get all messages.
+ * @author normenhansen
+ */
+public class GridInterestManager implements InterestManager {
+
+    //relevance of objects at the border of the area of interest
+    private static final float MIN_RELEVANCE = 0.1f;
+    private PhysicsSyncManager syncManager;
+    private float radius;
+    private SpatialGrid<Long> grid;
+    private HashMap<Integer, ClientInterest> clients = new HashMap<Integer, ClientInterest>();
+    private LinkedList<InterestListener> listeners = new LinkedList<InterestListener>();
+    private ArrayList<Long> queryList = new ArrayList<Long>();
+    private HashSet<Long> gridIds = new HashSet<Long>();
+    private HashSet<Long> seenIds = new HashSet<Long>();
+    private Vector3f tempLocation = new Vector3f();
+
+    private static class ClientInterest {
+
+        LinkedList<Long> observers = new LinkedList<Long>();
+        ArrayList<Vector3f> observerLocations = new ArrayList<Vector3f>();
+        int observerCount = 0;
+        HashSet<Long> relevant = new HashSet<Long>();
+        HashSet<Long> nextRelevant = new HashSet<Long>();
+        HashSet<Long> culled = new HashSet<Long>();
+    }
+
+    public GridInterestManager(PhysicsSyncManager syncManager, float radius) {
+        this(syncManager, radius, radius);
+    }
+
+    public GridInterestManager(PhysicsSyncManager syncManager, float radius, float cellSize) {
+        this.syncManager = syncManager;
+        this.radius = radius;
+        this.grid = new SpatialGrid<Long>(cellSize);
+    }
+
+    public void update() {
+        //update grid with the locations of all synced spatials
+        seenIds.clear();
+        for (Iterator<Entry<Long, Object>> it = syncManager.syncObjects.entrySet().iterator(); it.hasNext();) {
+            Entry<Long, Object> entry = it.next();
+            if (entry.getKey() >= 0 && entry.getValue() instanceof Spatial) {
+                grid.update(entry.getKey(), ((Spatial) entry.getValue()).getWorldTranslation());
+                seenIds.add(entry.getKey());
+            }
+        }
+        for (Iterator<Long> it = gridIds.iterator(); it.hasNext();) {
+            Long id = it.next();
+            if (!seenIds.contains(id)) {
+                grid.remove(id);
+            }
+        }
+        HashSet<Long> swap = gridIds;
+        gridIds = seenIds;
+        seenIds = swap;
+        //compute relevant objects for each client
+        Server server = syncManager.getServer();
+        for (Iterator<Entry<Integer, ClientInterest>> it = clients.entrySet().iterator(); it.hasNext();) {
+            Entry<Integer, ClientInterest> entry = it.next();
+            ClientInterest interest = entry.getValue();
+            HostedConnection client = server.getConnection(entry.getKey());
+            interest.nextRelevant.clear();
+            interest.observerCount = 0;
+            for (Iterator<Long> it2 = interest.observers.iterator(); it2.hasNext();) {
+                Long observer = it2.next();
+                if (interest.observerLocations.size() <= interest.observerCount) {
+                    interest.observerLocations.add(new Vector3f());
+                }
+                Vector3f location = grid.getLocation(observer, interest.observerLocations.get(interest.observerCount));
+                if (location == null) {
+                    continue;
+                }
+                interest.observerCount++;
+                interest.nextRelevant.add(observer);
+                queryList.clear();
+                grid.queryRadius(location, radius, queryList);
+                interest.nextRelevant.addAll(queryList);
+            }
+            if (interest.observerCount == 0) {
+                //not observing anything (yet), everything is relevant
+                interest.nextRelevant.addAll(gridIds);
+            }
+            if (client != null) {
+                //objects that left the area of interest
+                for (Iterator<Long> it2 = gridIds.iterator(); it2.hasNext();) {
+                    Long id = it2.next();
+                    if (!interest.nextRelevant.contains(id) && interest.culled.add(id)) {
+                        fireRelevanceChanged(client, id, false);
+                    }
+                }
+                //objects that came back into the area of interest
+                for (Iterator<Long> it2 = interest.culled.iterator(); it2.hasNext();) {
+                    Long id = it2.next();
+                    if (!gridIds.contains(id)) {
+                        it2.remove();
+                    } else if (interest.nextRelevant.contains(id)) {
+                        it2.remove();
+                        fireRelevanceChanged(client, id, true);
+                    }
+                }
+            }
+            HashSet<Long> relevant = interest.relevant;
+            interest.relevant = interest.nextRelevant;
+            interest.nextRelevant = relevant;
+        }
+    }
+
+    public boolean isRelevant(HostedConnection client, long syncId) {
+        if (syncId < 0 || !gridIds.contains(syncId)) {
+            return true;
+        }
+        ClientInterest interest = clients.get(client.getId());
+        if (interest == null || interest.observerCount == 0) {
+            return true;
+        }
+        return interest.relevant.contains(syncId);
+    }
+
+    public boolean isRelevant(HostedConnection client, Vector3f location) {
+        ClientInterest interest = clients.get(client.getId());
+        if (interest == null || interest.observerCount == 0) {
+            return true;
+        }
+        float radiusSquared = radius * radius;
+        for (int i = 0; i < interest.observerCount; i++) {
+            Vector3f observer = interest.observerLocations.get(i);
+            float dx = observer.x - location.x;
+            float dz = observer.z - location.z;
+            if (dx * dx + dz * dz <= radiusSquared) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * the relevance falls off linearly with the distance (in XZ) to the
+     * nearest observer of the client
+     */
+    public float getRelevance(HostedConnection client, long syncId) {
+        if (!isRelevant(client, syncId)) {
+            return 0;
+        }
+        ClientInterest interest = clients.get(client.getId());
+        if (interest == null || interest.observerCount == 0) {
+            return 1;
+        }
+        Vector3f location = grid.getLocation(syncId, tempLocation);
+        if (location == null) {
+            return 1;
+        }
+        float distanceSquared = Float.MAX_VALUE;
+        for (int i = 0; i < interest.observerCount; i++) {
+            Vector3f observer = interest.observerLocations.get(i);
+            float dx = observer.x - location.x;
+            float dz = observer.z - location.z;
+            distanceSquared = Math.min(distanceSquared, dx * dx + dz * dz);
+        }
+        return Math.max(MIN_RELEVANCE, 1 - (float) Math.sqrt(distanceSquared) / radius);
+    }
+
+    public void addObserver(int clientId, long syncId) {
+        ClientInterest interest = clients.get(clientId);
+        if (interest == null) {
+            interest = new ClientInterest();
+            clients.put(clientId, interest);
+        }
+        if (!interest.observers.contains(syncId)) {
+            interest.observers.add(syncId);
+        }
+    }
+
+    public void removeObserver(int clientId, long syncId) {
+        ClientInterest interest = clients.get(clientId);
+        if (interest != null) {
+            interest.observers.remove(syncId);
+        }
+    }
+
+    public void removeClient(int clientId) {
+        clients.remove(clientId);
+    }
+
+    public void clear() {
+        clients.clear();
+        grid.clear();
+        gridIds.clear();
+    }
+
+    public void addInterestListener(InterestListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeInterestListener(InterestListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void fireRelevanceChanged(HostedConnection client, long syncId, boolean relevant) {
+        for (Iterator<InterestListener> it = listeners.iterator(); it.hasNext();) {
+            InterestListener listener = it.next();
+            listener.relevanceChanged(client, syncId, relevant);
+        }
+    }
+
+    public float getRadius() {
+        return radius;
+    }
+
+    public void setRadius(float radius) {
+        this.radius = radius;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.network.Message;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>Lock-free queue for messages that arrive on the network threads, many
+ * threads can add messages, only one thread (the update thread) takes them
+ * out.</p>
+ * <p>Adding a message swaps the head of a linked list of nodes and links the
+ * old head to the new node. The reader follows the links from a stub node,
+ * a node that has been added but not linked yet is picked up on the next
+ * drain.</p>
+ * @author normenhansen
+ */
+public class InboundQueue {
+
+    private static class Node {
+
+        private Object source;
+        private Message message;
+        private volatile Node next;
+
+        private Node(Object source, Message message) {
+            this.source = source;
+            this.message = message;
+        }
+    }
+    private final AtomicReference<Node> head;
+    //only accessed by the reader
+    private Node tail;
+
+    public InboundQueue() {
+        Node stub = new Node(null, null);
+        head = new AtomicReference<Node>(stub);
+        tail = stub;
+    }
+
+    /**
+     * adds a message, can be called from any thread
+     * @param source
+     * @param message
+     */
+    public void add(Object source, Message message) {
+        Node node = new Node(source, message);
+        Node previous = head.getAndSet(node);
+        previous.next = node;
+    }
+
+    /**
+     * hands all messages that have been added to the handler in the order
+     * they were added, only call from one thread
+     * @param handler
+     * @return the number of messages handled
+     */
+    public int drain(MessageHandler handler) {
+        int count = 0;
+        Node next = tail.next;
+        while (next != null) {
+            Object source = next.source;
+            Message message = next.message;
+            //the node becomes the new stub
+            next.source = null;
+            next.message = null;
+            tail = next;
+            handler.handleMessage(source, message);
+            count++;
+            next = tail.next;
+        }
+        return count;
+    }
+
+    /**
+     * @return true if no message is waiting, only reliable on the reader thread
+     */
+    public boolean isEmpty() {
+        return tail.next == null;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.math.Vector3f;
+import com.jme3.network.HostedConnection;
+
+/**
+ * Decides which synced objects are relevant for a client. When set on the
+ * server PhysicsSyncManager, messages for objects that are not relevant for
+ * a client are not sent to that client. Clients observe the world through
+ * one or more objects (e.g. the entities they control).
+ * @author normenhansen
+ */
+public interface InterestManager {
+
+    /**
+     * updates the relevant objects for all clients, called by the
+     * PhysicsSyncManager before sync data is sent
+     */
+    public void update();
+
+    /**
+     * checks if the object with the given sync id is relevant for the client,
+     * messages with negative sync ids are always relevant
+     */
+    public boolean isRelevant(HostedConnection client, long syncId);
+
+    /**
+     * checks if a world location (e.g. an effect) is relevant for the client
+     */
+    public boolean isRelevant(HostedConnection client, Vector3f location);
+
+    /**
+     * gets how relevant the object is for the client, used to prioritize
+     * objects when the bandwidth is limited
+     * @return 0 if the object is not relevant, up to 1 for the objects the
+     * client observes through
+     */
+    public float getRelevance(HostedConnection client, long syncId);
+
+    /**
+     * adds an object through which the client observes the world
+     */
+    public void addObserver(int clientId, long syncId);
+
+    public void removeObserver(int clientId, long syncId);
+
+    public void removeClient(int clientId);
+
+    /**
+     * removes all observers and relevance info
+     */
+    public void clear();
+
+    public void addInterestListener(InterestListener listener);
+
+    public void removeInterestListener(InterestListener listener);
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.bullet.control.CharacterControl;
+import com.jme3.bullet.objects.PhysicsRigidBody;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+
+/**
+ * <p>Keeps the last received states of one synced physics object on the client,
+ * sorted by their server time stamp. Instead of applying each state when it
+ * arrives the PhysicsSyncManager applies the state at a render time that lies
+ * an interpolation delay behind the server time, so there is usually a state
+ * before and after the render time to blend between. Locations and vectors
+ * are interpolated linearly, rotations spherically.</p>
+ * <p>When no newer state has arrived the location is extrapolated for at most
+ * maxExtrapolation seconds, after that the object is left to the local physics
+ * until the next state arrives.</p>
+ * @author normenhansen
+ */
+public class InterpolationBuffer {
+
+    private byte type;
+    private int size = 0;
+    private double[] times;
+    /**
+     * location (3), rotation (4), vector a (3), vector b (3) like SyncSnapshot
+     */
+    private float[] states;
+    private static final int FIELDS = 13;
+    private boolean settled = false;
+    private Vector3f location = new Vector3f();
+    private Quaternion rotation = new Quaternion();
+    private Vector3f vectorA = new Vector3f();
+    private Vector3f vectorB = new Vector3f();
+    private Quaternion tempRot1 = new Quaternion();
+    private Quaternion tempRot2 = new Quaternion();
+
+    /**
+     * @param type SyncSnapshot.TYPE_RIGIDBODY or SyncSnapshot.TYPE_CHARACTER
+     * @param capacity the number of states that are kept
+     */
+    public InterpolationBuffer(byte type, int capacity) {
+        this.type = type;
+        times = new double[capacity];
+        states = new float[capacity * FIELDS];
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * adds a state, states can arrive in any order. When the buffer is full
+     * the oldest state is dropped.
+     * @param time server time of the state
+     * @param location
+     * @param rotation null for characters
+     * @param vectorA linear velocity or walk direction
+     * @param vectorB angular velocity or view direction
+     */
+    public void add(double time, Vector3f location, Quaternion rotation, Vector3f vectorA, Vector3f vectorB) {
+        int index = size;
+        while (index > 0 && times[index - 1] > time) {
+            index--;
+        }
+        if (index > 0 && times[index - 1] == time) {
+            index--;
+        } else {
+            if (size == times.length) {
+                if (index == 0) {
+                    //older than everything we have
+                    return;
+                }
+                remove(0);
+                index--;
+            }
+            System.arraycopy(times, index, times, index + 1, size - index);
+            System.arraycopy(states, index * FIELDS, states, (index + 1) * FIELDS, (size - index) * FIELDS);
+            size++;
+        }
+        times[index] = time;
+        int offset = index * FIELDS;
+        set(offset, location);
+        if (rotation != null) {
+            states[offset + 3] = rotation.getX();
+            states[offset + 4] = rotation.getY();
+            states[offset + 5] = rotation.getZ();
+            states[offset + 6] = rotation.getW();
+        } else {
+            states[offset + 3] = 0;
+            states[offset + 4] = 0;
+            states[offset + 5] = 0;
+            states[offset + 6] = 1;
+        }
+        set(offset + 7, vectorA);
+        set(offset + 10, vectorB);
+        settled = false;
+    }
+
+    /**
+     * applies the state at the given time to a rigid body (or vehicle)
+     * @param renderTime server time to display
+     * @param maxInterval states further apart than this are not blended over
+     * the whole interval, the object waits at the older state instead
+     * @param maxExtrapolation
+     * @return false if nothing was applied
+     */
+    public boolean apply(double renderTime, double maxInterval, double maxExtrapolation, PhysicsRigidBody body) {
+        if (!sample(renderTime, maxInterval, maxExtrapolation)) {
+            return false;
+        }
+        body.setPhysicsLocation(location);
+        body.setPhysicsRotation(rotation);
+        body.setLinearVelocity(vectorA);
+        body.setAngularVelocity(vectorB);
+        return true;
+    }
+
+    /**
+     * applies the state at the given time to a character
+     * @see #apply(double, double, double, com.jme3.bullet.objects.PhysicsRigidBody)
+     */
+    public boolean apply(double renderTime, double maxInterval, double maxExtrapolation, CharacterControl character) {
+        if (!sample(renderTime, maxInterval, maxExtrapolation)) {
+            return false;
+        }
+        character.setPhysicsLocation(location);
+        character.setWalkDirection(vectorA);
+        character.setViewDirection(vectorB);
+        return true;
+    }
+
+    /**
+     * computes the state at the given time
+     * @return false if there is nothing to apply
+     */
+    private boolean sample(double renderTime, double maxInterval, double maxExtrapolation) {
+        if (size == 0 || settled) {
+            return false;
+        }
+        if (renderTime <= times[0]) {
+            get(0, 0, 0);
+            return true;
+        }
+        int last = size - 1;
+        if (renderTime >= times[last]) {
+            //extrapolate the location with the velocity of the last states
+            double extrapolation = renderTime - times[last];
+            if (extrapolation >= maxExtrapolation) {
+                extrapolation = maxExtrapolation;
+                //apply once more, then leave the object to the local physics
+                settled = true;
+            }
+            get(last, last, 0);
+            int offset = last * FIELDS;
+            if (type == SyncSnapshot.TYPE_RIGIDBODY) {
+                location.x += states[offset + 7] * extrapolation;
+                location.y += states[offset + 8] * extrapolation;
+                location.z += states[offset + 9] * extrapolation;
+            } else if (last > 0 && times[last] - times[last - 1] <= maxInterval) {
+                int prevOffset = (last - 1) * FIELDS;
+                float scale = (float) (extrapolation / (times[last] - times[last - 1]));
+                location.x += (states[offset] - states[prevOffset]) * scale;
+                location.y += (states[offset + 1] - states[prevOffset + 1]) * scale;
+                location.z += (states[offset + 2] - states[prevOffset + 2]) * scale;
+            }
+            return true;
+        }
+        int index = last - 1;
+        while (times[index] > renderTime) {
+            index--;
+        }
+        double start = times[index];
+        double interval = times[index + 1] - start;
+        if (interval > maxInterval) {
+            //the object did not change for a while, start moving late
+            start = times[index + 1] - maxInterval;
+            interval = maxInterval;
+        }
+        float blend = (float) ((renderTime - start) / interval);
+        if (blend < 0) {
+            blend = 0;
+        }
+        get(index, index + 1, blend);
+        return true;
+    }
+
+    /**
+     * blends the states at index a and b into the current state
+     */
+    private void get(int a, int b, float blend) {
+        int offsetA = a * FIELDS;
+        int offsetB = b * FIELDS;
+        lerp(offsetA, offsetB, blend, location);
+        lerp(offsetA + 7, offsetB + 7, blend, vectorA);
+        lerp(offsetA + 10, offsetB + 10, blend, vectorB);
+        if (type == SyncSnapshot.TYPE_RIGIDBODY) {
+            tempRot1.set(states[offsetA + 3], states[offsetA + 4], states[offsetA + 5], states[offsetA + 6]);
+            if (a == b || blend == 0) {
+                rotation.set(tempRot1);
+            } else {
+                tempRot2.set(states[offsetB + 3], states[offsetB + 4], states[offsetB + 5], states[offsetB + 6]);
+                rotation.slerp(tempRot1, tempRot2, blend);
+            }
+        }
+    }
+
+    private void lerp(int offsetA, int offsetB, float blend, Vector3f store) {
+        store.x = states[offsetA] + (states[offsetB] - states[offsetA]) * blend;
+        store.y = states[offsetA + 1] + (states[offsetB + 1] - states[offsetA + 1]) * blend;
+        store.z = states[offsetA + 2] + (states[offsetB + 2] - states[offsetA + 2]) * blend;
+    }
+
+    private void set(int offset, Vector3f vec) {
+        states[offset] = vec.x;
+        states[offset + 1] = vec.y;
+        states[offset + 2] = vec.z;
+    }
+
+    private void remove(int index) {
+        System.arraycopy(times, index + 1, times, index, size - index - 1);
+        System.arraycopy(states, (index + 1) * FIELDS, states, index * FIELDS, (size - index - 1) * FIELDS);
+        size--;
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * <p>Holds the sync messages that arrived on the client until they are due,
+ * ordered by their server time stamp (a binary heap, messages with the same
+ * time stay in the order they arrived).</p>
+ * <p>When the due messages are taken out, state messages that are followed
+ * by a newer due state message for the same object (same type and sync id)
+ * are dropped, only the newest state is applied. The same goes for
+ * snapshots. All other messages (adding and removing objects, events) are
+ * always kept.</p>
+ * @author normenhansen
+ */
+public class JitterBuffer {
+
+    private PhysicsSyncMessage[] messages = new PhysicsSyncMessage[64];
+    private long[] arrivals = new long[64];
+    private int size = 0;
+    private long arrivalCount = 0;
+    //due messages and the index of the newest state per type and object
+    private PhysicsSyncMessage[] due = new PhysicsSyncMessage[64];
+    private HashMap<Class, HashMap<Long, Integer>> newest = new HashMap<Class, HashMap<Long, Integer>>();
+    //statistics
+    private int maxSize = 0;
+    private long lateMessages = 0;
+    private double maxLateness = 0;
+    private double totalLateness = 0;
+    private long collapsedMessages = 0;
+
+    /**
+     * adds a message to the buffer
+     * @param message
+     * @param lateness how much later than its due time the message arrived,
+     * zero or less if it arrived in time
+     */
+    public void add(PhysicsSyncMessage message, double lateness) {
+        if (size == messages.length) {
+            PhysicsSyncMessage[] newMessages = new PhysicsSyncMessage[size * 2];
+            System.arraycopy(messages, 0, newMessages, 0, size);
+            messages = newMessages;
+            long[] newArrivals = new long[size * 2];
+            System.arraycopy(arrivals, 0, newArrivals, 0, size);
+            arrivals = newArrivals;
+        }
+        int index = size++;
+        messages[index] = message;
+        arrivals[index] = arrivalCount++;
+        siftUp(index);
+        maxSize = Math.max(maxSize, size);
+        if (lateness > 0) {
+            lateMessages++;
+            totalLateness += lateness;
+            maxLateness = Math.max(maxLateness, lateness);
+        }
+    }
+
+    /**
+     * takes all messages with a time stamp up to the given server time out of
+     * the buffer and adds them to the list in time order, superseded state
+     * messages are left out
+     * @param serverTime
+     * @param store
+     * @return the number of messages that were left out
+     */
+    public int drainDue(double serverTime, List<PhysicsSyncMessage> store) {
+        int count = 0;
+        while (size > 0 && messages[0].time <= serverTime) {
+            if (count == due.length) {
+                PhysicsSyncMessage[] newDue = new PhysicsSyncMessage[count * 2];
+                System.arraycopy(due, 0, newDue, 0, count);
+                due = newDue;
+            }
+            due[count++] = poll();
+        }
+        if (count == 0) {
+            return 0;
+        }
+        //find the newest state per type and object
+        for (Iterator<HashMap<Long, Integer>> it = newest.values().iterator(); it.hasNext();) {
+            it.next().clear();
+        }
+        for (int i = 0; i < count; i++) {
+            if (isCollapsible(due[i])) {
+                getNewest(due[i].getClass()).put(due[i].syncId, i);
+            }
+        }
+        int collapsed = 0;
+        for (int i = 0; i < count; i++) {
+            PhysicsSyncMessage message = due[i];
+            due[i] = null;
+            if (isCollapsible(message) && newest.get(message.getClass()).get(message.syncId) != i) {
+                collapsed++;
+                continue;
+            }
+            store.add(message);
+        }
+        collapsedMessages += collapsed;
+        return collapsed;
+    }
+
+    /**
+     * checks if a message only carries state that is replaced by the next
+     * message of the same type and object
+     */
+    protected boolean isCollapsible(PhysicsSyncMessage message) {
+        return message instanceof SequencedSyncMessage || message instanceof SyncSnapshotMessage;
+    }
+
+    private HashMap<Long, Integer> getNewest(Class type) {
+        HashMap<Long, Integer> map = newest.get(type);
+        if (map == null) {
+            map = new HashMap<Long, Integer>();
+            newest.put(type, map);
+        }
+        return map;
+    }
+
+    private PhysicsSyncMessage poll() {
+        PhysicsSyncMessage message = messages[0];
+        size--;
+        messages[0] = messages[size];
+        arrivals[0] = arrivals[size];
+        messages[size] = null;
+        if (size > 0) {
+            siftDown(0);
+        }
+        return message;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            messages[i] = null;
+        }
+        size = 0;
+    }
+
+    private boolean before(int a, int b) {
+        double timeA = messages[a].time;
+        double timeB = messages[b].time;
+        return timeA < timeB || (timeA == timeB && arrivals[a] < arrivals[b]);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!before(index, parent)) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int child = index * 2 + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && before(child + 1, child)) {
+                child++;
+            }
+            if (!before(child, index)) {
+                break;
+            }
+            swap(index, child);
+            index = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        PhysicsSyncMessage message = messages[a];
+        messages[a] = messages[b];
+        messages[b] = message;
+        long arrival = arrivals[a];
+        arrivals[a] = arrivals[b];
+        arrivals[b] = arrival;
+    }
+
+    /**
+     * @return the number of messages waiting in the buffer
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the highest number of waiting messages since the statistics
+     * were reset
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of messages that arrived after their due time
+     */
+    public long getLateMessages() {
+        return lateMessages;
+    }
+
+    /**
+     * @return the most seconds a message arrived after its due time
+     */
+    public double getMaxLateness() {
+        return maxLateness;
+    }
+
+    /**
+     * @return the average seconds late messages arrived after their due time
+     */
+    public double getAverageLateness() {
+        return lateMessages > 0 ? totalLateness / lateMessages : 0;
+    }
+
+    /**
+     * @return the number of state messages that were not applied because a
+     * newer one was due at the same time
+     */
+    public long getCollapsedMessages() {
+        return collapsedMessages;
+    }
+
+    public void resetStats() {
+        maxSize = size;
+        lateMessages = 0;
+        maxLateness = 0;
+        totalLateness = 0;
+        collapsedMessages = 0;
+    }
+}
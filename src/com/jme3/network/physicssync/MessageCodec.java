@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.network.serializing.Serializer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Handwritten serializer for one message type, replaces the reflective field
+ * serializer of jME. Codecs write the fields straight into the buffer of the
+ * message protocol using varints and quantized floats and do not allocate
+ * when writing. Register them with register() in the same order on server
+ * and client, the Serializer keys the message types by the short ids it
+ * hands out in registration order.
+ *
+ * The static methods are the building blocks for the codecs.
+ * @author normenhansen
+ */
+public abstract class MessageCodec<T> extends Serializer {
+
+    //quantization scales, values are sent as round(value * scale)
+    public static final float POSITION_SCALE = 256f;
+    public static final float VELOCITY_SCALE = 64f;
+    public static final float DIRECTION_SCALE = 4096f;
+    public static final float INPUT_SCALE = 1024f;
+    private static final float ROTATION_SCALE = 32767f / 0.70710677f;
+    private static final double TIME_SCALE = 1000000.0;
+    private final Class<T> type;
+
+    public MessageCodec(Class<T> type) {
+        this.type = type;
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * registers the codec for its message type
+     * @param codec
+     */
+    public static void register(MessageCodec codec) {
+        Serializer.registerClass(codec.getType(), codec);
+    }
+
+    /**
+     * writes the fields of the message
+     */
+    public abstract void write(ByteBuffer buffer, T message);
+
+    /**
+     * reads a message written by write()
+     */
+    public abstract T read(ByteBuffer buffer);
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <M> M readObject(ByteBuffer data, Class<M> c) throws IOException {
+        return (M) read(data);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void writeObject(ByteBuffer buffer, Object object) throws IOException {
+        write(buffer, (T) object);
+    }
+
+    /**
+     * writes the sync id and time stamp of a PhysicsSyncMessage
+     */
+    public static void writeHeader(ByteBuffer buffer, PhysicsSyncMessage message) {
+        writeVarLong(buffer, message.syncId);
+        writeTime(buffer, message.time);
+    }
+
+    public static void readHeader(ByteBuffer buffer, PhysicsSyncMessage message) {
+        message.syncId = readVarLong(buffer);
+        message.time = readTime(buffer);
+    }
+
+    /**
+     * writes an int with 7 bits per byte, zigzag encoded so small negative
+     * values stay small
+     */
+    public static void writeVarInt(ByteBuffer buffer, int value) {
+        int bits = (value << 1) ^ (value >> 31);
+        while ((bits & ~0x7F) != 0) {
+            buffer.put((byte) ((bits & 0x7F) | 0x80));
+            bits >>>= 7;
+        }
+        buffer.put((byte) bits);
+    }
+
+    public static int readVarInt(ByteBuffer buffer) {
+        int bits = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            bits |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (bits >>> 1) ^ -(bits & 1);
+    }
+
+    public static void writeVarLong(ByteBuffer buffer, long value) {
+        long bits = SyncSnapshot.zigZag(value);
+        while ((bits & ~0x7FL) != 0) {
+            buffer.put((byte) ((bits & 0x7F) | 0x80));
+            bits >>>= 7;
+        }
+        buffer.put((byte) bits);
+    }
+
+    public static long readVarLong(ByteBuffer buffer) {
+        long bits = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            bits |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return SyncSnapshot.unZigZag(bits);
+    }
+
+    public static void writeBoolean(ByteBuffer buffer, boolean value) {
+        buffer.put(value ? (byte) 1 : (byte) 0);
+    }
+
+    public static boolean readBoolean(ByteBuffer buffer) {
+        return buffer.get() != 0;
+    }
+
+    /**
+     * writes a time in seconds with microsecond precision
+     */
+    public static void writeTime(ByteBuffer buffer, double time) {
+        writeVarLong(buffer, Math.round(time * TIME_SCALE));
+    }
+
+    public static double readTime(ByteBuffer buffer) {
+        return readVarLong(buffer) / TIME_SCALE;
+    }
+
+    public static void writeQuantized(ByteBuffer buffer, float value, float scale) {
+        writeVarInt(buffer, Math.round(value * scale));
+    }
+
+    public static float readQuantized(ByteBuffer buffer, float scale) {
+        return readVarInt(buffer) / scale;
+    }
+
+    /**
+     * writes a vector quantized with the scale, null is not allowed
+     */
+    public static void writeVector(ByteBuffer buffer, Vector3f vector, float scale) {
+        writeQuantized(buffer, vector.x, scale);
+        writeQuantized(buffer, vector.y, scale);
+        writeQuantized(buffer, vector.z, scale);
+    }
+
+    public static Vector3f readVector(ByteBuffer buffer, float scale, Vector3f store) {
+        if (store == null) {
+            store = new Vector3f();
+        }
+        float x = readQuantized(buffer, scale);
+        float y = readQuantized(buffer, scale);
+        float z = readQuantized(buffer, scale);
+        return store.set(x, y, z);
+    }
+
+    /**
+     * writes a rotation in seven bytes, the index of its largest component
+     * and the other three components, the largest one is made positive and
+     * reconstructed when reading
+     */
+    public static void writeRotation(ByteBuffer buffer, Quaternion rotation) {
+        float x = rotation.getX();
+        float y = rotation.getY();
+        float z = rotation.getZ();
+        float w = rotation.getW();
+        int largest = 0;
+        float max = FastMath.abs(x);
+        if (FastMath.abs(y) > max) {
+            largest = 1;
+            max = FastMath.abs(y);
+        }
+        if (FastMath.abs(z) > max) {
+            largest = 2;
+            max = FastMath.abs(z);
+        }
+        if (FastMath.abs(w) > max) {
+            largest = 3;
+        }
+        float sign = (largest == 0 ? x : largest == 1 ? y : largest == 2 ? z : w) < 0 ? -1 : 1;
+        buffer.put((byte) largest);
+        if (largest != 0) {
+            buffer.putShort((short) Math.round(x * sign * ROTATION_SCALE));
+        }
+        if (largest != 1) {
+            buffer.putShort((short) Math.round(y * sign * ROTATION_SCALE));
+        }
+        if (largest != 2) {
+            buffer.putShort((short) Math.round(z * sign * ROTATION_SCALE));
+        }
+        if (largest != 3) {
+            buffer.putShort((short) Math.round(w * sign * ROTATION_SCALE));
+        }
+    }
+
+    public static Quaternion readRotation(ByteBuffer buffer, Quaternion store) {
+        if (store == null) {
+            store = new Quaternion();
+        }
+        int largest = buffer.get();
+        float x = largest != 0 ? buffer.getShort() / ROTATION_SCALE : 0;
+        float y = largest != 1 ? buffer.getShort() / ROTATION_SCALE : 0;
+        float z = largest != 2 ? buffer.getShort() / ROTATION_SCALE : 0;
+        float w = largest != 3 ? buffer.getShort() / ROTATION_SCALE : 0;
+        float missing = FastMath.sqrt(Math.max(0, 1 - (x * x + y * y + z * z + w * w)));
+        switch (largest) {
+            case 0:
+                x = missing;
+                break;
+            case 1:
+                y = missing;
+                break;
+            case 2:
+                z = missing;
+                break;
+            default:
+                w = missing;
+        }
+        return store.set(x, y, z, w);
+    }
+
+    /**
+     * writes a string as UTF-8 with its length, null is written as length 0
+     * and the empty string as 1
+     */
+    public static void writeString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            writeVarInt(buffer, 0);
+            return;
+        }
+        int length = value.length();
+        int bytes = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            bytes += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        writeVarInt(buffer, bytes + 1);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    public static String readString(ByteBuffer buffer) {
+        int bytes = readLength(buffer);
+        if (bytes < 0) {
+            return null;
+        }
+        char[] chars = new char[bytes];
+        int length = 0;
+        int end = buffer.position() + bytes;
+        while (buffer.position() < end) {
+            int b = buffer.get() & 0xFF;
+            if (b < 0x80) {
+                chars[length++] = (char) b;
+            } else if (b < 0xE0) {
+                chars[length++] = (char) (((b & 0x1F) << 6) | (buffer.get() & 0x3F));
+            } else {
+                int b2 = buffer.get() & 0x3F;
+                chars[length++] = (char) (((b & 0x0F) << 12) | (b2 << 6) | (buffer.get() & 0x3F));
+            }
+        }
+        return new String(chars, 0, length);
+    }
+
+    public static void writeBytes(ByteBuffer buffer, byte[] data) {
+        writeBytes(buffer, data, data != null ? data.length : 0);
+    }
+
+    /**
+     * writes the first length bytes of the array
+     */
+    public static void writeBytes(ByteBuffer buffer, byte[] data, int length) {
+        if (data == null) {
+            writeVarInt(buffer, 0);
+            return;
+        }
+        writeVarInt(buffer, length + 1);
+        buffer.put(data, 0, length);
+    }
+
+    public static byte[] readBytes(ByteBuffer buffer) {
+        int length = readLength(buffer);
+        if (length < 0) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        buffer.get(data);
+        return data;
+    }
+
+    /**
+     * reads the length written by writeString() and writeBytes(), the length
+     * is checked against the remaining data before anything is allocated
+     * @return the length or -1 for null
+     */
+    private static int readLength(ByteBuffer buffer) {
+        int length = readVarInt(buffer) - 1;
+        if (length < -1 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid length " + length + ", "
+                    + buffer.remaining() + " bytes remaining");
+        }
+        return length;
+    }
+}
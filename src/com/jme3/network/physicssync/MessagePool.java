@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.network.Message;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of messages for the server send path. Messages are serialized when
+ * they are sent, so a message can be released right after sending it and
+ * be filled again for the next object or tick. Messages keep the objects
+ * they own (e.g. the vectors of a SyncRigidBodyMessage) so refilling them
+ * does not allocate. Not thread safe, use from the update thread.
+ * @author normenhansen
+ */
+public class MessagePool {
+
+    private HashMap<Class, ArrayList<Message>> pools = new HashMap<Class, ArrayList<Message>>();
+    private int maxSize = 256;
+    private long created = 0;
+    private long obtained = 0;
+
+    /**
+     * gets a message of the type from the pool or creates a new one, the
+     * fields of the message are the ones it was released with
+     * @param type
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Message> T obtain(Class<T> type) {
+        obtained++;
+        ArrayList<Message> pool = pools.get(type);
+        if (pool != null && !pool.isEmpty()) {
+            return (T) pool.remove(pool.size() - 1);
+        }
+        created++;
+        try {
+            return type.getDeclaredConstructor().newInstance();
+        } catch (InstantiationException ex) {
+            Logger.getLogger(MessagePool.class.getName()).log(Level.SEVERE, "Cannot create message {0}", ex);
+        } catch (IllegalAccessException ex) {
+            Logger.getLogger(MessagePool.class.getName()).log(Level.SEVERE, "Cannot create message {0}", ex);
+        } catch (NoSuchMethodException ex) {
+            Logger.getLogger(MessagePool.class.getName()).log(Level.SEVERE, "Cannot create message {0}", ex);
+        } catch (InvocationTargetException ex) {
+            Logger.getLogger(MessagePool.class.getName()).log(Level.SEVERE, "Cannot create message {0}", ex.getCause());
+        }
+        return null;
+    }
+
+    /**
+     * returns a message to the pool, the message must not be used anymore
+     * @param message
+     */
+    public void release(Message message) {
+        ArrayList<Message> pool = pools.get(message.getClass());
+        if (pool == null) {
+            pool = new ArrayList<Message>();
+            pools.put(message.getClass(), pool);
+        }
+        if (pool.size() < maxSize) {
+            pool.add(message);
+        }
+    }
+
+    public void clear() {
+        pools.clear();
+    }
+
+    /**
+     * @return the number of messages that were created because the pool was
+     * empty
+     */
+    public long getCreatedMessages() {
+        return created;
+    }
+
+    /**
+     * @return the number of messages that were taken from the pool
+     */
+    public long getObtainedMessages() {
+        return obtained;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * sets how many messages per type the pool keeps
+     * @param maxSize
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.network.Message;
+import com.jme3.network.serializing.Serializer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Simulates the conditions of a network link for the messages a
+ * PhysicsSyncManager receives, so sync behaviour can be tested on one
+ * machine. Each message is held back by the latency plus a random jitter and
+ * by the time it takes to send it over a link with the given bandwidth.
+ * Unreliable messages can be lost or delayed further so later messages
+ * overtake them, reliable messages are never lost and keep their order per
+ * source like on a TCP connection.</p>
+ * <p>All random values come from one Random with the given seed, so the same
+ * sequence of messages sees the same conditions in each run.</p>
+ * <p>Messages are added on the network threads and handed on in delivery
+ * order on the update thread.</p>
+ * @author normenhansen
+ */
+public class NetworkSimulator {
+
+    private static class Entry implements Comparable<Entry> {
+
+        private Object source;
+        private Message message;
+        private double time;
+        private long order;
+
+        public int compareTo(Entry other) {
+            if (time != other.time) {
+                return time < other.time ? -1 : 1;
+            }
+            return order < other.order ? -1 : (order == other.order ? 0 : 1);
+        }
+    }
+
+    /**
+     * state of the link of one source
+     */
+    private static class Link {
+
+        //time the link is free to send the next message
+        private double freeTime = 0;
+        //delivery time of the last reliable message
+        private double reliableTime = 0;
+    }
+    private Random random;
+    private double latency = 0;
+    private double jitter = 0;
+    private float loss = 0;
+    private float reorder = 0;
+    private int bandwidth = 0;
+    private PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+    private HashMap<Object, Link> links = new HashMap<Object, Link>();
+    private ArrayList<Entry> due = new ArrayList<Entry>();
+    private ByteBuffer measureBuffer = ByteBuffer.allocate(32767);
+    private long order = 0;
+    //statistics
+    private long receivedMessages = 0;
+    private long receivedBytes = 0;
+    private long lostMessages = 0;
+    private long reorderedMessages = 0;
+    private long deliveredMessages = 0;
+    private double delayTotal = 0;
+
+    public NetworkSimulator(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * adds a message that arrived from the network, can be called from any
+     * thread
+     * @param source the connection or client the message came from
+     * @param message
+     * @param time the local time the message arrived at
+     */
+    public synchronized void add(Object source, Message message, double time) {
+        int size = measure(message);
+        receivedMessages++;
+        receivedBytes += size;
+        Link link = links.get(source);
+        if (link == null) {
+            link = new Link();
+            links.put(source, link);
+        }
+        if (!message.isReliable() && random.nextFloat() < loss) {
+            lostMessages++;
+            return;
+        }
+        double sendTime = time;
+        if (bandwidth > 0) {
+            sendTime = Math.max(time, link.freeTime) + (double) size / bandwidth;
+            link.freeTime = sendTime;
+        }
+        double deliveryTime = sendTime + latency + random.nextDouble() * jitter;
+        if (message.isReliable()) {
+            deliveryTime = Math.max(deliveryTime, link.reliableTime);
+            link.reliableTime = deliveryTime;
+        } else if (random.nextFloat() < reorder) {
+            //hold the message back so messages sent after it overtake it
+            deliveryTime += latency + jitter + random.nextDouble() * (latency + jitter);
+            reorderedMessages++;
+        }
+        Entry entry = new Entry();
+        entry.source = source;
+        entry.message = message;
+        entry.time = deliveryTime;
+        entry.order = order++;
+        queue.add(entry);
+        delayTotal += deliveryTime - time;
+    }
+
+    /**
+     * hands all messages that are due at the given time to the handler in
+     * delivery order, only call from one thread
+     * @param time the current local time
+     * @param handler
+     * @return the number of delivered messages
+     */
+    public int deliver(double time, MessageHandler handler) {
+        synchronized (this) {
+            while (!queue.isEmpty() && queue.peek().time <= time) {
+                due.add(queue.poll());
+            }
+        }
+        int count = due.size();
+        for (int i = 0; i < count; i++) {
+            Entry entry = due.get(i);
+            handler.handleMessage(entry.source, entry.message);
+        }
+        due.clear();
+        synchronized (this) {
+            deliveredMessages += count;
+        }
+        return count;
+    }
+
+    /**
+     * removes the link state of a source that disconnected
+     * @param source
+     */
+    public synchronized void removeSource(Object source) {
+        links.remove(source);
+    }
+
+    /**
+     * serializes the message to get its size
+     */
+    private int measure(Message message) {
+        measureBuffer.clear();
+        try {
+            Serializer.writeClassAndObject(measureBuffer, message);
+        } catch (IOException ex) {
+            Logger.getLogger(NetworkSimulator.class.getName()).log(Level.SEVERE, "Cannot measure message size: {0}", ex);
+        }
+        return measureBuffer.position();
+    }
+
+    public synchronized double getLatency() {
+        return latency;
+    }
+
+    /**
+     * sets the one way delay of each message in seconds
+     * @param latency
+     */
+    public synchronized void setLatency(double latency) {
+        this.latency = latency;
+    }
+
+    public synchronized double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * sets the maximum random delay in seconds that is added to the latency
+     * @param jitter
+     */
+    public synchronized void setJitter(double jitter) {
+        this.jitter = jitter;
+    }
+
+    public synchronized float getLoss() {
+        return loss;
+    }
+
+    /**
+     * sets the share (0-1) of unreliable messages that are lost
+     * @param loss
+     */
+    public synchronized void setLoss(float loss) {
+        this.loss = loss;
+    }
+
+    public synchronized float getReorder() {
+        return reorder;
+    }
+
+    /**
+     * sets the share (0-1) of unreliable messages that are held back so that
+     * later messages arrive before them
+     * @param reorder
+     */
+    public synchronized void setReorder(float reorder) {
+        this.reorder = reorder;
+    }
+
+    public synchronized int getBandwidth() {
+        return bandwidth;
+    }
+
+    /**
+     * sets the bytes per second each source can send, 0 for no limit
+     * @param bandwidth
+     */
+    public synchronized void setBandwidth(int bandwidth) {
+        this.bandwidth = bandwidth;
+    }
+
+    /**
+     * @return the number of messages that are waiting for delivery
+     */
+    public synchronized int getQueuedMessages() {
+        return queue.size();
+    }
+
+    public synchronized long getReceivedMessages() {
+        return receivedMessages;
+    }
+
+    /**
+     * @return the serialized size of all received messages
+     */
+    public synchronized long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    public synchronized long getLostMessages() {
+        return lostMessages;
+    }
+
+    public synchronized long getReorderedMessages() {
+        return reorderedMessages;
+    }
+
+    public synchronized long getDeliveredMessages() {
+        return deliveredMessages;
+    }
+
+    /**
+     * @return the average delay the simulator added to the messages that
+     * were not lost
+     */
+    public synchronized double getAverageDelay() {
+        long count = receivedMessages - lostMessages;
+        if (count == 0) {
+            return 0;
+        }
+        return delayTotal / count;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "NetworkSimulator[received=" + receivedMessages + " (" + receivedBytes + " bytes), lost=" + lostMessages
+                + ", reordered=" + reorderedMessages + ", delivered=" + deliveredMessages
+                + ", average delay=" + getAverageDelay() + "]";
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.network.HostedConnection;
+import com.jme3.network.Message;
+import com.jme3.network.serializing.Serializer;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * <p>Keeps a ConnectionTelemetry for each connection of a server, the
+ * PhysicsSyncManager feeds it with the messages it receives and sends.
+ * Connections whose round trip, loss, snapshot acknowledgement lag or
+ * inbound backlog exceed the limits are flagged as slow, a warning is logged
+ * when a connection becomes slow.</p>
+ * <p>With register() the telemetry and each connection are published as
+ * MBeans under the domain com.jme3.network.physicssync, so they can be read
+ * with JConsole or any other JMX client.</p>
+ * <p>Only the messages sent through the PhysicsSyncManager are counted as
+ * outgoing. The bytes of sync messages and snapshots are counted from their
+ * known size, other messages and all received messages are only serialized
+ * to count their bytes when byte measuring is enabled (jME does not expose
+ * the received bytes). jME does not expose the outbound queue of a
+ * connection either, the acknowledgement lag of the snapshots shows a
+ * client that cannot keep up.</p>
+ * @author normenhansen
+ */
+public class NetworkTelemetry implements NetworkTelemetryMBean {
+
+    private static final String DOMAIN = "com.jme3.network.physicssync";
+    private ConcurrentHashMap<Integer, ConnectionTelemetry> connections = new ConcurrentHashMap<Integer, ConnectionTelemetry>();
+    private MBeanServer mbeanServer;
+    private ThreadLocal<ByteBuffer> measureBuffers = new ThreadLocal<ByteBuffer>() {
+
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(32767);
+        }
+    };
+    private volatile double maxRoundTrip = 0.5;
+    private volatile float maxLoss = 0.1f;
+    private volatile int maxAckLag = 8;
+    private volatile int maxInboundBacklog = 64;
+    private volatile boolean measureBytes = false;
+
+    /**
+     * publishes the telemetry and its connections as MBeans on the platform
+     * MBean server
+     */
+    public void register() {
+        mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        register(this, "type=NetworkTelemetry");
+        for (Iterator<ConnectionTelemetry> it = connections.values().iterator(); it.hasNext();) {
+            ConnectionTelemetry connection = it.next();
+            register(connection, getName(connection.getId()));
+        }
+    }
+
+    /**
+     * removes the MBeans of the telemetry and its connections
+     */
+    public void unregister() {
+        if (mbeanServer == null) {
+            return;
+        }
+        unregister("type=NetworkTelemetry");
+        for (Iterator<ConnectionTelemetry> it = connections.values().iterator(); it.hasNext();) {
+            unregister(getName(it.next().getId()));
+        }
+        mbeanServer = null;
+    }
+
+    private String getName(int id) {
+        return "type=ConnectionTelemetry,id=" + id;
+    }
+
+    private void register(Object bean, String name) {
+        if (mbeanServer == null) {
+            return;
+        }
+        try {
+            mbeanServer.registerMBean(bean, new ObjectName(DOMAIN + ":" + name));
+        } catch (JMException ex) {
+            Logger.getLogger(NetworkTelemetry.class.getName()).log(Level.WARNING, "Cannot register MBean {0}: {1}", new Object[]{name, ex});
+        }
+    }
+
+    private void unregister(String name) {
+        if (mbeanServer == null) {
+            return;
+        }
+        try {
+            mbeanServer.unregisterMBean(new ObjectName(DOMAIN + ":" + name));
+        } catch (JMException ex) {
+            Logger.getLogger(NetworkTelemetry.class.getName()).log(Level.WARNING, "Cannot unregister MBean {0}: {1}", new Object[]{name, ex});
+        }
+    }
+
+    public void addConnection(HostedConnection connection) {
+        int id = (int) connection.getId();
+        ConnectionTelemetry telemetry = new ConnectionTelemetry(connection);
+        if (connections.putIfAbsent(id, telemetry) == null) {
+            register(telemetry, getName(id));
+        }
+    }
+
+    public void removeConnection(HostedConnection connection) {
+        int id = (int) connection.getId();
+        if (connections.remove(id) != null) {
+            unregister(getName(id));
+        }
+    }
+
+    /**
+     * @return the telemetry of the connection, null if the connection has
+     * not been added or has been removed
+     */
+    public ConnectionTelemetry getConnection(HostedConnection connection) {
+        return connections.get((int) connection.getId());
+    }
+
+    /**
+     * counts a message received from a connection, can be called from any
+     * thread
+     */
+    public void messageReceived(HostedConnection connection, Message message) {
+        ConnectionTelemetry telemetry = getConnection(connection);
+        if (telemetry != null) {
+            telemetry.messageReceived(message.getClass(), measure(message));
+        }
+    }
+
+    /**
+     * counts a message sent to a connection, can be called from any thread
+     * @param size the serialized size of the message, see measure()
+     */
+    public void messageSent(HostedConnection connection, Message message, int size) {
+        ConnectionTelemetry telemetry = getConnection(connection);
+        if (telemetry != null) {
+            telemetry.messageSent(message.getClass(), size);
+        }
+    }
+
+    /**
+     * updates the bandwidth of the connections and checks for slow ones,
+     * call regularly from the update thread
+     * @param time
+     */
+    public void update(double time) {
+        for (Iterator<ConnectionTelemetry> it = connections.values().iterator(); it.hasNext();) {
+            ConnectionTelemetry connection = it.next();
+            if (connection.update(time, this)) {
+                if (connection.isSlow()) {
+                    Logger.getLogger(NetworkTelemetry.class.getName()).log(Level.WARNING, "Slow client: {0}", connection);
+                } else {
+                    Logger.getLogger(NetworkTelemetry.class.getName()).log(Level.INFO, "Client recovered: {0}", connection);
+                }
+            }
+        }
+    }
+
+    /**
+     * serializes the message to get its size if byte measuring is enabled,
+     * can be called from any thread
+     * @return the size or 0 if bytes are not measured
+     */
+    public int measure(Message message) {
+        if (!measureBytes) {
+            return 0;
+        }
+        ByteBuffer buffer = measureBuffers.get();
+        buffer.clear();
+        try {
+            Serializer.writeClassAndObject(buffer, message);
+        } catch (IOException ex) {
+            Logger.getLogger(NetworkTelemetry.class.getName()).log(Level.SEVERE, "Cannot measure message size: {0}", ex);
+        }
+        return buffer.position();
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    public int[] getSlowConnections() {
+        ArrayList<Integer> slow = new ArrayList<Integer>();
+        for (Iterator<ConnectionTelemetry> it = connections.values().iterator(); it.hasNext();) {
+            ConnectionTelemetry connection = it.next();
+            if (connection.isSlow()) {
+                slow.add(connection.getId());
+            }
+        }
+        int[] ids = new int[slow.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = slow.get(i);
+        }
+        return ids;
+    }
+
+    public String[] getConnectionReports() {
+        ArrayList<String> reports = new ArrayList<String>();
+        for (Iterator<ConnectionTelemetry> it = connections.values().iterator(); it.hasNext();) {
+            reports.add(it.next().toString());
+        }
+        return reports.toArray(new String[reports.size()]);
+    }
+
+    public double getMaxRoundTrip() {
+        return maxRoundTrip;
+    }
+
+    /**
+     * sets the smoothed round trip in seconds above which a client is slow
+     * @param maxRoundTrip
+     */
+    public void setMaxRoundTrip(double maxRoundTrip) {
+        this.maxRoundTrip = maxRoundTrip;
+    }
+
+    public float getMaxLoss() {
+        return maxLoss;
+    }
+
+    /**
+     * sets the estimated loss (0-1) above which a client is slow
+     * @param maxLoss
+     */
+    public void setMaxLoss(float maxLoss) {
+        this.maxLoss = maxLoss;
+    }
+
+    public int getMaxAckLag() {
+        return maxAckLag;
+    }
+
+    /**
+     * sets how many snapshots a client may be behind in acknowledging before
+     * it is slow
+     * @param maxAckLag
+     */
+    public void setMaxAckLag(int maxAckLag) {
+        this.maxAckLag = maxAckLag;
+    }
+
+    public boolean isMeasureBytes() {
+        return measureBytes;
+    }
+
+    /**
+     * enables serializing each received message and each sent message of
+     * unknown size again to count its bytes
+     * @param measureBytes
+     */
+    public void setMeasureBytes(boolean measureBytes) {
+        this.measureBytes = measureBytes;
+    }
+
+    public int getMaxInboundBacklog() {
+        return maxInboundBacklog;
+    }
+
+    /**
+     * sets how many messages of a client may wait for the update thread
+     * before it is slow
+     * @param maxInboundBacklog
+     */
+    public void setMaxInboundBacklog(int maxInboundBacklog) {
+        this.maxInboundBacklog = maxInboundBacklog;
+    }
+}
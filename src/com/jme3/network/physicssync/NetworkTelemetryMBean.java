@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+/**
+ * JMX view of the NetworkTelemetry of a server.
+ * @author normenhansen
+ */
+public interface NetworkTelemetryMBean {
+
+    public int getConnectionCount();
+
+    /**
+     * @return the ids of the connections that are flagged as slow
+     */
+    public int[] getSlowConnections();
+
+    /**
+     * @return one line per connection
+     */
+    public String[] getConnectionReports();
+
+    public double getMaxRoundTrip();
+
+    public void setMaxRoundTrip(double maxRoundTrip);
+
+    public float getMaxLoss();
+
+    public void setMaxLoss(float maxLoss);
+
+    public int getMaxAckLag();
+
+    public void setMaxAckLag(int maxAckLag);
+
+    public int getMaxInboundBacklog();
+
+    public void setMaxInboundBacklog(int maxInboundBacklog);
+
+    public boolean isMeasureBytes();
+
+    public void setMeasureBytes(boolean measureBytes);
+}
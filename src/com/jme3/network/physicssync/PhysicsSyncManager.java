@@ -37,12 +37,25 @@ import com.jme3.bullet.control.CharacterControl;
 import com.jme3.bullet.control.RigidBodyControl;
 import com.jme3.bullet.control.VehicleControl;
 import com.jme3.bullet.objects.PhysicsRigidBody;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
 import com.jme3.network.Server;
 import com.jme3.network.Client;
+import com.jme3.network.ConnectionListener;
+import com.jme3.network.Filter;
 import com.jme3.network.HostedConnection;
 import com.jme3.network.Message;
 import com.jme3.network.MessageListener;
+import com.jme3.network.serializing.Serializer;
 import com.jme3.scene.Spatial;
+import com.jme3.util.IntMap;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -52,36 +65,159 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * <p>Handles syncing of physics enabled server/client games. Puts messages in a queue
- * and executes them based on server time stamp plus an offset on the client.
- * The offset is calculated for each arriving message, if the time offset change
- * is bigger than maxDelay or smaller than zero (the message would be played either
- * very late or has happened already) then the offset time is adjusted.</p>
- * <p></p>
+ * <p>Handles syncing of physics enabled server/client games. Messages arrive
+ * in a lock-free InboundQueue and are handed to the MessageHandlers of their
+ * type on the update thread. Puts sync messages in a queue
+ * and executes them on the client when the estimated server time minus the
+ * view delay has passed their time stamp.</p>
+ * <p>Server and client run on the monotonic clock of their machine. The
+ * client estimates the server time with periodic pings, see ClockSync, the
+ * estimate is used for playing messages, interpolation and the view time for
+ * lag compensation.</p>
+ * <p>Waiting messages are kept in a JitterBuffer ordered by time, when
+ * several state messages for the same object are due in one frame only the
+ * newest is applied.</p>
+ * <p>In snapshot mode the server packs the state of all synced objects into one
+ * quantized SyncSnapshotMessage per tick and connection, delta encoded against
+ * the last snapshot that connection acknowledged.</p>
+ * <p>If an InterestManager is set, sync data of objects is only sent to the
+ * clients the object is relevant for.</p>
+ * <p>With unreliable sync enabled, state messages (SequencedSyncMessage) and
+ * snapshots are sent over the unreliable channel. State messages are
+ * numbered per object and messages that arrive after a newer one for the
+ * same object are dropped. All other messages (e.g. adding and removing
+ * objects) stay reliable.</p>
+ * <p>With a sync budget set, the server only sends the objects with the
+ * highest priority to each client per tick so that the estimated size of the
+ * sync data stays within the budget, see PriorityAccumulator. The message of
+ * an object is serialized once and broadcast to all clients that selected
+ * it.</p>
+ * <p>With interpolation enabled the client does not apply rigid body and
+ * character states when they come due but puts them into an
+ * InterpolationBuffer per object when they arrive (snapshots are decoded on
+ * arrival), each frame the objects are set to the
+ * state at the current server time minus the interpolation delay.</p>
+ * <p>The sync messages the server sends are taken from a MessagePool and
+ * released after sending, with allocation measuring enabled the bytes the
+ * update thread allocates per sync tick are recorded.</p>
+ * <p>Objects with a predicting PredictionControl (e.g. the entity of the
+ * local player) are neither interpolated nor set, their states are handed
+ * to the control for reconciliation.</p>
+ * <p>For testing, a NetworkSimulator can be set that holds back, drops and
+ * reorders the received messages, the client records the latency of messages
+ * and the corrections of predicted objects in a SyncStatistics.</p>
+ * <p>With a NetworkTelemetry set, the server counts the messages and bytes
+ * it receives from and sends to each connection and tracks round trip, loss
+ * and acknowledgement lag of each client.</p>
  * @author normenhansen
  */
-public class PhysicsSyncManager extends AbstractAppState implements MessageListener {
+public class PhysicsSyncManager extends AbstractAppState implements MessageListener, ConnectionListener {
 
+    private static final int SNAPSHOT_HISTORY = 32;
     private Server server;
     private Client client;
     private float syncFrequency = 0.25f;
     LinkedList<SyncMessageValidator> validators = new LinkedList<SyncMessageValidator>();
     HashMap<Long, Object> syncObjects = new HashMap<Long, Object>();
     double time = 0;
-    double offset = Double.MIN_VALUE;
+    private ClockSync clock = new ClockSync();
+    private MessageHandler clockHandler = new MessageHandler() {
+
+        public void handleMessage(Object source, Message message) {
+            clock.addSample((TimeSyncMessage) message);
+        }
+    };
     private double maxDelay = 0.50;
     float syncTimer = 0;
-    LinkedList<PhysicsSyncMessage> messageQueue = new LinkedList<PhysicsSyncMessage>();
+    JitterBuffer messageQueue = new JitterBuffer();
+    //messages from the network threads and the handlers per message type
+    private InboundQueue inbound = new InboundQueue();
+    private HashMap<Class, MessageHandler[]> handlers = new HashMap<Class, MessageHandler[]>();
+    private MessageHandler dispatcher = new MessageHandler() {
+
+        public void handleMessage(Object source, Message message) {
+            dispatch(source, message);
+        }
+    };
+    private MessageHandler receiver = new MessageHandler() {
+
+        public void handleMessage(Object source, Message message) {
+            receive(source, message);
+        }
+    };
+    private MessageHandler syncHandler = new MessageHandler() {
+
+        public void handleMessage(Object source, Message message) {
+            handleSyncMessage(source, message);
+        }
+    };
+    private ArrayList<PhysicsSyncMessage> dueMessages = new ArrayList<PhysicsSyncMessage>();
     Application app;
+    //snapshot mode
+    private boolean snapshotMode = false;
+    private int snapshotTick = 0;
+    private int lastSnapshotTick = -1;
+    private SyncSnapshot[] snapshots = new SyncSnapshot[SNAPSHOT_HISTORY];
+    private HashMap<Integer, SnapshotClient> snapshotClients = new HashMap<Integer, SnapshotClient>();
+    private SnapshotBuffer snapshotBuffer = new SnapshotBuffer();
+    //bandwidth statistics
+    private boolean measureBandwidth = false;
+    private ByteBuffer measureBuffer;
+    private int syncBytesLastTick = 0;
+    private long syncBytesTotal = 0;
+    private long syncTicks = 0;
+    //allocation statistics
+    private boolean measureAllocation = false;
+    private long syncAllocatedLastTick = 0;
+    private long syncAllocatedTotal = 0;
+    private long allocationTicks = 0;
+    private MessagePool messagePool = new MessagePool();
+    //network simulation and sync metrics
+    private volatile NetworkSimulator simulator;
+    private SyncStatistics statistics;
+    //per connection telemetry on the server
+    private volatile NetworkTelemetry telemetry;
+    private TelemetryFilter telemetryFilter = new TelemetryFilter();
+    //interest management
+    private InterestManager interestManager;
+    private RelevanceFilter relevanceFilter = new RelevanceFilter();
+    private SelectionFilter selectionFilter = new SelectionFilter();
+    //unreliable sync
+    private boolean unreliableSync = false;
+    private HashMap<Long, int[]> sendSequences = new HashMap<Long, int[]>();
+    private HashMap<Class, HashMap<Long, Integer>> receivedSequences = new HashMap<Class, HashMap<Long, Integer>>();
+    private long droppedMessages = 0;
+    //bandwidth budget
+    private int syncBudget = 0;
+    private PriorityAccumulator priorities = new PriorityAccumulator();
+    private double lastSyncTime = 0;
+    private HostedConnection[] sendConnections = new HostedConnection[8];
+    private int[] sendBytes = new int[8];
+    private int[] sendEntries = new int[8];
+    //index of each send connection by connection id
+    private IntMap<Integer> sendIndices = new IntMap<Integer>();
+    //interpolation
+    private boolean interpolation = false;
+    private double interpolationDelay = 0.25;
+    private double maxExtrapolation = 0.25;
+    private int interpolationStates = 8;
+    private HashMap<Long, InterpolationBuffer> interpolationBuffers = new HashMap<Long, InterpolationBuffer>();
+    private Vector3f tempLocation = new Vector3f();
+    private Vector3f tempVectorA = new Vector3f();
+    private Vector3f tempVectorB = new Vector3f();
+    private Quaternion tempRotation = new Quaternion();
 
     public PhysicsSyncManager(Application app, Server server) {
         this.app = app;
         this.server = server;
+        server.addConnectionListener(this);
+        server.addMessageListener(this, TimeSyncMessage.class);
     }
 
     public PhysicsSyncManager(Application app, Client client) {
         this.app = app;
         this.client = client;
+        addMessageHandler(clockHandler, TimeSyncMessage.class);
     }
 
     /**
@@ -91,20 +227,33 @@ public class PhysicsSyncManager extends AbstractAppState implements MessageListe
      */
     @Override
     public void update(float tpf) {
-        time += tpf;
-        if (time < 0) {
-            //TODO: overflow
-            time = 0;
+        if (simulator != null) {
+            simulator.deliver(ClockSync.getClockTime(), receiver);
         }
+        inbound.drain(dispatcher);
+        time = ClockSync.getClockTime();
         if (client != null) {
-            for (Iterator<PhysicsSyncMessage> it = messageQueue.iterator(); it.hasNext();) {
-                PhysicsSyncMessage message = it.next();
-                if (message.time >= time + offset) {
-                    doMessage(message);
-                    it.remove();
-                }
+            clock.update(tpf);
+            TimeSyncMessage ping = clock.createPing(time);
+            if (ping != null) {
+                client.send(ping);
+            }
+            double viewTime = getViewTime();
+            if (viewTime < 0) {
+                return;
+            }
+            messageQueue.drainDue(viewTime, dueMessages);
+            for (int i = 0; i < dueMessages.size(); i++) {
+                doMessage(dueMessages.get(i));
+            }
+            dueMessages.clear();
+            if (interpolation) {
+                interpolate();
             }
         } else if (server != null) {
+            if (telemetry != null) {
+                telemetry.update(time);
+            }
             syncTimer += tpf;
             if (syncTimer >= syncFrequency) {
                 sendSyncData();
@@ -130,6 +279,8 @@ public class PhysicsSyncManager extends AbstractAppState implements MessageListe
         for (Iterator<Entry<Long, Object>> it = syncObjects.entrySet().iterator(); it.hasNext();) {
             Entry<Long, Object> entry = it.next();
             if (entry.getValue() == object) {
+                interpolationBuffers.remove(entry.getKey());
+                removeSequences(entry.getKey());
                 it.remove();
                 return;
             }
@@ -142,10 +293,75 @@ public class PhysicsSyncManager extends AbstractAppState implements MessageListe
      */
     public void removeObject(long id) {
         syncObjects.remove(id);
+        interpolationBuffers.remove(id);
+        removeSequences(id);
     }
 
     public void clearObjects() {
+        priorities.clear();
         syncObjects.clear();
+        interpolationBuffers.clear();
+        sendSequences.clear();
+        receivedSequences.clear();
+    }
+
+    private void removeSequences(long id) {
+        sendSequences.remove(id);
+        resetReceivedSequences(id);
+    }
+
+    /**
+     * forgets the sequence numbers of the messages received for an object,
+     * e.g. when another client starts to send them and numbers them from 0
+     * @param id
+     */
+    public void resetReceivedSequences(long id) {
+        for (Iterator<HashMap<Long, Integer>> it = receivedSequences.values().iterator(); it.hasNext();) {
+            it.next().remove(id);
+        }
+    }
+
+    /**
+     * checks if a state message is newer than the last one of the same type
+     * that arrived for its object and remembers its sequence number
+     * @return false if the message is old and should be dropped
+     */
+    private boolean checkSequence(SequencedSyncMessage message) {
+        HashMap<Long, Integer> sequences = receivedSequences.get(message.getClass());
+        if (sequences == null) {
+            sequences = new HashMap<Long, Integer>();
+            receivedSequences.put(message.getClass(), sequences);
+        }
+        Integer last = sequences.get(message.syncId);
+        if (last != null && !SequencedSyncMessage.isNewer(message.sequence, last)) {
+            droppedMessages++;
+            return false;
+        }
+        sequences.put(message.syncId, message.sequence);
+        return true;
+    }
+
+    /**
+     * gets the next sequence number for state messages of an object, the
+     * numbers of each object start at 0
+     */
+    private int nextSequence(Long id) {
+        int[] sequence = sendSequences.get(id);
+        if (sequence == null) {
+            sequence = new int[]{0};
+            sendSequences.put(id, sequence);
+        }
+        return sequence[0]++;
+    }
+
+    /**
+     * sets the channel a message is sent on, state messages and snapshots
+     * are sent unreliably when unreliable sync is enabled
+     */
+    private void setChannel(PhysicsSyncMessage msg) {
+        if (msg instanceof SequencedSyncMessage || msg instanceof SyncSnapshotMessage) {
+            msg.setReliable(!unreliableSync);
+        }
     }
 
     /**
@@ -153,6 +369,13 @@ public class PhysicsSyncManager extends AbstractAppState implements MessageListe
      * @param message
      */
     protected void doMessage(PhysicsSyncMessage message) {
+        if (statistics != null && client != null) {
+            statistics.addApplyLatency(getServerTime() - message.time);
+        }
+        if (message instanceof SyncSnapshotMessage) {
+            message.applyData(this);
+            return;
+        }
         Object object = syncObjects.get(message.syncId);
         if (object != null) {
             message.applyData(object);
@@ -162,30 +385,263 @@ public class PhysicsSyncManager extends AbstractAppState implements MessageListe
     }
 
     /**
-     * enqueues the message and updates the offset of the sync manager based on the
-     * time stamp
+     * enqueues the message to be played when the view time reaches its time
+     * stamp, the first message initializes the server time estimate until a
+     * ping has been answered
      * @param message
      */
     protected void enqueueMessage(PhysicsSyncMessage message) {
-        if (offset == Double.MIN_VALUE) {
-            offset = this.time - message.time;
-            Logger.getLogger(PhysicsSyncManager.class.getName()).log(Level.INFO, "Initial offset {0}", offset);
+        if (!clock.isInitialized()) {
+            clock.initialize(message.time, time);
         }
-        double delayTime = (message.time + offset) - time;
-        if (delayTime > maxDelay) {
-            offset -= delayTime - maxDelay;
-            Logger.getLogger(PhysicsSyncManager.class.getName()).log(Level.INFO, "Decrease offset due to high delaytime ({0})", delayTime);
-        } else if (delayTime < 0) {
-            offset -= delayTime;
-            Logger.getLogger(PhysicsSyncManager.class.getName()).log(Level.INFO, "Increase offset due to low delaytime ({0})", delayTime);
+        double lateness = getViewTime() - message.time;
+        if (statistics != null) {
+            statistics.addArrivalLatency(getServerTime() - message.time);
+        }
+        if (interpolation && bufferMessage(message)) {
+            return;
+        }
+        messageQueue.add(message, lateness);
+    }
+
+    /**
+     * puts the state of a rigid body or character message into the
+     * InterpolationBuffer of its object. Snapshots are decoded and their
+     * entries buffered when they arrive, so the buffers hold states ahead of
+     * the render time and the snapshot is acknowledged right away.
+     * @return false if the message is no state message
+     */
+    private boolean bufferMessage(PhysicsSyncMessage message) {
+        if (message instanceof SyncSnapshotMessage) {
+            applySnapshot((SyncSnapshotMessage) message);
+            return true;
+        }
+        if (getPrediction(syncObjects.get(message.syncId)) != null) {
+            return false;
+        }
+        if (message instanceof SyncRigidBodyMessage) {
+            SyncRigidBodyMessage msg = (SyncRigidBodyMessage) message;
+            tempRotation.fromRotationMatrix(msg.rotation);
+            getInterpolationBuffer(msg.syncId, SyncSnapshot.TYPE_RIGIDBODY).add(msg.time,
+                    msg.location, tempRotation, msg.linearVelocity, msg.angularVelocity);
+            return true;
+        } else if (message instanceof SyncCharacterMessage) {
+            SyncCharacterMessage msg = (SyncCharacterMessage) message;
+            getInterpolationBuffer(msg.syncId, SyncSnapshot.TYPE_CHARACTER).add(msg.time,
+                    msg.location, null, msg.walkDirection, msg.viewDirection);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the PredictionControl of the sync object if it is predicting,
+     * null otherwise
+     */
+    static PredictionControl getPrediction(Object object) {
+        if (!(object instanceof Spatial)) {
+            return null;
+        }
+        PredictionControl control = ((Spatial) object).getControl(PredictionControl.class);
+        if (control != null && control.isPredicting()) {
+            return control;
+        }
+        return null;
+    }
+
+    private InterpolationBuffer getInterpolationBuffer(long id, byte type) {
+        InterpolationBuffer buffer = interpolationBuffers.get(id);
+        if (buffer == null || buffer.getType() != type) {
+            buffer = new InterpolationBuffer(type, interpolationStates);
+            interpolationBuffers.put(id, buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * applies the interpolated states of all buffered objects for the current
+     * render time
+     */
+    protected void interpolate() {
+        double renderTime = getViewTime();
+        for (Iterator<Entry<Long, InterpolationBuffer>> it = interpolationBuffers.entrySet().iterator(); it.hasNext();) {
+            Entry<Long, InterpolationBuffer> entry = it.next();
+            Object object = syncObjects.get(entry.getKey());
+            if (!(object instanceof Spatial) || getPrediction(object) != null) {
+                it.remove();
+                continue;
+            }
+            Spatial spat = (Spatial) object;
+            InterpolationBuffer buffer = entry.getValue();
+            if (buffer.getType() == SyncSnapshot.TYPE_CHARACTER) {
+                CharacterControl control = spat.getControl(CharacterControl.class);
+                if (control != null) {
+                    buffer.apply(renderTime, interpolationDelay, maxExtrapolation, control);
+                }
+            } else {
+                PhysicsRigidBody body = spat.getControl(RigidBodyControl.class);
+                if (body == null) {
+                    body = spat.getControl(VehicleControl.class);
+                }
+                if (body != null) {
+                    buffer.apply(renderTime, interpolationDelay, maxExtrapolation, body);
+                }
+            }
         }
-        messageQueue.add(message);
     }
 
     /**
      * sends sync data for all active physics objects
      */
     protected void sendSyncData() {
+        long allocated = measureAllocation ? getAllocatedBytes() : -1;
+        syncBytesLastTick = 0;
+        if (interestManager != null) {
+            interestManager.update();
+        }
+        if (syncBudget > 0) {
+            priorities.update(syncObjects, (float) (time - lastSyncTime));
+        }
+        lastSyncTime = time;
+        if (snapshotMode) {
+            sendSnapshot();
+        } else if (syncBudget > 0) {
+            sendPrioritized();
+        } else {
+            for (Iterator<Entry<Long, Object>> it = syncObjects.entrySet().iterator(); it.hasNext();) {
+                Entry<Long, Object> entry = it.next();
+                if (entry.getValue() instanceof Spatial) {
+                    PhysicsSyncMessage msg = createSyncMessage(entry.getKey(), (Spatial) entry.getValue());
+                    if (msg != null) {
+                        int connections = broadcast(msg);
+                        syncBytesLastTick += measure(msg) * connections;
+                        messagePool.release(msg);
+                    }
+                }
+            }
+        }
+        if (measureBandwidth) {
+            syncBytesTotal += syncBytesLastTick;
+            syncTicks++;
+            Logger.getLogger(PhysicsSyncManager.class.getName()).log(Level.FINE, "Sync bytes this tick: {0}", syncBytesLastTick);
+        }
+        if (allocated >= 0) {
+            syncAllocatedLastTick = getAllocatedBytes() - allocated;
+            syncAllocatedTotal += syncAllocatedLastTick;
+            allocationTicks++;
+            Logger.getLogger(PhysicsSyncManager.class.getName()).log(Level.FINE, "Sync allocated bytes this tick: {0}", syncAllocatedLastTick);
+        }
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far or -1 if the
+     * VM cannot tell
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * sends sync messages for the objects with the highest priority to each
+     * client, as many as fit into the sync budget. The message of an object
+     * is created once and broadcast to all clients that selected it, its
+     * encoded size is counted for each of them.
+     */
+    protected void sendPrioritized() {
+        int count = 0;
+        Collection<HostedConnection> connections = server.getConnections();
+        for (Iterator<HostedConnection> it = connections.iterator(); it.hasNext();) {
+            HostedConnection connection = it.next();
+            if (priorities.select(connection, interestManager, syncBudget, true) == 0) {
+                continue;
+            }
+            if (count == sendConnections.length) {
+                HostedConnection[] newConnections = new HostedConnection[count * 2];
+                System.arraycopy(sendConnections, 0, newConnections, 0, count);
+                sendConnections = newConnections;
+                sendBytes = new int[count * 2];
+                sendEntries = new int[count * 2];
+            }
+            sendIndices.put(connection.getId(), count);
+            sendConnections[count++] = connection;
+        }
+        for (int i = 0; i < count; i++) {
+            sendBytes[i] = 0;
+            sendEntries[i] = 0;
+        }
+        for (Iterator<Entry<Long, Object>> it = syncObjects.entrySet().iterator(); it.hasNext();) {
+            Entry<Long, Object> entry = it.next();
+            if (!(entry.getValue() instanceof Spatial)) {
+                continue;
+            }
+            if (!selectionFilter.set(entry.getKey(), count)) {
+                continue;
+            }
+            PhysicsSyncMessage msg = createSyncMessage(entry.getKey(), (Spatial) entry.getValue());
+            if (msg == null) {
+                continue;
+            }
+            msg.time = time;
+            setChannel(msg);
+            selectionFilter.size = serialize(msg);
+            broadcast(selectionFilter, msg, selectionFilter.size);
+            messagePool.release(msg);
+        }
+        for (int i = 0; i < count; i++) {
+            priorities.sent(sendConnections[i], sendBytes[i], sendEntries[i]);
+            syncBytesLastTick += sendBytes[i];
+            sendConnections[i] = null;
+        }
+        sendIndices.clear();
+    }
+
+    /**
+     * creates the sync message for an active rigid body or character
+     * @return the message or null if there is nothing to sync
+     */
+    private SequencedSyncMessage createSyncMessage(Long id, Spatial spat) {
+        SequencedSyncMessage msg = null;
+        PhysicsRigidBody body = spat.getControl(RigidBodyControl.class);
+        if (body == null) {
+            body = spat.getControl(VehicleControl.class);
+        }
+        if (body != null) {
+            if (body.isActive()) {
+                SyncRigidBodyMessage bodyMessage = messagePool.obtain(SyncRigidBodyMessage.class);
+                bodyMessage.readData(body);
+                msg = bodyMessage;
+            }
+        } else {
+            CharacterControl control = spat.getControl(CharacterControl.class);
+            if (control != null) {
+                SyncCharacterMessage characterMessage = messagePool.obtain(SyncCharacterMessage.class);
+                characterMessage.readData(control);
+                msg = characterMessage;
+            }
+        }
+        if (msg != null) {
+            msg.syncId = id;
+            msg.sequence = nextSequence(id);
+        }
+        return msg;
+    }
+
+    /**
+     * captures a snapshot of all synced physics objects and sends it to each
+     * client, delta encoded against the last snapshot the client acknowledged
+     */
+    protected void sendSnapshot() {
+        int tick = snapshotTick++;
+        SyncSnapshot snapshot = snapshots[tick % SNAPSHOT_HISTORY];
+        if (snapshot == null) {
+            snapshot = new SyncSnapshot();
+            snapshots[tick % SNAPSHOT_HISTORY] = snapshot;
+        }
+        snapshot.reset(tick);
         for (Iterator<Entry<Long, Object>> it = syncObjects.entrySet().iterator(); it.hasNext();) {
             Entry<Long, Object> entry = it.next();
             if (entry.getValue() instanceof Spatial) {
@@ -194,32 +650,209 @@ public class PhysicsSyncManager extends AbstractAppState implements MessageListe
                 if (body == null) {
                     body = spat.getControl(VehicleControl.class);
                 }
-                if (body != null && body.isActive()) {
-                    SyncRigidBodyMessage msg = new SyncRigidBodyMessage(entry.getKey(), body);
-                    broadcast(msg);
+                if (body != null) {
+                    snapshot.capture(entry.getKey(), body);
                     continue;
                 }
                 CharacterControl control = spat.getControl(CharacterControl.class);
                 if (control != null) {
-                    SyncCharacterMessage msg = new SyncCharacterMessage(entry.getKey(), control);
-                    broadcast(msg);
+                    snapshot.capture(entry.getKey(), control);
+                }
+            }
+        }
+        snapshot.finish();
+        Collection<HostedConnection> connections = server.getConnections();
+        for (Iterator<HostedConnection> it = connections.iterator(); it.hasNext();) {
+            HostedConnection connection = it.next();
+            SnapshotClient snapshotClient = snapshotClients.get(connection.getId());
+            if (snapshotClient == null) {
+                snapshotClient = new SnapshotClient(connection, tick);
+                snapshotClients.put(connection.getId(), snapshotClient);
+            }
+            if (telemetry != null) {
+                ConnectionTelemetry connectionTelemetry = telemetry.getConnection(connection);
+                if (connectionTelemetry != null) {
+                    //snapshots sent before this one that have not been acknowledged
+                    connectionTelemetry.setAckLag(tick - Math.max(snapshotClient.ack + 1, snapshotClient.first));
                 }
             }
+            SyncSnapshot base = getSnapshotBase(snapshotClient, tick);
+            int selected = 0;
+            if (syncBudget > 0) {
+                //snapshots also carry sleeping bodies to clients that have no state of them
+                selected = priorities.select(connection, interestManager, syncBudget, false);
+            }
+            snapshotBuffer.reset();
+            snapshotClient.tick = tick;
+            snapshot.write(base, snapshotBuffer, snapshotClient);
+            snapshotClient.finish();
+            if (syncBudget > 0) {
+                priorities.sent(connection, snapshotBuffer.size(), selected);
+            }
+            SyncSnapshotMessage msg = messagePool.obtain(SyncSnapshotMessage.class);
+            msg.set(tick, base != null ? base.getTick() : -1, snapshotBuffer.getData(), snapshotBuffer.size());
+            send(connection, msg, snapshotBuffer.size());
+            syncBytesLastTick += measure(msg);
+            msg.data = null;
+            messagePool.release(msg);
+        }
+    }
+
+    /**
+     * gets the last snapshot acknowledged by the connection if it is still
+     * in the history, null if a full snapshot has to be sent
+     */
+    private SyncSnapshot getSnapshotBase(SnapshotClient snapshotClient, int tick) {
+        int ack = snapshotClient.ack;
+        if (ack < 0 || tick - ack >= SNAPSHOT_HISTORY || ack >= tick) {
+            return null;
         }
+        SyncSnapshot base = snapshots[ack % SNAPSHOT_HISTORY];
+        if (base == null || base.getTick() != ack) {
+            return null;
+        }
+        return base;
+    }
+
+    /**
+     * decodes a snapshot on the client, applies all changed entries and
+     * acknowledges the snapshot to the server
+     * @param message
+     */
+    void applySnapshot(SyncSnapshotMessage message) {
+        if (message.tick <= lastSnapshotTick) {
+            return;
+        }
+        SyncSnapshot base = null;
+        if (message.baseTick >= 0) {
+            base = snapshots[message.baseTick % SNAPSHOT_HISTORY];
+            if (base == null || base.getTick() != message.baseTick) {
+                Logger.getLogger(PhysicsSyncManager.class.getName()).log(Level.WARNING, "Missing base snapshot {0} for snapshot {1}", new Object[]{message.baseTick, message.tick});
+                return;
+            }
+        }
+        SyncSnapshot snapshot = snapshots[message.tick % SNAPSHOT_HISTORY];
+        if (snapshot == null) {
+            snapshot = new SyncSnapshot();
+            snapshots[message.tick % SNAPSHOT_HISTORY] = snapshot;
+        }
+        snapshot.read(base, message.tick, message.data);
+        lastSnapshotTick = message.tick;
+        for (int i = 0; i < snapshot.getCount(); i++) {
+            long id = snapshot.getId(i);
+            Object object = syncObjects.get(id);
+            if (!(object instanceof Spatial)) {
+                continue;
+            }
+            byte type = snapshot.getType(i);
+            PredictionControl prediction = getPrediction(object);
+            if (prediction != null) {
+                prediction.reconcile(message.time, snapshot.getLocation(i, tempLocation),
+                        type == SyncSnapshot.TYPE_RIGIDBODY ? snapshot.getRotation(i, tempRotation) : null,
+                        snapshot.getVectorA(i, tempVectorA), snapshot.getVectorB(i, tempVectorB));
+                continue;
+            }
+            if (interpolation) {
+                //buffer all entries, unchanged ones too so the buffer knows the
+                //object did not move
+                getInterpolationBuffer(id, type).add(message.time,
+                        snapshot.getLocation(i, tempLocation),
+                        type == SyncSnapshot.TYPE_RIGIDBODY ? snapshot.getRotation(i, tempRotation) : null,
+                        snapshot.getVectorA(i, tempVectorA), snapshot.getVectorB(i, tempVectorB));
+                continue;
+            }
+            if (!snapshot.isChanged(i)) {
+                continue;
+            }
+            Spatial spat = (Spatial) object;
+            if (type == SyncSnapshot.TYPE_CHARACTER) {
+                CharacterControl control = spat.getControl(CharacterControl.class);
+                if (control != null) {
+                    snapshot.apply(i, control);
+                }
+            } else {
+                PhysicsRigidBody body = spat.getControl(RigidBodyControl.class);
+                if (body == null) {
+                    body = spat.getControl(VehicleControl.class);
+                }
+                if (body != null) {
+                    snapshot.apply(i, body);
+                }
+            }
+        }
+        client.send(new SyncSnapshotAckMessage(message.tick));
+    }
+
+    /**
+     * gets the serialized size of a message if measuring is enabled
+     */
+    private int measure(Message msg) {
+        if (!measureBandwidth) {
+            return 0;
+        }
+        return serialize(msg);
+    }
+
+    /**
+     * serializes the message to get its size
+     */
+    private int serialize(Message msg) {
+        if (measureBuffer == null) {
+            measureBuffer = ByteBuffer.allocate(32767);
+        }
+        measureBuffer.clear();
+        try {
+            Serializer.writeClassAndObject(measureBuffer, msg);
+        } catch (IOException ex) {
+            Logger.getLogger(PhysicsSyncManager.class.getName()).log(Level.SEVERE, "Cannot measure message size: {0}", ex);
+        }
+        return measureBuffer.position();
     }
 
     /**
      * use to broadcast physics control messages if server, applies timestamp to
-     * PhysicsSyncMessage, call from OpenGL thread!
+     * PhysicsSyncMessage, call from OpenGL thread! If an InterestManager is set
+     * the message is only sent to clients its sync object is relevant for.
      * @param msg
+     * @return the number of clients the message was sent to
      */
-    public void broadcast(PhysicsSyncMessage msg) {
+    public int broadcast(PhysicsSyncMessage msg) {
         if (server == null) {
             Logger.getLogger(PhysicsSyncManager.class.getName()).log(Level.SEVERE, "Broadcasting message on client {0}", msg);
-            return;
+            return 0;
         }
         msg.time = time;
-        server.broadcast(msg);
+        setChannel(msg);
+        if (interestManager == null || msg.syncId < 0) {
+            broadcast(null, msg, -1);
+            return server.getConnections().size();
+        }
+        relevanceFilter.set(msg.syncId, null);
+        broadcast(relevanceFilter, msg, -1);
+        return relevanceFilter.matches;
+    }
+
+    /**
+     * use to broadcast messages that happen at a specific location in the world
+     * (e.g. effects), only clients for which the location is relevant receive
+     * the message, applies timestamp to PhysicsSyncMessage, call from OpenGL thread!
+     * @param msg
+     * @param location
+     * @return the number of clients the message was sent to
+     */
+    public int broadcast(PhysicsSyncMessage msg, Vector3f location) {
+        if (server == null) {
+            Logger.getLogger(PhysicsSyncManager.class.getName()).log(Level.SEVERE, "Broadcasting message on client {0}", msg);
+            return 0;
+        }
+        if (interestManager == null || location == null) {
+            return broadcast(msg);
+        }
+        msg.time = time;
+        setChannel(msg);
+        relevanceFilter.set(-1, location);
+        broadcast(relevanceFilter, msg, -1);
+        return relevanceFilter.matches;
     }
 
     /**
@@ -241,56 +874,214 @@ public class PhysicsSyncManager extends AbstractAppState implements MessageListe
      * @param msg
      */
     public void send(HostedConnection client, PhysicsSyncMessage msg) {
+        send(client, msg, -1);
+    }
+
+    /**
+     * @param size the serialized size of the message, -1 to measure it
+     */
+    private void send(HostedConnection client, PhysicsSyncMessage msg, int size) {
         msg.time = time;
+        setChannel(msg);
         if (client == null) {
             Logger.getLogger(PhysicsSyncManager.class.getName()).log(Level.SEVERE, "Client null when sending: {0}", client);
             return;
         }
+        if (telemetry != null) {
+            telemetry.messageSent(client, msg, size >= 0 ? size : telemetry.measure(msg));
+        }
         client.send(msg);
     }
 
     /**
-     * registers the types of messages this PhysicsSyncManager listens to
+     * broadcasts a message to the clients the filter accepts (all clients if
+     * the filter is null) and counts it in their telemetry
+     * @param size the serialized size of the message, -1 to measure it
+     */
+    private void broadcast(Filter<HostedConnection> filter, Message msg, int size) {
+        if (telemetry == null) {
+            if (filter == null) {
+                server.broadcast(msg);
+            } else {
+                server.broadcast(filter, msg);
+            }
+            return;
+        }
+        telemetryFilter.set(filter, msg, size >= 0 ? size : telemetry.measure(msg));
+        server.broadcast(telemetryFilter, msg);
+        telemetryFilter.set(null, null, 0);
+    }
+
+    /**
+     * registers the types of messages this PhysicsSyncManager handles itself
+     * (PhysicsSyncMessages and snapshot acknowledgements)
      * @param classes
      */
     public void setMessageTypes(Class... classes) {
-        if (server != null) {
-            server.removeMessageListener(this);
-            server.addMessageListener(this, classes);
-        } else if (client != null) {
-            client.removeMessageListener(this);
-            client.addMessageListener(this, classes);
+        for (int i = 0; i < classes.length; i++) {
+            addMessageHandler(syncHandler, classes[i]);
         }
     }
 
-    public void messageReceived(Object source, final Message message) {
-        assert (message instanceof PhysicsSyncMessage);
-        if (client != null) {
-            app.enqueue(new Callable<Void>() {
+    /**
+     * registers a handler for messages of the given types, the messages are
+     * handed to the handler on the update thread when the inbound queue is
+     * drained. Handlers of the same type are called in the order they were
+     * added. Call from the update thread.
+     * @param handler
+     * @param classes
+     */
+    public void addMessageHandler(MessageHandler handler, Class... classes) {
+        for (int i = 0; i < classes.length; i++) {
+            Class type = classes[i];
+            MessageHandler[] list = handlers.get(type);
+            if (list == null) {
+                list = new MessageHandler[]{handler};
+                if (server != null) {
+                    server.addMessageListener(this, type);
+                } else if (client != null) {
+                    client.addMessageListener(this, type);
+                }
+            } else {
+                MessageHandler[] newList = new MessageHandler[list.length + 1];
+                System.arraycopy(list, 0, newList, 0, list.length);
+                newList[list.length] = handler;
+                list = newList;
+            }
+            handlers.put(type, list);
+        }
+    }
 
-                public Void call() throws Exception {
-                    enqueueMessage((PhysicsSyncMessage) message);
-                    return null;
+    /**
+     * called on the network threads, only puts the message into the inbound
+     * queue or hands it to the NetworkSimulator
+     */
+    public void messageReceived(Object source, Message message) {
+        NetworkSimulator networkSimulator = simulator;
+        if (networkSimulator != null) {
+            networkSimulator.add(source, message, ClockSync.getClockTime());
+            return;
+        }
+        receive(source, message);
+    }
+
+    /**
+     * receives a message from the network or the NetworkSimulator, answers
+     * pings and puts the other messages into the inbound queue
+     */
+    private void receive(Object source, Message message) {
+        NetworkTelemetry networkTelemetry = telemetry;
+        ConnectionTelemetry connectionTelemetry = null;
+        if (server != null && networkTelemetry != null) {
+            networkTelemetry.messageReceived((HostedConnection) source, message);
+            connectionTelemetry = networkTelemetry.getConnection((HostedConnection) source);
+        }
+        if (message instanceof TimeSyncMessage) {
+            TimeSyncMessage msg = (TimeSyncMessage) message;
+            if (server != null) {
+                //answer right away so the frame time does not add to the round trip
+                msg.serverTime = ClockSync.getClockTime();
+                if (connectionTelemetry != null) {
+                    connectionTelemetry.pingReceived(msg);
+                    networkTelemetry.messageSent((HostedConnection) source, msg, networkTelemetry.measure(msg));
                 }
-            });
+                ((HostedConnection) source).send(msg);
+                return;
+            }
+            msg.receiveTime = ClockSync.getClockTime();
+        }
+        if (connectionTelemetry != null) {
+            connectionTelemetry.messageQueued();
+        }
+        inbound.add(source, message);
+    }
+
+    /**
+     * hands a message from the inbound queue to the handlers of its type
+     */
+    private void dispatch(Object source, Message message) {
+        if (telemetry != null && source instanceof HostedConnection) {
+            ConnectionTelemetry connectionTelemetry = telemetry.getConnection((HostedConnection) source);
+            if (connectionTelemetry != null) {
+                connectionTelemetry.messageHandled();
+            }
+        }
+        MessageHandler[] list = handlers.get(message.getClass());
+        if (list == null) {
+            Logger.getLogger(PhysicsSyncManager.class.getName()).log(Level.WARNING, "No handler for message {0}", message);
+            return;
+        }
+        for (int i = 0; i < list.length; i++) {
+            try {
+                list[i].handleMessage(source, message);
+            } catch (Exception ex) {
+                Logger.getLogger(PhysicsSyncManager.class.getName()).log(Level.SEVERE, "Error handling message " + message, ex);
+            }
+        }
+    }
+
+    /**
+     * handles the messages of the types set with setMessageTypes()
+     */
+    private void handleSyncMessage(Object source, Message message) {
+        if (message instanceof SyncSnapshotAckMessage) {
+            SnapshotClient snapshotClient = snapshotClients.get(((HostedConnection) source).getId());
+            int tick = ((SyncSnapshotAckMessage) message).tick;
+            if (snapshotClient != null && tick > snapshotClient.ack) {
+                snapshotClient.ack = tick;
+            }
+            return;
+        }
+        assert (message instanceof PhysicsSyncMessage);
+        if (message instanceof SequencedSyncMessage && !checkSequence((SequencedSyncMessage) message)) {
+            return;
+        }
+        if (client != null) {
+            enqueueMessage((PhysicsSyncMessage) message);
         } else if (server != null) {
-            app.enqueue(new Callable<Void>() {
-
-                public Void call() throws Exception {
-                    for (Iterator<SyncMessageValidator> it = validators.iterator(); it.hasNext();) {
-                        SyncMessageValidator syncMessageValidator = it.next();
-                        if (!syncMessageValidator.checkMessage((PhysicsSyncMessage) message)) {
-                            return null;
-                        }
-                    }
-                    broadcast((PhysicsSyncMessage) message);
-                    doMessage((PhysicsSyncMessage) message);
-                    return null;
+            if (telemetry != null) {
+                ConnectionTelemetry connectionTelemetry = telemetry.getConnection((HostedConnection) source);
+                if (connectionTelemetry != null) {
+                    connectionTelemetry.inputReceived(time);
                 }
-            });
+            }
+            for (Iterator<SyncMessageValidator> it = validators.iterator(); it.hasNext();) {
+                SyncMessageValidator syncMessageValidator = it.next();
+                if (!syncMessageValidator.checkMessage((PhysicsSyncMessage) message)) {
+                    return;
+                }
+            }
+            broadcast((PhysicsSyncMessage) message);
+            doMessage((PhysicsSyncMessage) message);
+        }
+    }
+
+    public void connectionAdded(Server server, HostedConnection conn) {
+        if (telemetry != null) {
+            telemetry.addConnection(conn);
         }
     }
 
+    public void connectionRemoved(Server server, final HostedConnection conn) {
+        if (telemetry != null) {
+            telemetry.removeConnection(conn);
+        }
+        app.enqueue(new Callable<Void>() {
+
+            public Void call() throws Exception {
+                snapshotClients.remove(conn.getId());
+                if (simulator != null) {
+                    simulator.removeSource(conn);
+                }
+                priorities.removeClient(conn.getId());
+                if (interestManager != null) {
+                    interestManager.removeClient(conn.getId());
+                }
+                return null;
+            }
+        });
+    }
+
     public void addMessageValidator(SyncMessageValidator validator) {
         validators.add(validator);
     }
@@ -307,10 +1098,56 @@ public class PhysicsSyncManager extends AbstractAppState implements MessageListe
         return client;
     }
 
+    /**
+     * @return the time of the sync manager, the server time on the server and
+     * the local time on the client
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * @return the server time, on the client the estimate of the current
+     * server time or -1 if there is none yet
+     */
+    public double getServerTime() {
+        if (client == null) {
+            return time;
+        }
+        if (!clock.isInitialized()) {
+            return -1;
+        }
+        return clock.getServerTime(time);
+    }
+
+    /**
+     * @return the server time of the world state that is currently displayed,
+     * on the client this is the estimated server time minus the interpolation
+     * delay (or the max delay without interpolation)
+     */
+    public double getViewTime() {
+        if (client == null) {
+            return time;
+        }
+        if (!clock.isInitialized()) {
+            return -1;
+        }
+        return clock.getServerTime(time) - (interpolation ? interpolationDelay : maxDelay);
+    }
+
+    public ClockSync getClockSync() {
+        return clock;
+    }
+
     public double getMaxDelay() {
         return maxDelay;
     }
 
+    /**
+     * sets how far behind the server time messages are played when
+     * interpolation is disabled, gives late messages time to be put in order
+     * @param maxDelay
+     */
     public void setMaxDelay(double maxDelay) {
         this.maxDelay = maxDelay;
     }
@@ -322,4 +1159,393 @@ public class PhysicsSyncManager extends AbstractAppState implements MessageListe
     public void setSyncFrequency(float syncFrequency) {
         this.syncFrequency = syncFrequency;
     }
+
+    public boolean isSnapshotMode() {
+        return snapshotMode;
+    }
+
+    /**
+     * enables sending one delta compressed SyncSnapshotMessage per tick and
+     * client instead of one message per synced object
+     * @param snapshotMode
+     */
+    public void setSnapshotMode(boolean snapshotMode) {
+        this.snapshotMode = snapshotMode;
+    }
+
+    public boolean isInterpolation() {
+        return interpolation;
+    }
+
+    /**
+     * enables interpolating rigid body and character states on the client
+     * instead of applying them when they arrive
+     * @param interpolation
+     */
+    public void setInterpolation(boolean interpolation) {
+        this.interpolation = interpolation;
+        if (!interpolation) {
+            interpolationBuffers.clear();
+        }
+    }
+
+    public double getInterpolationDelay() {
+        return interpolationDelay;
+    }
+
+    /**
+     * sets how far behind the server time objects are displayed, should be at
+     * least the sync frequency of the server so there is a newer state to
+     * blend to most of the time
+     * @param interpolationDelay
+     */
+    public void setInterpolationDelay(double interpolationDelay) {
+        this.interpolationDelay = interpolationDelay;
+    }
+
+    public double getMaxExtrapolation() {
+        return maxExtrapolation;
+    }
+
+    /**
+     * sets for how many seconds the location of an object is extrapolated when
+     * no newer state has arrived
+     * @param maxExtrapolation
+     */
+    public void setMaxExtrapolation(double maxExtrapolation) {
+        this.maxExtrapolation = maxExtrapolation;
+    }
+
+    public int getInterpolationStates() {
+        return interpolationStates;
+    }
+
+    /**
+     * sets how many states are kept per object, applies to objects that get
+     * synced for the first time
+     * @param interpolationStates
+     */
+    public void setInterpolationStates(int interpolationStates) {
+        this.interpolationStates = interpolationStates;
+    }
+
+    public InterestManager getInterestManager() {
+        return interestManager;
+    }
+
+    /**
+     * sets the InterestManager that decides which clients receive sync data
+     * of which objects, null to send everything to all clients
+     * @param interestManager
+     */
+    public void setInterestManager(InterestManager interestManager) {
+        this.interestManager = interestManager;
+    }
+
+    /**
+     * @return the buffer of messages waiting to be applied on the client, has
+     * statistics about queue depth and late messages
+     */
+    public JitterBuffer getJitterBuffer() {
+        return messageQueue;
+    }
+
+    public boolean isUnreliableSync() {
+        return unreliableSync;
+    }
+
+    /**
+     * enables sending state messages and snapshots over the unreliable
+     * channel, old state messages that arrive late are dropped
+     * @param unreliableSync
+     */
+    public void setUnreliableSync(boolean unreliableSync) {
+        this.unreliableSync = unreliableSync;
+    }
+
+    /**
+     * @return the number of state messages that were dropped because a newer
+     * one for the same object had arrived already
+     */
+    public long getDroppedMessages() {
+        return droppedMessages;
+    }
+
+    public int getSyncBudget() {
+        return syncBudget;
+    }
+
+    /**
+     * sets how many bytes of sync data may be sent to each client per sync
+     * tick, the objects with the highest priority are sent first. 0 sends all
+     * objects each tick.
+     * @param syncBudget
+     */
+    public void setSyncBudget(int syncBudget) {
+        this.syncBudget = syncBudget;
+    }
+
+    public PriorityAccumulator getPriorityAccumulator() {
+        return priorities;
+    }
+
+    public boolean isMeasureBandwidth() {
+        return measureBandwidth;
+    }
+
+    /**
+     * enables measuring the serialized size of the sync data sent each tick
+     * @param measureBandwidth
+     */
+    public void setMeasureBandwidth(boolean measureBandwidth) {
+        this.measureBandwidth = measureBandwidth;
+    }
+
+    /**
+     * @return the number of bytes sent for syncing in the last sync tick, summed
+     * over all clients (only available when measuring bandwidth)
+     */
+    public int getSyncBytesLastTick() {
+        return syncBytesLastTick;
+    }
+
+    /**
+     * @return the average number of bytes sent per sync tick, summed over all
+     * clients (only available when measuring bandwidth)
+     */
+    public float getSyncBytesPerTick() {
+        if (syncTicks == 0) {
+            return 0;
+        }
+        return (float) syncBytesTotal / syncTicks;
+    }
+
+    /**
+     * @return the pool the sync messages of the server are taken from, can
+     * be used for other messages that are released after sending
+     */
+    public MessagePool getMessagePool() {
+        return messagePool;
+    }
+
+    public boolean isMeasureAllocation() {
+        return measureAllocation;
+    }
+
+    /**
+     * enables measuring the bytes the update thread allocates while sending
+     * the sync data of a tick, needs a VM that supports measuring thread
+     * allocation
+     * @param measureAllocation
+     */
+    public void setMeasureAllocation(boolean measureAllocation) {
+        this.measureAllocation = measureAllocation;
+    }
+
+    /**
+     * @return the bytes allocated while sending the sync data of the last
+     * tick (only available when measuring allocation)
+     */
+    public long getSyncAllocatedLastTick() {
+        return syncAllocatedLastTick;
+    }
+
+    /**
+     * @return the average bytes allocated per sync tick (only available when
+     * measuring allocation)
+     */
+    public float getSyncAllocatedPerTick() {
+        if (allocationTicks == 0) {
+            return 0;
+        }
+        return (float) syncAllocatedTotal / allocationTicks;
+    }
+
+    public NetworkSimulator getNetworkSimulator() {
+        return simulator;
+    }
+
+    /**
+     * sets a NetworkSimulator that delays, drops and reorders the received
+     * messages, null to hand them on as they arrive
+     * @param simulator
+     */
+    public void setNetworkSimulator(NetworkSimulator simulator) {
+        this.simulator = simulator;
+    }
+
+    public NetworkTelemetry getTelemetry() {
+        return telemetry;
+    }
+
+    /**
+     * sets the NetworkTelemetry the server records the traffic and health of
+     * each connection in, null to record nothing
+     * @param telemetry
+     */
+    public void setTelemetry(NetworkTelemetry telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    public SyncStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * sets the SyncStatistics the client records its sync metrics in, null
+     * to record nothing
+     * @param statistics
+     */
+    public void setStatistics(SyncStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * buffer the snapshots are written to, gives access to its array so the
+     * data does not have to be copied for sending
+     */
+    private static class SnapshotBuffer extends ByteArrayOutputStream {
+
+        public SnapshotBuffer() {
+            super(1024);
+        }
+
+        public byte[] getData() {
+            return buf;
+        }
+    }
+
+    /**
+     * snapshot state of one client: the last acknowledged snapshot and since
+     * which tick each object has been relevant for the client without pause
+     */
+    private class SnapshotClient implements SyncSnapshot.EntryFilter {
+
+        private HostedConnection connection;
+        //tick of the first snapshot sent to the client
+        private int first;
+        private int ack = -1;
+        private int tick = -1;
+        private HashMap<Long, Integer> relevantSince = new HashMap<Long, Integer>();
+        private HashMap<Long, Integer> nextRelevantSince = new HashMap<Long, Integer>();
+
+        public SnapshotClient(HostedConnection connection, int first) {
+            this.connection = connection;
+            this.first = first;
+        }
+
+        public boolean isRelevant(long id) {
+            if (interestManager != null && !interestManager.isRelevant(connection, id)) {
+                return false;
+            }
+            if (syncBudget > 0 && !priorities.isSelected(connection, id)) {
+                //sent in full again when selected
+                return false;
+            }
+            Integer since = relevantSince.get(id);
+            nextRelevantSince.put(id, since != null ? since : tick);
+            return true;
+        }
+
+        public boolean hasBase(long id, int baseTick) {
+            Integer since = relevantSince.get(id);
+            return since != null && since <= baseTick;
+        }
+
+        /**
+         * called after the snapshot for the current tick has been written
+         */
+        private void finish() {
+            HashMap<Long, Integer> temp = relevantSince;
+            relevantSince = nextRelevantSince;
+            nextRelevantSince = temp;
+            nextRelevantSince.clear();
+        }
+    }
+
+    /**
+     * filters the clients an object or location is relevant for when
+     * broadcasting, counts the matching clients
+     */
+    private class RelevanceFilter implements Filter<HostedConnection> {
+
+        private long syncId;
+        private Vector3f location;
+        private int matches;
+
+        private void set(long syncId, Vector3f location) {
+            this.syncId = syncId;
+            this.location = location;
+            this.matches = 0;
+        }
+
+        public boolean apply(HostedConnection input) {
+            boolean relevant = location != null
+                    ? interestManager.isRelevant(input, location)
+                    : interestManager.isRelevant(input, syncId);
+            if (relevant) {
+                matches++;
+            }
+            return relevant;
+        }
+    }
+
+    /**
+     * matches the clients of the current sendPrioritized() pass that selected
+     * an object and counts the bytes sent to each of them
+     */
+    private class SelectionFilter implements Filter<HostedConnection> {
+
+        private Long syncId;
+        private int size;
+
+        /**
+         * @return true if any of the first count send connections selected
+         * the object
+         */
+        private boolean set(Long syncId, int count) {
+            this.syncId = syncId;
+            for (int i = 0; i < count; i++) {
+                if (priorities.isSelected(sendConnections[i], syncId)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean apply(HostedConnection input) {
+            Integer index = sendIndices.get(input.getId());
+            if (index == null || !priorities.isSelected(input, syncId)) {
+                return false;
+            }
+            sendBytes[index] += size;
+            sendEntries[index]++;
+            return true;
+        }
+    }
+
+    /**
+     * wraps the filter of a broadcast and counts the message in the
+     * telemetry of each client the filter accepts
+     */
+    private class TelemetryFilter implements Filter<HostedConnection> {
+
+        private Filter<HostedConnection> filter;
+        private Message message;
+        private int size;
+
+        private void set(Filter<HostedConnection> filter, Message message, int size) {
+            this.filter = filter;
+            this.message = message;
+            this.size = size;
+        }
+
+        public boolean apply(HostedConnection input) {
+            if (filter != null && !filter.apply(input)) {
+                return false;
+            }
+            telemetry.messageSent(input, message, size);
+            return true;
+        }
+    }
 }
@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.bullet.control.CharacterControl;
+import com.jme3.bullet.control.RigidBodyControl;
+import com.jme3.bullet.control.VehicleControl;
+import com.jme3.bullet.objects.PhysicsRigidBody;
+import com.jme3.math.Vector3f;
+import com.jme3.network.HostedConnection;
+import com.jme3.scene.Spatial;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * <p>Decides which synced objects are sent to a client in a sync tick when
+ * the bandwidth per tick is limited. Each object has a priority per client
+ * that grows every tick until the object is sent, then it starts at zero
+ * again. The priority grows faster for objects that move fast or changed
+ * their velocity and for objects that are more relevant for the client
+ * (see InterestManager.getRelevance()).</p>
+ * <p>Each tick the objects with the highest priority are selected until the
+ * byte budget of the client is used up. The size of an entry is estimated
+ * from the bytes actually sent in the last ticks.</p>
+ * @author normenhansen
+ */
+public class PriorityAccumulator {
+
+    private static final float INITIAL_ENTRY_SIZE = 32;
+    private float timeWeight = 1;
+    private float velocityWeight = 0.1f;
+    private float changeWeight = 0.1f;
+    private HashMap<Long, Integer> slots = new HashMap<Long, Integer>();
+    private HashMap<Integer, ClientPriorities> clients = new HashMap<Integer, ClientPriorities>();
+    private int capacity = 32;
+    private int slotCount = 0;
+    private long[] ids = new long[capacity];
+    private boolean[] used = new boolean[capacity];
+    /**
+     * false for sleeping bodies and spatials without physics, no sync
+     * message is created for them
+     */
+    private boolean[] active = new boolean[capacity];
+    private int[] updateTicks = new int[capacity];
+    private float[] rates = new float[capacity];
+    /**
+     * last location (3) and velocity (3) of each object
+     */
+    private float[] states = new float[capacity * 6];
+    private int[] freeSlots = new int[capacity];
+    private int freeCount = 0;
+    private int[] order = new int[capacity];
+    private int tick = 0;
+    private float elapsed = 0;
+
+    /**
+     * priorities and entry size estimate of one client
+     */
+    private static class ClientPriorities {
+
+        float[] accumulated = new float[0];
+        boolean[] selected = new boolean[0];
+        float entrySize = INITIAL_ENTRY_SIZE;
+
+        void ensureCapacity(int capacity) {
+            if (accumulated.length < capacity) {
+                float[] newAccumulated = new float[capacity];
+                System.arraycopy(accumulated, 0, newAccumulated, 0, accumulated.length);
+                accumulated = newAccumulated;
+                boolean[] newSelected = new boolean[capacity];
+                System.arraycopy(selected, 0, newSelected, 0, selected.length);
+                selected = newSelected;
+            }
+        }
+    }
+
+    /**
+     * computes how fast the priority of each synced spatial grows, from its
+     * movement since the last update. Call once per sync tick before selecting.
+     * @param objects the synced objects by sync id
+     * @param elapsed time since the last update
+     */
+    public void update(Map<Long, Object> objects, float elapsed) {
+        this.elapsed = elapsed;
+        tick++;
+        for (Iterator<Entry<Long, Object>> it = objects.entrySet().iterator(); it.hasNext();) {
+            Entry<Long, Object> entry = it.next();
+            if (entry.getKey() < 0 || !(entry.getValue() instanceof Spatial)) {
+                continue;
+            }
+            Spatial spatial = (Spatial) entry.getValue();
+            Vector3f location = spatial.getWorldTranslation();
+            Integer slot = slots.get(entry.getKey());
+            if (slot == null) {
+                slot = allocate(entry.getKey(), location);
+            }
+            updateRate(slot, location);
+            active[slot] = isActive(spatial);
+        }
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (used[slot] && updateTicks[slot] != tick) {
+                free(slot);
+            }
+        }
+    }
+
+    private void updateRate(int slot, Vector3f location) {
+        int offset = slot * 6;
+        float vx = 0, vy = 0, vz = 0;
+        if (elapsed > 0) {
+            vx = (location.x - states[offset]) / elapsed;
+            vy = (location.y - states[offset + 1]) / elapsed;
+            vz = (location.z - states[offset + 2]) / elapsed;
+        }
+        float dx = vx - states[offset + 3];
+        float dy = vy - states[offset + 4];
+        float dz = vz - states[offset + 5];
+        float speed = (float) Math.sqrt(vx * vx + vy * vy + vz * vz);
+        float change = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        rates[slot] = timeWeight + velocityWeight * speed + changeWeight * change;
+        states[offset] = location.x;
+        states[offset + 1] = location.y;
+        states[offset + 2] = location.z;
+        states[offset + 3] = vx;
+        states[offset + 4] = vy;
+        states[offset + 5] = vz;
+        updateTicks[slot] = tick;
+    }
+
+    /**
+     * accumulates the priorities for the client and selects the objects with
+     * the highest priority that fit into the budget, at least one object is
+     * selected if there is any
+     * @param client
+     * @param interestManager used for the relevance of the objects, can be null
+     * @param budget bytes that may be sent to the client
+     * @param activeOnly true to leave out sleeping bodies, their priority is
+     * kept until they are active again
+     * @return the number of selected objects
+     */
+    public int select(HostedConnection client, InterestManager interestManager, int budget, boolean activeOnly) {
+        ClientPriorities priorities = getClient(client.getId());
+        int candidates = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            priorities.selected[slot] = false;
+            if (!used[slot] || (activeOnly && !active[slot])) {
+                continue;
+            }
+            float relevance = interestManager != null ? interestManager.getRelevance(client, ids[slot]) : 1;
+            if (relevance <= 0) {
+                priorities.accumulated[slot] = 0;
+                continue;
+            }
+            priorities.accumulated[slot] += rates[slot] * relevance * elapsed;
+            order[candidates++] = slot;
+        }
+        //only the few objects that fit into the budget are taken from a heap
+        //instead of sorting all candidates
+        for (int i = candidates / 2 - 1; i >= 0; i--) {
+            siftDown(priorities.accumulated, i, candidates);
+        }
+        int selected = 0;
+        float bytes = 0;
+        while (candidates > 0 && (selected == 0 || bytes + priorities.entrySize <= budget)) {
+            int slot = order[0];
+            order[0] = order[--candidates];
+            siftDown(priorities.accumulated, 0, candidates);
+            priorities.selected[slot] = true;
+            priorities.accumulated[slot] = 0;
+            bytes += priorities.entrySize;
+            selected++;
+        }
+        return selected;
+    }
+
+    /**
+     * checks if the object was selected for the client in the last select(),
+     * objects that are not handled by the accumulator are always selected
+     * @param client
+     * @param id
+     * @return
+     */
+    public boolean isSelected(HostedConnection client, long id) {
+        Integer slot = slots.get(id);
+        ClientPriorities priorities = clients.get(client.getId());
+        if (slot == null || priorities == null) {
+            return true;
+        }
+        return slot < priorities.selected.length && priorities.selected[slot];
+    }
+
+    /**
+     * reports the bytes that were actually sent to the client for the
+     * selected objects, used to estimate the size of the next entries
+     * @param client
+     * @param bytes
+     * @param entries
+     */
+    public void sent(HostedConnection client, int bytes, int entries) {
+        ClientPriorities priorities = clients.get(client.getId());
+        if (priorities != null && entries > 0) {
+            priorities.entrySize = Math.max(1, priorities.entrySize * 0.75f + ((float) bytes / entries) * 0.25f);
+        }
+    }
+
+    public void removeClient(int clientId) {
+        clients.remove(clientId);
+    }
+
+    public void clear() {
+        slots.clear();
+        clients.clear();
+        slotCount = 0;
+        freeCount = 0;
+    }
+
+    private ClientPriorities getClient(int clientId) {
+        ClientPriorities priorities = clients.get(clientId);
+        if (priorities == null) {
+            priorities = new ClientPriorities();
+            clients.put(clientId, priorities);
+        }
+        priorities.ensureCapacity(capacity);
+        return priorities;
+    }
+
+    private int allocate(long id, Vector3f location) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotCount == capacity) {
+                grow();
+            }
+            slot = slotCount++;
+        }
+        ids[slot] = id;
+        used[slot] = true;
+        int offset = slot * 6;
+        states[offset] = location.x;
+        states[offset + 1] = location.y;
+        states[offset + 2] = location.z;
+        states[offset + 3] = 0;
+        states[offset + 4] = 0;
+        states[offset + 5] = 0;
+        for (Iterator<ClientPriorities> it = clients.values().iterator(); it.hasNext();) {
+            ClientPriorities priorities = it.next();
+            if (slot < priorities.accumulated.length) {
+                priorities.accumulated[slot] = 0;
+            }
+        }
+        slots.put(id, slot);
+        return slot;
+    }
+
+    private void free(int slot) {
+        used[slot] = false;
+        slots.remove(ids[slot]);
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void grow() {
+        int newCapacity = capacity * 2;
+        long[] newIds = new long[newCapacity];
+        System.arraycopy(ids, 0, newIds, 0, capacity);
+        ids = newIds;
+        boolean[] newUsed = new boolean[newCapacity];
+        System.arraycopy(used, 0, newUsed, 0, capacity);
+        used = newUsed;
+        boolean[] newActive = new boolean[newCapacity];
+        System.arraycopy(active, 0, newActive, 0, capacity);
+        active = newActive;
+        int[] newTicks = new int[newCapacity];
+        System.arraycopy(updateTicks, 0, newTicks, 0, capacity);
+        updateTicks = newTicks;
+        float[] newRates = new float[newCapacity];
+        System.arraycopy(rates, 0, newRates, 0, capacity);
+        rates = newRates;
+        float[] newStates = new float[newCapacity * 6];
+        System.arraycopy(states, 0, newStates, 0, capacity * 6);
+        states = newStates;
+        freeSlots = new int[newCapacity];
+        order = new int[newCapacity];
+        capacity = newCapacity;
+    }
+
+    /**
+     * @return true if the spatial has an active rigid body or a character,
+     * the same objects PhysicsSyncManager creates sync messages for
+     */
+    private static boolean isActive(Spatial spatial) {
+        PhysicsRigidBody body = spatial.getControl(RigidBodyControl.class);
+        if (body == null) {
+            body = spatial.getControl(VehicleControl.class);
+        }
+        if (body != null) {
+            return body.isActive();
+        }
+        return spatial.getControl(CharacterControl.class) != null;
+    }
+
+    /**
+     * moves the slot at the index of the first count slots down until the
+     * slots form a heap with the highest accumulated priority first
+     */
+    private void siftDown(float[] accumulated, int index, int count) {
+        int slot = order[index];
+        float value = accumulated[slot];
+        while (true) {
+            int child = index * 2 + 1;
+            if (child >= count) {
+                break;
+            }
+            if (child + 1 < count && accumulated[order[child + 1]] > accumulated[order[child]]) {
+                child++;
+            }
+            if (!(accumulated[order[child]] > value)) {
+                break;
+            }
+            order[index] = order[child];
+            index = child;
+        }
+        order[index] = slot;
+    }
+
+    public float getTimeWeight() {
+        return timeWeight;
+    }
+
+    /**
+     * sets how much the priority grows per second for every object
+     * @param timeWeight
+     */
+    public void setTimeWeight(float timeWeight) {
+        this.timeWeight = timeWeight;
+    }
+
+    public float getVelocityWeight() {
+        return velocityWeight;
+    }
+
+    /**
+     * sets how much the priority grows per second for each unit of speed
+     * @param velocityWeight
+     */
+    public void setVelocityWeight(float velocityWeight) {
+        this.velocityWeight = velocityWeight;
+    }
+
+    public float getChangeWeight() {
+        return changeWeight;
+    }
+
+    /**
+     * sets how much the priority grows per second for each unit the velocity
+     * changed since the last tick
+     * @param changeWeight
+     */
+    public void setChangeWeight(float changeWeight) {
+        this.changeWeight = changeWeight;
+    }
+}
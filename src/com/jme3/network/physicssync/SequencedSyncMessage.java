@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.network.serializing.Serializable;
+
+/**
+ * PhysicsSyncMessage that carries the state of its object, each message
+ * replaces the ones sent before. Messages are numbered per object by the
+ * sender so that they can be sent unreliably: the receiving
+ * PhysicsSyncManager drops messages that are older than or the same as the
+ * last one it got for the object.
+ * @author normenhansen
+ */
+@Serializable()
+public abstract class SequencedSyncMessage extends PhysicsSyncMessage {
+
+    /**
+     * messages that are older than this many sequence numbers are taken as
+     * the start of a new sequence (e.g. a new sender)
+     */
+    public static final int SEQUENCE_WINDOW = 1024;
+    public int sequence;
+
+    public SequencedSyncMessage() {
+    }
+
+    public SequencedSyncMessage(long id) {
+        super(id);
+    }
+
+    /**
+     * checks if a sequence number comes after another one, handles wrapping
+     * around of the numbers
+     * @param sequence
+     * @param last
+     * @return
+     */
+    public static boolean isNewer(int sequence, int last) {
+        int difference = sequence - last;
+        return difference > 0 || difference < -SEQUENCE_WINDOW;
+    }
+}
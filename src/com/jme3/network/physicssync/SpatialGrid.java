@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Uniform grid over the XZ plane that stores objects by their location, used
+ * for radius and box queries. Cells are created on demand so the world size
+ * does not have to be known. Entries are pooled, moving an object between
+ * cells does not allocate.
+ * @author normenhansen
+ */
+public class SpatialGrid<T> {
+
+    private float cellSize;
+    private float invCellSize;
+    private HashMap<Long, ArrayList<Entry<T>>> cells = new HashMap<Long, ArrayList<Entry<T>>>();
+    private HashMap<T, Entry<T>> entries = new HashMap<T, Entry<T>>();
+    private ArrayList<Entry<T>> pool = new ArrayList<Entry<T>>();
+
+    private static class Entry<T> {
+
+        T object;
+        float x, y, z;
+        long cell;
+    }
+
+    public SpatialGrid(float cellSize) {
+        this.cellSize = cellSize;
+        this.invCellSize = 1f / cellSize;
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * adds an object to the grid or moves it to the new location
+     * @param object
+     * @param location
+     */
+    public void update(T object, Vector3f location) {
+        update(object, location.x, location.y, location.z);
+    }
+
+    public void update(T object, float x, float y, float z) {
+        long cell = cellKey(cellCoord(x), cellCoord(z));
+        Entry<T> entry = entries.get(object);
+        if (entry == null) {
+            entry = pool.isEmpty() ? new Entry<T>() : pool.remove(pool.size() - 1);
+            entry.object = object;
+            entries.put(object, entry);
+            getCell(cell).add(entry);
+        } else if (entry.cell != cell) {
+            removeFromCell(entry);
+            getCell(cell).add(entry);
+        }
+        entry.cell = cell;
+        entry.x = x;
+        entry.y = y;
+        entry.z = z;
+    }
+
+    /**
+     * removes an object from the grid
+     * @param object
+     */
+    public void remove(T object) {
+        Entry<T> entry = entries.remove(object);
+        if (entry != null) {
+            removeFromCell(entry);
+            entry.object = null;
+            pool.add(entry);
+        }
+    }
+
+    public boolean contains(T object) {
+        return entries.containsKey(object);
+    }
+
+    /**
+     * gets the last location of the object
+     * @param object
+     * @param store
+     * @return the store vector or null if the object is not in the grid
+     */
+    public Vector3f getLocation(T object, Vector3f store) {
+        Entry<T> entry = entries.get(object);
+        if (entry == null) {
+            return null;
+        }
+        return store.set(entry.x, entry.y, entry.z);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * removes all objects from the grid
+     */
+    public void clear() {
+        for (ArrayList<Entry<T>> list : cells.values()) {
+            for (int i = 0; i < list.size(); i++) {
+                Entry<T> entry = list.get(i);
+                entry.object = null;
+                pool.add(entry);
+            }
+            list.clear();
+        }
+        entries.clear();
+    }
+
+    /**
+     * finds all objects within radius of the center (distance measured in XZ)
+     * @param center
+     * @param radius
+     * @param store list the objects are added to
+     * @return store
+     */
+    public List<T> queryRadius(Vector3f center, float radius, List<T> store) {
+        int minX = cellCoord(center.x - radius);
+        int maxX = cellCoord(center.x + radius);
+        int minZ = cellCoord(center.z - radius);
+        int maxZ = cellCoord(center.z + radius);
+        float radiusSquared = radius * radius;
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cz = minZ; cz <= maxZ; cz++) {
+                ArrayList<Entry<T>> list = cells.get(cellKey(cx, cz));
+                if (list == null) {
+                    continue;
+                }
+                for (int i = 0; i < list.size(); i++) {
+                    Entry<T> entry = list.get(i);
+                    float dx = entry.x - center.x;
+                    float dz = entry.z - center.z;
+                    if (dx * dx + dz * dz <= radiusSquared) {
+                        store.add(entry.object);
+                    }
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * finds all objects inside the given box
+     * @param min
+     * @param max
+     * @param store list the objects are added to
+     * @return store
+     */
+    public List<T> queryBox(Vector3f min, Vector3f max, List<T> store) {
+        int minX = cellCoord(min.x);
+        int maxX = cellCoord(max.x);
+        int minZ = cellCoord(min.z);
+        int maxZ = cellCoord(max.z);
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cz = minZ; cz <= maxZ; cz++) {
+                ArrayList<Entry<T>> list = cells.get(cellKey(cx, cz));
+                if (list == null) {
+                    continue;
+                }
+                for (int i = 0; i < list.size(); i++) {
+                    Entry<T> entry = list.get(i);
+                    if (entry.x >= min.x && entry.x <= max.x
+                            && entry.y >= min.y && entry.y <= max.y
+                            && entry.z >= min.z && entry.z <= max.z) {
+                        store.add(entry.object);
+                    }
+                }
+            }
+        }
+        return store;
+    }
+
+    private ArrayList<Entry<T>> getCell(long key) {
+        ArrayList<Entry<T>> list = cells.get(key);
+        if (list == null) {
+            list = new ArrayList<Entry<T>>(4);
+            cells.put(key, list);
+        }
+        return list;
+    }
+
+    private void removeFromCell(Entry<T> entry) {
+        ArrayList<Entry<T>> list = cells.get(entry.cell);
+        if (list == null) {
+            return;
+        }
+        //swap remove, order in cell does not matter
+        int index = list.indexOf(entry);
+        if (index >= 0) {
+            int last = list.size() - 1;
+            list.set(index, list.get(last));
+            list.remove(last);
+        }
+    }
+
+    private int cellCoord(float value) {
+        return (int) Math.floor(value * invCellSize);
+    }
+
+    private static long cellKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+}
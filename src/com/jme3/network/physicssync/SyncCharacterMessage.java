@@ -35,13 +35,14 @@ import com.jme3.bullet.control.CharacterControl;
 import com.jme3.math.Vector3f;
 import com.jme3.network.serializing.Serializable;
 import com.jme3.scene.Spatial;
+import java.nio.ByteBuffer;
 
 /**
  * Sync message for character objects
  * @author normenhansen
  */
 @Serializable()
-public class SyncCharacterMessage extends PhysicsSyncMessage {
+public class SyncCharacterMessage extends SequencedSyncMessage {
 
     public Vector3f location = new Vector3f();
     public Vector3f walkDirection = new Vector3f();
@@ -51,7 +52,6 @@ public class SyncCharacterMessage extends PhysicsSyncMessage {
     }
 
     public SyncCharacterMessage(long id, CharacterControl character) {
-//        setReliable(false);
         this.syncId = id;
         character.getPhysicsLocation(location);
         this.walkDirection.set(character.getWalkDirection());
@@ -65,8 +65,43 @@ public class SyncCharacterMessage extends PhysicsSyncMessage {
     }
 
     public void applyData(Object character) {
+        PredictionControl prediction = PhysicsSyncManager.getPrediction(character);
+        if (prediction != null) {
+            prediction.reconcile(time, location, null, walkDirection, viewDirection);
+            return;
+        }
         ((Spatial) character).getControl(CharacterControl.class).setPhysicsLocation(location);
         ((Spatial) character).getControl(CharacterControl.class).setWalkDirection(walkDirection);
         ((Spatial) character).getControl(CharacterControl.class).setViewDirection(viewDirection);
     }
+
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<SyncCharacterMessage> {
+
+        public Codec() {
+            super(SyncCharacterMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, SyncCharacterMessage message) {
+            writeHeader(buffer, message);
+            writeVarInt(buffer, message.sequence);
+            writeVector(buffer, message.location, POSITION_SCALE);
+            writeVector(buffer, message.walkDirection, DIRECTION_SCALE);
+            writeVector(buffer, message.viewDirection, DIRECTION_SCALE);
+        }
+
+        @Override
+        public SyncCharacterMessage read(ByteBuffer buffer) {
+            SyncCharacterMessage message = new SyncCharacterMessage();
+            readHeader(buffer, message);
+            message.sequence = readVarInt(buffer);
+            readVector(buffer, POSITION_SCALE, message.location);
+            readVector(buffer, DIRECTION_SCALE, message.walkDirection);
+            readVector(buffer, DIRECTION_SCALE, message.viewDirection);
+            return message;
+        }
+    }
 }
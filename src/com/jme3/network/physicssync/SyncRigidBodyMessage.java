@@ -35,16 +35,18 @@ import com.jme3.bullet.control.RigidBodyControl;
 import com.jme3.bullet.control.VehicleControl;
 import com.jme3.bullet.objects.PhysicsRigidBody;
 import com.jme3.math.Matrix3f;
+import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
 import com.jme3.network.serializing.Serializable;
 import com.jme3.scene.Spatial;
+import java.nio.ByteBuffer;
 
 /**
  * sync message for physics objects (RigidBody + Vehicle)
  * @author normenhansen
  */
 @Serializable()
-public class SyncRigidBodyMessage extends PhysicsSyncMessage {
+public class SyncRigidBodyMessage extends SequencedSyncMessage {
 
     public Vector3f location;
     public Matrix3f rotation;
@@ -55,22 +57,20 @@ public class SyncRigidBodyMessage extends PhysicsSyncMessage {
     }
 
     public SyncRigidBodyMessage(long id, PhysicsRigidBody body) {
-//        setReliable(false);
         this.syncId = id;
-        location = body.getPhysicsLocation(new Vector3f());
-        rotation = body.getPhysicsRotationMatrix(new Matrix3f());
-        linearVelocity = new Vector3f();
-        body.getLinearVelocity(linearVelocity);
-        angularVelocity = new Vector3f();
-        body.getAngularVelocity(angularVelocity);
+        readData(body);
     }
 
     public void readData(PhysicsRigidBody body) {
-        location = body.getPhysicsLocation(new Vector3f());
-        rotation = body.getPhysicsRotationMatrix(new Matrix3f());
-        linearVelocity = new Vector3f();
+        if (location == null) {
+            location = new Vector3f();
+            rotation = new Matrix3f();
+            linearVelocity = new Vector3f();
+            angularVelocity = new Vector3f();
+        }
+        body.getPhysicsLocation(location);
+        body.getPhysicsRotationMatrix(rotation);
         body.getLinearVelocity(linearVelocity);
-        angularVelocity = new Vector3f();
         body.getAngularVelocity(angularVelocity);
     }
 
@@ -78,6 +78,11 @@ public class SyncRigidBodyMessage extends PhysicsSyncMessage {
         if (body == null) {
             return;
         }
+        PredictionControl prediction = PhysicsSyncManager.getPrediction(body);
+        if (prediction != null) {
+            prediction.reconcile(time, location, new Quaternion().fromRotationMatrix(rotation), linearVelocity, angularVelocity);
+            return;
+        }
         PhysicsRigidBody rigidBody = ((Spatial) body).getControl(RigidBodyControl.class);
         if (rigidBody == null) {
             rigidBody = ((Spatial) body).getControl(VehicleControl.class);
@@ -87,4 +92,40 @@ public class SyncRigidBodyMessage extends PhysicsSyncMessage {
         rigidBody.setLinearVelocity(linearVelocity);
         rigidBody.setAngularVelocity(angularVelocity);
     }
+
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<SyncRigidBodyMessage> {
+        //the rotation is sent as quaternion
+        private final Quaternion tempRotation = new Quaternion();
+
+        public Codec() {
+            super(SyncRigidBodyMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, SyncRigidBodyMessage message) {
+            writeHeader(buffer, message);
+            writeVarInt(buffer, message.sequence);
+            writeVector(buffer, message.location, POSITION_SCALE);
+            synchronized (tempRotation) {
+                writeRotation(buffer, tempRotation.fromRotationMatrix(message.rotation));
+            }
+            writeVector(buffer, message.linearVelocity, VELOCITY_SCALE);
+            writeVector(buffer, message.angularVelocity, VELOCITY_SCALE);
+        }
+
+        @Override
+        public SyncRigidBodyMessage read(ByteBuffer buffer) {
+            SyncRigidBodyMessage message = new SyncRigidBodyMessage();
+            readHeader(buffer, message);
+            message.sequence = readVarInt(buffer);
+            message.location = readVector(buffer, POSITION_SCALE, null);
+            message.rotation = readRotation(buffer, null).toRotationMatrix();
+            message.linearVelocity = readVector(buffer, VELOCITY_SCALE, null);
+            message.angularVelocity = readVector(buffer, VELOCITY_SCALE, null);
+            return message;
+        }
+    }
 }
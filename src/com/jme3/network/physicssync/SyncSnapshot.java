@@ -0,0 +1,591 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.bullet.control.CharacterControl;
+import com.jme3.bullet.objects.PhysicsRigidBody;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * <p>Quantized state of all synced physics objects at one server tick, used by
+ * the snapshot mode of the PhysicsSyncManager.</p>
+ * <p>Positions, velocities and directions are stored as fixed point integers,
+ * rotations as smallest-three quaternions. A snapshot can be written as a delta
+ * against an older snapshot (the last one the client acknowledged), fields that
+ * did not change are not written at all.</p>
+ * @author normenhansen
+ */
+public class SyncSnapshot {
+
+    /**
+     * Decides which entries are written for a specific client
+     */
+    public interface EntryFilter {
+
+        /**
+         * @return true if the entry should be sent to the client
+         */
+        public boolean isRelevant(long id);
+
+        /**
+         * @return true if the client has the state of the entry from the
+         * snapshot with the given tick (i.e. it was relevant then)
+         */
+        public boolean hasBase(long id, int baseTick);
+    }
+
+    public static final byte TYPE_RIGIDBODY = 0;
+    public static final byte TYPE_CHARACTER = 1;
+    /**
+     * position (3), rotation (smallest-three index + 3), vector a (3), vector b (3)
+     */
+    public static final int FIELDS = 13;
+    private static final float POSITION_SCALE = 256f;
+    private static final float VELOCITY_SCALE = 64f;
+    private static final float DIRECTION_SCALE = 4096f;
+    private static final float ROTATION_SCALE = 32767f / 0.70710677f;
+    private static final int FULL_FLAG = 0x80;
+    private static final int FULL_MASK = 1 << 30;
+    int tick = -1;
+    int count = 0;
+    long[] ids = new long[32];
+    byte[] types = new byte[32];
+    boolean[] changed = new boolean[32];
+    int[] data = new int[32 * FIELDS];
+    private int[] baseIndices = new int[32];
+    private int[] masks = new int[32];
+    private Vector3f tempVec = new Vector3f();
+    private Quaternion tempRot = new Quaternion();
+    private float[] tempComponents = new float[4];
+    private int readPosition;
+
+    public int getTick() {
+        return tick;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getId(int index) {
+        return ids[index];
+    }
+
+    /**
+     * clears this snapshot and sets the tick it belongs to
+     * @param tick
+     */
+    public void reset(int tick) {
+        this.tick = tick;
+        this.count = 0;
+    }
+
+    /**
+     * copies the state of another snapshot into this one
+     * @param other
+     */
+    public void set(SyncSnapshot other) {
+        tick = other.tick;
+        count = 0;
+        ensureCapacity(other.count);
+        System.arraycopy(other.ids, 0, ids, 0, other.count);
+        System.arraycopy(other.types, 0, types, 0, other.count);
+        System.arraycopy(other.data, 0, data, 0, other.count * FIELDS);
+        for (int i = 0; i < other.count; i++) {
+            changed[i] = false;
+        }
+        count = other.count;
+    }
+
+    /**
+     * adds the state of a rigid body (or vehicle) to this snapshot
+     * @param id
+     * @param body
+     */
+    public void capture(long id, PhysicsRigidBody body) {
+        int offset = addEntry(id, TYPE_RIGIDBODY);
+        body.getPhysicsLocation(tempVec);
+        quantize(tempVec, POSITION_SCALE, offset);
+        body.getPhysicsRotation(tempRot);
+        packRotation(tempRot, offset + 3);
+        body.getLinearVelocity(tempVec);
+        quantize(tempVec, VELOCITY_SCALE, offset + 7);
+        body.getAngularVelocity(tempVec);
+        quantize(tempVec, VELOCITY_SCALE, offset + 10);
+    }
+
+    /**
+     * adds the state of a character to this snapshot
+     * @param id
+     * @param character
+     */
+    public void capture(long id, CharacterControl character) {
+        int offset = addEntry(id, TYPE_CHARACTER);
+        character.getPhysicsLocation(tempVec);
+        quantize(tempVec, POSITION_SCALE, offset);
+        for (int i = 3; i < 7; i++) {
+            data[offset + i] = 0;
+        }
+        quantize(character.getWalkDirection(), DIRECTION_SCALE, offset + 7);
+        quantize(character.getViewDirection(), DIRECTION_SCALE, offset + 10);
+    }
+
+    /**
+     * sorts the captured entries by id, has to be called after capturing and
+     * before writing the snapshot. The entries are mostly in order already
+     * (HashMap order of small Long keys) so an insertion sort is used.
+     */
+    public void finish() {
+        for (int i = 1; i < count; i++) {
+            int j = i;
+            while (j > 0 && ids[j - 1] > ids[j]) {
+                swap(j - 1, j);
+                j--;
+            }
+        }
+    }
+
+    /**
+     * applies the entry at the given index to a rigid body
+     * @param index
+     * @param body
+     */
+    public void apply(int index, PhysicsRigidBody body) {
+        int offset = index * FIELDS;
+        body.setPhysicsLocation(dequantize(offset, POSITION_SCALE, tempVec));
+        body.setPhysicsRotation(unpackRotation(offset + 3, tempRot));
+        body.setLinearVelocity(dequantize(offset + 7, VELOCITY_SCALE, tempVec));
+        body.setAngularVelocity(dequantize(offset + 10, VELOCITY_SCALE, tempVec));
+    }
+
+    /**
+     * applies the entry at the given index to a character
+     * @param index
+     * @param character
+     */
+    public void apply(int index, CharacterControl character) {
+        int offset = index * FIELDS;
+        character.setPhysicsLocation(dequantize(offset, POSITION_SCALE, tempVec));
+        character.setWalkDirection(dequantize(offset + 7, DIRECTION_SCALE, tempVec));
+        character.setViewDirection(dequantize(offset + 10, DIRECTION_SCALE, tempVec));
+    }
+
+    public byte getType(int index) {
+        return types[index];
+    }
+
+    public Vector3f getLocation(int index, Vector3f store) {
+        return dequantize(index * FIELDS, POSITION_SCALE, store);
+    }
+
+    /**
+     * only valid for rigid body entries
+     */
+    public Quaternion getRotation(int index, Quaternion store) {
+        return unpackRotation(index * FIELDS + 3, store);
+    }
+
+    /**
+     * @return the linear velocity of a rigid body or the walk direction of
+     * a character
+     */
+    public Vector3f getVectorA(int index, Vector3f store) {
+        float scale = types[index] == TYPE_CHARACTER ? DIRECTION_SCALE : VELOCITY_SCALE;
+        return dequantize(index * FIELDS + 7, scale, store);
+    }
+
+    /**
+     * @return the angular velocity of a rigid body or the view direction of
+     * a character
+     */
+    public Vector3f getVectorB(int index, Vector3f store) {
+        float scale = types[index] == TYPE_CHARACTER ? DIRECTION_SCALE : VELOCITY_SCALE;
+        return dequantize(index * FIELDS + 10, scale, store);
+    }
+
+    /**
+     * checks if the entry at the given index was changed by the last read()
+     * @param index
+     * @return
+     */
+    public boolean isChanged(int index) {
+        return changed[index];
+    }
+
+    /**
+     * writes this snapshot as a delta against the given base snapshot, base
+     * can be null in which case the full state is written.
+     * @param base
+     * @param out
+     */
+    public void write(SyncSnapshot base, ByteArrayOutputStream out) {
+        write(base, out, null);
+    }
+
+    /**
+     * writes this snapshot as a delta against the given base snapshot, only
+     * entries accepted by the filter are written. Entries the filter reports
+     * no base for are written in full.
+     * @param base
+     * @param out
+     * @param filter can be null
+     */
+    public void write(SyncSnapshot base, ByteArrayOutputStream out, EntryFilter filter) {
+        int baseCount = base != null ? base.count : 0;
+        int baseTick = base != null ? base.tick : -1;
+        //find base entry and field mask for each entry first to get the count
+        int written = 0;
+        int b = 0;
+        for (int i = 0; i < count; i++) {
+            while (b < baseCount && base.ids[b] < ids[i]) {
+                b++;
+            }
+            baseIndices[i] = -1;
+            masks[i] = 0;
+            if (filter != null && !filter.isRelevant(ids[i])) {
+                continue;
+            }
+            if (b < baseCount && base.ids[b] == ids[i] && base.types[b] == types[i]
+                    && (filter == null || filter.hasBase(ids[i], baseTick))) {
+                baseIndices[i] = b;
+                masks[i] = fieldMask(i, base, b);
+                if (masks[i] != 0) {
+                    written++;
+                }
+            } else {
+                masks[i] = fieldMask(i, null, -1) | FULL_MASK;
+                written++;
+            }
+        }
+        writeVarLong(out, written);
+        long lastId = 0;
+        for (int i = 0; i < count; i++) {
+            int mask = masks[i];
+            if (mask == 0) {
+                continue;
+            }
+            int baseIndex = baseIndices[i];
+            writeVarLong(out, zigZag(ids[i] - lastId));
+            lastId = ids[i];
+            out.write(types[i] | ((mask & FULL_MASK) != 0 ? FULL_FLAG : 0));
+            writeVarLong(out, mask & ~FULL_MASK);
+            int offset = i * FIELDS;
+            int baseOffset = baseIndex * FIELDS;
+            for (int f = 0; f < FIELDS; f++) {
+                if ((mask & (1 << f)) != 0) {
+                    int baseValue = baseIndex >= 0 ? base.data[baseOffset + f] : 0;
+                    writeVarLong(out, zigZag(data[offset + f] - baseValue));
+                }
+            }
+        }
+        //entries that the client has in base but that are not in this snapshot anymore
+        int removed = 0;
+        int c = 0;
+        for (int i = 0; i < baseCount; i++) {
+            while (c < count && ids[c] < base.ids[i]) {
+                c++;
+            }
+            if (isRemoved(base.ids[i], c, baseTick, filter)) {
+                removed++;
+            }
+        }
+        writeVarLong(out, removed);
+        lastId = 0;
+        c = 0;
+        for (int i = 0; i < baseCount; i++) {
+            while (c < count && ids[c] < base.ids[i]) {
+                c++;
+            }
+            if (isRemoved(base.ids[i], c, baseTick, filter)) {
+                writeVarLong(out, zigZag(base.ids[i] - lastId));
+                lastId = base.ids[i];
+            }
+        }
+    }
+
+    private boolean isRemoved(long baseId, int index, int baseTick, EntryFilter filter) {
+        if (filter != null && !filter.hasBase(baseId, baseTick)) {
+            //client does not have this entry
+            return false;
+        }
+        if (index >= count || ids[index] != baseId) {
+            return true;
+        }
+        return filter != null && !filter.isRelevant(baseId);
+    }
+
+    /**
+     * reads a snapshot written with write(), the base has to be the same
+     * snapshot that was used for writing (or null). Entries that were sent are
+     * marked as changed afterwards.
+     * @param base
+     * @param tick
+     * @param buffer
+     */
+    public void read(SyncSnapshot base, int tick, byte[] buffer) {
+        if (base != null) {
+            set(base);
+        } else {
+            count = 0;
+        }
+        this.tick = tick;
+        readPosition = 0;
+        int entries = (int) readVarLong(buffer);
+        long lastId = 0;
+        for (int e = 0; e < entries; e++) {
+            long id = lastId + unZigZag(readVarLong(buffer));
+            lastId = id;
+            byte type = buffer[readPosition++];
+            boolean full = (type & FULL_FLAG) != 0;
+            type &= ~FULL_FLAG;
+            int mask = (int) readVarLong(buffer);
+            int index = indexOf(id);
+            if (index < 0) {
+                index = insertEntry(-(index + 1), id);
+                for (int f = 0; f < FIELDS; f++) {
+                    data[index * FIELDS + f] = 0;
+                }
+            } else if (full || types[index] != type) {
+                for (int f = 0; f < FIELDS; f++) {
+                    data[index * FIELDS + f] = 0;
+                }
+            }
+            types[index] = type;
+            changed[index] = true;
+            int offset = index * FIELDS;
+            for (int f = 0; f < FIELDS; f++) {
+                if ((mask & (1 << f)) != 0) {
+                    data[offset + f] += (int) unZigZag(readVarLong(buffer));
+                }
+            }
+        }
+        int removed = (int) readVarLong(buffer);
+        lastId = 0;
+        for (int r = 0; r < removed; r++) {
+            long id = lastId + unZigZag(readVarLong(buffer));
+            lastId = id;
+            int index = indexOf(id);
+            if (index >= 0) {
+                removeEntry(index);
+            }
+        }
+    }
+
+    /**
+     * binary search for the entry with the given id
+     * @return index or (-(insertion point) - 1)
+     */
+    private int indexOf(long id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midId = ids[mid];
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private int fieldMask(int index, SyncSnapshot base, int baseIndex) {
+        int mask = 0;
+        int offset = index * FIELDS;
+        int baseOffset = baseIndex * FIELDS;
+        for (int f = 0; f < FIELDS; f++) {
+            int baseValue = base != null ? base.data[baseOffset + f] : 0;
+            if (data[offset + f] != baseValue) {
+                mask |= 1 << f;
+            }
+        }
+        return mask;
+    }
+
+    private int addEntry(long id, byte type) {
+        ensureCapacity(count + 1);
+        ids[count] = id;
+        types[count] = type;
+        changed[count] = false;
+        count++;
+        return (count - 1) * FIELDS;
+    }
+
+    private int insertEntry(int index, long id) {
+        ensureCapacity(count + 1);
+        int move = count - index;
+        System.arraycopy(ids, index, ids, index + 1, move);
+        System.arraycopy(types, index, types, index + 1, move);
+        System.arraycopy(changed, index, changed, index + 1, move);
+        System.arraycopy(data, index * FIELDS, data, (index + 1) * FIELDS, move * FIELDS);
+        ids[index] = id;
+        count++;
+        return index;
+    }
+
+    private void removeEntry(int index) {
+        int move = count - index - 1;
+        System.arraycopy(ids, index + 1, ids, index, move);
+        System.arraycopy(types, index + 1, types, index, move);
+        System.arraycopy(changed, index + 1, changed, index, move);
+        System.arraycopy(data, (index + 1) * FIELDS, data, index * FIELDS, move * FIELDS);
+        count--;
+    }
+
+    private void swap(int a, int b) {
+        long id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        byte type = types[a];
+        types[a] = types[b];
+        types[b] = type;
+        boolean change = changed[a];
+        changed[a] = changed[b];
+        changed[b] = change;
+        for (int f = 0; f < FIELDS; f++) {
+            int value = data[a * FIELDS + f];
+            data[a * FIELDS + f] = data[b * FIELDS + f];
+            data[b * FIELDS + f] = value;
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (size <= ids.length) {
+            return;
+        }
+        int newSize = Math.max(size, ids.length * 2);
+        long[] newIds = new long[newSize];
+        System.arraycopy(ids, 0, newIds, 0, count);
+        ids = newIds;
+        byte[] newTypes = new byte[newSize];
+        System.arraycopy(types, 0, newTypes, 0, count);
+        types = newTypes;
+        boolean[] newChanged = new boolean[newSize];
+        System.arraycopy(changed, 0, newChanged, 0, count);
+        changed = newChanged;
+        baseIndices = new int[newSize];
+        masks = new int[newSize];
+        int[] newData = new int[newSize * FIELDS];
+        System.arraycopy(data, 0, newData, 0, count * FIELDS);
+        data = newData;
+    }
+
+    private void quantize(Vector3f vec, float scale, int offset) {
+        data[offset] = Math.round(vec.x * scale);
+        data[offset + 1] = Math.round(vec.y * scale);
+        data[offset + 2] = Math.round(vec.z * scale);
+    }
+
+    private Vector3f dequantize(int offset, float scale, Vector3f store) {
+        return store.set(data[offset] / scale, data[offset + 1] / scale, data[offset + 2] / scale);
+    }
+
+    /**
+     * stores the index of the largest component and the other three components,
+     * the largest one is made positive and reconstructed when unpacking.
+     */
+    private void packRotation(Quaternion rotation, int offset) {
+        float[] comp = tempComponents;
+        comp[0] = rotation.getX();
+        comp[1] = rotation.getY();
+        comp[2] = rotation.getZ();
+        comp[3] = rotation.getW();
+        int largest = 0;
+        for (int i = 1; i < 4; i++) {
+            if (FastMath.abs(comp[i]) > FastMath.abs(comp[largest])) {
+                largest = i;
+            }
+        }
+        float sign = comp[largest] < 0 ? -1 : 1;
+        data[offset] = largest;
+        int j = 1;
+        for (int i = 0; i < 4; i++) {
+            if (i != largest) {
+                data[offset + j] = Math.round(comp[i] * sign * ROTATION_SCALE);
+                j++;
+            }
+        }
+    }
+
+    private Quaternion unpackRotation(int offset, Quaternion store) {
+        float[] comp = tempComponents;
+        int largest = data[offset];
+        float sum = 0;
+        int j = 1;
+        for (int i = 0; i < 4; i++) {
+            if (i != largest) {
+                comp[i] = data[offset + j] / ROTATION_SCALE;
+                sum += comp[i] * comp[i];
+                j++;
+            }
+        }
+        comp[largest] = FastMath.sqrt(Math.max(0, 1 - sum));
+        return store.set(comp[0], comp[1], comp[2], comp[3]);
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * reads a varlong at the read position of read() and advances it
+     */
+    private long readVarLong(byte[] buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer[readPosition++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
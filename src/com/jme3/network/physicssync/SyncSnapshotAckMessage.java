@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.network.AbstractMessage;
+import com.jme3.network.serializing.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * Sent by the client when a snapshot has been received, the server uses the
+ * acknowledged snapshot as the base for delta encoding the next snapshots.
+ * @author normenhansen
+ */
+@Serializable()
+public class SyncSnapshotAckMessage extends AbstractMessage {
+
+    public int tick;
+
+    public SyncSnapshotAckMessage() {
+    }
+
+    public SyncSnapshotAckMessage(int tick) {
+        this.tick = tick;
+        setReliable(false);
+    }
+
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<SyncSnapshotAckMessage> {
+
+        public Codec() {
+            super(SyncSnapshotAckMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, SyncSnapshotAckMessage message) {
+            writeVarInt(buffer, message.tick);
+        }
+
+        @Override
+        public SyncSnapshotAckMessage read(ByteBuffer buffer) {
+            SyncSnapshotAckMessage message = new SyncSnapshotAckMessage();
+            message.tick = readVarInt(buffer);
+            return message;
+        }
+    }
+}
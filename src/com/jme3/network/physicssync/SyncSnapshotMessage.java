@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.network.serializing.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * Snapshot sync message, contains the quantized state of all synced physics
+ * objects, delta encoded against the snapshot with the tick baseTick (or full
+ * when baseTick is -1). Applied by the PhysicsSyncManager itself.
+ * @author normenhansen
+ */
+@Serializable()
+public class SyncSnapshotMessage extends PhysicsSyncMessage {
+
+    public int tick;
+    public int baseTick = -1;
+    public byte[] data;
+    //number of bytes of data that are used
+    public int length;
+
+    public SyncSnapshotMessage() {
+    }
+
+    public SyncSnapshotMessage(int tick, int baseTick, byte[] data) {
+        set(tick, baseTick, data, data.length);
+    }
+
+    /**
+     * sets the snapshot data, the data array is not copied so a pooled
+     * message can send the buffer the snapshot was written to
+     */
+    public void set(int tick, int baseTick, byte[] data, int length) {
+        this.tick = tick;
+        this.baseTick = baseTick;
+        this.data = data;
+        this.length = length;
+    }
+
+    public void applyData(Object manager) {
+        ((PhysicsSyncManager) manager).applySnapshot(this);
+    }
+
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<SyncSnapshotMessage> {
+
+        public Codec() {
+            super(SyncSnapshotMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, SyncSnapshotMessage message) {
+            writeHeader(buffer, message);
+            writeVarInt(buffer, message.tick);
+            writeVarInt(buffer, message.baseTick);
+            writeBytes(buffer, message.data, message.length);
+        }
+
+        @Override
+        public SyncSnapshotMessage read(ByteBuffer buffer) {
+            SyncSnapshotMessage message = new SyncSnapshotMessage();
+            readHeader(buffer, message);
+            message.tick = readVarInt(buffer);
+            message.baseTick = readVarInt(buffer);
+            message.data = readBytes(buffer);
+            message.length = message.data != null ? message.data.length : 0;
+            return message;
+        }
+    }
+}
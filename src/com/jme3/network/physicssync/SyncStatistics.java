@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+/**
+ * Collects metrics of the sync on the client: the latency between the
+ * server time of a message and the estimated server time it arrives and is
+ * applied at, and the distance predicted objects are corrected by when an authoritative state
+ * arrives. Use from the update thread.
+ * @author normenhansen
+ */
+public class SyncStatistics {
+
+    private long arrivedMessages = 0;
+    private double arrivalLatencyTotal = 0;
+    private double arrivalLatencyMax = 0;
+    private long appliedMessages = 0;
+    private double applyLatencyTotal = 0;
+    private double applyLatencyMax = 0;
+    private long reconciliations = 0;
+    private long corrections = 0;
+    private double correctionTotal = 0;
+    private float correctionMax = 0;
+
+    /**
+     * adds the latency of a message that arrived
+     * @param latency server time of arrival minus time of the message
+     */
+    public void addArrivalLatency(double latency) {
+        arrivedMessages++;
+        arrivalLatencyTotal += latency;
+        arrivalLatencyMax = Math.max(arrivalLatencyMax, latency);
+    }
+
+    /**
+     * adds the latency of a message that was applied, states that are
+     * interpolated are not applied as messages
+     * @param latency server time of applying minus time of the message
+     */
+    public void addApplyLatency(double latency) {
+        appliedMessages++;
+        applyLatencyTotal += latency;
+        applyLatencyMax = Math.max(applyLatencyMax, latency);
+    }
+
+    /**
+     * adds the distance between the predicted and the authoritative state
+     * of an object when a state is reconciled
+     * @param distance
+     * @param corrected true if the object was moved to the authoritative
+     * state
+     */
+    public void addReconciliation(float distance, boolean corrected) {
+        reconciliations++;
+        if (corrected) {
+            corrections++;
+            correctionTotal += distance;
+            correctionMax = Math.max(correctionMax, distance);
+        }
+    }
+
+    public void clear() {
+        arrivedMessages = 0;
+        arrivalLatencyTotal = 0;
+        arrivalLatencyMax = 0;
+        appliedMessages = 0;
+        applyLatencyTotal = 0;
+        applyLatencyMax = 0;
+        reconciliations = 0;
+        corrections = 0;
+        correctionTotal = 0;
+        correctionMax = 0;
+    }
+
+    public long getArrivedMessages() {
+        return arrivedMessages;
+    }
+
+    public double getAverageArrivalLatency() {
+        if (arrivedMessages == 0) {
+            return 0;
+        }
+        return arrivalLatencyTotal / arrivedMessages;
+    }
+
+    public double getMaxArrivalLatency() {
+        return arrivalLatencyMax;
+    }
+
+    public long getAppliedMessages() {
+        return appliedMessages;
+    }
+
+    public double getAverageApplyLatency() {
+        if (appliedMessages == 0) {
+            return 0;
+        }
+        return applyLatencyTotal / appliedMessages;
+    }
+
+    public double getMaxApplyLatency() {
+        return applyLatencyMax;
+    }
+
+    public long getReconciliations() {
+        return reconciliations;
+    }
+
+    /**
+     * @return the number of reconciliations that moved the object
+     */
+    public long getCorrections() {
+        return corrections;
+    }
+
+    /**
+     * @return the average distance objects were moved by when they were
+     * corrected
+     */
+    public float getAverageCorrection() {
+        if (corrections == 0) {
+            return 0;
+        }
+        return (float) (correctionTotal / corrections);
+    }
+
+    public float getMaxCorrection() {
+        return correctionMax;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncStatistics[arrived=" + arrivedMessages + ", arrival latency=" + getAverageArrivalLatency() + " (max " + arrivalLatencyMax
+                + "), applied=" + appliedMessages + ", apply latency=" + getAverageApplyLatency() + " (max " + applyLatencyMax
+                + "), reconciliations=" + reconciliations + ", corrections=" + corrections + ", correction=" + getAverageCorrection()
+                + " (max " + correctionMax + ")]";
+    }
+}
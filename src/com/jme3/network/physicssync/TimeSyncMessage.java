@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.network.AbstractMessage;
+import com.jme3.network.serializing.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * Ping sent by the client to estimate the server time, the server answers
+ * right away with the same message and its own clock time filled in. The
+ * client takes the receive time when the answer arrives, see ClockSync.
+ * The sequence number and the last round trip the client measured let the
+ * server estimate loss and round trip of the connection.
+ * @author normenhansen
+ */
+@Serializable()
+public class TimeSyncMessage extends AbstractMessage {
+
+    public double clientTime;
+    public double serverTime;
+    public int sequence;
+    //round trip of the last answered ping, -1 if there is none
+    public double roundTrip = -1;
+    //local time when the answer arrived, not sent
+    public transient double receiveTime;
+
+    public TimeSyncMessage() {
+    }
+
+    public TimeSyncMessage(double clientTime) {
+        this.clientTime = clientTime;
+        setReliable(false);
+    }
+
+    /**
+     * writes the message without reflection
+     */
+    public static class Codec extends MessageCodec<TimeSyncMessage> {
+
+        public Codec() {
+            super(TimeSyncMessage.class);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, TimeSyncMessage message) {
+            writeTime(buffer, message.clientTime);
+            writeTime(buffer, message.serverTime);
+            writeVarInt(buffer, message.sequence);
+            writeTime(buffer, message.roundTrip);
+        }
+
+        @Override
+        public TimeSyncMessage read(ByteBuffer buffer) {
+            TimeSyncMessage message = new TimeSyncMessage();
+            message.clientTime = readTime(buffer);
+            message.serverTime = readTime(buffer);
+            message.sequence = readVarInt(buffer);
+            message.roundTrip = readTime(buffer);
+            return message;
+        }
+    }
+}
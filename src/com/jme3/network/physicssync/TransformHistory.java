@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2009-2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.physicssync;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+
+/**
+ * <p>Ring buffer of the transforms of objects over the last frames, used on the
+ * server to look up where objects were at an earlier time (e.g. the time a
+ * client saw the world at when it shot). Frames are recorded with the time of
+ * the PhysicsSyncManager.</p>
+ * <p>All data is kept in arrays that are allocated up front, they only grow
+ * when a frame has more objects than expected.</p>
+ * @author normenhansen
+ */
+public class TransformHistory {
+
+    /**
+     * location (3), rotation (4)
+     */
+    private static final int FIELDS = 7;
+    private final int frames;
+    private int objects;
+    private double[] times;
+    private int[] counts;
+    private long[] ids;
+    private float[] transforms;
+    //index of the newest frame and number of recorded frames
+    private int newest = -1;
+    private int size = 0;
+    private Quaternion tempRot = new Quaternion();
+
+    /**
+     * @param frames the number of frames that are kept
+     * @param objects the expected maximum number of objects per frame
+     */
+    public TransformHistory(int frames, int objects) {
+        this.frames = frames;
+        this.objects = Math.max(objects, 1);
+        times = new double[frames];
+        counts = new int[frames];
+        ids = new long[frames * this.objects];
+        transforms = new float[frames * this.objects * FIELDS];
+    }
+
+    /**
+     * starts recording a new frame, replaces the oldest frame when the buffer
+     * is full. Times have to increase from frame to frame.
+     * @param time
+     */
+    public void startFrame(double time) {
+        newest = (newest + 1) % frames;
+        if (size < frames) {
+            size++;
+        }
+        times[newest] = time;
+        counts[newest] = 0;
+    }
+
+    /**
+     * adds the transform of an object to the current frame
+     * @param id
+     * @param location
+     * @param rotation
+     */
+    public void add(long id, Vector3f location, Quaternion rotation) {
+        if (newest < 0) {
+            throw new IllegalStateException("No frame started");
+        }
+        int count = counts[newest];
+        if (count == objects) {
+            grow();
+        }
+        int index = newest * objects + count;
+        ids[index] = id;
+        int offset = index * FIELDS;
+        transforms[offset] = location.x;
+        transforms[offset + 1] = location.y;
+        transforms[offset + 2] = location.z;
+        transforms[offset + 3] = rotation.getX();
+        transforms[offset + 4] = rotation.getY();
+        transforms[offset + 5] = rotation.getZ();
+        transforms[offset + 6] = rotation.getW();
+        counts[newest] = count + 1;
+    }
+
+    public void clear() {
+        newest = -1;
+        size = 0;
+    }
+
+    public int getFrameCount() {
+        return size;
+    }
+
+    public double getNewestTime() {
+        return size == 0 ? Double.NaN : times[newest];
+    }
+
+    public double getOldestTime() {
+        return size == 0 ? Double.NaN : times[getFrame(size - 1)];
+    }
+
+    /**
+     * gets the transform of an object at the given time, interpolated between
+     * the recorded frames. Times before the oldest or after the newest frame
+     * are clamped to that frame.
+     * @param id
+     * @param time
+     * @param storeLocation
+     * @param storeRotation
+     * @return false if the object is not in the history at that time
+     */
+    public boolean getTransform(long id, double time, Vector3f storeLocation, Quaternion storeRotation) {
+        if (size == 0) {
+            return false;
+        }
+        //frames by age, 0 is the newest
+        int age = 0;
+        while (age < size - 1 && times[getFrame(age)] > time) {
+            age++;
+        }
+        int older = getFrame(age);
+        int olderIndex = indexOf(older, id, -1);
+        if (age == 0 || times[older] >= time) {
+            return olderIndex >= 0 && get(olderIndex, storeLocation, storeRotation);
+        }
+        int newer = getFrame(age - 1);
+        int newerIndex = indexOf(newer, id, olderIndex >= 0 ? olderIndex - older * objects : -1);
+        if (olderIndex < 0) {
+            //object appeared after the older frame
+            return newerIndex >= 0 && get(newerIndex, storeLocation, storeRotation);
+        }
+        if (newerIndex < 0) {
+            return get(olderIndex, storeLocation, storeRotation);
+        }
+        float blend = (float) ((time - times[older]) / (times[newer] - times[older]));
+        int a = olderIndex * FIELDS;
+        int b = newerIndex * FIELDS;
+        storeLocation.set(transforms[a] + (transforms[b] - transforms[a]) * blend,
+                transforms[a + 1] + (transforms[b + 1] - transforms[a + 1]) * blend,
+                transforms[a + 2] + (transforms[b + 2] - transforms[a + 2]) * blend);
+        tempRot.set(transforms[b + 3], transforms[b + 4], transforms[b + 5], transforms[b + 6]);
+        storeRotation.set(transforms[a + 3], transforms[a + 4], transforms[a + 5], transforms[a + 6]);
+        storeRotation.slerp(storeRotation, tempRot, blend);
+        return true;
+    }
+
+    private boolean get(int index, Vector3f storeLocation, Quaternion storeRotation) {
+        int offset = index * FIELDS;
+        storeLocation.set(transforms[offset], transforms[offset + 1], transforms[offset + 2]);
+        storeRotation.set(transforms[offset + 3], transforms[offset + 4], transforms[offset + 5], transforms[offset + 6]);
+        return true;
+    }
+
+    /**
+     * @return the frame index of the frame with the given age
+     */
+    private int getFrame(int age) {
+        return (newest - age + frames) % frames;
+    }
+
+    /**
+     * finds an object in a frame, objects are mostly recorded in the same
+     * order each frame so the slot of the object in another frame is tried
+     * first
+     * @return the index of the object in the arrays or -1
+     */
+    private int indexOf(int frame, long id, int hint) {
+        int start = frame * objects;
+        int count = counts[frame];
+        if (hint >= 0 && hint < count && ids[start + hint] == id) {
+            return start + hint;
+        }
+        for (int i = 0; i < count; i++) {
+            if (ids[start + i] == id) {
+                return start + i;
+            }
+        }
+        return -1;
+    }
+
+    private void grow() {
+        int newObjects = objects * 2;
+        long[] newIds = new long[frames * newObjects];
+        float[] newTransforms = new float[frames * newObjects * FIELDS];
+        for (int frame = 0; frame < frames; frame++) {
+            System.arraycopy(ids, frame * objects, newIds, frame * newObjects, objects);
+            System.arraycopy(transforms, frame * objects * FIELDS, newTransforms, frame * newObjects * FIELDS, objects * FIELDS);
+        }
+        ids = newIds;
+        transforms = newTransforms;
+        objects = newObjects;
+    }
+}
@@ -30,6 +30,15 @@ public class Cell implements Savable {
     static final int SIDE_AB = 0;
     static final int SIDE_BC = 1;
     static final int SIDE_CA = 2;
+    /**
+     * result of classifyPathToCell() when the path ends in the cell,
+     * a path exiting the cell returns the side it exits through
+     */
+    public static final int ENDING_CELL = 3;
+    /**
+     * result of classifyPathToCell() when the path does not cross the cell
+     */
+    public static final int NO_RELATIONSHIP = -1;
 
     enum PathResult {
 
@@ -91,39 +100,24 @@ public class Cell implements Savable {
     private Cell[] links = new Cell[3];
 
     /**
-     * an identifier for the current pathfinding session.
-     */
-    private volatile int sessionID;
-
-    /**
-     * total cost to use this cell as part of a path
-     */
-    private volatile float arrivalCost;
-
-    /**
-     * our estimated cost to the goal from here
-     */
-    private volatile float heuristic;
-
-    /**
-     * are we currently listed as an Open cell to revisit and test?
+     * the pre-computed midpoint of each wall.
      */
-    private volatile boolean open;
+    private Vector3f[] wallMidpoints = new Vector3f[3];
 
     /**
-     * the side we arrived through.
+     * the distances between each wall midpoint of sides (0-1, 1-2, 2-0)
      */
-    private volatile int arrivalWall;
+    private float[] wallDistances = new float[3];
 
     /**
-     * the pre-computed midpoint of each wall.
+     * the bounds of the triangle on the XZ plane
      */
-    private Vector3f[] wallMidpoints = new Vector3f[3];
+    private float minX, minZ, maxX, maxZ;
 
     /**
-     * the distances between each wall midpoint of sides (0-1, 1-2, 2-0)
+     * the position of this cell in the NavMesh cell list
      */
-    private float[] wallDistances = new float[3];
+    private int index = -1;
 
     void initialize(Vector3f pointA, Vector3f pointB, Vector3f pointC) {
         verticies[VERT_A] = pointA;
@@ -174,6 +168,11 @@ public class Cell implements Savable {
                 (verticies[VERT_C].y + verticies[VERT_A].y) / 2.0f,
                 (verticies[VERT_C].z + verticies[VERT_A].z) / 2.0f);
 
+        minX = Math.min(verticies[VERT_A].x, Math.min(verticies[VERT_B].x, verticies[VERT_C].x));
+        minZ = Math.min(verticies[VERT_A].z, Math.min(verticies[VERT_B].z, verticies[VERT_C].z));
+        maxX = Math.max(verticies[VERT_A].x, Math.max(verticies[VERT_B].x, verticies[VERT_C].x));
+        maxZ = Math.max(verticies[VERT_A].z, Math.max(verticies[VERT_B].z, verticies[VERT_C].z));
+
         // compute the distances between the wall midpoints
         Vector3f wallVector;
         wallVector = wallMidpoints[0].subtract(wallMidpoints[1]);
@@ -237,7 +236,7 @@ public class Cell implements Savable {
      * @param Side
      * @param Caller
      */
-    private void setLink(int Side, Cell Caller) {
+    void setLink(int Side, Cell Caller) {
         links[Side] = Caller;
     }
 
@@ -284,6 +283,85 @@ public class Cell implements Savable {
         return (InteriorCount == 3);
     }
 
+    /**
+     * Same as contains(Vector2f) for a point given by its X and Z coordinates,
+     * without creating temporary objects.
+     *
+     * @param x
+     * @param z
+     * @return
+     */
+    public boolean contains(float x, float z) {
+        for (int i = 0; i < 3; i++) {
+            if (sides[i].signedDistance(x, z) < -1.0e-6f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes where a path from the center of this cell to the point leaves
+     * the cell and returns the distance of that exit point (on the cell plane)
+     * to the point. This is the distance findClosestCell() uses for points that
+     * are not on the cell. Does not create temporary objects.
+     *
+     * @param point
+     * @return the distance or -1 if the path does not leave the cell
+     */
+    float getExitDistance(Vector3f point) {
+        // the path leaves through the wall it crosses first, the walls the
+        // point is outside of are crossed at center + t * (point - center)
+        float exit = Float.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            float pointDistance = sides[i].signedDistance(point.x, point.z);
+            if (pointDistance <= 0.0f) {
+                float centerDistance = sides[i].signedDistance(center.x, center.z);
+                float t = centerDistance / (centerDistance - pointDistance);
+                if (t < exit) {
+                    exit = t;
+                }
+            }
+        }
+        if (exit == Float.MAX_VALUE) {
+            return -1;
+        }
+        float x = center.x + (point.x - center.x) * exit;
+        float z = center.z + (point.z - center.z) * exit;
+        float dx = x - point.x;
+        float dy = cellPlane.solveForY(x, z) - point.y;
+        float dz = z - point.z;
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    Plane getPlane() {
+        return cellPlane;
+    }
+
+    float getMinX() {
+        return minX;
+    }
+
+    float getMinZ() {
+        return minZ;
+    }
+
+    float getMaxX() {
+        return maxX;
+    }
+
+    float getMaxZ() {
+        return maxZ;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    void setIndex(int index) {
+        this.index = index;
+    }
+
     /**
      * Test to see if a 3D point is within the cell by projecting it down to 2D
      * and calling the above method.
@@ -310,22 +388,6 @@ public class Cell implements Savable {
         return sides[side];
     }
 
-    float getArrivalCost() {
-        return (arrivalCost);
-    }
-
-    float getHeuristic() {
-        return (heuristic);
-    }
-
-    float getTotalCost() {
-        return (arrivalCost + heuristic);
-    }
-
-    int getArrivalWall() {
-        return (arrivalWall);
-    }
-
     public float getWallLength(int side){
         return wallDistances[side];
     }
@@ -421,6 +483,36 @@ public class Cell implements Savable {
         // return (PATH_RESULT.NO_RELATIONSHIP);
     }
 
+    /**
+     * Same as classifyPathToCell(Line2D) for the path from A to B without
+     * creating any objects.
+     * @return the side the path exits the cell through,
+     * ENDING_CELL if the path ends in the cell or NO_RELATIONSHIP
+     */
+    int classifyPathToCell(float ax, float az, float bx, float bz) {
+        int interiorCount = 0;
+        for (int i = 0; i < 3; ++i) {
+            // points to the right of the walls are inside the cell
+            if (!(sides[i].signedDistance(bx, bz) > 0.0f)) {
+                if (!(sides[i].signedDistance(ax, az) < 0.0f)) {
+                    Vector2f wallA = sides[i].getPointA();
+                    Vector2f wallB = sides[i].getPointB();
+                    Line2D.LineIntersect result = Line2D.intersect(ax, az, bx, bz,
+                            wallA.x, wallA.y, wallB.x, wallB.y, null);
+                    if (result == Line2D.LineIntersect.SegmentsIntersect || result == Line2D.LineIntersect.ABisectsB) {
+                        return i;
+                    }
+                }
+            } else {
+                interiorCount++;
+            }
+        }
+        if (interiorCount == 3) {
+            return ENDING_CELL;
+        }
+        return NO_RELATIONSHIP;
+    }
+
     /**
      * ProjectPathOnCellWall projects a path intersecting the wall with the wall
      * itself. This can be used to convert a path colliding with a cell wall to
@@ -566,16 +658,19 @@ public class Cell implements Savable {
     }
 
     /**
-     * Process this cells neighbors using A*
+     * Process this cells neighbors using A*. The search data of the cells is
+     * kept in the heap, so the cell itself is not changed.
      *
      * @param heap
      * @return
      */
     boolean processCell(Heap heap) {
-        if (sessionID == heap.getSessionID()) {
+        if (heap.isVisited(index)) {
             // once we have been processed, we are closed
-            open = false;
+            heap.closeCell(index);
 
+            float arrivalCost = heap.getArrivalCost(index);
+            int arrivalWall = heap.getArrivalWall(index);
             // querry all our neigbors to see if they need to be added to the
             // Open heap
             for (int i = 0; i < 3; ++i) {
@@ -606,51 +701,26 @@ public class Cell implements Savable {
      * @return
      */
     boolean queryForPath(Heap heap, Cell caller, float arrivalCost) {
-        if (sessionID != heap.getSessionID()) {
-            // this is a new session, reset our internal data
-            sessionID = heap.getSessionID();
-
+        if (!heap.isVisited(index)) {
+            // this is a new session, add this cell to the Open heap
             if (caller != null) {
-                open = true;
-                computeHeuristic(heap.getGoal());
-                this.arrivalCost = arrivalCost;
-
-                // remember the side this caller is entering from
-                if (caller.equals(links[0])) {
-                    arrivalWall = 0;
-                } else if (caller.equals(links[1])) {
-                    arrivalWall = 1;
-                } else if (caller.equals(links[2])) {
-                    arrivalWall = 2;
-                }
+                heap.addCell(index, arrivalCost, computeHeuristic(heap.getGoal()),
+                        getLinkSide(caller), true);
             } else {
                 // we are the cell that contains the starting location
                 // of the A* search.
-                open = false;
-                this.arrivalCost = 0;
-                heuristic = 0;
-                arrivalWall = 0;
+                heap.addCell(index, 0, 0, 0, false);
             }
-            // add this cell to the Open heap
-            heap.addCell(this);
             return true;
-        } else if (open) {
+        } else if (heap.isOpen(index)) {
             // m_Open means we are already in the Open Heap.
             // If this new caller provides a better path, adjust our data
             // Then tell the Heap to resort our position in the list.
-            if ((arrivalCost + heuristic) < (this.arrivalCost + heuristic)) {
-                this.arrivalCost = arrivalCost;
-
-                // remember the side this caller is entering from
-                if (caller.equals(links[0])) {
-                    arrivalWall = 0;
-                } else if (caller.equals(links[1])) {
-                    arrivalWall = 1;
-                } else if (caller.equals(links[2])) {
-                    arrivalWall = 2;
-                }
-                // ask the heap to resort our position in the priority heap
-                heap.adjustCell(this);
+            float heuristic = heap.getHeuristic(index);
+            if ((arrivalCost + heuristic) < (heap.getArrivalCost(index) + heuristic)) {
+                // remember the side this caller is entering from and ask
+                // the heap to resort our position in the priority heap
+                heap.adjustCell(index, arrivalCost, getLinkSide(caller));
                 return true;
             }
         }
@@ -658,12 +728,25 @@ public class Cell implements Savable {
         return false;
     }
 
+    /**
+     * @return the side linking to the given cell, 0 if it is not linked
+     */
+    private int getLinkSide(Cell cell) {
+        if (cell.equals(links[0])) {
+            return 0;
+        } else if (cell.equals(links[1])) {
+            return 1;
+        } else if (cell.equals(links[2])) {
+            return 2;
+        }
+        return 0;
+    }
 
     /**
      * Compute the A* Heuristic for this cell given a Goal point
      * @param goal
      */
-    void computeHeuristic(Vector3f goal) {
+    float computeHeuristic(Vector3f goal) {
         // our heuristic is the estimated distance (using the longest axis
         // delta) between our
         // cell center and the goal location
@@ -672,8 +755,8 @@ public class Cell implements Savable {
 //        float YDelta = Math.abs(goal.y - center.y);
 //        float ZDelta = Math.abs(goal.z - center.z);
 
-//        heuristic = Math.max(Math.max(XDelta, YDelta), ZDelta);
-        heuristic = goal.distance(center);
+//        return Math.max(Math.max(XDelta, YDelta), ZDelta);
+        return goal.distance(center);
     }
 
     @Override
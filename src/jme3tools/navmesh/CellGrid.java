@@ -0,0 +1,198 @@
+package jme3tools.navmesh;
+
+import com.jme3.math.Vector3f;
+
+/**
+ * A uniform 2D bucket grid over the XZ bounds of the cells of a NavMesh, used
+ * to find the cell at or closest to a point without testing every cell.
+ * Each cell is stored in every bucket its bounds overlap. The buckets are kept
+ * in flat arrays (bucket start offsets and cell indices), so queries do not
+ * allocate and can be done from multiple threads. The cells are only known
+ * by their index, the mesh provides their bounds and tests through the
+ * Cells interface so the grid works for NavMesh and CompactNavMesh.
+ *
+ * @author normenhansen
+ */
+class CellGrid {
+
+    /**
+     * the cells of a mesh as seen by the grid
+     */
+    interface Cells {
+
+        int getNumCells();
+
+        float getMinX(int cell);
+
+        float getMinZ(int cell);
+
+        float getMaxX(int cell);
+
+        float getMaxZ(int cell);
+
+        boolean contains(int cell, float x, float z);
+
+        float getHeight(int cell, float x, float z);
+
+        /**
+         * @see Cell#getExitDistance(com.jme3.math.Vector3f)
+         */
+        float getExitDistance(int cell, Vector3f point);
+    }
+
+    private Cells cells;
+    private int numCells;
+    private float minX;
+    private float minZ;
+    private float bucketSize;
+    private int width;
+    private int depth;
+    /**
+     * start offset of each bucket in bucketCells, one more entry than buckets
+     */
+    private int[] bucketStart;
+    private int[] bucketCells;
+
+    CellGrid(Cells cells) {
+        this.cells = cells;
+        numCells = cells.getNumCells();
+        if (numCells == 0) {
+            return;
+        }
+        float maxX = -Float.MAX_VALUE;
+        float maxZ = -Float.MAX_VALUE;
+        minX = Float.MAX_VALUE;
+        minZ = Float.MAX_VALUE;
+        float extents = 0;
+        for (int i = 0; i < numCells; i++) {
+            minX = Math.min(minX, cells.getMinX(i));
+            minZ = Math.min(minZ, cells.getMinZ(i));
+            maxX = Math.max(maxX, cells.getMaxX(i));
+            maxZ = Math.max(maxZ, cells.getMaxZ(i));
+            extents += Math.max(cells.getMaxX(i) - cells.getMinX(i), cells.getMaxZ(i) - cells.getMinZ(i));
+        }
+        // buckets about the size of an average cell, but not more buckets
+        // than four per cell for sparse meshes
+        bucketSize = Math.max(extents / numCells, 0.01f);
+        float sizeX = maxX - minX;
+        float sizeZ = maxZ - minZ;
+        while ((long) bucketCount(sizeX, bucketSize) * bucketCount(sizeZ, bucketSize) > 4L * numCells) {
+            bucketSize *= 1.5f;
+        }
+        width = bucketCount(sizeX, bucketSize);
+        depth = bucketCount(sizeZ, bucketSize);
+        bucketStart = new int[width * depth + 1];
+        // count cells per bucket first, then fill
+        for (int i = 0; i < numCells; i++) {
+            int x0 = bucketX(cells.getMinX(i));
+            int x1 = bucketX(cells.getMaxX(i));
+            int z0 = bucketZ(cells.getMinZ(i));
+            int z1 = bucketZ(cells.getMaxZ(i));
+            for (int z = z0; z <= z1; z++) {
+                for (int x = x0; x <= x1; x++) {
+                    bucketStart[z * width + x + 1]++;
+                }
+            }
+        }
+        for (int i = 1; i < bucketStart.length; i++) {
+            bucketStart[i] += bucketStart[i - 1];
+        }
+        bucketCells = new int[bucketStart[bucketStart.length - 1]];
+        int[] fill = new int[width * depth];
+        for (int i = 0; i < numCells; i++) {
+            int x0 = bucketX(cells.getMinX(i));
+            int x1 = bucketX(cells.getMaxX(i));
+            int z0 = bucketZ(cells.getMinZ(i));
+            int z1 = bucketZ(cells.getMaxZ(i));
+            for (int z = z0; z <= z1; z++) {
+                for (int x = x0; x <= x1; x++) {
+                    int bucket = z * width + x;
+                    bucketCells[bucketStart[bucket] + fill[bucket]++] = i;
+                }
+            }
+        }
+    }
+
+    private static int bucketCount(float size, float bucketSize) {
+        return Math.max(1, (int) Math.ceil(size / bucketSize));
+    }
+
+    private int bucketX(float x) {
+        int bucket = (int) Math.floor((x - minX) / bucketSize);
+        return bucket < 0 ? 0 : (bucket >= width ? width - 1 : bucket);
+    }
+
+    private int bucketZ(float z) {
+        int bucket = (int) Math.floor((z - minZ) / bucketSize);
+        return bucket < 0 ? 0 : (bucket >= depth ? depth - 1 : bucket);
+    }
+
+    /**
+     * Find the closest cell to the given point. Cells that contain the point
+     * in XZ are preferred, the one closest in height is returned. Otherwise
+     * the cell where the path from its center to the point exits closest to
+     * the point is returned, searching rings of buckets around the point until
+     * no closer cell can exist.
+     * @return the index of the cell, -1 if there are no cells
+     */
+    int findClosestCell(Vector3f point) {
+        if (numCells == 0) {
+            return -1;
+        }
+        int bx = bucketX(point.x);
+        int bz = bucketZ(point.z);
+        // any cell containing the point overlaps the bucket of the point
+        int closestCell = -1;
+        float closestHeight = Float.MAX_VALUE;
+        for (int i = bucketStart[bz * width + bx]; i < bucketStart[bz * width + bx + 1]; i++) {
+            int cell = bucketCells[i];
+            if (cells.contains(cell, point.x, point.z)) {
+                float height = Math.abs(cells.getHeight(cell, point.x, point.z) - point.y);
+                if (height < closestHeight) {
+                    closestHeight = height;
+                    closestCell = cell;
+                }
+            }
+        }
+        if (closestCell >= 0) {
+            return closestCell;
+        }
+        float closestDistance = Float.MAX_VALUE;
+        for (int ring = 0;; ring++) {
+            int x0 = bx - ring;
+            int x1 = bx + ring;
+            int z0 = bz - ring;
+            int z1 = bz + ring;
+            for (int z = Math.max(z0, 0); z <= Math.min(z1, depth - 1); z++) {
+                boolean edgeRow = z == z0 || z == z1;
+                for (int x = Math.max(x0, 0); x <= Math.min(x1, width - 1); x++) {
+                    if (!edgeRow && x != x0 && x != x1) {
+                        // inner buckets were checked in the last rings
+                        x = x1 - 1;
+                        continue;
+                    }
+                    int bucket = z * width + x;
+                    for (int i = bucketStart[bucket]; i < bucketStart[bucket + 1]; i++) {
+                        int cell = bucketCells[i];
+                        float distance = cells.getExitDistance(cell, point);
+                        if (distance >= 0 && distance < closestDistance) {
+                            closestDistance = distance;
+                            closestCell = cell;
+                        }
+                    }
+                }
+            }
+            if (x0 <= 0 && z0 <= 0 && x1 >= width - 1 && z1 >= depth - 1) {
+                // searched the whole grid
+                return closestCell;
+            }
+            // cells that were not checked yet are outside the searched block
+            float blockDistance = Math.min(
+                    Math.min(point.x - (minX + x0 * bucketSize), minX + (x1 + 1) * bucketSize - point.x),
+                    Math.min(point.z - (minZ + z0 * bucketSize), minZ + (z1 + 1) * bucketSize - point.z));
+            if (closestCell >= 0 && closestDistance <= blockDistance) {
+                return closestCell;
+            }
+        }
+    }
+}
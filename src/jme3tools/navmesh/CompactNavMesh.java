@@ -0,0 +1,441 @@
+package jme3tools.navmesh;
+
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import java.util.HashMap;
+import jme3tools.navmesh.Line2D.LineIntersect;
+
+/**
+ * A read-only version of a NavMesh where all cell data is kept in flat
+ * arrays indexed by the cell index instead of Cell, Line2D, Plane and vector
+ * objects: shared vertices, vertex indices and links per cell, the normals of
+ * the cell walls, the cell planes and the distances between the wall
+ * midpoints. Centers and bounds are computed from the vertices when
+ * needed. Cells are referenced by their index, -1 means no
+ * cell.<br>
+ * Finding cells, classifying paths, line of sight tests and A* path finding
+ * work directly on the arrays and give the same results as the NavMesh the
+ * compact mesh was created from. All queries can be done from multiple
+ * threads.
+ *
+ * @author normenhansen
+ */
+public class CompactNavMesh {
+
+    private final int numCells;
+    /**
+     * x, y, z of the vertices
+     */
+    private final float[] vertices;
+    /**
+     * three vertex indices per cell in clockwise order
+     */
+    private final int[] indices;
+    /**
+     * three linked cells per cell (sides AB, BC, CA), -1 for solid walls
+     */
+    private final int[] links;
+    /**
+     * x, z of the normal of each wall, pointing into the cell
+     */
+    private final float[] wallNormals;
+    /**
+     * normal x, y, z and constant of the plane of each cell
+     */
+    private final float[] planes;
+    /**
+     * the distances between the wall midpoints of each cell (0-1, 1-2, 2-0)
+     */
+    private final float[] wallDistances;
+    private final CellGrid cellGrid;
+    private final ThreadLocal<Search> searches = new ThreadLocal<Search>() {
+
+        @Override
+        protected Search initialValue() {
+            return new Search();
+        }
+    };
+
+    /**
+     * Creates a compact copy of a linked NavMesh
+     * @param navMesh
+     */
+    public CompactNavMesh(NavMesh navMesh) {
+        numCells = navMesh.getNumCells();
+        HashMap<Vector3f, Integer> vertexIds = new HashMap<Vector3f, Integer>();
+        float[] vertexData = new float[numCells * 9];
+        int vertexCount = 0;
+        indices = new int[numCells * 3];
+        links = new int[numCells * 3];
+        wallNormals = new float[numCells * 6];
+        planes = new float[numCells * 4];
+        wallDistances = new float[numCells * 3];
+        for (int i = 0; i < numCells; i++) {
+            Cell cell = navMesh.getCell(i);
+            for (int j = 0; j < 3; j++) {
+                Vector3f vertex = cell.getVertex(j);
+                Integer id = vertexIds.get(vertex);
+                if (id == null) {
+                    id = vertexCount++;
+                    vertexIds.put(vertex, id);
+                    vertexData[id * 3] = vertex.x;
+                    vertexData[id * 3 + 1] = vertex.y;
+                    vertexData[id * 3 + 2] = vertex.z;
+                }
+                indices[i * 3 + j] = id;
+                Cell link = cell.getLink(j);
+                links[i * 3 + j] = link == null ? -1 : link.getIndex();
+                Vector2f normal = cell.getWall(j).getNormal();
+                wallNormals[i * 6 + j * 2] = normal.x;
+                wallNormals[i * 6 + j * 2 + 1] = normal.y;
+                wallDistances[i * 3 + j] = cell.getWallLength(j);
+            }
+            Vector3f normal = cell.getPlane().getNormal();
+            planes[i * 4] = normal.x;
+            planes[i * 4 + 1] = normal.y;
+            planes[i * 4 + 2] = normal.z;
+            planes[i * 4 + 3] = cell.getPlane().getConstant();
+        }
+        vertices = new float[vertexCount * 3];
+        System.arraycopy(vertexData, 0, vertices, 0, vertices.length);
+        cellGrid = new CellGrid(new GridCells());
+    }
+
+    public int getNumCells() {
+        return numCells;
+    }
+
+    public int getNumVertices() {
+        return vertices.length / 3;
+    }
+
+    /**
+     * @return the approximate size of the mesh data in bytes
+     */
+    public long getDataSize() {
+        return 4L * (vertices.length + indices.length + links.length + wallNormals.length
+                + planes.length + wallDistances.length);
+    }
+
+    public Vector3f getVertex(int cell, int vertex, Vector3f store) {
+        if (store == null) {
+            store = new Vector3f();
+        }
+        int id = indices[cell * 3 + vertex] * 3;
+        return store.set(vertices[id], vertices[id + 1], vertices[id + 2]);
+    }
+
+    public Vector3f getCenter(int cell, Vector3f store) {
+        if (store == null) {
+            store = new Vector3f();
+        }
+        return store.set(getCenter(cell, 0), getCenter(cell, 1), getCenter(cell, 2));
+    }
+
+    /**
+     * @param axis 0, 1 or 2 for x, y or z
+     * @return the coordinate of the centroid of the cell, computed like
+     * Cell.getCenter()
+     */
+    private float getCenter(int cell, int axis) {
+        int a = indices[cell * 3] * 3 + axis;
+        int b = indices[cell * 3 + 1] * 3 + axis;
+        int c = indices[cell * 3 + 2] * 3 + axis;
+        return ((vertices[a] + vertices[b] + vertices[c]) / 3);
+    }
+
+    /**
+     * @param axis 0 or 2 for x or z
+     * @param max true for the maximum, false for the minimum
+     */
+    private float getBound(int cell, int axis, boolean max) {
+        float a = vertices[indices[cell * 3] * 3 + axis];
+        float b = vertices[indices[cell * 3 + 1] * 3 + axis];
+        float c = vertices[indices[cell * 3 + 2] * 3 + axis];
+        return max ? Math.max(a, Math.max(b, c)) : Math.min(a, Math.min(b, c));
+    }
+
+    /**
+     * @return the cell linked on the given side, -1 for a solid wall
+     */
+    public int getLink(int cell, int side) {
+        return links[cell * 3 + side];
+    }
+
+    /**
+     * Uses the X and Z coordinates to calculate Y on the cell plane
+     */
+    public float getHeight(int cell, float x, float z) {
+        int p = cell * 4;
+        return (-(planes[p] * x + planes[p + 2] * z - planes[p + 3]) / planes[p + 1]);
+    }
+
+    /**
+     * Test to see if a 2D point given by its X and Z coordinates is within
+     * the cell
+     */
+    public boolean contains(int cell, float x, float z) {
+        for (int i = 0; i < 3; i++) {
+            if (signedDistance(cell, i, x, z) < -1.0e-6f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the closest cell on the mesh to the given point
+     * @return the cell index or -1 if the mesh has no cells
+     */
+    public int findClosestCell(Vector3f point) {
+        return cellGrid.findClosestCell(point);
+    }
+
+    /**
+     * signed distance of the point to the wall, positive values are on the
+     * inner side
+     */
+    private float signedDistance(int cell, int side, float x, float z) {
+        int a = indices[cell * 3 + side] * 3;
+        int n = cell * 6 + side * 2;
+        return (x - vertices[a]) * wallNormals[n] + (z - vertices[a + 2]) * wallNormals[n + 1];
+    }
+
+    /**
+     * @see Cell#getExitDistance(com.jme3.math.Vector3f)
+     */
+    private float getExitDistance(int cell, Vector3f point) {
+        float centerX = getCenter(cell, 0);
+        float centerZ = getCenter(cell, 2);
+        float exit = Float.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            float pointDistance = signedDistance(cell, i, point.x, point.z);
+            if (pointDistance <= 0.0f) {
+                float centerDistance = signedDistance(cell, i, centerX, centerZ);
+                float t = centerDistance / (centerDistance - pointDistance);
+                if (t < exit) {
+                    exit = t;
+                }
+            }
+        }
+        if (exit == Float.MAX_VALUE) {
+            return -1;
+        }
+        float x = centerX + (point.x - centerX) * exit;
+        float z = centerZ + (point.z - centerZ) * exit;
+        float dx = x - point.x;
+        float dy = getHeight(cell, x, z) - point.y;
+        float dz = z - point.z;
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Classifies a path from A to B in relationship to the cell, like
+     * Cell.classifyPathToCell().
+     * @param intersection receives the x and z coordinates where the path
+     * exits the cell
+     * @return the side the path exits the cell through, Cell.ENDING_CELL if
+     * the path ends in the cell or Cell.NO_RELATIONSHIP
+     */
+    public int classifyPathToCell(int cell, float ax, float az, float bx, float bz, float[] intersection) {
+        int interiorCount = 0;
+        for (int i = 0; i < 3; ++i) {
+            // points to the right of the walls are inside the cell
+            if (!(signedDistance(cell, i, bx, bz) > 0.0f)) {
+                if (!(signedDistance(cell, i, ax, az) < 0.0f)) {
+                    int wallA = indices[cell * 3 + i] * 3;
+                    int wallB = indices[cell * 3 + (i + 1) % 3] * 3;
+                    LineIntersect result = Line2D.intersect(ax, az, bx, bz,
+                            vertices[wallA], vertices[wallA + 2], vertices[wallB], vertices[wallB + 2],
+                            intersection);
+                    if (result == LineIntersect.SegmentsIntersect || result == LineIntersect.ABisectsB) {
+                        return i;
+                    }
+                }
+            } else {
+                interiorCount++;
+            }
+        }
+        if (interiorCount == 3) {
+            return Cell.ENDING_CELL;
+        }
+        return Cell.NO_RELATIONSHIP;
+    }
+
+    /**
+     * Test to see if two points on the mesh can view each other
+     */
+    public boolean isInLineOfSight(int startCell, float startX, float startZ, float endX, float endZ) {
+        return isInLineOfSight(startCell, startX, startZ, endX, endZ, searches.get().intersection);
+    }
+
+    private boolean isInLineOfSight(int startCell, float startX, float startZ, float endX, float endZ,
+            float[] intersection) {
+        int cell = startCell;
+        int result = classifyPathToCell(cell, startX, startZ, endX, endZ, intersection);
+        while (result >= 0 && result < Cell.ENDING_CELL) {
+            cell = links[cell * 3 + result];
+            if (cell < 0) {
+                // hit a wall, so the point is not visible
+                return false;
+            }
+            result = classifyPathToCell(cell, startX, startZ, endX, endZ, intersection);
+        }
+        return result == Cell.ENDING_CELL;
+    }
+
+    /**
+     * Build a navigation path using the provided points and the A* method,
+     * creates the same path as NavMesh.buildNavigationPath().
+     */
+    public boolean buildNavigationPath(CompactPath navPath,
+            int startCell, Vector3f startPos,
+            int endCell, Vector3f endPos,
+            float entityRadius) {
+        Search search = searches.get();
+        Heap heap = search.heap;
+        heap.initialize(numCells, startPos);
+
+        // reverse search, from the end cell to the start cell
+        queryForPath(search, endCell, -1, 0.0f);
+        boolean foundPath = false;
+        while (heap.isNotEmpty() && !foundPath) {
+            int topCell = heap.getTop();
+            if (topCell == startCell) {
+                foundPath = true;
+            } else {
+                processCell(search, topCell);
+            }
+        }
+        if (!foundPath) {
+            return false;
+        }
+
+        // collect the walls the path crosses and pull the path tight
+        Funnel funnel = search.funnel;
+        funnel.start(startPos.x, startPos.z, startCell);
+        int currentCell = startCell;
+        while (currentCell >= 0 && currentCell != endCell) {
+            int linkWall = heap.getArrivalWall(currentCell);
+            int a = indices[currentCell * 3 + linkWall] * 3;
+            int b = indices[currentCell * 3 + (linkWall + 1) % 3] * 3;
+            funnel.addPortal(vertices[a], vertices[a + 2], vertices[b], vertices[b + 2],
+                    currentCell, entityRadius);
+            currentCell = links[currentCell * 3 + linkWall];
+        }
+        funnel.finish(endPos.x, endPos.z, endCell);
+        funnel.stringPull();
+
+        navPath.clear();
+        navPath.addWaypoint(startPos.x, startPos.y, startPos.z, startCell);
+        for (int i = 0; i < funnel.getNumCorners(); i++) {
+            int cell = funnel.getCornerCell(i);
+            float x = funnel.getCornerX(i);
+            float z = funnel.getCornerZ(i);
+            navPath.addWaypoint(x, getHeight(cell, x, z), z, cell);
+        }
+        navPath.addWaypoint(endPos.x, endPos.y, endPos.z, endCell);
+        return true;
+    }
+
+    /**
+     * @see Cell#processCell(jme3tools.navmesh.Heap)
+     */
+    private void processCell(Search search, int cell) {
+        Heap heap = search.heap;
+        if (heap.isVisited(cell)) {
+            heap.closeCell(cell);
+            float arrivalCost = heap.getArrivalCost(cell);
+            int arrivalWall = heap.getArrivalWall(cell);
+            for (int i = 0; i < 3; ++i) {
+                int link = links[cell * 3 + i];
+                if (link >= 0) {
+                    queryForPath(search, link, cell, arrivalCost
+                            + wallDistances[cell * 3 + Math.abs(i - arrivalWall)]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @see Cell#queryForPath(jme3tools.navmesh.Heap, jme3tools.navmesh.Cell, float)
+     */
+    private void queryForPath(Search search, int cell, int caller, float arrivalCost) {
+        Heap heap = search.heap;
+        if (!heap.isVisited(cell)) {
+            if (caller >= 0) {
+                getCenter(cell, search.center);
+                heap.addCell(cell, arrivalCost, heap.getGoal().distance(search.center),
+                        getLinkSide(cell, caller), true);
+            } else {
+                // the cell that contains the starting location of the search
+                heap.addCell(cell, 0, 0, 0, false);
+            }
+        } else if (heap.isOpen(cell)) {
+            float heuristic = heap.getHeuristic(cell);
+            if ((arrivalCost + heuristic) < (heap.getArrivalCost(cell) + heuristic)) {
+                heap.adjustCell(cell, arrivalCost, getLinkSide(cell, caller));
+            }
+        }
+    }
+
+    private int getLinkSide(int cell, int other) {
+        if (links[cell * 3] == other) {
+            return 0;
+        } else if (links[cell * 3 + 1] == other) {
+            return 1;
+        } else if (links[cell * 3 + 2] == other) {
+            return 2;
+        }
+        return 0;
+    }
+
+    /**
+     * search data and temporary objects of one thread
+     */
+    private static class Search {
+
+        private Heap heap = new Heap();
+        private Funnel funnel = new Funnel();
+        private Vector3f center = new Vector3f();
+        private float[] intersection = new float[2];
+    }
+
+    /**
+     * gives the grid access to the cells
+     */
+    private class GridCells implements CellGrid.Cells {
+
+        public int getNumCells() {
+            return numCells;
+        }
+
+        public float getMinX(int cell) {
+            return getBound(cell, 0, false);
+        }
+
+        public float getMinZ(int cell) {
+            return getBound(cell, 2, false);
+        }
+
+        public float getMaxX(int cell) {
+            return getBound(cell, 0, true);
+        }
+
+        public float getMaxZ(int cell) {
+            return getBound(cell, 2, true);
+        }
+
+        public boolean contains(int cell, float x, float z) {
+            return CompactNavMesh.this.contains(cell, x, z);
+        }
+
+        public float getHeight(int cell, float x, float z) {
+            return CompactNavMesh.this.getHeight(cell, x, z);
+        }
+
+        public float getExitDistance(int cell, Vector3f point) {
+            return CompactNavMesh.this.getExitDistance(cell, point);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package jme3tools.navmesh;
+
+import com.jme3.math.Vector3f;
+
+/**
+ * A path on a CompactNavMesh, the waypoint positions and cell indices are
+ * kept in arrays that are reused when the path is built again.
+ *
+ * @author normenhansen
+ */
+public class CompactPath {
+
+    private float[] positions = new float[3 * 16];
+    private int[] cells = new int[16];
+    private int size = 0;
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a new waypoint to the end of the list
+     */
+    public void addWaypoint(float x, float y, float z, int cell) {
+        if (size == cells.length) {
+            int[] newCells = new int[size * 2];
+            System.arraycopy(cells, 0, newCells, 0, size);
+            cells = newCells;
+            float[] newPositions = new float[size * 6];
+            System.arraycopy(positions, 0, newPositions, 0, size * 3);
+            positions = newPositions;
+        }
+        positions[size * 3] = x;
+        positions[size * 3 + 1] = y;
+        positions[size * 3 + 2] = z;
+        cells[size] = cell;
+        size++;
+    }
+
+    public Vector3f getPosition(int waypoint, Vector3f store) {
+        if (store == null) {
+            store = new Vector3f();
+        }
+        return store.set(positions[waypoint * 3], positions[waypoint * 3 + 1], positions[waypoint * 3 + 2]);
+    }
+
+    public float getX(int waypoint) {
+        return positions[waypoint * 3];
+    }
+
+    public float getY(int waypoint) {
+        return positions[waypoint * 3 + 1];
+    }
+
+    public float getZ(int waypoint) {
+        return positions[waypoint * 3 + 2];
+    }
+
+    /**
+     * @return the index of the cell which owns the waypoint
+     */
+    public int getCell(int waypoint) {
+        return cells[waypoint];
+    }
+}
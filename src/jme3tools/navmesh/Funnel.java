@@ -0,0 +1,204 @@
+package jme3tools.navmesh;
+
+/**
+ * Smooths a path through a corridor of cells with the funnel (string
+ * pulling) algorithm. The corridor is given as the walls (portals) the path
+ * crosses, each portal is narrowed by the entity radius. The funnel is
+ * tightened portal by portal, when a side of the funnel crosses over the
+ * other side its end point becomes a corner of the path and the funnel
+ * restarts there. The result are the corners of the shortest path in the
+ * corridor on the XZ plane.
+ *
+ * All data is kept in arrays that are reused, one Funnel should be used per
+ * thread.
+ *
+ * @author normenhansen
+ */
+class Funnel {
+
+    /**
+     * left x, left z, right x, right z of each portal
+     */
+    private float[] portals = new float[4 * 32];
+    private int[] portalCells = new int[32];
+    private int numPortals = 0;
+    /**
+     * x, z of each corner
+     */
+    private float[] corners = new float[2 * 16];
+    private int[] cornerCells = new int[16];
+    private int numCorners = 0;
+
+    /**
+     * starts a new corridor at the given point
+     */
+    void start(float x, float z, int cell) {
+        numPortals = 0;
+        numCorners = 0;
+        addPoint(x, z, cell);
+    }
+
+    /**
+     * Adds the wall a path leaves a cell through. The points are the wall
+     * vertices in the order of the cell (clockwise), so A is on the left
+     * when leaving the cell.
+     */
+    void addPortal(float ax, float az, float bx, float bz, int cell, float radius) {
+        float dx = bx - ax;
+        float dz = bz - az;
+        float length = (float) Math.sqrt(dx * dx + dz * dz);
+        if (length > 2 * radius) {
+            float blend = radius / length;
+            addPortal(ax + dx * blend, az + dz * blend, bx - dx * blend, bz - dz * blend, cell);
+        } else {
+            // the entity does not really fit, use the middle of the wall
+            float x = ax + dx * 0.5f;
+            float z = az + dz * 0.5f;
+            addPortal(x, z, x, z, cell);
+        }
+    }
+
+    /**
+     * ends the corridor at the given point
+     */
+    void finish(float x, float z, int cell) {
+        addPoint(x, z, cell);
+    }
+
+    private void addPoint(float x, float z, int cell) {
+        addPortal(x, z, x, z, cell);
+    }
+
+    private void addPortal(float leftX, float leftZ, float rightX, float rightZ, int cell) {
+        if (numPortals == portalCells.length) {
+            int[] newCells = new int[numPortals * 2];
+            System.arraycopy(portalCells, 0, newCells, 0, numPortals);
+            portalCells = newCells;
+            float[] newPortals = new float[numPortals * 8];
+            System.arraycopy(portals, 0, newPortals, 0, numPortals * 4);
+            portals = newPortals;
+        }
+        int p = numPortals * 4;
+        portals[p] = leftX;
+        portals[p + 1] = leftZ;
+        portals[p + 2] = rightX;
+        portals[p + 3] = rightZ;
+        portalCells[numPortals] = cell;
+        numPortals++;
+    }
+
+    private void addCorner(float x, float z, int cell) {
+        if (numCorners > 0 && corners[numCorners * 2 - 2] == x && corners[numCorners * 2 - 1] == z) {
+            return;
+        }
+        if (numCorners == cornerCells.length) {
+            int[] newCells = new int[numCorners * 2];
+            System.arraycopy(cornerCells, 0, newCells, 0, numCorners);
+            cornerCells = newCells;
+            float[] newCorners = new float[numCorners * 4];
+            System.arraycopy(corners, 0, newCorners, 0, numCorners * 2);
+            corners = newCorners;
+        }
+        corners[numCorners * 2] = x;
+        corners[numCorners * 2 + 1] = z;
+        cornerCells[numCorners] = cell;
+        numCorners++;
+    }
+
+    /**
+     * twice the signed area of the triangle a, b, c, positive when c is on
+     * the right of the line from a to b
+     */
+    private static float area(float ax, float az, float bx, float bz, float cx, float cz) {
+        return (cx - ax) * (bz - az) - (bx - ax) * (cz - az);
+    }
+
+    /**
+     * Computes the corners of the path between the start and finish point,
+     * start and finish point are not included.
+     */
+    void stringPull() {
+        numCorners = 0;
+        if (numPortals < 2) {
+            return;
+        }
+        float apexX = portals[0];
+        float apexZ = portals[1];
+        float leftX = apexX;
+        float leftZ = apexZ;
+        float rightX = apexX;
+        float rightZ = apexZ;
+        int apexIndex = 0;
+        int leftIndex = 0;
+        int rightIndex = 0;
+        for (int i = 1; i < numPortals; i++) {
+            int p = i * 4;
+            float newLeftX = portals[p];
+            float newLeftZ = portals[p + 1];
+            float newRightX = portals[p + 2];
+            float newRightZ = portals[p + 3];
+
+            // try to narrow the right side of the funnel
+            if (area(apexX, apexZ, rightX, rightZ, newRightX, newRightZ) <= 0.0f) {
+                if ((apexX == rightX && apexZ == rightZ)
+                        || area(apexX, apexZ, leftX, leftZ, newRightX, newRightZ) > 0.0f) {
+                    rightX = newRightX;
+                    rightZ = newRightZ;
+                    rightIndex = i;
+                } else {
+                    // right crosses over left, the left point is a corner
+                    addCorner(leftX, leftZ, portalCells[leftIndex]);
+                    apexX = leftX;
+                    apexZ = leftZ;
+                    apexIndex = leftIndex;
+                    rightX = apexX;
+                    rightZ = apexZ;
+                    rightIndex = apexIndex;
+                    i = apexIndex;
+                    continue;
+                }
+            }
+
+            // try to narrow the left side of the funnel
+            if (area(apexX, apexZ, leftX, leftZ, newLeftX, newLeftZ) >= 0.0f) {
+                if ((apexX == leftX && apexZ == leftZ)
+                        || area(apexX, apexZ, rightX, rightZ, newLeftX, newLeftZ) < 0.0f) {
+                    leftX = newLeftX;
+                    leftZ = newLeftZ;
+                    leftIndex = i;
+                } else {
+                    // left crosses over right, the right point is a corner
+                    addCorner(rightX, rightZ, portalCells[rightIndex]);
+                    apexX = rightX;
+                    apexZ = rightZ;
+                    apexIndex = rightIndex;
+                    leftX = apexX;
+                    leftZ = apexZ;
+                    leftIndex = apexIndex;
+                    i = apexIndex;
+                    continue;
+                }
+            }
+        }
+    }
+
+    int getNumCorners() {
+        return numCorners;
+    }
+
+    float getCornerX(int corner) {
+        return corners[corner * 2];
+    }
+
+    float getCornerZ(int corner) {
+        return corners[corner * 2 + 1];
+    }
+
+    /**
+     * @return the index of the cell that is left through the portal of the
+     * corner
+     */
+    int getCornerCell(int corner) {
+        return cornerCells[corner];
+    }
+}
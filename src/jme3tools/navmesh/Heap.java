@@ -1,25 +1,47 @@
 package jme3tools.navmesh;
 
-import jme3tools.navmesh.util.MinHeap;
 import com.jme3.math.Vector3f;
+import java.util.Arrays;
 
 /**
- * A NavigationHeap is a priority-ordered list facilitated by the STL heap
- * functions. This class is also used to hold the current path finding session
- * ID and the desired goal point for NavigationCells to query. Thanks to Amit J.
- * Patel for detailing the use of STL heaps in this way. It's much faster than a
- * linked list or multimap approach.
- * 
+ * A NavigationHeap is a priority-ordered list of the open cells of a path
+ * finding session. This class is also used to hold the current path finding
+ * session ID and the desired goal point for NavigationCells to query.
+ *
+ * The heap is a binary min-heap kept in arrays of cell indices and their
+ * total costs. The heap slot of every cell is tracked, so a cell whose cost dropped
+ * can be moved up in O(log n) without searching for it, and pushing a cell
+ * does not create any objects.
+ *
+ * The search data of the cells (arrival cost, heuristic, arrival wall, open
+ * state) is kept here as well, in arrays indexed by the cell index. A cell
+ * belongs to the current session when its session entry equals the session
+ * ID, so the arrays never have to be cleared. Because the cells themselves
+ * are not changed, each thread can search the same NavMesh with its own Heap.
+ * Cells are only known by their index, so the heap is used for NavMesh and
+ * CompactNavMesh searches.
+ *
  * Portions Copyright (C) Greg Snook, 2000
- * 
+ *
  * @author TR
- * 
+ *
  */
 class Heap {
 
-    private MinHeap nodes = new MinHeap();
+    private int[] cells = new int[64];
+    private float[] costs = new float[64];
+    private int size = 0;
     private int sessionID;
     private Vector3f goal;
+    /**
+     * per cell search data, indexed by cell index
+     */
+    private int[] sessions = new int[0];
+    private float[] arrivalCosts = new float[0];
+    private float[] heuristics = new float[0];
+    private int[] arrivalWalls = new int[0];
+    private boolean[] open = new boolean[0];
+    private int[] slots = new int[0];
 
     int getSessionID() {
         return sessionID;
@@ -29,58 +51,162 @@ class Heap {
         return goal;
     }
 
-    void initialize(int sessionID, Vector3f goal) {
+    /**
+     * Starts a new session for a mesh with the given number of cells
+     */
+    void initialize(int numCells, Vector3f goal) {
         this.goal = goal;
-        this.sessionID = sessionID;
-        nodes.clear();
+        size = 0;
+        if (sessions.length < numCells) {
+            sessions = new int[numCells];
+            arrivalCosts = new float[numCells];
+            heuristics = new float[numCells];
+            arrivalWalls = new int[numCells];
+            open = new boolean[numCells];
+            slots = new int[numCells];
+        }
+        if (sessionID == Integer.MAX_VALUE) {
+            Arrays.fill(sessions, 0);
+            sessionID = 0;
+        }
+        sessionID++;
     }
 
-    void addCell(Cell pCell) {
-        Node newNode = new Node(pCell, pCell.getTotalCost());
-        nodes.add(newNode);
+    /**
+     * @return true if the cell has been reached in this session
+     */
+    boolean isVisited(int cell) {
+        return sessions[cell] == sessionID;
     }
 
     /**
-     * Adjust a cell in the heap to reflect it's updated cost value. NOTE: Cells
-     * may only sort up in the heap.
+     * @return true if the cell has been reached in this session but was not
+     * processed yet
+     */
+    boolean isOpen(int cell) {
+        return sessions[cell] == sessionID && open[cell];
+    }
+
+    float getArrivalCost(int cell) {
+        return arrivalCosts[cell];
+    }
+
+    float getHeuristic(int cell) {
+        return heuristics[cell];
+    }
+
+    int getArrivalWall(int cell) {
+        return arrivalWalls[cell];
+    }
+
+    /**
+     * Marks the cell as processed
      */
-    void adjustCell(Cell pCell) {
-        Node n = findNodeIterator(pCell);
+    void closeCell(int cell) {
+        open[cell] = false;
+    }
 
-        if (n != nodes.lastElement()) {
-            // update the node data
-            n.cell = pCell;
-            n.cost = pCell.getTotalCost();
+    /**
+     * Adds a cell reached for the first time in this session to the heap
+     */
+    void addCell(int cell, float arrivalCost, float heuristic, int arrivalWall, boolean isOpen) {
+        sessions[cell] = sessionID;
+        arrivalCosts[cell] = arrivalCost;
+        heuristics[cell] = heuristic;
+        arrivalWalls[cell] = arrivalWall;
+        open[cell] = isOpen;
+        if (size == cells.length) {
+            int[] newCells = new int[size * 2];
+            System.arraycopy(cells, 0, newCells, 0, size);
+            cells = newCells;
+            float[] newCosts = new float[size * 2];
+            System.arraycopy(costs, 0, newCosts, 0, size);
+            costs = newCosts;
+        }
+        cells[size] = cell;
+        costs[size] = arrivalCost + heuristic;
+        slots[cell] = size;
+        size++;
+        siftUp(size - 1);
+    }
 
-            nodes.sort();
+    /**
+     * Adjust a cell in the heap to reflect it's updated cost value. NOTE: Cells
+     * may only sort up in the heap.
+     */
+    void adjustCell(int cell, float arrivalCost, int arrivalWall) {
+        arrivalCosts[cell] = arrivalCost;
+        arrivalWalls[cell] = arrivalWall;
+        int slot = slots[cell];
+        if (slot < 0 || slot >= size || cells[slot] != cell) {
+            return;
         }
+        costs[slot] = arrivalCost + heuristics[cell];
+        siftUp(slot);
     }
 
     /**
      * @return true if the heap is not empty
      */
     boolean isNotEmpty() {
-        return !nodes.isEmpty();
+        return size > 0;
     }
 
     /**
      * Pop the top off the heap and remove the best value for processing.
      */
-    Node getTop() {
-        return (Node) nodes.deleteMin();
+    int getTop() {
+        int top = cells[0];
+        slots[top] = -1;
+        size--;
+        if (size > 0) {
+            cells[0] = cells[size];
+            costs[0] = costs[size];
+            slots[cells[0]] = 0;
+            siftDown(0);
+        }
+        return top;
     }
 
-    /**
-     * Search the container for a given cell. May be slow, so don't do this
-     * unless nessesary.
-     */
-    Node findNodeIterator(Cell pCell) {
-        for (Object n : nodes) {
+    private void siftUp(int slot) {
+        int cell = cells[slot];
+        float cost = costs[slot];
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (costs[parent] <= cost) {
+                break;
+            }
+            move(parent, slot);
+            slot = parent;
+        }
+        cells[slot] = cell;
+        costs[slot] = cost;
+        slots[cell] = slot;
+    }
 
-            if (((Node) n).cell.equals(pCell)) {
-                return ((Node) n);
+    private void siftDown(int slot) {
+        int cell = cells[slot];
+        float cost = costs[slot];
+        int half = size >>> 1;
+        while (slot < half) {
+            int child = 2 * slot + 1;
+            if (child + 1 < size && costs[child + 1] < costs[child]) {
+                child++;
+            }
+            if (cost <= costs[child]) {
+                break;
             }
+            move(child, slot);
+            slot = child;
         }
-        return (Node) nodes.lastElement();
+        cells[slot] = cell;
+        costs[slot] = cost;
+        slots[cell] = slot;
+    }
+
+    private void move(int from, int to) {
+        cells[to] = cells[from];
+        costs[to] = costs[from];
+        slots[cells[to]] = to;
     }
 }
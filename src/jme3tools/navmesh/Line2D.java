@@ -141,12 +141,14 @@ class Line2D implements Savable {
 
     private void computeNormal() {
         // Get Normailized direction from A to B
-        normal = getDirection();
+        Vector2f newNormal = getDirection();
 
         // Rotate by -90 degrees to get normal of line
-        float oldY = normal.y;
-        normal.y = -normal.x;
-        normal.x = oldY;
+        float oldY = newNormal.y;
+        newNormal.y = -newNormal.x;
+        newNormal.x = oldY;
+        // only publish the finished normal, other threads may read it
+        normal = newNormal;
     }
 
     /**
@@ -163,6 +165,17 @@ class Line2D implements Savable {
         return point.subtract(pointA).dot(normal); //.x*m_Normal.x + TestVector.y*m_Normal.y;//DotProduct(TestVector,m_Normal);
     }
 
+    /**
+     * Same as signedDistance(Vector2f) without creating a temporary vector.
+     */
+    public float signedDistance(float x, float y) {
+        if (normal == null) {
+            computeNormal();
+        }
+
+        return (x - pointA.x) * normal.x + (y - pointA.y) * normal.y;
+    }
+
     /**
      * Determines where a point lies in relation to this line. Consider the line as
      * if you were standing on PointA of the line looking towards PointB. The incomming
@@ -230,6 +243,40 @@ class Line2D implements Savable {
         }
     }
 
+    /**
+     * Same as intersect(Line2D, Vector2f) for the line A-B and the other line
+     * C-D given by their coordinates, without creating objects.
+     * @param intersection receives x and y of the intersection point when the
+     * lines are not parallel, can be null
+     */
+    static LineIntersect intersect(float ax, float ay, float bx, float by,
+            float cx, float cy, float dx, float dy, float[] intersection) {
+        float denom = (dy - cy) * (bx - ax) - (dx - cx) * (by - ay);
+        float u0 = (dx - cx) * (ay - cy) - (dy - cy) * (ax - cx);
+        float u1 = (cx - ax) * (by - ay) - (cy - ay) * (bx - ax);
+        if (denom == 0.0f) {
+            if (u0 == 0.0f && u1 == 0.0f) {
+                return LineIntersect.CoLinear;
+            } else {
+                return LineIntersect.Parallel;
+            }
+        }
+        u0 = u0 / denom;
+        u1 = u1 / denom;
+        if (intersection != null) {
+            intersection[0] = ax + u0 * (bx - ax);
+            intersection[1] = ay + u0 * (by - ay);
+        }
+        if ((u0 >= 0.0f) && (u0 <= 1.0f) && (u1 >= 0.0f) && (u1 <= 1.0f)) {
+            return LineIntersect.SegmentsIntersect;
+        } else if ((u1 >= 0.0f) && (u1 <= 1.0f)) {
+            return LineIntersect.ABisectsB;
+        } else if ((u0 >= 0.0f) && (u0 <= 1.0f)) {
+            return LineIntersect.BBisectsA;
+        }
+        return LineIntersect.LinesIntersect;
+    }
+
     /**
      * Determines if two segments intersect, and if so the point of intersection. The current
      * member line is considered line AB and the incomming parameter is considered line CD for
@@ -2,11 +2,10 @@ package jme3tools.navmesh;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 import jme3tools.navmesh.Cell.ClassifyResult;
 import jme3tools.navmesh.Cell.PathResult;
-import jme3tools.navmesh.Line2D.LineIntersect;
-import jme3tools.navmesh.Path.Waypoint;
 import com.jme3.export.InputCapsule;
 import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
@@ -18,8 +17,8 @@ import com.jme3.scene.Mesh;
 import com.jme3.scene.VertexBuffer.Type;
 import com.jme3.scene.mesh.IndexBuffer;
 import com.jme3.util.BufferUtils;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
-import java.util.List;
 
 /**
  * A NavigationMesh is a collection of NavigationCells used to control object
@@ -39,13 +38,35 @@ public class NavMesh implements Savable {
     private ArrayList<Cell> cellList = new ArrayList<Cell>();
 
     /**
-     * path finding data...
+     * path finding data, each thread searches with its own heap
      */
-    private volatile int sessionID = 0;
-    private volatile Heap heap = new Heap();
+    private final ThreadLocal<Heap> heaps = new ThreadLocal<Heap>() {
+
+        @Override
+        protected Heap initialValue() {
+            return new Heap();
+        }
+    };
+
+    /**
+     * path smoothing data, each thread uses its own funnel
+     */
+    private final ThreadLocal<Funnel> funnels = new ThreadLocal<Funnel>() {
+
+        @Override
+        protected Funnel initialValue() {
+            return new Funnel();
+        }
+    };
+
+    /**
+     * bucket grid for finding cells by location, built when linking
+     */
+    private CellGrid cellGrid;
 
     public void clear() {
         cellList.clear();
+        cellGrid = null;
     }
 
     /**
@@ -59,6 +80,7 @@ public class NavMesh implements Savable {
     public void addCell(Vector3f pointA, Vector3f PointB, Vector3f PointC) {
         Cell newCell = new Cell();
         newCell.initialize(pointA.clone(), PointB.clone(), PointC.clone());
+        newCell.setIndex(cellList.size());
         cellList.add(newCell);
     }
 
@@ -99,6 +121,18 @@ public class NavMesh implements Savable {
      * Find the closest cell on the mesh to the given point
      */
     public Cell findClosestCell(Vector3f point) {
+        if (cellGrid == null) {
+            return findClosestCellLinear(point);
+        }
+        int cell = cellGrid.findClosestCell(point);
+        return cell < 0 ? null : cellList.get(cell);
+    }
+
+    /**
+     * Find the closest cell on the mesh to the given point by testing all
+     * cells, used when the cells have not been linked yet.
+     */
+    Cell findClosestCellLinear(Vector3f point) {
         float closestDistance = 3.4E+38f;
         float closestHeight = 3.4E+38f;
         boolean foundHomeCell = false;
@@ -149,22 +183,20 @@ public class NavMesh implements Savable {
     }
 
     /**
-     * Build a navigation path using the provided points and the A* method
+     * Build a navigation path using the provided points and the A* method.
+     * The search data is kept per thread, so paths can be built from multiple
+     * threads at the same time as long as the mesh is not changed.
      */
     public boolean buildNavigationPath(Path navPath,
             Cell startCell, Vector3f startPos,
             Cell endCell, Vector3f endPos,
             float entityRadius) {
-        
-        // Increment our path finding session ID
-        // This Identifies each pathfinding session
-        // so we do not need to clear out old data
-        // in the cells from previous sessions.
-        sessionID++;
 
         // load our data into the Heap object
-        // to prepare it for use.
-        heap.initialize(sessionID, startPos);
+        // to prepare it for use. This starts a new path finding session
+        // so we do not need to clear out old data from previous sessions.
+        Heap heap = heaps.get();
+        heap.initialize(cellList.size(), startPos);
 
         // We are doing a reverse search, from EndCell to StartCell.
         // Push our EndCell onto the Heap at the first cell to be processed
@@ -176,19 +208,17 @@ public class NavMesh implements Savable {
 
             // pop the top cell (the open cell with the lowest cost) off the
             // Heap
-            Node currentNode = heap.getTop();
+            Cell topCell = cellList.get(heap.getTop());
 
             // if this cell is our StartCell, we are done
-            if (currentNode.cell.equals(startCell)) {
+            if (topCell.equals(startCell)) {
                 foundPath = true;
             } else {
                 // Process the Cell, Adding it's neighbors to the Heap as needed
-                currentNode.cell.processCell(heap);
+                topCell.processCell(heap);
             }
         }
 
-        Vector2f intersectionPoint = new Vector2f();
-
         // if we found a path, build a waypoint list
         // out of the cells on the path
         if (!foundPath)
@@ -197,96 +227,34 @@ public class NavMesh implements Savable {
         // Setup the Path object, clearing out any old data
         navPath.initialize(this, startPos, startCell, endPos, endCell);
 
-        Vector3f lastWayPoint = startPos;
-
         // Step through each cell linked by our A* algorythm
-        // from StartCell to EndCell
+        // from StartCell to EndCell and collect the walls we pass
+        Funnel funnel = funnels.get();
+        funnel.start(startPos.x, startPos.z, startCell.getIndex());
         Cell currentCell = startCell;
         while (currentCell != null && currentCell != endCell) {
-            // add the link point of the cell as a way point (the exit
-            // wall's center)
-            int linkWall = currentCell.getArrivalWall();
-            Vector3f newWayPoint = currentCell.getWallMidpoint(linkWall).clone();
-
-            Line2D wall  = currentCell.getWall(linkWall);
-            float length = wall.length();
-            float distBlend = entityRadius / length;
-
-            Line2D lineToGoal = new Line2D(new Vector2f(lastWayPoint.x, lastWayPoint.z),
-                                           new Vector2f(endPos.x, endPos.z));
-            LineIntersect result = lineToGoal.intersect(wall, intersectionPoint);
-            switch (result){
-                case SegmentsIntersect:
-                    float d1 = wall.getPointA().distance(intersectionPoint);
-                    float d2 = wall.getPointB().distance(intersectionPoint);
-                    if (d1 > entityRadius && d2 > entityRadius){
-                        // we can fit through the wall if we go
-                        // directly to the goal.
-                        newWayPoint = new Vector3f(intersectionPoint.x, 0, intersectionPoint.y);
-                    }else{
-                        // cannot fit directly.
-                        // try to find point where we can
-                        if (d1 < d2){
-                            intersectionPoint.interpolate(wall.getPointA(), wall.getPointB(), distBlend);
-                            newWayPoint = new Vector3f(intersectionPoint.x, 0, intersectionPoint.y);
-                        }else{
-                            intersectionPoint.interpolate(wall.getPointB(), wall.getPointA(), distBlend);
-                            newWayPoint = new Vector3f(intersectionPoint.x, 0, intersectionPoint.y);
-                        }
-                    }
-                    currentCell.computeHeightOnCell(newWayPoint);
-                    break;
-                case LinesIntersect:
-                case ABisectsB:
-                case BBisectsA:
-                    Vector2f lastPt2d  = new Vector2f(lastWayPoint.x, lastWayPoint.z);
-                    Vector2f endPos2d  = new Vector2f(endPos.x, endPos.z);
-
-                    Vector2f normalEnd = endPos2d.subtract(lastPt2d).normalizeLocal();
-                    Vector2f normalA   = wall.getPointA().subtract(lastPt2d).normalizeLocal();
-                    Vector2f normalB   = wall.getPointB().subtract(lastPt2d).normalizeLocal();
-                    if (normalA.dot(normalEnd) < normalB.dot(normalEnd)){
-                        // choose point b
-                        intersectionPoint.interpolate(wall.getPointB(), wall.getPointA(), distBlend);
-                        newWayPoint = new Vector3f(intersectionPoint.x, 0, intersectionPoint.y);
-                    }else{
-                        // choose point a
-                        intersectionPoint.interpolate(wall.getPointA(), wall.getPointB(), distBlend);
-                        newWayPoint = new Vector3f(intersectionPoint.x, 0, intersectionPoint.y);
-                    }
-                    currentCell.computeHeightOnCell(newWayPoint);
-
-                    break;
-                case CoLinear:
-                case Parallel:
-                    break;
-            }
-
-//                newWayPoint = snapPointToCell(currentCell, newWayPoint);
-            lastWayPoint = newWayPoint.clone();
-
-            navPath.addWaypoint(newWayPoint, currentCell);
+            int linkWall = heap.getArrivalWall(currentCell.getIndex());
+            Line2D wall = currentCell.getWall(linkWall);
+            funnel.addPortal(wall.getPointA().x, wall.getPointA().y,
+                    wall.getPointB().x, wall.getPointB().y,
+                    currentCell.getIndex(), entityRadius);
 
             // get the next cell
             currentCell = currentCell.getLink(linkWall);
         }
-
-        // cap the end of the path.
-        navPath.finishPath();
-
-        // further: optimize the path
-        List<Waypoint> newPath = new ArrayList<Waypoint>();
-        Waypoint curWayPoint = navPath.getFirst();
-        newPath.add(curWayPoint);
-        while (curWayPoint != navPath.getLast()){
-            curWayPoint = navPath.getFurthestVisibleWayPoint(curWayPoint);
-            newPath.add(curWayPoint);
+        funnel.finish(endPos.x, endPos.z, endCell.getIndex());
+
+        // pull the path tight through the walls, the corners
+        // are our waypoints
+        funnel.stringPull();
+        for (int i = 0; i < funnel.getNumCorners(); i++) {
+            Cell cell = cellList.get(funnel.getCornerCell(i));
+            Vector3f newWayPoint = new Vector3f(funnel.getCornerX(i), 0, funnel.getCornerZ(i));
+            cell.computeHeightOnCell(newWayPoint);
+            navPath.addWaypoint(newWayPoint, cell);
         }
 
-        navPath.initialize(this, startPos, startCell, endPos, endCell);
-        for (Waypoint newWayPoint : newPath){
-            navPath.addWaypoint(newWayPoint.getPosition(), newWayPoint.getCell());
-        }
+        // cap the end of the path.
         navPath.finishPath();
 
         return true;
@@ -398,33 +366,110 @@ public class NavMesh implements Savable {
      * @return
      */
     boolean isInLineOfSight(Cell StartCell, Vector3f StartPos, Vector3f EndPos) {
-        Line2D MotionPath = new Line2D(new Vector2f(StartPos.x, StartPos.z),
-                new Vector2f(EndPos.x, EndPos.z));
-
         Cell testCell = StartCell;
-        Cell.ClassifyResult result = testCell.classifyPathToCell(MotionPath);
-        
-        while (result.result == Cell.PathResult.ExitingCell) {
-            if (result.cell == null)// hit a wall, so the point is not visible
+        int result = testCell.classifyPathToCell(StartPos.x, StartPos.z, EndPos.x, EndPos.z);
+
+        while (result >= 0 && result < Cell.ENDING_CELL) {
+            testCell = testCell.getLink(result);
+            if (testCell == null)// hit a wall, so the point is not visible
             {
                 return false;
             }
-            result = result.cell.classifyPathToCell(MotionPath);
-
+            result = testCell.classifyPathToCell(StartPos.x, StartPos.z, EndPos.x, EndPos.z);
         }
 
-        return (result.result == Cell.PathResult.EndingCell);
+        return (result == Cell.ENDING_CELL);
     }
 
     /**
-     * Link all the cells that are in our pool
+     * Link all the cells that are in our pool. Vertices closer than the link
+     * epsilon (squared distance 0.001, like checkAndLink) are welded to one
+     * vertex id by hashing their quantized positions and looking into the
+     * neighbouring hash buckets. Cell walls are then matched by the ids of their
+     * two vertices, so linking is linear in the number of cells.
      */
     public void linkCells() {
-//        for (int i = 0; i < cellList.size(); i++){
-//            for (int j = i+1; j < cellList.size(); j++){
-//                cellList.get(i).checkAndLink(cellList.get(j));
-//            }
-//        }
+        float epsilon = 0.001f;
+        float tolerance = (float) Math.sqrt(epsilon);
+        HashMap<Long, ArrayList<Integer>> vertexBuckets = new HashMap<Long, ArrayList<Integer>>();
+        ArrayList<Vector3f> vertices = new ArrayList<Vector3f>();
+        // walls waiting for their neighbour, stored as cell index * 3 + side
+        HashMap<Long, Integer> openWalls = new HashMap<Long, Integer>();
+        int[] ids = new int[3];
+        for (int i = 0; i < cellList.size(); i++) {
+            Cell cell = cellList.get(i);
+            for (int j = 0; j < 3; j++) {
+                ids[j] = weldVertex(cell.getVertex(j), tolerance, epsilon, vertexBuckets, vertices);
+            }
+            for (int side = 0; side < 3; side++) {
+                int idA = ids[side];
+                int idB = ids[(side + 1) % 3];
+                if (idA == idB) {
+                    continue;
+                }
+                long key = ((long) Math.min(idA, idB) << 32) | Math.max(idA, idB);
+                Integer other = openWalls.remove(key);
+                if (other != null) {
+                    Cell otherCell = cellList.get(other / 3);
+                    otherCell.setLink(other % 3, cell);
+                    cell.setLink(side, otherCell);
+                } else {
+                    openWalls.put(key, i * 3 + side);
+                }
+            }
+        }
+        buildCellGrid();
+    }
+
+    /**
+     * gets the id of the vertex within epsilon (squared distance) of the given
+     * vertex or adds it as a new vertex. The buckets are twice the tolerance
+     * wide so only the bucket of the vertex and the nearer neighbour on each
+     * axis have to be searched.
+     */
+    private int weldVertex(Vector3f vertex, float tolerance, float epsilon,
+            HashMap<Long, ArrayList<Integer>> buckets, ArrayList<Vector3f> vertices) {
+        float bucketSize = tolerance * 2;
+        int x = (int) Math.floor(vertex.x / bucketSize);
+        int y = (int) Math.floor(vertex.y / bucketSize);
+        int z = (int) Math.floor(vertex.z / bucketSize);
+        int nx = vertex.x - x * bucketSize < tolerance ? x - 1 : x + 1;
+        int ny = vertex.y - y * bucketSize < tolerance ? y - 1 : y + 1;
+        int nz = vertex.z - z * bucketSize < tolerance ? z - 1 : z + 1;
+        for (int i = 0; i < 8; i++) {
+            ArrayList<Integer> bucket = buckets.get(vertexKey(
+                    (i & 1) == 0 ? x : nx, (i & 2) == 0 ? y : ny, (i & 4) == 0 ? z : nz));
+            if (bucket == null) {
+                continue;
+            }
+            for (int j = 0; j < bucket.size(); j++) {
+                int id = bucket.get(j);
+                if (vertices.get(id).distanceSquared(vertex) <= epsilon) {
+                    return id;
+                }
+            }
+        }
+        int id = vertices.size();
+        vertices.add(vertex);
+        long key = vertexKey(x, y, z);
+        ArrayList<Integer> bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new ArrayList<Integer>(1);
+            buckets.put(key, bucket);
+        }
+        bucket.add(id);
+        return id;
+    }
+
+    private static long vertexKey(int x, int y, int z) {
+        return ((long) (x & 0x1FFFFF) << 42) | ((long) (y & 0x1FFFFF) << 21) | (z & 0x1FFFFF);
+    }
+
+    /**
+     * Link all the cells by comparing every cell with every other cell, this
+     * is what linkCells() did before welding vertices. Kept for comparison.
+     */
+    void linkCellsBruteForce() {
         for (Cell pCellA : cellList) {
             for (Cell pCellB : cellList) {
                 if (pCellA != pCellB) {
@@ -432,6 +477,55 @@ public class NavMesh implements Savable {
                 }
             }
         }
+        buildCellGrid();
+    }
+
+    /**
+     * Numbers the cells and builds the grid used by findClosestCell()
+     */
+    private void buildCellGrid() {
+        for (int i = 0; i < cellList.size(); i++) {
+            cellList.get(i).setIndex(i);
+        }
+        cellGrid = new CellGrid(new GridCells());
+    }
+
+    /**
+     * gives the grid access to the cells
+     */
+    private class GridCells implements CellGrid.Cells {
+
+        public int getNumCells() {
+            return cellList.size();
+        }
+
+        public float getMinX(int cell) {
+            return cellList.get(cell).getMinX();
+        }
+
+        public float getMinZ(int cell) {
+            return cellList.get(cell).getMinZ();
+        }
+
+        public float getMaxX(int cell) {
+            return cellList.get(cell).getMaxX();
+        }
+
+        public float getMaxZ(int cell) {
+            return cellList.get(cell).getMaxZ();
+        }
+
+        public boolean contains(int cell, float x, float z) {
+            return cellList.get(cell).contains(x, z);
+        }
+
+        public float getHeight(int cell, float x, float z) {
+            return cellList.get(cell).getPlane().solveForY(x, z);
+        }
+
+        public float getExitDistance(int cell, Vector3f point) {
+            return cellList.get(cell).getExitDistance(point);
+        }
     }
 
     private void addFace(Vector3f vertA, Vector3f vertB, Vector3f vertC) {
@@ -504,6 +598,92 @@ public class NavMesh implements Savable {
         linkCells();
     }
 
+    /**
+     * Writes the cells including their links in a compact binary form that
+     * can be read with readBinary(). Vertices shared by cells are only
+     * written once.
+     * @return a buffer ready to be read
+     */
+    public ByteBuffer writeBinary() {
+        HashMap<Vector3f, Integer> vertexIds = new HashMap<Vector3f, Integer>();
+        ArrayList<Vector3f> vertices = new ArrayList<Vector3f>();
+        int[] cellData = new int[cellList.size() * 6];
+        for (int i = 0; i < cellList.size(); i++) {
+            Cell cell = cellList.get(i);
+            for (int j = 0; j < 3; j++) {
+                Vector3f vertex = cell.getVertex(j);
+                Integer id = vertexIds.get(vertex);
+                if (id == null) {
+                    id = vertices.size();
+                    vertexIds.put(vertex, id);
+                    vertices.add(vertex);
+                }
+                cellData[i * 6 + j] = id;
+                Cell link = cell.getLink(j);
+                cellData[i * 6 + 3 + j] = link == null ? -1 : link.getIndex();
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(8 + vertices.size() * 12 + cellData.length * 4);
+        buffer.putInt(vertices.size());
+        for (int i = 0; i < vertices.size(); i++) {
+            Vector3f vertex = vertices.get(i);
+            buffer.putFloat(vertex.x).putFloat(vertex.y).putFloat(vertex.z);
+        }
+        buffer.putInt(cellList.size());
+        buffer.asIntBuffer().put(cellData);
+        buffer.position(buffer.limit());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Replaces the cells of this mesh with the cells read from a buffer
+     * written by writeBinary(), the links are restored without linking the
+     * cells again.
+     * @param buffer
+     * @throws IOException if the data is not valid
+     */
+    public void readBinary(ByteBuffer buffer) throws IOException {
+        clear();
+        try {
+            int vertexCount = buffer.getInt();
+            if (vertexCount < 0 || vertexCount > buffer.remaining() / 12) {
+                throw new IOException("Invalid NavMesh vertex count: " + vertexCount);
+            }
+            float[] vertices = new float[vertexCount * 3];
+            buffer.asFloatBuffer().get(vertices);
+            buffer.position(buffer.position() + vertices.length * 4);
+            int cellCount = buffer.getInt();
+            if (cellCount < 0 || cellCount > buffer.remaining() / 24) {
+                throw new IOException("Invalid NavMesh cell count: " + cellCount);
+            }
+            int[] cellData = new int[cellCount * 6];
+            buffer.asIntBuffer().get(cellData);
+            buffer.position(buffer.position() + cellData.length * 4);
+            for (int i = 0; i < cellCount; i++) {
+                Vector3f[] points = new Vector3f[3];
+                for (int j = 0; j < 3; j++) {
+                    int id = cellData[i * 6 + j] * 3;
+                    points[j] = new Vector3f(vertices[id], vertices[id + 1], vertices[id + 2]);
+                }
+                Cell cell = new Cell();
+                cell.initialize(points[0], points[1], points[2]);
+                cell.setIndex(i);
+                cellList.add(cell);
+            }
+            for (int i = 0; i < cellCount; i++) {
+                for (int j = 0; j < 3; j++) {
+                    int link = cellData[i * 6 + 3 + j];
+                    cellList.get(i).setLink(j, link < 0 ? null : cellList.get(link));
+                }
+            }
+        } catch (RuntimeException ex) {
+            clear();
+            throw new IOException("Invalid NavMesh data: " + ex);
+        }
+        buildCellGrid();
+    }
+
     public void write(JmeExporter e) throws IOException {
         OutputCapsule capsule = e.getCapsule(this);
         capsule.writeSavableArrayList(cellList, "cellarray", null);
@@ -513,5 +693,6 @@ public class NavMesh implements Savable {
     public void read(JmeImporter e) throws IOException {
         InputCapsule capsule = e.getCapsule(this);
         cellList = (ArrayList<Cell>) capsule.readSavableArrayList("cellarray", new ArrayList<Cell>());
+        buildCellGrid();
     }
 }
@@ -0,0 +1,241 @@
+package jme3tools.navmesh;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import jme3tools.navmesh.Path.Waypoint;
+import jme3tools.navmesh.util.NavMeshGenerator;
+import jme3tools.optimize.GeometryBatchFactory;
+
+/**
+ * Generates the navmesh of a scene the same way the game does and measures
+ * the time the NavMesh queries take. Run with the assets folder on the
+ * classpath, the scene can be given as first argument.
+ *
+ * @author normenhansen
+ */
+public class NavMeshBenchmark {
+
+    private static final int QUERIES = 100000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        String sceneName = args.length > 0 ? args[0] : "Scenes/MonkeyZone.j3o";
+        AssetManager assetManager = new DesktopAssetManager(true);
+        Node scene = (Node) assetManager.loadModel(sceneName);
+        Mesh mesh = new Mesh();
+        GeometryBatchFactory.mergeGeometries(findGeometries(scene, new LinkedList<Geometry>()), mesh);
+        Mesh optiMesh = new NavMeshGenerator().optimize(mesh);
+        NavMesh navMesh = new NavMesh();
+        navMesh.loadFromMesh(optiMesh);
+        System.out.println("NavMesh cells: " + navMesh.getNumCells());
+        benchmarkLinkCells(navMesh);
+        benchmarkFindClosestCell(navMesh, createPoints(navMesh, QUERIES, new Random(0)));
+        benchmarkPaths(navMesh, new Random(0));
+        benchmarkCompact(navMesh, new Random(0));
+    }
+
+    /**
+     * random points around the bounds of the mesh, some of them off the mesh
+     */
+    static Vector3f[] createPoints(NavMesh navMesh, int count, Random random) {
+        float minX = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        for (int i = 0; i < navMesh.getNumCells(); i++) {
+            Cell cell = navMesh.getCell(i);
+            minX = Math.min(minX, cell.getMinX());
+            minZ = Math.min(minZ, cell.getMinZ());
+            maxX = Math.max(maxX, cell.getMaxX());
+            maxZ = Math.max(maxZ, cell.getMaxZ());
+        }
+        float marginX = (maxX - minX) * 0.1f;
+        float marginZ = (maxZ - minZ) * 0.1f;
+        Vector3f[] points = new Vector3f[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = new Vector3f(
+                    minX - marginX + random.nextFloat() * (maxX - minX + 2 * marginX),
+                    0,
+                    minZ - marginZ + random.nextFloat() * (maxZ - minZ + 2 * marginZ));
+        }
+        return points;
+    }
+
+    static void benchmarkFindClosestCell(NavMesh navMesh, Vector3f[] points) {
+        int differences = 0;
+        for (int i = 0; i < points.length; i++) {
+            if (navMesh.findClosestCell(points[i]) != navMesh.findClosestCellLinear(points[i])) {
+                differences++;
+            }
+        }
+        System.out.println("findClosestCell: " + differences + " of " + points.length + " results differ from linear search");
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < points.length; i++) {
+                navMesh.findClosestCellLinear(points[i]);
+            }
+            long linear = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < points.length; i++) {
+                navMesh.findClosestCell(points[i]);
+            }
+            long grid = System.nanoTime() - start;
+            System.out.println("findClosestCell: linear " + (linear / points.length) + " ns, grid "
+                    + (grid / points.length) + " ns, speedup " + ((float) linear / grid));
+        }
+    }
+
+    static void benchmarkPaths(NavMesh navMesh, Random random) {
+        int count = QUERIES / 10;
+        Cell[] startCells = new Cell[count];
+        Cell[] endCells = new Cell[count];
+        for (int i = 0; i < count; i++) {
+            startCells[i] = navMesh.getCell(random.nextInt(navMesh.getNumCells()));
+            endCells[i] = navMesh.getCell(random.nextInt(navMesh.getNumCells()));
+        }
+        Path path = new Path();
+        for (int round = 0; round < ROUNDS; round++) {
+            int found = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                if (navMesh.buildNavigationPath(path, startCells[i], startCells[i].getCenter(),
+                        endCells[i], endCells[i].getCenter(), 1.0f)) {
+                    found++;
+                }
+            }
+            long time = System.nanoTime() - start;
+            System.out.println("buildNavigationPath: " + (time / count) + " ns per path, " + found + " of " + count + " found");
+        }
+    }
+
+    static void benchmarkCompact(NavMesh navMesh, Random random) throws IOException {
+        int copies = 50;
+        ByteBuffer data = navMesh.writeBinary();
+        Object[] meshes = new Object[copies];
+        long before = usedMemory();
+        for (int i = 0; i < copies; i++) {
+            NavMesh copy = new NavMesh();
+            copy.readBinary(data.duplicate());
+            meshes[i] = copy;
+        }
+        long objects = (usedMemory() - before) / copies;
+        meshes = new Object[copies];
+        before = usedMemory();
+        for (int i = 0; i < copies; i++) {
+            meshes[i] = new CompactNavMesh(navMesh);
+        }
+        long compact = (usedMemory() - before) / copies;
+        System.out.println("CompactNavMesh: heap per mesh " + objects + " bytes as cells, " + compact + " bytes compact");
+
+        CompactNavMesh compactMesh = (CompactNavMesh) meshes[0];
+        int count = QUERIES / 10;
+        Cell[] startCells = new Cell[count];
+        Cell[] endCells = new Cell[count];
+        for (int i = 0; i < count; i++) {
+            startCells[i] = navMesh.getCell(random.nextInt(navMesh.getNumCells()));
+            endCells[i] = navMesh.getCell(random.nextInt(navMesh.getNumCells()));
+        }
+        Path path = new Path();
+        CompactPath compactPath = new CompactPath();
+        Vector3f store = new Vector3f();
+        int differences = 0;
+        for (int i = 0; i < count; i++) {
+            boolean found = navMesh.buildNavigationPath(path, startCells[i], startCells[i].getCenter(),
+                    endCells[i], endCells[i].getCenter(), 1.0f);
+            boolean compactFound = compactMesh.buildNavigationPath(compactPath, startCells[i].getIndex(), startCells[i].getCenter(),
+                    endCells[i].getIndex(), endCells[i].getCenter(), 1.0f);
+            if (found != compactFound || (found && path.size() != compactPath.size())) {
+                differences++;
+            } else if (found) {
+                for (int j = 0; j < compactPath.size(); j++) {
+                    Waypoint waypoint = path.getWaypoints().get(j);
+                    if (!waypoint.getPosition().equals(compactPath.getPosition(j, store))
+                            || waypoint.getCell().getIndex() != compactPath.getCell(j)) {
+                        differences++;
+                        break;
+                    }
+                }
+            }
+        }
+        System.out.println("CompactNavMesh: " + differences + " of " + count + " paths differ from NavMesh");
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                compactMesh.buildNavigationPath(compactPath, startCells[i].getIndex(), startCells[i].getCenter(),
+                        endCells[i].getIndex(), endCells[i].getCenter(), 1.0f);
+            }
+            long time = System.nanoTime() - start;
+            System.out.println("CompactNavMesh.buildNavigationPath: " + (time / count) + " ns per path");
+        }
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    static void benchmarkLinkCells(NavMesh navMesh) {
+        NavMesh bruteForce = new NavMesh();
+        for (int i = 0; i < navMesh.getNumCells(); i++) {
+            Cell cell = navMesh.getCell(i);
+            bruteForce.addCell(cell.getVertex(0), cell.getVertex(1), cell.getVertex(2));
+        }
+        long linear = 0;
+        long hashed = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            unlink(bruteForce);
+            long start = System.nanoTime();
+            bruteForce.linkCellsBruteForce();
+            linear += System.nanoTime() - start;
+            unlink(navMesh);
+            start = System.nanoTime();
+            navMesh.linkCells();
+            hashed += System.nanoTime() - start;
+        }
+        int differences = 0;
+        for (int i = 0; i < navMesh.getNumCells(); i++) {
+            for (int side = 0; side < 3; side++) {
+                Cell link = navMesh.getCell(i).getLink(side);
+                Cell other = bruteForce.getCell(i).getLink(side);
+                if ((link == null) != (other == null) || (link != null && link.getIndex() != other.getIndex())) {
+                    differences++;
+                }
+            }
+        }
+        System.out.println("linkCells: " + differences + " links differ from brute force linking");
+        System.out.println("linkCells: brute force " + (linear / ROUNDS / 1000) + " us, hashed "
+                + (hashed / ROUNDS / 1000) + " us, speedup " + ((float) linear / hashed));
+    }
+
+    private static void unlink(NavMesh navMesh) {
+        for (int i = 0; i < navMesh.getNumCells(); i++) {
+            for (int side = 0; side < 3; side++) {
+                navMesh.getCell(i).setLink(side, null);
+            }
+        }
+    }
+
+    private static List<Geometry> findGeometries(Node node, List<Geometry> geoms) {
+        for (Iterator<Spatial> it = node.getChildren().iterator(); it.hasNext();) {
+            Spatial spatial = it.next();
+            if (spatial instanceof Geometry) {
+                geoms.add((Geometry) spatial);
+            } else if (spatial instanceof Node) {
+                findGeometries((Node) spatial, geoms);
+            }
+        }
+        return geoms;
+    }
+}
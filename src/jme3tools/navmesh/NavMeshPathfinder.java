@@ -3,6 +3,7 @@ package jme3tools.navmesh;
 import jme3tools.navmesh.Path.Waypoint;
 import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
+import java.util.concurrent.Future;
 
 public class NavMeshPathfinder {
 
@@ -65,6 +66,32 @@ public class NavMeshPathfinder {
         return true;
     }
 
+    /**
+     * Requests a path from the current position to the goal from the given
+     * service, the path can be used with setPath() when the future is done.
+     */
+    public Future<Path> computePath(PathfindingService service, Vector3f goal){
+        return service.computePath(currentPos3d, goal, entityRadius);
+    }
+
+    /**
+     * Sets a path computed by a PathfindingService as the current path.
+     * @return false if the path is null
+     */
+    public boolean setPath(Path newPath){
+        if (newPath == null){
+            goalPos = null;
+            goalCell = null;
+            return false;
+        }
+        path = newPath;
+        goalPos3d = path.getEnd().getPosition();
+        goalPos = new Vector2f(goalPos3d.getX(), goalPos3d.getZ());
+        goalCell = path.getEnd().getCell();
+        nextWaypoint = path.getFirst();
+        return true;
+    }
+
     public void clearPath(){
         path.clear();
         goalPos = null;
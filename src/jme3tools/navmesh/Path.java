@@ -21,6 +21,10 @@ public class Path implements Iterable<Waypoint> {
 
         private Vector3f position;
         private Cell cell;
+        /**
+         * position of the waypoint in the waypoint list
+         */
+        private int index;
 
         /**
          * The cell which owns the waypoint
@@ -82,6 +86,7 @@ public class Path implements Iterable<Waypoint> {
         end.setCell(endCell);
 
         // setup the waypoint list with our start and end points
+        start.index = 0;
         waypointList.add(start);
     }
 
@@ -104,6 +109,7 @@ public class Path implements Iterable<Waypoint> {
         Waypoint newPoint = new Waypoint();
         newPoint.setPosition(point);
         newPoint.setCell(cell);
+        newPoint.index = waypointList.size();
         waypointList.add(newPoint);
     }
 
@@ -112,6 +118,7 @@ public class Path implements Iterable<Waypoint> {
      */
     void finishPath() {
         // cap the waypoint path with the last endpoint
+        end.index = waypointList.size();
         waypointList.add(end);
     }
 
@@ -152,7 +159,10 @@ public class Path implements Iterable<Waypoint> {
             return vantagePoint;
         }
 
-        int i = waypointList.indexOf(vantagePoint);
+        int i = vantagePoint.index;
+        if (i >= waypointList.size() || waypointList.get(i) != vantagePoint) {
+            i = waypointList.indexOf(vantagePoint);
+        }
         if (i < 0) {
             // The given waypoint does not belong to this path.
             return vantagePoint;
@@ -160,7 +170,6 @@ public class Path implements Iterable<Waypoint> {
 
         Waypoint testPoint = waypointList.get(++i);
         if (testPoint == getLast()) {
-            System.out.println(" WAY IND was last");
             return testPoint;
         }
 
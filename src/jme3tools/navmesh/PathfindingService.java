@@ -0,0 +1,147 @@
+package jme3tools.navmesh;
+
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Computes paths on a NavMesh on a pool of worker threads so that many
+ * entities can request new paths in the same frame without blocking the
+ * update loop. The A* search data is kept per thread (see Heap), the NavMesh
+ * itself is only read by the workers.<br>
+ * The NavMesh must not be changed while paths are computed, use pause() and
+ * resume() around changes of the mesh.
+ *
+ * @author normenhansen
+ */
+public class PathfindingService {
+
+    private final NavMesh navMesh;
+    private final ThreadPoolExecutor executor;
+    private final ReentrantReadWriteLock meshLock = new ReentrantReadWriteLock();
+
+    public PathfindingService(NavMesh navMesh) {
+        this(navMesh, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    public PathfindingService(NavMesh navMesh, int threads) {
+        this.navMesh = navMesh;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WorkerFactory());
+    }
+
+    public NavMesh getNavMesh() {
+        return navMesh;
+    }
+
+    /**
+     * Computes a path from the start to the goal location on a worker thread.
+     * The cells of the start and goal are looked up on the worker as well.
+     * @param start
+     * @param goal
+     * @param entityRadius
+     * @return a future for the path, the path is null if no path was found
+     */
+    public Future<Path> computePath(Vector3f start, Vector3f goal, float entityRadius) {
+        return executor.submit(new PathQuery(start.clone(), goal.clone(), entityRadius));
+    }
+
+    /**
+     * @return the number of path queries that are waiting for a worker
+     */
+    public int getQueuedQueries() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Cancels all path queries that have not been started yet
+     */
+    public void cancelAll() {
+        List<Runnable> queries = new ArrayList<Runnable>();
+        executor.getQueue().drainTo(queries);
+        for (Iterator<Runnable> it = queries.iterator(); it.hasNext();) {
+            Runnable runnable = it.next();
+            if (runnable instanceof Future) {
+                ((Future) runnable).cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Waits for the running path queries to finish and keeps new ones from
+     * starting until resume() is called, so the NavMesh can be changed. Has
+     * to be called from the thread that calls resume().
+     */
+    public void pause() {
+        meshLock.writeLock().lock();
+    }
+
+    public void resume() {
+        meshLock.writeLock().unlock();
+    }
+
+    /**
+     * Stops the worker threads, queued path queries are not computed.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private Path findPath(Vector3f start, Vector3f goal, float entityRadius) {
+        Cell startCell = navMesh.findClosestCell(start);
+        Cell goalCell = navMesh.findClosestCell(goal);
+        if (startCell == null || goalCell == null) {
+            return null;
+        }
+        navMesh.snapPointToCell(startCell, start);
+        Path path = new Path();
+        if (!navMesh.buildNavigationPath(path, startCell, start, goalCell, goal, entityRadius)) {
+            return null;
+        }
+        return path;
+    }
+
+    private class PathQuery implements Callable<Path> {
+
+        private Vector3f start;
+        private Vector3f goal;
+        private float entityRadius;
+
+        public PathQuery(Vector3f start, Vector3f goal, float entityRadius) {
+            this.start = start;
+            this.goal = goal;
+            this.entityRadius = entityRadius;
+        }
+
+        public Path call() throws Exception {
+            meshLock.readLock().lock();
+            try {
+                return findPath(start, goal, entityRadius);
+            } finally {
+                meshLock.readLock().unlock();
+            }
+        }
+    }
+
+    private static class WorkerFactory implements ThreadFactory {
+
+        private static final AtomicInteger poolCount = new AtomicInteger();
+        private final int pool = poolCount.incrementAndGet();
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Pathfinding-" + pool + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
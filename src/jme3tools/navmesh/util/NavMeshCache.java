@@ -0,0 +1,183 @@
+package jme3tools.navmesh.util;
+
+import com.jme3.asset.AssetInfo;
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetManager;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import jme3tools.navmesh.NavMesh;
+
+/**
+ * Stores finished NavMeshes (including the cell links) in binary files so
+ * loading a level does not have to generate and link the navmesh again. The
+ * cache key is made of the scene asset name, a checksum of the scene asset
+ * data and the parameters of the NavMeshGenerator, the key is stored in the
+ * file and compared when loading. Cache files are memory mapped for reading.
+ *
+ * @author normenhansen
+ */
+public class NavMeshCache {
+
+    private static final int MAGIC = 0x4E4D4331; //NMC1
+    private static final int VERSION = 1;
+    private File directory;
+
+    public NavMeshCache(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * creates the cache key for a scene and generator
+     * @param assetManager
+     * @param sceneName
+     * @param generator
+     * @return the key or null if the scene data could not be read
+     */
+    public String createKey(AssetManager assetManager, String sceneName, NavMeshGenerator generator) {
+        AssetInfo info = assetManager.locateAsset(new AssetKey(sceneName));
+        if (info == null) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        long length = 0;
+        InputStream in = null;
+        try {
+            in = info.openStream();
+            byte[] bytes = new byte[8192];
+            int read;
+            while ((read = in.read(bytes)) >= 0) {
+                crc.update(bytes, 0, read);
+                length += read;
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(NavMeshCache.class.getName()).log(Level.WARNING, "Cannot read scene {0}: {1}", new Object[]{sceneName, ex});
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ex) {
+                }
+            }
+        }
+        return sceneName + ";length=" + length + ";crc=" + Long.toHexString(crc.getValue())
+                + ";" + generator.getParameterString();
+    }
+
+    /**
+     * loads the cached navmesh for the key into the given navmesh
+     * @param key
+     * @param navMesh
+     * @return false if there is no valid cache file for the key
+     */
+    public boolean load(String key, NavMesh navMesh) {
+        File file = getFile(key);
+        if (key == null || !file.isFile()) {
+            return false;
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            if (channel.size() < 12) {
+                return false;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return false;
+            }
+            int keyLength = buffer.getInt();
+            if (keyLength < 0 || keyLength > buffer.remaining()) {
+                return false;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            buffer.get(keyBytes);
+            if (!key.equals(new String(keyBytes, "UTF-8"))) {
+                return false;
+            }
+            navMesh.readBinary(buffer);
+            return true;
+        } catch (IOException ex) {
+            Logger.getLogger(NavMeshCache.class.getName()).log(Level.WARNING, "Cannot read navmesh cache {0}: {1}", new Object[]{file, ex});
+            return false;
+        } catch (RuntimeException ex) {
+            Logger.getLogger(NavMeshCache.class.getName()).log(Level.WARNING, "Invalid navmesh cache {0}: {1}", new Object[]{file, ex});
+            return false;
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ex) {
+                }
+            }
+        }
+    }
+
+    /**
+     * stores the navmesh for the key, the data is written to a temporary
+     * file first which then replaces the cache file
+     * @param key
+     * @param navMesh
+     */
+    public void save(String key, NavMesh navMesh) {
+        if (key == null) {
+            return;
+        }
+        directory.mkdirs();
+        File file = getFile(key);
+        File temp = null;
+        RandomAccessFile raf = null;
+        try {
+            byte[] keyBytes = key.getBytes("UTF-8");
+            ByteBuffer header = ByteBuffer.allocate(12 + keyBytes.length);
+            header.putInt(MAGIC).putInt(VERSION).putInt(keyBytes.length).put(keyBytes);
+            header.flip();
+            ByteBuffer data = navMesh.writeBinary();
+            temp = File.createTempFile("navmesh-", ".tmp", directory);
+            raf = new RandomAccessFile(temp, "rw");
+            FileChannel channel = raf.getChannel();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            raf.close();
+            raf = null;
+            //renameTo() does not replace existing files on all platforms
+            if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+                throw new IOException("Cannot rename " + temp + " to " + file);
+            }
+            temp = null;
+        } catch (IOException ex) {
+            Logger.getLogger(NavMeshCache.class.getName()).log(Level.WARNING, "Cannot write navmesh cache {0}: {1}", new Object[]{file, ex});
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ex) {
+                }
+            }
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    private File getFile(String key) {
+        String name = key == null ? "null" : Integer.toHexString(key.hashCode());
+        return new File(directory, "navmesh-" + name + ".bin");
+    }
+}
@@ -51,6 +51,29 @@ public class NavMeshGenerator {
         System.out.println("Contour Max Dev.: " + contourMaxDeviation);
     }
 
+    /**
+     * @return all generation parameters in one string, two generators with
+     * the same parameter string create the same navmesh
+     */
+    public String getParameterString() {
+        return "cellSize=" + cellSize
+                + ";cellHeight=" + cellHeight
+                + ";minTraversableHeight=" + minTraversableHeight
+                + ";maxTraversableStep=" + maxTraversableStep
+                + ";maxTraversableSlope=" + maxTraversableSlope
+                + ";clipLedges=" + clipLedges
+                + ";traversableAreaBorderSize=" + traversableAreaBorderSize
+                + ";smoothingThreshold=" + smoothingThreshold
+                + ";useConservativeExpansion=" + useConservativeExpansion
+                + ";minUnconnectedRegionSize=" + minUnconnectedRegionSize
+                + ";mergeRegionSize=" + mergeRegionSize
+                + ";maxEdgeLength=" + maxEdgeLength
+                + ";edgeMaxDeviation=" + edgeMaxDeviation
+                + ";maxVertsPerPoly=" + maxVertsPerPoly
+                + ";contourSampleDistance=" + contourSampleDistance
+                + ";contourMaxDeviation=" + contourMaxDeviation;
+    }
+
     public Mesh optimize(Mesh mesh) {
         nmgen = new NavmeshGenerator(cellSize, cellHeight, minTraversableHeight,
                 maxTraversableStep, maxTraversableSlope,